@@ -24,6 +24,7 @@ import com.justsyncit.command.VerifyCommand;
 import com.justsyncit.network.command.NetworkCommand;
 import com.justsyncit.hash.Blake3BufferHasher;
 import com.justsyncit.hash.Blake3FileHasher;
+import com.justsyncit.hash.Blake3HashAlgorithm;
 import com.justsyncit.hash.Blake3IncrementalHasherFactory;
 import com.justsyncit.hash.Blake3Service;
 import com.justsyncit.hash.Blake3ServiceImpl;
@@ -45,8 +46,10 @@ import com.justsyncit.network.connection.ConnectionManagerImpl;
 import com.justsyncit.network.transfer.FileTransferManager;
 import com.justsyncit.network.transfer.FileTransferManagerImpl;
 import com.justsyncit.storage.ContentStore;
+import com.justsyncit.storage.ContentStoreFactory;
 import com.justsyncit.storage.FilesystemChunkIndex;
 import com.justsyncit.storage.FilesystemContentStore;
+import com.justsyncit.storage.RepositoryFormat;
 import com.justsyncit.storage.metadata.MetadataService;
 import com.justsyncit.storage.metadata.MetadataServiceFactory;
 
@@ -81,27 +84,77 @@ public class ServiceFactory {
      * @throws ServiceException if service creation fails
      */
     public Blake3Service createBlake3Service() throws ServiceException {
+        return createBlake3Service(Blake3HashAlgorithm.ALGORITHM_NAME);
+    }
+
+    /**
+     * Creates a hashing service backed by the named hash algorithm.
+     * SHA-256 is only used to keep reading repositories created before BLAKE3 became the default.
+     *
+     * @param hashAlgorithmName the hash algorithm name ("BLAKE3" or "SHA-256")
+     * @return configured hashing service
+     * @throws ServiceException if service creation fails or the algorithm is not supported
+     */
+    public Blake3Service createBlake3Service(String hashAlgorithmName) throws ServiceException {
         try {
-            // Create separate HashAlgorithm instances for each service to ensure thread safety
-            HashAlgorithm bufferHasherAlgorithm = Sha256HashAlgorithm.create();
-            HashAlgorithm incrementalHasherAlgorithm = Sha256HashAlgorithm.create();
+            // The hashers only use this instance as a prototype: every thread and every
+            // incremental hash gets its own instance, so hashing never contends on a lock
+            SimdDetectionService simdDetectionService = new SimdDetectionServiceImpl();
+            HashAlgorithm prototypeAlgorithm = createHashAlgorithm(hashAlgorithmName, simdDetectionService);
 
-            BufferHasher bufferHasher = new Blake3BufferHasher(bufferHasherAlgorithm);
+            BufferHasher bufferHasher = new Blake3BufferHasher(prototypeAlgorithm);
             IncrementalHasherFactory incrementalHasherFactory = new Blake3IncrementalHasherFactory(
-                    incrementalHasherAlgorithm
+                    prototypeAlgorithm
                 );
             StreamHasher streamHasher = new Blake3StreamHasher(incrementalHasherFactory);
-            FileHasher fileHasher = new Blake3FileHasher(streamHasher, bufferHasher);
-            SimdDetectionService simdDetectionService = new SimdDetectionServiceImpl();
+            FileHasher fileHasher = new Blake3FileHasher(streamHasher, bufferHasher, prototypeAlgorithm);
 
             return new Blake3ServiceImpl(
                     fileHasher, bufferHasher, streamHasher,
-                    incrementalHasherFactory, simdDetectionService);
+                    incrementalHasherFactory, simdDetectionService,
+                    prototypeAlgorithm);
         } catch (HashingException e) {
             throw new ServiceException("Failed to create BLAKE3 service", e);
         }
     }
 
+    /**
+     * Creates a hashing service matching the hash algorithm of the default repository.
+     * New repositories use BLAKE3; repositories written before the format flag existed keep using SHA-256.
+     *
+     * @return configured hashing service
+     * @throws ServiceException if the repository format cannot be read or service creation fails
+     */
+    public Blake3Service createRepositoryBlake3Service() throws ServiceException {
+        try {
+            RepositoryFormat format = RepositoryFormat.detect(
+                    java.nio.file.Paths.get(ContentStoreFactory.DEFAULT_STORAGE_DIRECTORY));
+            return createBlake3Service(format.getHashAlgorithm());
+        } catch (IOException e) {
+            throw new ServiceException("Failed to read repository format", e);
+        }
+    }
+
+    /**
+     * Creates a hash algorithm instance by name.
+     *
+     * @param hashAlgorithmName the hash algorithm name
+     * @param simdDetectionService SIMD detection used to pick the BLAKE3 kernel
+     * @return a new hash algorithm instance
+     * @throws HashingException if the algorithm cannot be created
+     * @throws ServiceException if the algorithm is not supported
+     */
+    private HashAlgorithm createHashAlgorithm(String hashAlgorithmName, SimdDetectionService simdDetectionService)
+            throws HashingException, ServiceException {
+        if (Blake3HashAlgorithm.ALGORITHM_NAME.equalsIgnoreCase(hashAlgorithmName)) {
+            return Blake3HashAlgorithm.create(simdDetectionService);
+        }
+        if ("SHA-256".equalsIgnoreCase(hashAlgorithmName) || "SHA256".equalsIgnoreCase(hashAlgorithmName)) {
+            return Sha256HashAlgorithm.create();
+        }
+        throw new ServiceException("Unsupported hash algorithm: " + hashAlgorithmName);
+    }
+
     /**
      * Creates a content store with all dependencies.
      *
@@ -111,6 +164,9 @@ public class ServiceFactory {
     ContentStore createContentStore(Blake3Service blake3Service) throws IOException {
         java.nio.file.Path storageDir = java.nio.file.Paths.get("storage", "chunks");
         java.nio.file.Path indexFile = java.nio.file.Paths.get("storage", "index.txt");
+        if (ContentStoreFactory.usesPackLayout(storageDir)) {
+            return ContentStoreFactory.createPackStore(storageDir, blake3Service);
+        }
 
         FilesystemChunkIndex chunkIndex = FilesystemChunkIndex.create(storageDir, indexFile);
         return FilesystemContentStore.create(storageDir, chunkIndex, blake3Service);
@@ -198,9 +254,11 @@ public class ServiceFactory {
     public com.justsyncit.backup.BackupService createBackupService(ContentStore contentStore, MetadataService metadataService,
                                               Blake3Service blake3Service) throws ServiceException {
         try {
-            com.justsyncit.scanner.FilesystemScanner scanner = new com.justsyncit.scanner.NioFilesystemScanner();
+            com.justsyncit.scanner.FilesystemScanner scanner = new com.justsyncit.scanner.ParallelFilesystemScanner();
             com.justsyncit.scanner.FileChunker chunker = com.justsyncit.scanner.FixedSizeFileChunker.create(blake3Service);
-            return new com.justsyncit.backup.BackupService(contentStore, metadataService, scanner, chunker);
+            com.justsyncit.scanner.FileChunker cdcChunker = com.justsyncit.scanner.FastCdcFileChunker.create(blake3Service);
+            return new com.justsyncit.backup.BackupService(contentStore, metadataService, scanner, chunker, cdcChunker,
+                    blake3Service);
         } catch (Exception e) {
             throw new ServiceException("Failed to create backup service", e);
         }
@@ -327,7 +385,7 @@ public class ServiceFactory {
     public ContentStore createSqliteContentStore(Blake3Service blake3Service) throws ServiceException {
         try {
             MetadataService metadataService = createMetadataService();
-            return com.justsyncit.storage.ContentStoreFactory.createDefaultSqliteStore(metadataService, blake3Service);
+            return ContentStoreFactory.createDefaultSqliteStore(metadataService, blake3Service);
         } catch (IOException e) {
             throw new ServiceException("Failed to create SQLite content store", e);
         }
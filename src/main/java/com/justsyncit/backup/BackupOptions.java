@@ -1,5 +1,6 @@
 package com.justsyncit.backup;
 
+import com.justsyncit.scanner.ChunkingAlgorithm;
 import com.justsyncit.scanner.SymlinkStrategy;
 import com.justsyncit.network.TransportType;
 
@@ -13,9 +14,16 @@ public class BackupOptions {
     private final boolean includeHiddenFiles;
     private final boolean verifyIntegrity;
     private final int chunkSize;
+    private final ChunkingAlgorithm chunkingAlgorithm;
+    private final int minChunkSize;
+    private final int maxChunkSize;
+    private final long memoryMappingThreshold;
+    private final int smallFileThreshold;
     private final int maxDepth;
     private final String snapshotName;
     private final String description;
+    private final boolean incremental;
+    private final String parentSnapshot;
     
     // Network options for remote backup
     private final boolean remoteBackup;
@@ -27,9 +35,16 @@ public class BackupOptions {
         this.includeHiddenFiles = builder.includeHiddenFiles;
         this.verifyIntegrity = builder.verifyIntegrity;
         this.chunkSize = builder.chunkSize;
+        this.chunkingAlgorithm = builder.chunkingAlgorithm;
+        this.minChunkSize = builder.minChunkSize;
+        this.maxChunkSize = builder.maxChunkSize;
+        this.memoryMappingThreshold = builder.memoryMappingThreshold;
+        this.smallFileThreshold = builder.smallFileThreshold;
         this.maxDepth = builder.maxDepth;
         this.snapshotName = builder.snapshotName;
         this.description = builder.description;
+        this.incremental = builder.incremental;
+        this.parentSnapshot = builder.parentSnapshot;
         this.remoteBackup = builder.remoteBackup;
         this.remoteAddress = builder.remoteAddress;
         this.transportType = builder.transportType;
@@ -51,6 +66,46 @@ public class BackupOptions {
         return chunkSize;
     }
 
+    public ChunkingAlgorithm getChunkingAlgorithm() {
+        return chunkingAlgorithm;
+    }
+
+    /**
+     * Gets the smallest content-defined chunk size.
+     *
+     * @return the minimum chunk size in bytes, or 0 for a quarter of the chunk size
+     */
+    public int getMinChunkSize() {
+        return minChunkSize;
+    }
+
+    /**
+     * Gets the largest content-defined chunk size.
+     *
+     * @return the maximum chunk size in bytes, or 0 for four times the chunk size
+     */
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    /**
+     * Gets the size from which files are memory-mapped for chunking.
+     *
+     * @return the threshold in bytes, or 0 if files are never mapped
+     */
+    public long getMemoryMappingThreshold() {
+        return memoryMappingThreshold;
+    }
+
+    /**
+     * Gets the size below which files are packed together into shared chunks.
+     *
+     * @return the threshold in bytes, or 0 if every file is chunked on its own
+     */
+    public int getSmallFileThreshold() {
+        return smallFileThreshold;
+    }
+
     public int getMaxDepth() {
         return maxDepth;
     }
@@ -63,6 +118,14 @@ public class BackupOptions {
         return description;
     }
 
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public String getParentSnapshot() {
+        return parentSnapshot;
+    }
+
     public boolean isRemoteBackup() {
         return remoteBackup;
     }
@@ -80,9 +143,16 @@ public class BackupOptions {
         private boolean includeHiddenFiles = false;
         private boolean verifyIntegrity = true;
         private int chunkSize = 64 * 1024; // 64KB default
+        private ChunkingAlgorithm chunkingAlgorithm = ChunkingAlgorithm.FIXED;
+        private int minChunkSize;
+        private int maxChunkSize;
+        private long memoryMappingThreshold = 64L * 1024 * 1024; // 64MB default
+        private int smallFileThreshold;
         private int maxDepth = Integer.MAX_VALUE; // Unlimited depth by default
         private String snapshotName;
         private String description;
+        private boolean incremental = false;
+        private String parentSnapshot;
         
         // Network options with defaults
         private boolean remoteBackup = false;
@@ -109,6 +179,66 @@ public class BackupOptions {
             return this;
         }
 
+        /**
+         * Sets how chunk boundaries are chosen. With {@link ChunkingAlgorithm#FASTCDC} the chunk size
+         * is the average chunk size.
+         *
+         * @param chunkingAlgorithm the chunking algorithm
+         * @return this builder
+         */
+        public Builder chunkingAlgorithm(ChunkingAlgorithm chunkingAlgorithm) {
+            this.chunkingAlgorithm = chunkingAlgorithm;
+            return this;
+        }
+
+        /**
+         * Sets the smallest content-defined chunk size. Defaults to a quarter of the chunk size.
+         *
+         * @param minChunkSize the minimum chunk size in bytes
+         * @return this builder
+         */
+        public Builder minChunkSize(int minChunkSize) {
+            this.minChunkSize = minChunkSize;
+            return this;
+        }
+
+        /**
+         * Sets the largest content-defined chunk size. Defaults to four times the chunk size.
+         *
+         * @param maxChunkSize the maximum chunk size in bytes
+         * @return this builder
+         */
+        public Builder maxChunkSize(int maxChunkSize) {
+            this.maxChunkSize = maxChunkSize;
+            return this;
+        }
+
+        /**
+         * Sets the size from which files are memory-mapped and their chunks hashed in place,
+         * instead of being read into buffers. Only applies to fixed-size chunking. Defaults to 64 MB,
+         * above which mapping saves copying each chunk into a buffer.
+         *
+         * @param memoryMappingThreshold the threshold in bytes, or 0 to never map files
+         * @return this builder
+         */
+        public Builder memoryMappingThreshold(long memoryMappingThreshold) {
+            this.memoryMappingThreshold = memoryMappingThreshold;
+            return this;
+        }
+
+        /**
+         * Sets the size below which files are concatenated into shared pack chunks instead of each
+         * getting a chunk of its own. Worthwhile for trees of many tiny files, such as source trees
+         * or mail directories.
+         *
+         * @param smallFileThreshold the threshold in bytes, or 0 to chunk every file on its own
+         * @return this builder
+         */
+        public Builder smallFileThreshold(int smallFileThreshold) {
+            this.smallFileThreshold = smallFileThreshold;
+            return this;
+        }
+
         public Builder maxDepth(int maxDepth) {
             this.maxDepth = maxDepth;
             return this;
@@ -124,6 +254,29 @@ public class BackupOptions {
             return this;
         }
 
+        /**
+         * Enables incremental backup: files unchanged since the parent snapshot are not read again.
+         *
+         * @param incremental whether to back up incrementally
+         * @return this builder
+         */
+        public Builder incremental(boolean incremental) {
+            this.incremental = incremental;
+            return this;
+        }
+
+        /**
+         * Sets the snapshot an incremental backup compares against.
+         * Defaults to the most recent snapshot that contains files.
+         *
+         * @param parentSnapshot the parent snapshot ID
+         * @return this builder
+         */
+        public Builder parentSnapshot(String parentSnapshot) {
+            this.parentSnapshot = parentSnapshot;
+            return this;
+        }
+
         public Builder remoteBackup(boolean remoteBackup) {
             this.remoteBackup = remoteBackup;
             return this;
@@ -18,7 +18,8 @@
 
 package com.justsyncit.backup;
 
-import com.justsyncit.scanner.ChunkingOptions;
+import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.scanner.ChunkingAlgorithm;
 import com.justsyncit.scanner.FileChunker;
 import com.justsyncit.scanner.FileProcessor;
 import com.justsyncit.scanner.FilesystemScanner;
@@ -27,8 +28,11 @@ import com.justsyncit.storage.ContentStore;
 import com.justsyncit.storage.metadata.MetadataService;
 import com.justsyncit.storage.metadata.Snapshot;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
@@ -44,9 +48,11 @@ public class BackupService {
     private final MetadataService metadataService;
     private final FilesystemScanner scanner;
     private final FileChunker chunker;
+    private final FileChunker contentDefinedChunker;
+    private final Blake3Service blake3Service;
 
     /**
-     * Creates a new backup service.
+     * Creates a new backup service that only supports fixed-size chunking.
      *
      * @param contentStore content store for storing chunks
      * @param metadataService metadata service for snapshot management
@@ -55,10 +61,42 @@ public class BackupService {
      */
     public BackupService(ContentStore contentStore, MetadataService metadataService,
                         FilesystemScanner scanner, FileChunker chunker) {
+        this(contentStore, metadataService, scanner, chunker, null);
+    }
+
+    /**
+     * Creates a new backup service.
+     *
+     * @param contentStore content store for storing chunks
+     * @param metadataService metadata service for snapshot management
+     * @param scanner filesystem scanner for discovering files
+     * @param chunker file chunker for fixed-size chunking
+     * @param contentDefinedChunker file chunker for content-defined chunking, or null if not supported
+     */
+    public BackupService(ContentStore contentStore, MetadataService metadataService,
+                        FilesystemScanner scanner, FileChunker chunker, FileChunker contentDefinedChunker) {
+        this(contentStore, metadataService, scanner, chunker, contentDefinedChunker, null);
+    }
+
+    /**
+     * Creates a new backup service that can also pack small files.
+     *
+     * @param contentStore content store for storing chunks
+     * @param metadataService metadata service for snapshot management
+     * @param scanner filesystem scanner for discovering files
+     * @param chunker file chunker for fixed-size chunking
+     * @param contentDefinedChunker file chunker for content-defined chunking, or null if not supported
+     * @param blake3Service BLAKE3 service for hashing packed small files, or null if packing is not supported
+     */
+    public BackupService(ContentStore contentStore, MetadataService metadataService,
+                        FilesystemScanner scanner, FileChunker chunker, FileChunker contentDefinedChunker,
+                        Blake3Service blake3Service) {
         this.contentStore = contentStore;
         this.metadataService = metadataService;
         this.scanner = scanner;
         this.chunker = chunker;
+        this.contentDefinedChunker = contentDefinedChunker;
+        this.blake3Service = blake3Service;
     }
 
     /**
@@ -85,21 +123,15 @@ public class BackupService {
                 LOGGER.info(String.format("Starting backup of %s", sourceDir));
 
                 // Configure scan options
-                ScanOptions scanOptions = new ScanOptions()
-                        .withSymlinkStrategy(options.getSymlinkStrategy())
-                        .withIncludeHiddenFiles(options.isIncludeHiddenFiles())
-                        .withMaxDepth(options.getMaxDepth());
-
-                // Configure chunking options
-                ChunkingOptions chunkingOptions = new ChunkingOptions()
-                        .withChunkSize(options.getChunkSize())
-                        .withDetectSparseFiles(true);
+                ScanOptions scanOptions = toScanOptions(options);
 
                 // Create file processor
-                FileProcessor processor = FileProcessor.create(scanner, chunker, contentStore, metadataService);
+                FileProcessor processor = createProcessor(options);
 
-                // Process directory
-                FileProcessor.ProcessingResult result = processor.processDirectory(sourceDir, scanOptions).get();
+                // Process directory, against the parent snapshot when backing up incrementally
+                String parentSnapshotId = options.isIncremental() ? findParentSnapshot(sourceDir, options) : null;
+                FileProcessor.ProcessingResult result = processor.processDirectory(
+                        sourceDir, scanOptions, parentSnapshotId).get();
 
                 // Create snapshot
                 String snapshotId = options.getSnapshotName() != null
@@ -112,7 +144,8 @@ public class BackupService {
 
                 Snapshot snapshot = metadataService.createSnapshot(snapshotId, description);
 
-                LOGGER.info(String.format("Backup completed successfully: %s", snapshotId));
+                LOGGER.info(String.format("Backup completed successfully: %s (%d of %d files unchanged)",
+                        snapshotId, result.getUnchangedFiles(), result.getProcessedFiles()));
 
                 // Calculate chunks created (approximate based on total bytes and chunk size)
                 int chunksCreated = (int) (result.getTotalBytes() / options.getChunkSize()) + 1;
@@ -127,6 +160,106 @@ public class BackupService {
         });
     }
 
+    /**
+     * Creates a watcher that keeps a directory backed up continuously, committing a snapshot of the
+     * changes at every interval. The caller starts the watcher and closes it when done.
+     *
+     * @param sourceDir directory to back up
+     * @param options backup options; when incremental, the first snapshot compares against the parent snapshot
+     * @param commitInterval time between snapshot commits
+     * @return the watcher, not yet started
+     * @throws IOException if the watcher cannot be created
+     */
+    public BackupWatcher watch(Path sourceDir, BackupOptions options, Duration commitInterval) throws IOException {
+        if (sourceDir == null) {
+            throw new IllegalArgumentException("Source directory cannot be null");
+        }
+        if (!java.nio.file.Files.isDirectory(sourceDir)) {
+            throw new IllegalArgumentException("Directory must exist and be a directory: " + sourceDir);
+        }
+        String parentSnapshotId = options.isIncremental() ? findParentSnapshot(sourceDir, options) : null;
+        FileProcessor processor = createProcessor(options);
+        return BackupWatcher.create(processor, sourceDir, toScanOptions(options), commitInterval, parentSnapshotId);
+    }
+
+    /**
+     * Creates a file processor that chunks files as the options ask.
+     *
+     * @param options backup options
+     * @return the file processor
+     * @throws IllegalArgumentException if the chunking algorithm or small-file packing is not supported
+     */
+    private FileProcessor createProcessor(BackupOptions options) {
+        FileChunker fileChunker = chunker;
+        if (options.getChunkingAlgorithm() == ChunkingAlgorithm.FASTCDC) {
+            if (contentDefinedChunker == null) {
+                throw new IllegalArgumentException("Content-defined chunking is not configured for this backup service");
+            }
+            fileChunker = contentDefinedChunker;
+        }
+
+        FileChunker.ChunkingOptions chunkingOptions = new FileChunker.ChunkingOptions()
+                .withChunkSize(options.getChunkSize())
+                .withAlgorithm(options.getChunkingAlgorithm())
+                .withUseAsyncIO(true)
+                .withDetectSparseFiles(true);
+        if (options.getMinChunkSize() > 0) {
+            chunkingOptions.withMinChunkSize(options.getMinChunkSize());
+        }
+        if (options.getMaxChunkSize() > 0) {
+            chunkingOptions.withMaxChunkSize(options.getMaxChunkSize());
+        }
+        chunkingOptions.withMemoryMappingThreshold(options.getMemoryMappingThreshold());
+
+        FileProcessor processor = FileProcessor.create(scanner, fileChunker, contentStore, metadataService);
+        processor.setChunkingOptions(chunkingOptions);
+        if (options.getSmallFileThreshold() > 0) {
+            if (blake3Service == null) {
+                throw new IllegalArgumentException("Small-file packing is not configured for this backup service");
+            }
+            processor.setSmallFilePacking(options.getSmallFileThreshold(), blake3Service);
+        }
+        return processor;
+    }
+
+    /**
+     * Creates the scan options for a backup.
+     *
+     * @param options backup options
+     * @return the scan options
+     */
+    private static ScanOptions toScanOptions(BackupOptions options) {
+        return new ScanOptions()
+                .withSymlinkStrategy(options.getSymlinkStrategy())
+                .withIncludeHiddenFiles(options.isIncludeHiddenFiles())
+                .withMaxDepth(options.getMaxDepth());
+    }
+
+    /**
+     * Finds the snapshot an incremental backup compares against: the one named in the options,
+     * or else the most recent snapshot that contains files below the source directory.
+     *
+     * @param sourceDir directory being backed up
+     * @param options backup options
+     * @return the parent snapshot ID, or null if there is none and every file must be read
+     * @throws IOException if snapshots cannot be searched
+     */
+    private String findParentSnapshot(Path sourceDir, BackupOptions options) throws IOException {
+        if (options.getParentSnapshot() != null) {
+            if (!metadataService.getSnapshot(options.getParentSnapshot()).isPresent()) {
+                throw new IllegalArgumentException("Parent snapshot not found: " + options.getParentSnapshot());
+            }
+            return options.getParentSnapshot();
+        }
+        Optional<Snapshot> parent = metadataService.findLatestSnapshotWithFilesUnder(sourceDir.toString());
+        if (parent.isPresent()) {
+            LOGGER.info(String.format("Backing up incrementally against snapshot %s", parent.get().getId()));
+            return parent.get().getId();
+        }
+        LOGGER.info("No previous snapshot with files of " + sourceDir + ", backing up all files");
+        return null;
+    }
+
     /**
      * Result of a backup operation.
      */
@@ -0,0 +1,414 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.backup;
+
+import com.justsyncit.concurrent.ExecutionMode;
+import com.justsyncit.concurrent.IoExecutors;
+import com.justsyncit.scanner.FileProcessor;
+import com.justsyncit.scanner.ScanOptions;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a directory backed up continuously. Directories are registered with a {@link WatchService},
+ * change events are coalesced into a set of dirty paths, and at every commit interval a new snapshot
+ * is recorded that reads the files under the dirty paths and carries every other unchanged file over
+ * from the previous snapshot, looking each one up by path. If the watch service reports lost events, or files could not be processed, the next
+ * commit rescans the whole directory against the previous snapshot instead. Interval commits run on
+ * their own thread, so events keep being drained while a long commit is recorded.
+ */
+public final class BackupWatcher implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(BackupWatcher.class.getName());
+
+    /** Processor recording the snapshots; owned by the watcher. */
+    private final FileProcessor processor;
+    /** Directory being backed up. */
+    private final Path root;
+    /** Scan options for every snapshot. */
+    private final ScanOptions scanOptions;
+    /** Time between snapshot commits. */
+    private final Duration commitInterval;
+    /** Watch service the directories are registered with. */
+    private final WatchService watchService;
+    /** Directory of each watch key; only used by the thread that registers and polls. */
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    /** Paths changed since the last commit, none of them under another one. Guarded by this. */
+    private final Set<Path> dirtyPaths = new HashSet<>();
+    /** Whether the next commit must rescan the whole directory. Guarded by this. */
+    private boolean fullRescan = true;
+    /** Serializes commits. */
+    private final Object commitLock = new Object();
+    /** Most recently committed snapshot, the parent of the next one. */
+    private volatile String lastSnapshotId;
+    /** Thread receiving change events and scheduling commits. */
+    private final Thread watchThread;
+    /** Runs the interval commits, so a long commit does not stop events being drained. */
+    private final ExecutorService commitExecutor;
+    /** Set once the watcher is closed. */
+    private volatile boolean closed;
+
+    /**
+     * Creates a new BackupWatcher.
+     *
+     * @param processor the processor recording the snapshots
+     * @param root the directory to back up
+     * @param scanOptions the scan options for every snapshot
+     * @param commitInterval the time between snapshot commits
+     * @param watchService the watch service to register directories with
+     * @param parentSnapshotId the snapshot the first commit compares against, or null
+     */
+    private BackupWatcher(FileProcessor processor, Path root, ScanOptions scanOptions, Duration commitInterval,
+                          WatchService watchService, String parentSnapshotId) {
+        this.processor = processor;
+        this.root = root;
+        this.scanOptions = scanOptions;
+        this.commitInterval = commitInterval;
+        this.watchService = watchService;
+        this.lastSnapshotId = parentSnapshotId;
+        this.watchThread = new Thread(this::run, "BackupWatcher-" + root.getFileName());
+        this.watchThread.setDaemon(true);
+        this.commitExecutor = Executors.newSingleThreadExecutor(
+                IoExecutors.threadFactory("BackupWatcher-commit-" + root.getFileName(), ExecutionMode.PLATFORM));
+    }
+
+    /**
+     * Creates a watcher for a directory. Nothing is watched until {@link #start()} is called.
+     *
+     * @param processor the processor recording the snapshots; closed with the watcher
+     * @param root the directory to back up
+     * @param scanOptions the scan options for every snapshot
+     * @param commitInterval the time between snapshot commits
+     * @param parentSnapshotId the snapshot the first commit compares against, or null to read every file
+     * @return a new BackupWatcher
+     * @throws IllegalArgumentException if a required parameter is null or the interval is not positive
+     * @throws IOException if the watch service cannot be created
+     */
+    public static BackupWatcher create(FileProcessor processor, Path root, ScanOptions scanOptions,
+                                       Duration commitInterval, String parentSnapshotId) throws IOException {
+        if (processor == null) {
+            throw new IllegalArgumentException("Processor cannot be null");
+        }
+        if (root == null || !Files.isDirectory(root)) {
+            throw new IllegalArgumentException("Directory must exist and be a directory: " + root);
+        }
+        if (scanOptions == null) {
+            throw new IllegalArgumentException("Scan options cannot be null");
+        }
+        if (commitInterval == null || commitInterval.isNegative() || commitInterval.isZero()) {
+            throw new IllegalArgumentException("Commit interval must be positive");
+        }
+        return new BackupWatcher(processor, root, scanOptions, commitInterval,
+                root.getFileSystem().newWatchService(), parentSnapshotId);
+    }
+
+    /**
+     * Registers the directory tree and commits the initial snapshot, a full rescan against the parent
+     * snapshot, then starts committing changes in the background. Changes made while the initial
+     * snapshot is taken are picked up by the first background commit.
+     *
+     * @return the initial snapshot ID
+     * @throws IOException if the directories cannot be registered or the initial snapshot fails
+     */
+    public String start() throws IOException {
+        if (watchThread.getState() != Thread.State.NEW) {
+            throw new IllegalStateException("Watcher has already been started");
+        }
+        registerTree(root);
+        LOGGER.info(String.format("Watching %d directories under %s", watchedDirectories.size(), root));
+        String snapshotId = commit();
+        watchThread.start();
+        return snapshotId;
+    }
+
+    /**
+     * Commits a snapshot of the changes recorded so far, without waiting for the commit interval.
+     * If the commit fails, the changes are kept for the next one.
+     *
+     * @return the ID of the new snapshot, or of the previous one if nothing changed
+     * @throws IOException if the snapshot cannot be recorded
+     */
+    public String commit() throws IOException {
+        synchronized (commitLock) {
+            Set<Path> changes;
+            boolean rescan;
+            synchronized (this) {
+                changes = new HashSet<>(dirtyPaths);
+                rescan = fullRescan || lastSnapshotId == null;
+                dirtyPaths.clear();
+                fullRescan = false;
+            }
+            if (!rescan && changes.isEmpty()) {
+                return lastSnapshotId;
+            }
+
+            try {
+                FileProcessor.ProcessingResult result = rescan
+                        ? processor.processDirectory(root, scanOptions, lastSnapshotId).get()
+                        : processor.processChanges(root, changes, scanOptions, lastSnapshotId).get();
+                if (result.getErrorFiles() > 0) {
+                    // Failed files are missing from the snapshot, so look at everything again next time
+                    synchronized (this) {
+                        fullRescan = true;
+                    }
+                }
+                lastSnapshotId = result.getSnapshotId();
+                LOGGER.info(String.format("Committed snapshot %s of %s: %s, %d files (%d unchanged, %d errors)",
+                        lastSnapshotId, root, rescan ? "full rescan" : changes.size() + " changed paths",
+                        result.getProcessedFiles(), result.getUnchangedFiles(), result.getErrorFiles()));
+                return lastSnapshotId;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                restore(changes, rescan);
+                throw new IOException("Interrupted while committing snapshot of " + root, e);
+            } catch (ExecutionException | RuntimeException e) {
+                restore(changes, rescan);
+                throw new IOException("Failed to commit snapshot of " + root, e);
+            }
+        }
+    }
+
+    /**
+     * Gets the most recently committed snapshot.
+     *
+     * @return the snapshot ID, or null if nothing has been committed and there was no parent snapshot
+     */
+    public String getLastSnapshotId() {
+        return lastSnapshotId;
+    }
+
+    /**
+     * Checks whether changes are waiting to be committed.
+     *
+     * @return true if the next commit will record a new snapshot
+     */
+    public synchronized boolean hasPendingChanges() {
+        return fullRescan || !dirtyPaths.isEmpty();
+    }
+
+    /**
+     * Waits until the watcher is closed.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitClose() throws InterruptedException {
+        watchThread.join();
+    }
+
+    /**
+     * Stops watching and stops the processor. Changes not yet committed are not recorded;
+     * call {@link #commit()} first to keep them.
+     *
+     * @throws IOException if the watch service cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            watchService.close();
+            if (watchThread.isAlive() && Thread.currentThread() != watchThread) {
+                watchThread.join();
+            }
+            // Let a running commit finish before the processor stops under it
+            commitExecutor.shutdown();
+            commitExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            processor.stop();
+        }
+    }
+
+    /**
+     * Receives change events and starts a commit at every interval until closed. An interval whose
+     * previous commit is still running is skipped; its changes go into the following commit.
+     */
+    private void run() {
+        long nextCommit = System.nanoTime() + commitInterval.toNanos();
+        Future<?> runningCommit = null;
+        try {
+            while (!closed) {
+                long remaining = nextCommit - System.nanoTime();
+                if (remaining <= 0) {
+                    if (runningCommit == null || runningCommit.isDone()) {
+                        runningCommit = commitExecutor.submit(this::commitInBackground);
+                    }
+                    nextCommit = System.nanoTime() + commitInterval.toNanos();
+                    continue;
+                }
+                WatchKey key = watchService.poll(remaining, TimeUnit.NANOSECONDS);
+                while (key != null) {
+                    handleEvents(key);
+                    key = watchService.poll();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            LOGGER.fine("Watch service closed for " + root);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Commits the changes of one interval, logging a failure; the changes are kept for the next one.
+     */
+    private void commitInBackground() {
+        try {
+            commit();
+        } catch (IOException e) {
+            LOGGER.warning("Snapshot commit failed, retrying at next interval: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records the changes reported by a watch key and re-arms it.
+     *
+     * @param key the signalled watch key
+     */
+    private void handleEvents(WatchKey key) {
+        Path dir = watchedDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                LOGGER.warning("Change events were lost, the next snapshot rescans " + root);
+                requestFullRescan();
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path changed = dir.resolve((Path) event.context());
+            boolean isDirectory = Files.isDirectory(changed, LinkOption.NOFOLLOW_LINKS);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY && isDirectory) {
+                // Entries of the directory changed; they report their own events
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && isDirectory) {
+                try {
+                    registerTree(changed);
+                } catch (IOException e) {
+                    LOGGER.warning("Cannot watch new directory " + changed + ": " + e.getMessage());
+                    requestFullRescan();
+                }
+            }
+            markDirty(changed);
+        }
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    /**
+     * Registers a directory and every directory below it that a scan would visit.
+     *
+     * @param start the top directory
+     * @throws IOException if the tree cannot be walked
+     */
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root) && !scanOptions.isIncludeHiddenFiles() && Files.isHidden(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                LOGGER.warning("Cannot watch " + file + ": " + exc.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Adds a changed path to the dirty set, unless a directory above it is already dirty, and drops
+     * the dirty paths below it.
+     *
+     * @param path the changed path
+     */
+    synchronized void markDirty(Path path) {
+        for (Path current = path; current != null; current = current.getParent()) {
+            if (dirtyPaths.contains(current)) {
+                return;
+            }
+        }
+        if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            // May be a directory, or a deleted one
+            dirtyPaths.removeIf(dirty -> dirty.startsWith(path));
+        }
+        dirtyPaths.add(path);
+    }
+
+    /**
+     * Makes the next commit rescan the whole directory.
+     */
+    private synchronized void requestFullRescan() {
+        fullRescan = true;
+    }
+
+    /**
+     * Puts back the changes of a failed commit.
+     *
+     * @param changes the changed paths that were being committed
+     * @param rescan whether the commit was a full rescan
+     */
+    private void restore(Set<Path> changes, boolean rescan) {
+        for (Path path : changes) {
+            markDirty(path);
+        }
+        if (rescan) {
+            requestFullRescan();
+        }
+    }
+
+    /**
+     * Gets a copy of the paths changed since the last commit.
+     *
+     * @return the dirty paths
+     */
+    synchronized Set<Path> getDirtyPaths() {
+        return new HashSet<>(dirtyPaths);
+    }
+}
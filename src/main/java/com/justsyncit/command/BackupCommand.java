@@ -26,6 +26,7 @@ import com.justsyncit.backup.ConsoleBackupProgressTracker;
 import com.justsyncit.hash.Blake3Service;
 import com.justsyncit.network.NetworkService;
 import com.justsyncit.network.TransportType;
+import com.justsyncit.scanner.ChunkingAlgorithm;
 import com.justsyncit.scanner.SymlinkStrategy;
 import com.justsyncit.storage.ContentStore;
 import com.justsyncit.storage.metadata.MetadataService;
@@ -150,6 +151,68 @@ public class BackupCommand implements Command {
                         return false;
                     }
                     break;
+                case "--chunking":
+                    if (i + 1 < args.length) {
+                        try {
+                            optionsBuilder.chunkingAlgorithm(ChunkingAlgorithm.valueOf(args[i + 1].toUpperCase()));
+                            i++; // Skip the next argument
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Error: Invalid chunking algorithm: " + args[i + 1] + ". Valid algorithms: FIXED, FASTCDC");
+                            return false;
+                        }
+                    } else {
+                        System.err.println("Error: --chunking requires a value (FIXED|FASTCDC)");
+                        return false;
+                    }
+                    break;
+                case "--pack-small-files":
+                    if (i + 1 < args.length) {
+                        try {
+                            int threshold = Integer.parseInt(args[i + 1]);
+                            if (threshold < 0) {
+                                throw new NumberFormatException();
+                            }
+                            optionsBuilder.smallFileThreshold(threshold);
+                            i++; // Skip the next argument
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid small-file threshold: " + args[i + 1]);
+                            return false;
+                        }
+                    } else {
+                        System.err.println("Error: --pack-small-files requires a size in bytes");
+                        return false;
+                    }
+                    break;
+                case "--mmap-threshold":
+                    if (i + 1 < args.length) {
+                        try {
+                            long threshold = Long.parseLong(args[i + 1]);
+                            if (threshold < 0) {
+                                throw new NumberFormatException();
+                            }
+                            optionsBuilder.memoryMappingThreshold(threshold);
+                            i++; // Skip the next argument
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid memory-mapping threshold: " + args[i + 1]);
+                            return false;
+                        }
+                    } else {
+                        System.err.println("Error: --mmap-threshold requires a size in bytes");
+                        return false;
+                    }
+                    break;
+                case "--incremental":
+                    optionsBuilder.incremental(true);
+                    break;
+                case "--parent":
+                    if (i + 1 < args.length) {
+                        optionsBuilder.incremental(true).parentSnapshot(args[i + 1]);
+                        i++; // Skip the next argument
+                    } else {
+                        System.err.println("Error: --parent requires a snapshot ID");
+                        return false;
+                    }
+                    break;
                 case "--remote":
                     optionsBuilder.remoteBackup(true);
                     break;
@@ -220,7 +283,7 @@ public class BackupCommand implements Command {
 
         if (service == null) {
             try {
-                Blake3Service blake3Service = serviceFactory.createBlake3Service();
+                Blake3Service blake3Service = serviceFactory.createRepositoryBlake3Service();
                 contentStore = serviceFactory.createSqliteContentStore(blake3Service);
                 metadataService = serviceFactory.createMetadataService();
                 service = serviceFactory.createBackupService(contentStore, metadataService, blake3Service);
@@ -335,6 +398,14 @@ public class BackupCommand implements Command {
         System.out.println("  --verify-integrity   Verify integrity after backup (default)");
         System.out.println("  --no-verify          Skip integrity verification after backup");
         System.out.println("  --chunk-size SIZE    Set chunk size in bytes (default: 64KB)");
+        System.out.println("  --chunking ALGO      Chunking algorithm (FIXED|FASTCDC, default: FIXED);");
+        System.out.println("                       FASTCDC cuts at content-defined boundaries averaging SIZE");
+        System.out.println("  --pack-small-files SIZE");
+        System.out.println("                       Pack files smaller than SIZE bytes into shared chunks");
+        System.out.println("  --mmap-threshold SIZE");
+        System.out.println("                       Memory-map files of at least SIZE bytes (default: 64MB, 0 disables)");
+        System.out.println("  --incremental        Skip files unchanged since the latest snapshot");
+        System.out.println("  --parent SNAPSHOT    Back up incrementally against the given snapshot");
         System.out.println("  --remote             Enable remote backup to server");
         System.out.println("  --server HOST:PORT   Remote server address for remote backup");
         System.out.println("  --transport TYPE     Transport protocol (TCP|QUIC, default: TCP)");
@@ -344,6 +415,9 @@ public class BackupCommand implements Command {
         System.out.println("  backup /home/user/documents");
         System.out.println("  backup /home/user/documents --include-hidden --chunk-size 1048576");
         System.out.println("  backup /home/user/documents --follow-symlinks --no-verify");
+        System.out.println("  backup /home/user/documents --incremental");
+        System.out.println("  backup /var/dumps --chunking FASTCDC");
+        System.out.println("  backup /home/user/Maildir --pack-small-files 4096");
         System.out.println("  backup /home/user/documents --remote --server 192.168.1.100:8080");
         System.out.println("  backup /home/user/documents --remote --server backup.example.com:8080 --transport QUIC");
     }
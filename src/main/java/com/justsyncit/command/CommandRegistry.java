@@ -43,6 +43,7 @@ public class CommandRegistry {
         register(new com.justsyncit.command.VerifyCommand(null)); // Will be injected properly
         register(new com.justsyncit.command.BackupCommand(null)); // Will be injected properly
         register(new com.justsyncit.command.RestoreCommand(null)); // Will be injected properly
+        register(new com.justsyncit.command.WatchCommand(null)); // Will be injected properly
         
         // Register new snapshot management commands
         register(new SnapshotsCommandGroup());
@@ -27,6 +27,7 @@ import com.justsyncit.hash.Blake3Service;
 import com.justsyncit.network.NetworkService;
 import com.justsyncit.network.TransportType;
 import com.justsyncit.storage.ContentStore;
+import com.justsyncit.storage.VerificationMode;
 import com.justsyncit.storage.metadata.MetadataService;
 
 import java.net.InetSocketAddress;
@@ -131,6 +132,9 @@ public class RestoreCommand implements Command {
                 case "--no-verify":
                     optionsBuilder.verifyIntegrity(false);
                     break;
+                case "--verify":
+                    optionsBuilder.chunkVerification(VerificationMode.FULL);
+                    break;
                 case "--no-preserve-attributes":
                     optionsBuilder.preserveAttributes(false);
                     break;
@@ -222,7 +226,7 @@ public class RestoreCommand implements Command {
 
         if (service == null) {
             try {
-                Blake3Service blake3Service = serviceFactory.createBlake3Service();
+                Blake3Service blake3Service = serviceFactory.createRepositoryBlake3Service();
                 contentStore = serviceFactory.createSqliteContentStore(blake3Service);
                 metadataService = serviceFactory.createMetadataService();
                 service = serviceFactory.createRestoreService(contentStore, metadataService, blake3Service);
@@ -337,6 +341,7 @@ public class RestoreCommand implements Command {
         System.out.println("Options:");
         System.out.println("  --overwrite             Overwrite existing files");
         System.out.println("  --backup-existing       Backup existing files before overwriting");
+        System.out.println("  --verify                Re-hash every chunk and file instead of checking stored checksums");
         System.out.println("  --no-verify             Skip integrity verification after restore");
         System.out.println("  --no-preserve-attributes Don't preserve file attributes");
         System.out.println("  --include PATTERN       Only restore files matching pattern");
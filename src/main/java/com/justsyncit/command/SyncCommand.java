@@ -185,7 +185,7 @@ public class SyncCommand implements Command {
         try {
             netService = networkService != null ? networkService : serviceFactory.createNetworkService();
             metadataService = serviceFactory.createMetadataService();
-            blake3Service = serviceFactory.createBlake3Service();
+            blake3Service = serviceFactory.createRepositoryBlake3Service();
             contentStore = serviceFactory.createSqliteContentStore(blake3Service);
             backupService = serviceFactory.createBackupService(contentStore, metadataService, blake3Service);
             restoreService = serviceFactory.createRestoreService(contentStore, metadataService, blake3Service);
@@ -179,7 +179,7 @@ public class TransferCommand implements Command {
         try {
             netService = networkService != null ? networkService : serviceFactory.createNetworkService();
             metadataService = serviceFactory.createMetadataService();
-            blake3Service = serviceFactory.createBlake3Service();
+            blake3Service = serviceFactory.createRepositoryBlake3Service();
             contentStore = serviceFactory.createSqliteContentStore(blake3Service);
         } catch (Exception e) {
             System.err.println("Error: Failed to initialize services: " + e.getMessage());
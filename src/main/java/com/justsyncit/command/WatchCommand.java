@@ -0,0 +1,255 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.command;
+
+import com.justsyncit.ServiceException;
+import com.justsyncit.ServiceFactory;
+import com.justsyncit.backup.BackupOptions;
+import com.justsyncit.backup.BackupService;
+import com.justsyncit.backup.BackupWatcher;
+import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.scanner.SymlinkStrategy;
+import com.justsyncit.storage.ContentStore;
+import com.justsyncit.storage.metadata.MetadataService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Command for continuously backing up a directory.
+ * Watches the directory for changes and commits a snapshot of them at a fixed interval until stopped.
+ */
+public class WatchCommand implements Command {
+
+    /** Default time between snapshot commits, in seconds. */
+    private static final long DEFAULT_INTERVAL_SECONDS = 60;
+
+    private final BackupService backupService;
+    private final ServiceFactory serviceFactory;
+
+    /**
+     * Creates a watch command with dependency injection.
+     *
+     * @param backupService backup service (may be null for lazy initialization)
+     */
+    public WatchCommand(BackupService backupService) {
+        this.backupService = backupService;
+        this.serviceFactory = new ServiceFactory();
+    }
+
+    @Override
+    public String getName() {
+        return "watch";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Continuously back up a directory as it changes";
+    }
+
+    @Override
+    public String getUsage() {
+        return "watch <source-dir> [options]";
+    }
+
+    @Override
+    public boolean execute(String[] args, CommandContext context) {
+
+        // Handle help option first
+        if (args.length == 1 && args[0].equals("--help")) {
+            displayHelp();
+            return true;
+        }
+
+        if (args.length == 0) {
+            System.err.println("Error: Source directory is required");
+            System.err.println(getUsage());
+            System.err.println("Use 'help watch' for more information");
+            return false;
+        }
+
+        String sourceDir = args[0];
+        Path sourcePath = Paths.get(sourceDir);
+
+        if (!Files.isDirectory(sourcePath)) {
+            System.err.println("Error: Source path is not a directory: " + sourceDir);
+            return false;
+        }
+
+        // Parse options; watching always compares against the latest snapshot
+        BackupOptions.Builder optionsBuilder = new BackupOptions.Builder().incremental(true);
+        long intervalSeconds = DEFAULT_INTERVAL_SECONDS;
+
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+
+            switch (arg) {
+                case "--follow-symlinks":
+                    optionsBuilder.symlinkStrategy(SymlinkStrategy.FOLLOW);
+                    break;
+                case "--skip-symlinks":
+                    optionsBuilder.symlinkStrategy(SymlinkStrategy.SKIP);
+                    break;
+                case "--include-hidden":
+                    optionsBuilder.includeHiddenFiles(true);
+                    break;
+                case "--interval":
+                    if (i + 1 < args.length) {
+                        try {
+                            intervalSeconds = Long.parseLong(args[i + 1]);
+                            i++; // Skip the next argument
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid interval: " + args[i + 1]);
+                            return false;
+                        }
+                        if (intervalSeconds <= 0) {
+                            System.err.println("Error: Interval must be positive");
+                            return false;
+                        }
+                    } else {
+                        System.err.println("Error: --interval requires a value in seconds");
+                        return false;
+                    }
+                    break;
+                case "--parent":
+                    if (i + 1 < args.length) {
+                        optionsBuilder.parentSnapshot(args[i + 1]);
+                        i++; // Skip the next argument
+                    } else {
+                        System.err.println("Error: --parent requires a snapshot ID");
+                        return false;
+                    }
+                    break;
+                case "--help":
+                    displayHelp();
+                    return true;
+                default:
+                    if (arg.startsWith("--")) {
+                        System.err.println("Error: Unknown option: " + arg);
+                        return false;
+                    }
+                    break;
+            }
+        }
+
+        BackupOptions options = optionsBuilder.build();
+
+        // Create services if not provided
+        BackupService service = backupService;
+        ContentStore contentStore = null;
+        MetadataService metadataService = null;
+
+        if (service == null) {
+            try {
+                Blake3Service blake3Service = serviceFactory.createRepositoryBlake3Service();
+                contentStore = serviceFactory.createSqliteContentStore(blake3Service);
+                metadataService = serviceFactory.createMetadataService();
+                service = serviceFactory.createBackupService(contentStore, metadataService, blake3Service);
+            } catch (ServiceException e) {
+                System.err.println("Error: Failed to initialize backup service: " + e.getMessage());
+                return false;
+            }
+        }
+
+        try (BackupWatcher watcher = service.watch(sourcePath, options, Duration.ofSeconds(intervalSeconds))) {
+            System.out.println("Taking initial snapshot of: " + sourceDir);
+            String snapshotId = watcher.start();
+            System.out.println("Initial snapshot: " + snapshotId);
+            System.out.println("Watching for changes, committing every " + intervalSeconds + "s (Ctrl+C to stop)");
+
+            // Record the last changes when interrupted; the watcher itself is closed by the try block
+            Thread shutdownHook = new Thread(() -> {
+                try {
+                    String lastSnapshotId = watcher.commit();
+                    System.out.println("\nLast snapshot: " + lastSnapshotId);
+                } catch (Exception e) {
+                    System.err.println("\nFailed to commit last changes: " + e.getMessage());
+                }
+            }, "WatchCommand-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+            try {
+                watcher.awaitClose();
+            } finally {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                } catch (IllegalStateException e) {
+                    // Already shutting down, so the hook is running
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            System.err.println("\nWatch failed: " + e.getMessage());
+            if (e.getCause() != null) {
+                System.err.println("Cause: " + e.getCause().getMessage());
+            }
+            return false;
+        } finally {
+            // Clean up resources if we created them
+            if (contentStore != null) {
+                try {
+                    contentStore.close();
+                } catch (Exception e) {
+                    System.err.println("Warning: Failed to close content store: " + e.getMessage());
+                }
+            }
+            if (metadataService != null) {
+                try {
+                    metadataService.close();
+                } catch (Exception e) {
+                    System.err.println("Warning: Failed to close metadata service: " + e.getMessage());
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Displays detailed help information for the watch command.
+     */
+    private void displayHelp() {
+        System.out.println("Watch Command Help");
+        System.out.println("==================");
+        System.out.println();
+        System.out.println("Usage: " + getUsage());
+        System.out.println();
+        System.out.println("Description:");
+        System.out.println("  " + getDescription());
+        System.out.println("  Takes an incremental snapshot, then records a new snapshot of just the");
+        System.out.println("  changed files at every interval. Lost change events trigger a full rescan.");
+        System.out.println();
+        System.out.println("Arguments:");
+        System.out.println("  source-dir    Path to the directory to watch");
+        System.out.println();
+        System.out.println("Options:");
+        System.out.println("  --interval SECONDS   Time between snapshots (default: " + DEFAULT_INTERVAL_SECONDS + ")");
+        System.out.println("  --follow-symlinks    Follow symbolic links instead of preserving them");
+        System.out.println("  --skip-symlinks      Skip symbolic links entirely");
+        System.out.println("  --include-hidden     Include hidden files and directories");
+        System.out.println("  --parent SNAPSHOT    Compare the initial snapshot against the given snapshot");
+        System.out.println("  --help               Show this help message");
+        System.out.println();
+        System.out.println("Examples:");
+        System.out.println("  watch /home/user/documents");
+        System.out.println("  watch /home/user/documents --interval 10 --include-hidden");
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.concurrent;
+
+/**
+ * How threads that spend most of their time blocked on I/O are provided.
+ */
+public enum ExecutionMode {
+
+    /** Bounded pools of platform threads. */
+    PLATFORM,
+
+    /**
+     * One virtual thread per task, so that thousands of blocking reads, writes or socket calls
+     * can be outstanding without as many platform threads. Falls back to {@link #PLATFORM}
+     * on runtimes without virtual threads.
+     */
+    VIRTUAL
+}
@@ -0,0 +1,260 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors for blocking I/O work (file reads, chunk writes, database calls, socket
+ * handling) in either {@link ExecutionMode}, and bounded platform pools for CPU-bound work such as
+ * hashing, which should not occupy the carrier threads that virtual threads run on.
+ *
+ * <p>The process-wide default mode is read from the {@value #MODE_PROPERTY} system property
+ * ({@code platform} or {@code virtual}). Virtual threads are created reflectively, so the code also
+ * runs on runtimes without them; there every mode resolves to {@link ExecutionMode#PLATFORM}.</p>
+ */
+public final class IoExecutors {
+
+    /** Logger instance. */
+    private static final Logger logger = LoggerFactory.getLogger(IoExecutors.class);
+
+    /** System property selecting the default execution mode. */
+    public static final String MODE_PROPERTY = "justsyncit.threads";
+
+    /** Private constructor to prevent instantiation. */
+    private IoExecutors() {
+        // Utility class
+    }
+
+    /**
+     * Checks whether this runtime can create virtual threads.
+     *
+     * @return true if virtual threads are available
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreads.SUPPORTED;
+    }
+
+    /**
+     * Gets the execution mode selected for this process by the {@value #MODE_PROPERTY} system property.
+     *
+     * @return the default execution mode, already resolved for this runtime
+     */
+    public static ExecutionMode defaultMode() {
+        return DefaultModeHolder.MODE;
+    }
+
+    /**
+     * Resolves an execution mode for this runtime.
+     *
+     * @param mode the requested execution mode
+     * @return the mode, or {@link ExecutionMode#PLATFORM} if virtual threads are unavailable
+     * @throws IllegalArgumentException if mode is null
+     */
+    public static ExecutionMode resolve(ExecutionMode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Execution mode cannot be null");
+        }
+        return mode == ExecutionMode.VIRTUAL && !VirtualThreads.SUPPORTED ? ExecutionMode.PLATFORM : mode;
+    }
+
+    /**
+     * Creates a factory for daemon threads named {@code <name>-<n>}.
+     *
+     * @param name the thread name prefix
+     * @param mode whether to create virtual or platform threads
+     * @return a new thread factory
+     * @throws IllegalArgumentException if name or mode is null
+     */
+    public static ThreadFactory threadFactory(String name, ExecutionMode mode) {
+        if (name == null) {
+            throw new IllegalArgumentException("Name cannot be null");
+        }
+        if (resolve(mode) == ExecutionMode.VIRTUAL) {
+            return VirtualThreads.factory(name + "-");
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates an executor for blocking work: a fixed pool of platform threads, or one virtual
+     * thread per task. Callers that submit without bound must bound their own concurrency in
+     * virtual mode.
+     *
+     * @param name the thread name prefix
+     * @param platformThreads the pool size in platform mode
+     * @param mode the execution mode
+     * @return a new executor
+     * @throws IllegalArgumentException if name or mode is null, or platformThreads is not positive
+     */
+    public static ExecutorService newExecutor(String name, int platformThreads, ExecutionMode mode) {
+        if (platformThreads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        ThreadFactory factory = threadFactory(name, mode);
+        if (resolve(mode) == ExecutionMode.VIRTUAL) {
+            return VirtualThreads.newThreadPerTaskExecutor(factory);
+        }
+        return Executors.newFixedThreadPool(platformThreads, factory);
+    }
+
+    /**
+     * Creates an executor for blocking work that grows with demand: a cached pool of platform
+     * threads, or one virtual thread per task.
+     *
+     * @param name the thread name prefix
+     * @param mode the execution mode
+     * @return a new executor
+     * @throws IllegalArgumentException if name or mode is null
+     */
+    public static ExecutorService newCachedExecutor(String name, ExecutionMode mode) {
+        ThreadFactory factory = threadFactory(name, mode);
+        if (resolve(mode) == ExecutionMode.VIRTUAL) {
+            return VirtualThreads.newThreadPerTaskExecutor(factory);
+        }
+        return Executors.newCachedThreadPool(factory);
+    }
+
+    /**
+     * Creates a bounded pool of platform threads, one per available processor, for CPU-bound work.
+     *
+     * @param name the thread name prefix
+     * @return a new executor
+     * @throws IllegalArgumentException if name is null
+     */
+    public static ExecutorService newCpuExecutor(String name) {
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                threadFactory(name, ExecutionMode.PLATFORM));
+    }
+
+    /**
+     * Parses the {@value #MODE_PROPERTY} system property.
+     */
+    private static ExecutionMode modeFromProperty() {
+        String value = System.getProperty(MODE_PROPERTY);
+        if (value == null || value.isBlank()) {
+            return ExecutionMode.PLATFORM;
+        }
+        ExecutionMode mode;
+        try {
+            mode = ExecutionMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown -D{}={}, using platform threads", MODE_PROPERTY, value);
+            return ExecutionMode.PLATFORM;
+        }
+        if (mode == ExecutionMode.VIRTUAL && !VirtualThreads.SUPPORTED) {
+            logger.warn("Virtual threads are not available on Java {}, using platform threads",
+                    Runtime.version().feature());
+            return ExecutionMode.PLATFORM;
+        }
+        logger.info("Running blocking I/O on {} threads", mode.name().toLowerCase(Locale.ROOT));
+        return mode;
+    }
+
+    /**
+     * Lazily holds the process-wide default mode.
+     */
+    private static final class DefaultModeHolder {
+        /** The mode selected at first use. */
+        static final ExecutionMode MODE = modeFromProperty();
+    }
+
+    /**
+     * Reflective access to the virtual thread API, which the compiled source level may not include.
+     */
+    private static final class VirtualThreads {
+        /** {@code Thread.ofVirtual()}, or null if unavailable. */
+        private static final Method OF_VIRTUAL;
+        /** {@code Thread.Builder.name(String, long)}. */
+        private static final Method NAME;
+        /** {@code Thread.Builder.factory()}. */
+        private static final Method FACTORY;
+        /** {@code Executors.newThreadPerTaskExecutor(ThreadFactory)}. */
+        private static final Method THREAD_PER_TASK;
+        /** Whether virtual threads can actually be created. */
+        static final boolean SUPPORTED;
+
+        static {
+            Method ofVirtual = null;
+            Method name = null;
+            Method factory = null;
+            Method threadPerTask = null;
+            boolean supported = false;
+            try {
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                name = builder.getMethod("name", String.class, long.class);
+                factory = builder.getMethod("factory");
+                threadPerTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                // Preview releases expose the methods but refuse to create threads
+                ofVirtual.invoke(null);
+                supported = true;
+            } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+                logger.debug("Virtual threads unavailable: {}", e.toString());
+            }
+            OF_VIRTUAL = ofVirtual;
+            NAME = name;
+            FACTORY = factory;
+            THREAD_PER_TASK = threadPerTask;
+            SUPPORTED = supported;
+        }
+
+        /** Private constructor to prevent instantiation. */
+        private VirtualThreads() {
+            // Utility class
+        }
+
+        /**
+         * Creates a factory for virtual threads named with the prefix and a counter starting at 1.
+         */
+        static ThreadFactory factory(String prefix) {
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 1L);
+                return (ThreadFactory) FACTORY.invoke(builder);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Failed to create virtual thread factory", e);
+            }
+        }
+
+        /**
+         * Creates an executor that starts a new thread from the factory for each task.
+         */
+        static ExecutorService newThreadPerTaskExecutor(ThreadFactory factory) {
+            try {
+                return (ExecutorService) THREAD_PER_TASK.invoke(null, factory);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Failed to create virtual thread executor", e);
+            }
+        }
+    }
+}
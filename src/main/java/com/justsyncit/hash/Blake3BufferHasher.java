@@ -21,11 +21,14 @@ package com.justsyncit.hash;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.HexFormat;
+import java.util.List;
 
 /**
  * Buffer hashing implementation using BLAKE3 algorithm.
  * Follows Single Responsibility Principle by focusing only on buffer operations.
+ * Each thread hashes with its own algorithm instance, so concurrent callers never contend.
  */
 public class Blake3BufferHasher implements BufferHasher {
 
@@ -35,16 +38,16 @@ public class Blake3BufferHasher implements BufferHasher {
     /** Hex format for hash string representation. */
     private static final HexFormat HEX_FORMAT = HexFormat.of();
 
-    /** Hash algorithm instance. */
-    private final HashAlgorithm hashAlgorithm;
+    /** Per-thread hash algorithm instances. */
+    private final ThreadLocalHashAlgorithm hashAlgorithms;
 
     /**
      * Creates a new Blake3BufferHasher with the provided hash algorithm.
      *
-     * @param hashAlgorithm the hash algorithm to use
+     * @param hashAlgorithm the prototype of the hash algorithm to use
      */
     public Blake3BufferHasher(HashAlgorithm hashAlgorithm) {
-        this.hashAlgorithm = hashAlgorithm;
+        this.hashAlgorithms = ThreadLocalHashAlgorithm.create(hashAlgorithm);
     }
 
     @Override
@@ -56,15 +59,81 @@ public class Blake3BufferHasher implements BufferHasher {
         logger.trace("Hashing buffer of {} bytes", data.length);
 
         try {
+            HashAlgorithm hashAlgorithm = hashAlgorithms.get();
             hashAlgorithm.update(data);
             byte[] hash = hashAlgorithm.digest();
             String result = HEX_FORMAT.formatHex(hash);
             logger.trace("Generated hash: {}", result);
-            hashAlgorithm.reset(); // Reset for next use
             return result;
         } catch (Exception e) {
             logger.error("Error hashing buffer", e);
             throw new HashingException("Failed to hash buffer", e);
         }
     }
+
+    @Override
+    public String hashBuffer(ByteBuffer data) throws HashingException {
+        String result = HEX_FORMAT.formatHex(digestBuffer(data));
+        logger.trace("Generated hash: {}", result);
+        return result;
+    }
+
+    @Override
+    public ChunkId hashChunkId(ByteBuffer data) throws HashingException {
+        return ChunkId.of(digestBuffer(data));
+    }
+
+    @Override
+    public ChunkId[] hashAll(List<ByteBuffer> inputs) throws HashingException {
+        if (inputs == null) {
+            throw new IllegalArgumentException("Inputs cannot be null");
+        }
+        for (ByteBuffer input : inputs) {
+            if (input == null) {
+                throw new IllegalArgumentException("Data cannot be null");
+            }
+        }
+
+        logger.trace("Hashing batch of {} buffers", inputs.size());
+
+        try {
+            HashAlgorithm hashAlgorithm = hashAlgorithms.get();
+            if (hashAlgorithm instanceof Blake3HashAlgorithm) {
+                return ((Blake3HashAlgorithm) hashAlgorithm).hashAll(inputs);
+            }
+            ChunkId[] ids = new ChunkId[inputs.size()];
+            for (int i = 0; i < ids.length; i++) {
+                hashAlgorithm.update(inputs.get(i));
+                ids[i] = ChunkId.of(hashAlgorithm.digest());
+            }
+            return ids;
+        } catch (Exception e) {
+            logger.error("Error hashing buffer batch", e);
+            throw new HashingException("Failed to hash buffer batch", e);
+        }
+    }
+
+    /**
+     * Computes the raw digest of the remaining bytes of a buffer.
+     *
+     * @param data the buffer to hash
+     * @return the digest bytes
+     * @throws HashingException if hashing fails
+     */
+    private byte[] digestBuffer(ByteBuffer data) throws HashingException {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+
+        logger.trace("Hashing {} buffer of {} bytes", data.isDirect() ? "direct" : "heap", data.remaining());
+
+        try {
+            HashAlgorithm hashAlgorithm = hashAlgorithms.get();
+            hashAlgorithm.update(data);
+            return hashAlgorithm.digest();
+        } catch (Exception e) {
+            logger.error("Error hashing buffer", e);
+            throw new HashingException("Failed to hash buffer", e);
+        }
+    }
 }
\ No newline at end of file
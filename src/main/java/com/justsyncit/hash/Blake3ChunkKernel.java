@@ -0,0 +1,70 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses several BLAKE3 chunks at once, one per lane: either consecutive full chunks
+ * of one input, or the single chunks of independent small inputs.
+ * Implementations must be stateless so that one instance can be shared by all hashers.
+ */
+interface Blake3ChunkKernel {
+
+    /**
+     * Gets the number of chunks processed per call.
+     *
+     * @return the number of lanes
+     */
+    int getLanes();
+
+    /**
+     * Gets the SIMD instruction set this kernel is tuned for.
+     *
+     * @return the instruction set name (e.g., "AVX2")
+     */
+    String getInstructionSet();
+
+    /**
+     * Computes the chaining values of {@link #getLanes()} consecutive 1 KiB chunks.
+     * Exactly one of {@code array} and {@code buffer} is the data source; buffers are
+     * read with absolute indexing.
+     *
+     * @param array source array, or null when reading from {@code buffer}
+     * @param buffer source buffer, or null when reading from {@code array}
+     * @param offset offset of the first chunk in the source
+     * @param chunkCounter index of the first chunk in the input
+     * @param scratch scratch space of at least {@code 27 * lanes} words
+     * @param cvs destination for the chaining values, 8 words per lane
+     */
+    void compressChunks(byte[] array, ByteBuffer buffer, int offset, long chunkCounter, int[] scratch, int[] cvs);
+
+    /**
+     * Computes the root hashes of up to {@link #getLanes()} independent inputs that each fit
+     * in a single chunk and span the same number of blocks. Each input is read with absolute
+     * indexing from its position to its limit; buffer positions are left unchanged.
+     *
+     * @param inputs the inputs, of which the first {@code count} are hashed
+     * @param count number of inputs, at most the number of lanes
+     * @param blocks number of blocks in every input (1 to 16; an empty input has one block)
+     * @param scratch scratch space of at least {@code 27 * lanes} words
+     * @param hashes destination for the root hashes, 8 words per input
+     */
+    void hashRootChunks(ByteBuffer[] inputs, int count, int blocks, int[] scratch, int[] hashes);
+}
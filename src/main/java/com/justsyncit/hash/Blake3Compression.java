@@ -0,0 +1,264 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.hash;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Scalar BLAKE3 compression function and shared constants.
+ * Package-private building block used by {@link Blake3HashAlgorithm}.
+ */
+final class Blake3Compression {
+
+    /** Output length of the default BLAKE3 hash in bytes. */
+    static final int OUT_LEN = 32;
+    /** Size of a compression block in bytes. */
+    static final int BLOCK_LEN = 64;
+    /** Size of a leaf chunk in bytes. */
+    static final int CHUNK_LEN = 1024;
+
+    /** Flag set on the first block of a chunk. */
+    static final int CHUNK_START = 1;
+    /** Flag set on the last block of a chunk. */
+    static final int CHUNK_END = 1 << 1;
+    /** Flag set on parent node compressions. */
+    static final int PARENT = 1 << 2;
+    /** Flag set on the root compression. */
+    static final int ROOT = 1 << 3;
+
+    /** Initialization vector (same as SHA-256). */
+    static final int[] IV = {
+        0x6A09E667, 0xBB67AE85, 0x3C6EF372, 0xA54FF53A,
+        0x510E527F, 0x9B05688C, 0x1F83D9AB, 0x5BE0CD19
+    };
+
+    /** Message word schedule for each of the seven rounds. */
+    static final int[][] SCHEDULE = {
+        {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15},
+        {2, 6, 3, 10, 7, 0, 4, 13, 1, 11, 12, 5, 9, 14, 15, 8},
+        {3, 4, 10, 12, 13, 2, 7, 14, 6, 5, 9, 0, 11, 15, 8, 1},
+        {10, 7, 12, 9, 14, 3, 13, 15, 4, 0, 11, 2, 5, 8, 1, 6},
+        {12, 13, 9, 11, 15, 10, 14, 8, 7, 2, 5, 3, 0, 1, 6, 4},
+        {9, 14, 11, 5, 8, 12, 15, 1, 13, 3, 0, 10, 2, 6, 4, 7},
+        {11, 15, 5, 0, 1, 9, 8, 6, 14, 10, 2, 12, 3, 4, 7, 13}
+    };
+
+    /** Little-endian int view over byte arrays. */
+    private static final VarHandle INT_LE =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** Little-endian int view over byte buffers, including direct ones. */
+    private static final VarHandle BUFFER_INT_LE =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** Private constructor to prevent instantiation. */
+    private Blake3Compression() {
+        // Utility class
+    }
+
+    /**
+     * Reads one little-endian word from a byte array.
+     *
+     * @param src source array
+     * @param offset offset of the word
+     * @return the word
+     */
+    static int loadWord(byte[] src, int offset) {
+        return (int) INT_LE.get(src, offset);
+    }
+
+    /**
+     * Reads one little-endian word from a buffer using absolute indexing.
+     *
+     * @param src source buffer (heap or direct)
+     * @param index absolute index of the word
+     * @return the word
+     */
+    static int loadWord(ByteBuffer src, int index) {
+        return (int) BUFFER_INT_LE.get(src, index);
+    }
+
+    /**
+     * Loads a full 64-byte block as sixteen little-endian message words.
+     *
+     * @param src source array
+     * @param offset offset of the block in the source array
+     * @param words destination for the sixteen message words
+     */
+    static void loadBlockWords(byte[] src, int offset, int[] words) {
+        for (int i = 0; i < 16; i++) {
+            words[i] = (int) INT_LE.get(src, offset + (i << 2));
+        }
+    }
+
+    /**
+     * Loads a full 64-byte block from a buffer as sixteen little-endian message words.
+     * Uses absolute indexing, so the buffer's position is left untouched.
+     *
+     * @param src source buffer (heap or direct)
+     * @param index absolute index of the block in the buffer
+     * @param words destination for the sixteen message words
+     */
+    static void loadBlockWords(ByteBuffer src, int index, int[] words) {
+        for (int i = 0; i < 16; i++) {
+            words[i] = (int) BUFFER_INT_LE.get(src, index + (i << 2));
+        }
+    }
+
+    /**
+     * Writes eight words as 32 little-endian bytes.
+     *
+     * @param words the words to write
+     * @param dest destination array
+     * @param offset offset in the destination array
+     */
+    static void storeWords(int[] words, byte[] dest, int offset) {
+        for (int i = 0; i < 8; i++) {
+            INT_LE.set(dest, offset + (i << 2), words[i]);
+        }
+    }
+
+    /**
+     * Compresses one block and writes the resulting chaining value (the first
+     * eight output words) into {@code out}. {@code out} may alias {@code cv}.
+     *
+     * @param cv input chaining value (8 words)
+     * @param m message words (16 words)
+     * @param counter chunk counter, or 0 for parent and root nodes
+     * @param blockLen number of meaningful bytes in the block
+     * @param flags domain separation flags
+     * @param out destination for the 8-word chaining value
+     */
+    static void compress(int[] cv, int[] m, long counter, int blockLen, int flags, int[] out) {
+        int v0 = cv[0];
+        int v1 = cv[1];
+        int v2 = cv[2];
+        int v3 = cv[3];
+        int v4 = cv[4];
+        int v5 = cv[5];
+        int v6 = cv[6];
+        int v7 = cv[7];
+        int v8 = IV[0];
+        int v9 = IV[1];
+        int v10 = IV[2];
+        int v11 = IV[3];
+        int v12 = (int) counter;
+        int v13 = (int) (counter >>> 32);
+        int v14 = blockLen;
+        int v15 = flags;
+
+        for (int r = 0; r < 7; r++) {
+            int[] s = SCHEDULE[r];
+            // Mix the columns
+            v0 += v4 + m[s[0]];
+            v12 = Integer.rotateRight(v12 ^ v0, 16);
+            v8 += v12;
+            v4 = Integer.rotateRight(v4 ^ v8, 12);
+            v0 += v4 + m[s[1]];
+            v12 = Integer.rotateRight(v12 ^ v0, 8);
+            v8 += v12;
+            v4 = Integer.rotateRight(v4 ^ v8, 7);
+            v1 += v5 + m[s[2]];
+            v13 = Integer.rotateRight(v13 ^ v1, 16);
+            v9 += v13;
+            v5 = Integer.rotateRight(v5 ^ v9, 12);
+            v1 += v5 + m[s[3]];
+            v13 = Integer.rotateRight(v13 ^ v1, 8);
+            v9 += v13;
+            v5 = Integer.rotateRight(v5 ^ v9, 7);
+            v2 += v6 + m[s[4]];
+            v14 = Integer.rotateRight(v14 ^ v2, 16);
+            v10 += v14;
+            v6 = Integer.rotateRight(v6 ^ v10, 12);
+            v2 += v6 + m[s[5]];
+            v14 = Integer.rotateRight(v14 ^ v2, 8);
+            v10 += v14;
+            v6 = Integer.rotateRight(v6 ^ v10, 7);
+            v3 += v7 + m[s[6]];
+            v15 = Integer.rotateRight(v15 ^ v3, 16);
+            v11 += v15;
+            v7 = Integer.rotateRight(v7 ^ v11, 12);
+            v3 += v7 + m[s[7]];
+            v15 = Integer.rotateRight(v15 ^ v3, 8);
+            v11 += v15;
+            v7 = Integer.rotateRight(v7 ^ v11, 7);
+            // Mix the diagonals
+            v0 += v5 + m[s[8]];
+            v15 = Integer.rotateRight(v15 ^ v0, 16);
+            v10 += v15;
+            v5 = Integer.rotateRight(v5 ^ v10, 12);
+            v0 += v5 + m[s[9]];
+            v15 = Integer.rotateRight(v15 ^ v0, 8);
+            v10 += v15;
+            v5 = Integer.rotateRight(v5 ^ v10, 7);
+            v1 += v6 + m[s[10]];
+            v12 = Integer.rotateRight(v12 ^ v1, 16);
+            v11 += v12;
+            v6 = Integer.rotateRight(v6 ^ v11, 12);
+            v1 += v6 + m[s[11]];
+            v12 = Integer.rotateRight(v12 ^ v1, 8);
+            v11 += v12;
+            v6 = Integer.rotateRight(v6 ^ v11, 7);
+            v2 += v7 + m[s[12]];
+            v13 = Integer.rotateRight(v13 ^ v2, 16);
+            v8 += v13;
+            v7 = Integer.rotateRight(v7 ^ v8, 12);
+            v2 += v7 + m[s[13]];
+            v13 = Integer.rotateRight(v13 ^ v2, 8);
+            v8 += v13;
+            v7 = Integer.rotateRight(v7 ^ v8, 7);
+            v3 += v4 + m[s[14]];
+            v14 = Integer.rotateRight(v14 ^ v3, 16);
+            v9 += v14;
+            v4 = Integer.rotateRight(v4 ^ v9, 12);
+            v3 += v4 + m[s[15]];
+            v14 = Integer.rotateRight(v14 ^ v3, 8);
+            v9 += v14;
+            v4 = Integer.rotateRight(v4 ^ v9, 7);
+        }
+
+        out[0] = v0 ^ v8;
+        out[1] = v1 ^ v9;
+        out[2] = v2 ^ v10;
+        out[3] = v3 ^ v11;
+        out[4] = v4 ^ v12;
+        out[5] = v5 ^ v13;
+        out[6] = v6 ^ v14;
+        out[7] = v7 ^ v15;
+    }
+
+    /**
+     * Computes the chaining value of a parent node from its two children.
+     *
+     * @param left left child chaining value
+     * @param right right child chaining value
+     * @param key key words
+     * @param flags base flags (PARENT is added automatically)
+     * @param block scratch space for the 16 message words
+     * @param out destination for the parent chaining value (may alias left or right)
+     */
+    static void parentChainingValue(int[] left, int[] right, int[] key, int flags, int[] block, int[] out) {
+        System.arraycopy(left, 0, block, 0, 8);
+        System.arraycopy(right, 0, block, 8, 8);
+        compress(key, block, 0, BLOCK_LEN, flags | PARENT, out);
+    }
+}
@@ -23,12 +23,24 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HexFormat;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * File hashing implementation using BLAKE3 service.
  * Follows Single Responsibility Principle by focusing only on file operations.
+ *
+ * <p>When created with a BLAKE3 prototype algorithm, files of at least
+ * {@link #PARALLEL_THRESHOLD} bytes are hashed in parallel: the BLAKE3 tree is split into
+ * independent subtrees that are read positionally and hashed on a ForkJoin pool, and their
+ * chaining values are merged into the root. The result is identical to sequential hashing.</p>
  */
 public class Blake3FileHasher implements FileHasher {
 
@@ -38,12 +50,41 @@ public class Blake3FileHasher implements FileHasher {
     /** Buffer size for streaming operations (8KB). */
     private static final int BUFFER_SIZE = 8192; // 8KB buffer for streaming
 
+    /** Minimum file size hashed in parallel (32 MiB). */
+    public static final long PARALLEL_THRESHOLD = 32L * 1024 * 1024;
+
+    /** Number of BLAKE3 chunks hashed sequentially by one parallel task (1 MiB); a power of two. */
+    private static final long LEAF_CHUNKS = 1024;
+
+    /** Read buffer size of a parallel task, matching the leaf size. */
+    private static final int LEAF_BUFFER_SIZE = (int) (LEAF_CHUNKS * Blake3Compression.CHUNK_LEN);
+
+    /** Hex format for hash string representation. */
+    private static final HexFormat HEX_FORMAT = HexFormat.of();
+
+    /**
+     * Per-thread read buffers of the parallel tasks, shared by all hashers so that each pool
+     * thread holds at most one buffer.
+     */
+    private static final ThreadLocal<ByteBuffer> LEAF_BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(LEAF_BUFFER_SIZE));
+
     /** Stream hasher instance. */
     private final StreamHasher streamHasher;
 
     /** Buffer hasher instance. */
     private final BufferHasher bufferHasher;
 
+    /** BLAKE3 prototype used for parallel hashing, or null to always hash sequentially. */
+    private final Blake3HashAlgorithm treePrototype;
+
+    /** Pool running the parallel subtree tasks. */
+    private final ForkJoinPool pool;
+
+    /** Minimum file size hashed in parallel. */
+    private final long parallelThreshold;
+
+
     /**
      * Creates a new Blake3FileHasher with the provided dependencies.
      *
@@ -51,8 +92,37 @@ public class Blake3FileHasher implements FileHasher {
      * @param bufferHasher the buffer hashing service
      */
     public Blake3FileHasher(StreamHasher streamHasher, BufferHasher bufferHasher) {
+        this(streamHasher, bufferHasher, null);
+    }
+
+    /**
+     * Creates a new Blake3FileHasher that hashes very large files in parallel when the
+     * prototype algorithm is BLAKE3. Other algorithms are always hashed sequentially.
+     *
+     * @param streamHasher the stream hashing service
+     * @param bufferHasher the buffer hashing service
+     * @param prototype the prototype hash algorithm used by the hashers, may be null
+     */
+    public Blake3FileHasher(StreamHasher streamHasher, BufferHasher bufferHasher, HashAlgorithm prototype) {
+        this(streamHasher, bufferHasher, prototype, ForkJoinPool.commonPool(), PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Creates a new Blake3FileHasher with an explicit pool and parallel threshold.
+     *
+     * @param streamHasher the stream hashing service
+     * @param bufferHasher the buffer hashing service
+     * @param prototype the prototype hash algorithm used by the hashers, may be null
+     * @param pool the pool running the parallel subtree tasks
+     * @param parallelThreshold minimum file size hashed in parallel
+     */
+    Blake3FileHasher(StreamHasher streamHasher, BufferHasher bufferHasher, HashAlgorithm prototype,
+            ForkJoinPool pool, long parallelThreshold) {
         this.streamHasher = streamHasher;
         this.bufferHasher = bufferHasher;
+        this.treePrototype = prototype instanceof Blake3HashAlgorithm ? (Blake3HashAlgorithm) prototype : null;
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
     }
 
     @Override
@@ -84,6 +154,12 @@ public class Blake3FileHasher implements FileHasher {
             }
         }
 
+        // Very large files: hash independent subtrees of the BLAKE3 tree concurrently
+        if (treePrototype != null && fileSize >= parallelThreshold && fileSize > Blake3Compression.CHUNK_LEN
+                && pool.getParallelism() > 1) {
+            return hashFileParallel(filePath, fileSize);
+        }
+
         // For large files, use streaming approach
         try (InputStream inputStream = Files.newInputStream(filePath)) {
             try {
@@ -93,4 +169,111 @@ public class Blake3FileHasher implements FileHasher {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Hashes a file by splitting the BLAKE3 tree into subtrees hashed on the pool.
+     *
+     * @param filePath the file to hash
+     * @param fileSize the file size in bytes
+     * @return hex-encoded hash of the file
+     * @throws IOException if the file cannot be read or changes size while being hashed
+     */
+    private String hashFileParallel(Path filePath, long fileSize) throws IOException {
+        logger.debug("Hashing {} ({} bytes) in parallel on {} threads", filePath, fileSize, pool.getParallelism());
+        long chunks = (fileSize + Blake3Compression.CHUNK_LEN - 1) / Blake3Compression.CHUNK_LEN;
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            int[] rootCv = pool.invoke(new SubtreeTask(channel, fileSize, 0, chunks, Blake3Compression.ROOT));
+            byte[] hash = new byte[Blake3Compression.OUT_LEN];
+            Blake3Compression.storeWords(rootCv, hash, 0);
+            return HEX_FORMAT.formatHex(hash);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Computes the chaining value of one subtree of the BLAKE3 tree, forking its halves.
+     * The left half always holds the largest power of two of chunks smaller than the subtree.
+     */
+    private final class SubtreeTask extends RecursiveTask<int[]> {
+
+        /** Serialization version. */
+        private static final long serialVersionUID = 1L;
+
+        /** Channel of the file being hashed. */
+        private final transient FileChannel channel;
+        /** Size of the file being hashed. */
+        private final long fileSize;
+        /** Index of the first chunk of the subtree. */
+        private final long firstChunk;
+        /** Number of chunks in the subtree. */
+        private final long chunkCount;
+        /** ROOT for the root of the tree, 0 otherwise. */
+        private final int rootFlag;
+
+        /**
+         * Creates a new SubtreeTask.
+         *
+         * @param channel channel of the file being hashed
+         * @param fileSize size of the file being hashed
+         * @param firstChunk index of the first chunk of the subtree
+         * @param chunkCount number of chunks in the subtree
+         * @param rootFlag ROOT for the root of the tree, 0 otherwise
+         */
+        SubtreeTask(FileChannel channel, long fileSize, long firstChunk, long chunkCount, int rootFlag) {
+            this.channel = channel;
+            this.fileSize = fileSize;
+            this.firstChunk = firstChunk;
+            this.chunkCount = chunkCount;
+            this.rootFlag = rootFlag;
+        }
+
+        @Override
+        protected int[] compute() {
+            // Only the root may be larger than a leaf, so a root is never hashed as a leaf
+            if (chunkCount <= LEAF_CHUNKS && rootFlag == 0) {
+                return hashLeaf();
+            }
+            long leftChunks = Long.highestOneBit(chunkCount - 1);
+            SubtreeTask left = new SubtreeTask(channel, fileSize, firstChunk, leftChunks, 0);
+            SubtreeTask right = new SubtreeTask(channel, fileSize, firstChunk + leftChunks, chunkCount - leftChunks, 0);
+            left.fork();
+            int[] rightCv = right.compute();
+            int[] cv = new int[8];
+            Blake3Compression.parentChainingValue(left.join(), rightCv, Blake3Compression.IV, rootFlag, new int[16], cv);
+            return cv;
+        }
+
+        /**
+         * Hashes the chunks of a leaf subtree sequentially.
+         *
+         * @return the chaining value of the subtree
+         */
+        private int[] hashLeaf() {
+            Blake3HashAlgorithm hasher = (Blake3HashAlgorithm) treePrototype.newInstance();
+            hasher.reset(firstChunk);
+            ByteBuffer buffer = LEAF_BUFFERS.get();
+            long position = firstChunk * Blake3Compression.CHUNK_LEN;
+            long end = Math.min(fileSize, (firstChunk + chunkCount) * Blake3Compression.CHUNK_LEN);
+            try {
+                while (position < end) {
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, position + buffer.position()) < 0) {
+                            throw new IOException("File shrank while being hashed");
+                        }
+                    }
+                    buffer.flip();
+                    position += buffer.remaining();
+                    hasher.update(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int[] cv = new int[8];
+            hasher.chainingValue(cv);
+            return cv;
+        }
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.hash;
+
+import com.justsyncit.simd.SimdDetectionService;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pure-Java BLAKE3 hash algorithm implementation.
+ * Input is split into 1 KiB chunks whose chaining values are merged into a
+ * binary tree, as described by the BLAKE3 specification. Produces the default
+ * 256-bit output. When a SIMD chunk kernel is available, runs of full chunks are
+ * compressed several at a time in vector lanes; the result is identical either way.
+ *
+ * <p>Instances keep mutable hashing state and are not thread-safe; callers that
+ * hash concurrently must use one instance per thread (see {@link ThreadLocalHashAlgorithm}).</p>
+ */
+public final class Blake3HashAlgorithm implements HashAlgorithm {
+
+    /** Algorithm name reported by this implementation. */
+    public static final String ALGORITHM_NAME = "BLAKE3";
+
+    /** Maximum depth of the chaining value stack (2^54 chunks). */
+    private static final int MAX_DEPTH = 54;
+    /** Number of blocks in a chunk. */
+    private static final int BLOCKS_PER_CHUNK = Blake3Compression.CHUNK_LEN / Blake3Compression.BLOCK_LEN;
+
+    /** Multi-chunk SIMD kernel, or null for the scalar implementation. */
+    private final Blake3ChunkKernel kernel;
+    /** Scratch words for the SIMD kernel. */
+    private final int[] kernelScratch;
+    /** Chaining values produced by the SIMD kernel, 8 words per lane. */
+    private final int[] kernelCvs;
+
+    /** Chaining value of the chunk currently being processed. */
+    private final int[] chunkCv = new int[8];
+    /** Buffered bytes of the current block. */
+    private final byte[] block = new byte[Blake3Compression.BLOCK_LEN];
+    /** Scratch space for message words. */
+    private final int[] words = new int[16];
+    /** Stack of chaining values of completed subtrees. */
+    private final int[][] cvStack = new int[MAX_DEPTH][8];
+    /** Scratch chaining value used while finalizing. */
+    private final int[] outputCv = new int[8];
+    /** Scratch message words used while finalizing. */
+    private final int[] outputWords = new int[16];
+
+    /** Index of the current chunk. */
+    private long chunkCounter;
+    /** Number of bytes buffered in the current block. */
+    private int blockLen;
+    /** Number of blocks already compressed in the current chunk. */
+    private int blocksCompressed;
+    /** Number of entries on the chaining value stack. */
+    private int cvStackLen;
+
+    /**
+     * Creates a new BLAKE3 hash algorithm instance.
+     *
+     * @param kernel multi-chunk kernel, or null for the scalar implementation
+     */
+    private Blake3HashAlgorithm(Blake3ChunkKernel kernel) {
+        this.kernel = kernel;
+        this.kernelScratch = kernel != null ? new int[27 * kernel.getLanes()] : null;
+        this.kernelCvs = kernel != null ? new int[8 * kernel.getLanes()] : null;
+        reset();
+    }
+
+    /**
+     * Creates a new BLAKE3 hash algorithm instance using the SIMD kernel selected
+     * for this platform, if any.
+     * @return a new Blake3HashAlgorithm instance
+     */
+    public static Blake3HashAlgorithm create() {
+        return new Blake3HashAlgorithm(Blake3Kernels.defaultKernel());
+    }
+
+    /**
+     * Creates a new BLAKE3 hash algorithm instance whose SIMD kernel is chosen from the
+     * instruction set reported by the given detection service. Instances derived through
+     * {@link #newInstance()} share the same kernel.
+     * @param simdDetectionService the SIMD detection service
+     * @return a new Blake3HashAlgorithm instance
+     */
+    public static Blake3HashAlgorithm create(SimdDetectionService simdDetectionService) {
+        if (simdDetectionService == null) {
+            throw new IllegalArgumentException("SIMD detection service cannot be null");
+        }
+        String instructionSet = simdDetectionService.getSimdInfo().getBestSimdInstructionSet();
+        return new Blake3HashAlgorithm(Blake3Kernels.forInstructionSet(instructionSet));
+    }
+
+    /**
+     * Creates a new BLAKE3 hash algorithm instance that never uses SIMD kernels.
+     * @return a new scalar Blake3HashAlgorithm instance
+     */
+    public static Blake3HashAlgorithm createScalar() {
+        return new Blake3HashAlgorithm(null);
+    }
+
+    /**
+     * Creates a new BLAKE3 hash algorithm instance using the given kernel.
+     * @param kernel multi-chunk kernel, or null for the scalar implementation
+     * @return a new Blake3HashAlgorithm instance
+     */
+    static Blake3HashAlgorithm createWithKernel(Blake3ChunkKernel kernel) {
+        return new Blake3HashAlgorithm(kernel);
+    }
+
+    @Override
+    public void update(byte[] data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+        updateInternal(data, null, 0, data.length);
+    }
+
+    @Override
+    public void update(byte[] data, int offset, int length) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException("Invalid offset or length");
+        }
+        updateInternal(data, null, offset, length);
+    }
+
+    @Override
+    public void update(ByteBuffer data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+        int position = data.position();
+        int length = data.remaining();
+        if (data.hasArray()) {
+            updateInternal(data.array(), null, data.arrayOffset() + position, length);
+        } else {
+            // Direct or read-only buffer: read it in place instead of copying to the heap
+            updateInternal(null, data, position, length);
+        }
+        data.position(data.limit());
+    }
+
+    @Override
+    public byte[] digest() {
+        finishOutput(Blake3Compression.ROOT, outputCv);
+        byte[] hash = new byte[Blake3Compression.OUT_LEN];
+        Blake3Compression.storeWords(outputCv, hash, 0);
+        reset();
+        return hash;
+    }
+
+    /**
+     * Hashes many independent inputs, consuming the remaining bytes of each buffer.
+     * With a SIMD kernel, inputs that fit in one chunk are grouped by block count and hashed
+     * one per vector lane; the rest are hashed one after another with this instance, which
+     * is left reset.
+     *
+     * @param inputs the inputs to hash
+     * @return the hash of each input, in input order
+     */
+    ChunkId[] hashAll(List<ByteBuffer> inputs) {
+        ByteBuffer[] buffers = inputs.toArray(new ByteBuffer[0]);
+        ChunkId[] ids = new ChunkId[buffers.length];
+        byte[] hash = new byte[Blake3Compression.OUT_LEN];
+        if (kernel != null) {
+            hashSingleChunksInLanes(buffers, ids, hash);
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            if (ids[i] == null) {
+                update(buffers[i]);
+                finishOutput(Blake3Compression.ROOT, outputCv);
+                reset();
+                Blake3Compression.storeWords(outputCv, hash, 0);
+                ids[i] = ChunkId.of(hash);
+            } else {
+                buffers[i].position(buffers[i].limit());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Hashes the single-chunk inputs through the kernel, lanes at a time. Groups too small
+     * to pay for a vector pass are left for the sequential path.
+     */
+    private void hashSingleChunksInLanes(ByteBuffer[] buffers, ChunkId[] ids, byte[] hash) {
+        int lanes = kernel.getLanes();
+        int minGroup = Math.max(2, lanes / 4);
+
+        // Counting sort of the single-chunk inputs by block count
+        int[] blockCounts = new int[buffers.length];
+        int[] bucketStart = new int[BLOCKS_PER_CHUNK + 2];
+        for (int i = 0; i < buffers.length; i++) {
+            int length = buffers[i].remaining();
+            if (length <= Blake3Compression.CHUNK_LEN) {
+                blockCounts[i] = Math.max(1, (length + Blake3Compression.BLOCK_LEN - 1) / Blake3Compression.BLOCK_LEN);
+                bucketStart[blockCounts[i] + 1]++;
+            }
+        }
+        for (int b = 1; b < bucketStart.length; b++) {
+            bucketStart[b] += bucketStart[b - 1];
+        }
+        int[] order = new int[bucketStart[bucketStart.length - 1]];
+        int[] fill = Arrays.copyOf(bucketStart, bucketStart.length);
+        for (int i = 0; i < buffers.length; i++) {
+            if (blockCounts[i] > 0) {
+                order[fill[blockCounts[i]]++] = i;
+            }
+        }
+
+        ByteBuffer[] group = new ByteBuffer[lanes];
+        for (int blocks = 1; blocks <= BLOCKS_PER_CHUNK; blocks++) {
+            for (int start = bucketStart[blocks]; start < bucketStart[blocks + 1]; start += lanes) {
+                int count = Math.min(lanes, bucketStart[blocks + 1] - start);
+                if (count < minGroup) {
+                    break;
+                }
+                for (int l = 0; l < count; l++) {
+                    group[l] = buffers[order[start + l]];
+                }
+                kernel.hashRootChunks(group, count, blocks, kernelScratch, kernelCvs);
+                for (int l = 0; l < count; l++) {
+                    System.arraycopy(kernelCvs, l * 8, outputCv, 0, 8);
+                    Blake3Compression.storeWords(outputCv, hash, 0);
+                    ids[order[start + l]] = ChunkId.of(hash);
+                }
+            }
+        }
+        Arrays.fill(group, null);
+    }
+
+    /**
+     * Computes the chaining value of the subtree hashed since the last reset and resets
+     * the instance. Used when a large input is split into subtrees that are hashed separately.
+     *
+     * @param out destination for the 8-word chaining value
+     */
+    void chainingValue(int[] out) {
+        finishOutput(0, out);
+        reset();
+    }
+
+    @Override
+    public void reset() {
+        reset(0);
+    }
+
+    /**
+     * Resets the state so that the next input starts at the given chunk index.
+     * The index must be a multiple of the largest power of two not exceeding the number of
+     * chunks hashed before {@link #chainingValue(int[])} is called, as is the case for the
+     * subtrees of the BLAKE3 tree.
+     *
+     * @param firstChunk index of the first chunk of the subtree
+     */
+    void reset(long firstChunk) {
+        System.arraycopy(Blake3Compression.IV, 0, chunkCv, 0, 8);
+        chunkCounter = firstChunk;
+        blockLen = 0;
+        blocksCompressed = 0;
+        cvStackLen = 0;
+    }
+
+    /**
+     * Compresses the current chunk and folds the stacked subtrees into a single chaining value.
+     *
+     * @param rootFlag ROOT for the final hash, 0 for the chaining value of a subtree
+     * @param out destination for the 8-word result
+     */
+    private void finishOutput(int rootFlag, int[] out) {
+        // Output of the current (possibly partial) chunk
+        Arrays.fill(block, blockLen, Blake3Compression.BLOCK_LEN, (byte) 0);
+        Blake3Compression.loadBlockWords(block, 0, outputWords);
+        System.arraycopy(chunkCv, 0, outputCv, 0, 8);
+        long counter = chunkCounter;
+        int len = blockLen;
+        int flags = chunkStartFlag() | Blake3Compression.CHUNK_END;
+
+        // Fold the stacked subtrees from right to left
+        for (int i = cvStackLen - 1; i >= 0; i--) {
+            Blake3Compression.compress(outputCv, outputWords, counter, len, flags, outputCv);
+            System.arraycopy(cvStack[i], 0, outputWords, 0, 8);
+            System.arraycopy(outputCv, 0, outputWords, 8, 8);
+            System.arraycopy(Blake3Compression.IV, 0, outputCv, 0, 8);
+            counter = 0;
+            len = Blake3Compression.BLOCK_LEN;
+            flags = Blake3Compression.PARENT;
+        }
+
+        Blake3Compression.compress(outputCv, outputWords, counter, len, flags | rootFlag, out);
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return ALGORITHM_NAME;
+    }
+
+    @Override
+    public int getHashLength() {
+        return Blake3Compression.OUT_LEN;
+    }
+
+    @Override
+    public HashAlgorithm newInstance() {
+        return new Blake3HashAlgorithm(kernel);
+    }
+
+    /**
+     * Gets the SIMD instruction set of the kernel in use.
+     *
+     * @return the instruction set name, or "NONE" for the scalar implementation
+     */
+    public String getSimdInstructionSet() {
+        return kernel != null ? kernel.getInstructionSet() : Blake3Kernels.SCALAR;
+    }
+
+    /**
+     * Feeds bytes into the chunk state, closing chunks as they fill up.
+     * Exactly one of {@code array} and {@code buffer} is the data source.
+     */
+    private void updateInternal(byte[] array, ByteBuffer buffer, int offset, int length) {
+        int off = offset;
+        int remaining = length;
+        while (remaining > 0) {
+            int chunkLen = blocksCompressed * Blake3Compression.BLOCK_LEN + blockLen;
+            if (chunkLen == Blake3Compression.CHUNK_LEN) {
+                finishChunk();
+                chunkLen = 0;
+            }
+            if (chunkLen == 0 && kernel != null) {
+                // Batch whole chunks through the SIMD kernel, always leaving input for the last chunk
+                int batchLen = kernel.getLanes() * Blake3Compression.CHUNK_LEN;
+                while (remaining > batchLen) {
+                    kernel.compressChunks(array, buffer, off, chunkCounter, kernelScratch, kernelCvs);
+                    for (int l = 0; l < kernel.getLanes(); l++) {
+                        System.arraycopy(kernelCvs, l * 8, chunkCv, 0, 8);
+                        pushChunkCv();
+                    }
+                    off += batchLen;
+                    remaining -= batchLen;
+                }
+            }
+            int take = Math.min(Blake3Compression.CHUNK_LEN - chunkLen, remaining);
+            updateChunk(array, buffer, off, take);
+            off += take;
+            remaining -= take;
+        }
+    }
+
+    /**
+     * Feeds bytes that fit within the current chunk. The last block of a chunk
+     * is always kept buffered because it needs the CHUNK_END flag.
+     */
+    private void updateChunk(byte[] array, ByteBuffer buffer, int offset, int length) {
+        int off = offset;
+        int remaining = length;
+        while (remaining > 0) {
+            if (blockLen == Blake3Compression.BLOCK_LEN) {
+                Blake3Compression.loadBlockWords(block, 0, words);
+                compressChunkBlock();
+                blockLen = 0;
+            }
+            if (blockLen == 0) {
+                // Compress full blocks straight from the input, skipping the buffer
+                while (remaining > Blake3Compression.BLOCK_LEN) {
+                    if (array != null) {
+                        Blake3Compression.loadBlockWords(array, off, words);
+                    } else {
+                        Blake3Compression.loadBlockWords(buffer, off, words);
+                    }
+                    compressChunkBlock();
+                    off += Blake3Compression.BLOCK_LEN;
+                    remaining -= Blake3Compression.BLOCK_LEN;
+                }
+            }
+            int take = Math.min(Blake3Compression.BLOCK_LEN - blockLen, remaining);
+            if (array != null) {
+                System.arraycopy(array, off, block, blockLen, take);
+            } else {
+                buffer.get(off, block, blockLen, take);
+            }
+            blockLen += take;
+            off += take;
+            remaining -= take;
+        }
+    }
+
+    /**
+     * Compresses the message words currently loaded as a non-final chunk block.
+     */
+    private void compressChunkBlock() {
+        Blake3Compression.compress(chunkCv, words, chunkCounter, Blake3Compression.BLOCK_LEN, chunkStartFlag(), chunkCv);
+        blocksCompressed++;
+    }
+
+    /**
+     * Finalizes the current full chunk and pushes its chaining value into the tree.
+     */
+    private void finishChunk() {
+        Blake3Compression.loadBlockWords(block, 0, words);
+        Blake3Compression.compress(chunkCv, words, chunkCounter, blockLen,
+                chunkStartFlag() | Blake3Compression.CHUNK_END, chunkCv);
+        pushChunkCv();
+    }
+
+    /**
+     * Pushes the chaining value held in {@code chunkCv} for the current chunk into the tree
+     * and starts the next chunk.
+     */
+    private void pushChunkCv() {
+        // Merge completed subtrees: one merge per trailing zero bit of the chunk count
+        long totalChunks = chunkCounter + 1;
+        while ((totalChunks & 1) == 0) {
+            cvStackLen--;
+            Blake3Compression.parentChainingValue(cvStack[cvStackLen], chunkCv, Blake3Compression.IV, 0, words, chunkCv);
+            totalChunks >>= 1;
+        }
+        System.arraycopy(chunkCv, 0, cvStack[cvStackLen], 0, 8);
+        cvStackLen++;
+
+        System.arraycopy(Blake3Compression.IV, 0, chunkCv, 0, 8);
+        chunkCounter++;
+        blockLen = 0;
+        blocksCompressed = 0;
+    }
+
+    /**
+     * Returns CHUNK_START if no block of the current chunk has been compressed yet.
+     */
+    private int chunkStartFlag() {
+        return blocksCompressed == 0 ? Blake3Compression.CHUNK_START : 0;
+    }
+}
@@ -21,6 +21,7 @@ package com.justsyncit.hash;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.HexFormat;
 
 /**
@@ -71,19 +72,8 @@ public class Blake3IncrementalHasherFactory implements IncrementalHasherFactory
          * @return a new instance or throws RuntimeException if creation fails
          */
         private static IncrementalHasher create(HashAlgorithm prototypeHashAlgorithm) throws HashingException {
-            HashAlgorithm newHasher;
             // Create a new instance to ensure thread safety and isolation
-            if (prototypeHashAlgorithm instanceof Sha256HashAlgorithm) {
-                try {
-                    newHasher = Sha256HashAlgorithm.create();
-                } catch (HashingException e) {
-                    throw new HashingException("Failed to create SHA-256 algorithm instance", e);
-                }
-            } else {
-                // For future hash algorithm implementations
-                throw new UnsupportedOperationException(
-                    "Unsupported hash algorithm: " + prototypeHashAlgorithm.getClass().getSimpleName());
-            }
+            HashAlgorithm newHasher = prototypeHashAlgorithm.newInstance();
             return new Blake3IncrementalHasherImpl(newHasher);
         }
 
@@ -112,6 +102,18 @@ public class Blake3IncrementalHasherFactory implements IncrementalHasherFactory
             hasher.update(data, offset, length);
         }
 
+        @Override
+        public void update(ByteBuffer data) {
+            if (finalized) {
+                throw new IllegalStateException("Hasher has been finalized and cannot be updated");
+            }
+            if (data == null) {
+                throw new IllegalArgumentException("Data cannot be null");
+            }
+
+            hasher.update(data);
+        }
+
         @Override
         public String digest() throws HashingException {
             if (finalized) {
@@ -0,0 +1,128 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.hash;
+
+import com.justsyncit.simd.SimdDetectionServiceImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+
+/**
+ * Selects the BLAKE3 chunk kernel for the current platform.
+ * The choice is made once, at first use, from the instruction set reported by the
+ * SIMD detection service. A {@code null} kernel means the scalar implementation is used.
+ */
+final class Blake3Kernels {
+
+    /** Logger instance. */
+    private static final Logger logger = LoggerFactory.getLogger(Blake3Kernels.class);
+
+    /** Name reported when no SIMD kernel is in use. */
+    static final String SCALAR = "NONE";
+    /** System property that disables the SIMD kernel when set to "false". */
+    static final String SIMD_PROPERTY = "justsyncit.hash.simd";
+
+    /** Module providing the Vector API. */
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    /** Class implementing the vector kernel, loaded reflectively. */
+    private static final String VECTOR_KERNEL_CLASS = "com.justsyncit.hash.Blake3VectorKernel";
+
+    /** Private constructor to prevent instantiation. */
+    private Blake3Kernels() {
+        // Utility class
+    }
+
+    /**
+     * Gets the kernel selected for this process.
+     *
+     * @return the default kernel, or null if the scalar implementation should be used
+     */
+    static Blake3ChunkKernel defaultKernel() {
+        return DefaultKernelHolder.KERNEL;
+    }
+
+    /**
+     * Selects a kernel for the given SIMD instruction set.
+     *
+     * @param simdInstructionSet instruction set reported by the SIMD detection service
+     * @return a kernel, or null if the scalar implementation should be used
+     */
+    static Blake3ChunkKernel forInstructionSet(String simdInstructionSet) {
+        if ("false".equalsIgnoreCase(System.getProperty(SIMD_PROPERTY))) {
+            logger.info("SIMD hashing disabled by -D{}=false", SIMD_PROPERTY);
+            return null;
+        }
+
+        int vectorBits = vectorBitsFor(simdInstructionSet);
+        if (vectorBits == 0) {
+            return null;
+        }
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            logger.info("{} detected but {} is not enabled (--add-modules {}); using scalar BLAKE3",
+                    simdInstructionSet, VECTOR_MODULE, VECTOR_MODULE);
+            return null;
+        }
+
+        try {
+            Method factory = Class.forName(VECTOR_KERNEL_CLASS).getDeclaredMethod("create", int.class, String.class);
+            Blake3ChunkKernel kernel = (Blake3ChunkKernel) factory.invoke(null, vectorBits, simdInstructionSet);
+            logger.info("Using {} BLAKE3 kernel with {} lanes", kernel.getInstructionSet(), kernel.getLanes());
+            return kernel;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.warn("Failed to load vector BLAKE3 kernel, using scalar implementation: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Maps an instruction set to a vector width.
+     *
+     * @param simdInstructionSet instruction set name
+     * @return vector width in bits, or 0 if no vector kernel applies
+     */
+    private static int vectorBitsFor(String simdInstructionSet) {
+        if (simdInstructionSet == null) {
+            return 0;
+        }
+        switch (simdInstructionSet.toUpperCase(Locale.ROOT)) {
+            case "AVX-512":
+                return 512;
+            case "AVX2":
+                return 256;
+            case "AVX":
+            case "SSE4":
+            case "SSE2":
+            case "NEON":
+                return 128;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Lazily selects the process-wide kernel on first use.
+     */
+    private static final class DefaultKernelHolder {
+        /** The selected kernel, or null for scalar. */
+        private static final Blake3ChunkKernel KERNEL =
+                forInstructionSet(new SimdDetectionServiceImpl().getSimdInfo().getBestSimdInstructionSet());
+    }
+}
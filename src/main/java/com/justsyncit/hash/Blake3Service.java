@@ -20,7 +20,9 @@ package com.justsyncit.hash;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.List;
 
 /**
  * Service interface for BLAKE3 cryptographic hash operations.
@@ -47,6 +49,38 @@ public interface Blake3Service {
      */
     String hashBuffer(byte[] data) throws HashingException;
 
+    /**
+     * Hashes the remaining bytes of a buffer using BLAKE3 algorithm.
+     * Direct buffers are hashed in place without copying them onto the heap.
+     * The buffer's position is advanced to its limit.
+     *
+     * @param data the buffer to hash
+     * @return the BLAKE3 hash as a hexadecimal string (64 characters for 256-bit hash)
+     * @throws IllegalArgumentException if the data is null
+     */
+    String hashBuffer(ByteBuffer data) throws HashingException;
+
+    /**
+     * Hashes the remaining bytes of a buffer into a binary chunk ID.
+     * Equivalent to {@code ChunkId.fromHex(hashBuffer(data))} without the hex round trip.
+     *
+     * @param data the buffer to hash
+     * @return the chunk ID
+     * @throws IllegalArgumentException if the data is null
+     */
+    ChunkId hashChunkId(ByteBuffer data) throws HashingException;
+
+    /**
+     * Hashes many independent buffers in one call, consuming the remaining bytes of each.
+     * Per-call setup is paid once for the whole batch and no hex is produced; with a SIMD
+     * kernel, small inputs are hashed several at a time in vector lanes.
+     *
+     * @param inputs the buffers to hash
+     * @return the chunk ID of each buffer, in input order
+     * @throws IllegalArgumentException if the list or any buffer is null
+     */
+    ChunkId[] hashAll(List<ByteBuffer> inputs) throws HashingException;
+
     /**
      * Hashes the content of an InputStream using BLAKE3 algorithm.
      * The stream will be fully consumed but not closed.
@@ -89,6 +123,15 @@ public interface Blake3Service {
          */
         void update(byte[] data, int offset, int length);
 
+        /**
+         * Updates the hash with the remaining bytes of the buffer, without copying
+         * direct buffers onto the heap. The buffer's position is advanced to its limit.
+         *
+         * @param data the buffer containing the data to add to the hash
+         * @throws IllegalArgumentException if the data is null
+         */
+        void update(ByteBuffer data);
+
         /**
          * Finalizes the hash computation and returns the result.
          * After calling this method, the hasher cannot be used for further updates.
@@ -125,7 +168,7 @@ public interface Blake3Service {
         boolean hasSimdSupport();
 
         /**
-         * @return the SIMD instruction set being used (e.g., "AVX2", "AVX-512", "SSE4.1", "none")
+         * @return the SIMD instruction set being used by the hash kernel (e.g., "AVX2", "AVX-512", "NEON", "NONE")
          */
         String getSimdInstructionSet();
 
@@ -133,5 +176,10 @@ public interface Blake3Service {
          * @return true if the implementation uses JNI bindings
          */
         boolean isJniImplementation();
+
+        /**
+         * @return the name of the hash algorithm producing the digests (e.g., "BLAKE3", "SHA-256")
+         */
+        String getHashAlgorithm();
     }
 }
\ No newline at end of file
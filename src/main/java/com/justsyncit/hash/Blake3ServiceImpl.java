@@ -22,7 +22,9 @@ import com.justsyncit.simd.SimdDetectionService;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.List;
 
 /**
  * Refactored BLAKE3 service that follows SOLID principles.
@@ -56,11 +58,32 @@ public class Blake3ServiceImpl implements Blake3Service {
             StreamHasher streamHasher,
             IncrementalHasherFactory incrementalHasherFactory,
             SimdDetectionService simdDetectionService) {
+        this(fileHasher, bufferHasher, streamHasher, incrementalHasherFactory, simdDetectionService,
+                Blake3HashAlgorithm.create());
+    }
+
+    /**
+     * Creates a new Blake3ServiceRefactored whose hashers use the given hash algorithm.
+     *
+     * @param fileHasher the file hashing service
+     * @param bufferHasher the buffer hashing service
+     * @param streamHasher the stream hashing service
+     * @param incrementalHasherFactory the incremental hasher factory
+     * @param simdDetectionService the SIMD detection service
+     * @param hashAlgorithm the prototype hash algorithm used by the hashers, reported through {@link #getInfo()}
+     */
+    public Blake3ServiceImpl(
+            FileHasher fileHasher,
+            BufferHasher bufferHasher,
+            StreamHasher streamHasher,
+            IncrementalHasherFactory incrementalHasherFactory,
+            SimdDetectionService simdDetectionService,
+            HashAlgorithm hashAlgorithm) {
         this.fileHasher = fileHasher;
         this.bufferHasher = bufferHasher;
         this.streamHasher = streamHasher;
         this.incrementalHasherFactory = incrementalHasherFactory;
-        this.blake3Info = new Blake3InfoImpl(simdDetectionService);
+        this.blake3Info = new Blake3InfoImpl(simdDetectionService, hashAlgorithm);
     }
 
     @Override
@@ -73,6 +96,21 @@ public class Blake3ServiceImpl implements Blake3Service {
         return bufferHasher.hashBuffer(data);
     }
 
+    @Override
+    public String hashBuffer(ByteBuffer data) throws HashingException {
+        return bufferHasher.hashBuffer(data);
+    }
+
+    @Override
+    public ChunkId hashChunkId(ByteBuffer data) throws HashingException {
+        return bufferHasher.hashChunkId(data);
+    }
+
+    @Override
+    public ChunkId[] hashAll(List<ByteBuffer> inputs) throws HashingException {
+        return bufferHasher.hashAll(inputs);
+    }
+
     @Override
     public String hashStream(InputStream inputStream) throws IOException, HashingException {
         return streamHasher.hashStream(inputStream);
@@ -94,10 +132,18 @@ public class Blake3ServiceImpl implements Blake3Service {
     private static class Blake3InfoImpl implements Blake3Info {
         /** SIMD detection service. */
         private final SimdDetectionService simdDetectionService;
+        /** Name of the hash algorithm in use. */
+        private final String hashAlgorithmName;
+        /** SIMD instruction set actually used by the hash kernel. */
+        private final String simdInstructionSet;
 
         /** Creates a new Blake3InfoImpl. */
-        Blake3InfoImpl(SimdDetectionService simdDetectionService) {
+        Blake3InfoImpl(SimdDetectionService simdDetectionService, HashAlgorithm hashAlgorithm) {
             this.simdDetectionService = simdDetectionService;
+            this.hashAlgorithmName = hashAlgorithm.getAlgorithmName();
+            this.simdInstructionSet = hashAlgorithm instanceof Blake3HashAlgorithm
+                    ? ((Blake3HashAlgorithm) hashAlgorithm).getSimdInstructionSet()
+                    : Blake3Kernels.SCALAR;
         }
 
         @Override
@@ -117,12 +163,18 @@ public class Blake3ServiceImpl implements Blake3Service {
 
         @Override
         public String getSimdInstructionSet() {
-            return simdDetectionService.getSimdInfo().getBestSimdInstructionSet();
+            // Report the kernel actually hashing, not merely what the CPU supports
+            return simdInstructionSet;
         }
 
         @Override
         public boolean isJniImplementation() {
             return false; // We're using the pure Java implementation
         }
+
+        @Override
+        public String getHashAlgorithm() {
+            return hashAlgorithmName;
+        }
     }
 }
\ No newline at end of file
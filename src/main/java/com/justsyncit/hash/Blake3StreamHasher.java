@@ -27,6 +27,8 @@ import java.io.InputStream;
 /**
  * Stream hashing implementation using BLAKE3 algorithm.
  * Follows Single Responsibility Principle by focusing only on stream operations.
+ * Every call hashes with a fresh incremental hasher and a per-thread read buffer, so
+ * concurrent callers share no mutable state.
  */
 public class Blake3StreamHasher implements StreamHasher {
 
@@ -37,6 +39,8 @@ public class Blake3StreamHasher implements StreamHasher {
 
     /** Incremental hasher factory. */
     private final IncrementalHasherFactory incrementalHasherFactory;
+    /** Per-thread read buffers, reused across calls. */
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
 
     /**
      * Creates a new Blake3StreamHasher with the provided factory.
@@ -56,7 +60,7 @@ public class Blake3StreamHasher implements StreamHasher {
         logger.trace("Hashing input stream");
 
         IncrementalHasherFactory.IncrementalHasher hasher = incrementalHasherFactory.createIncrementalHasher();
-        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] buffer = buffers.get();
         int bytesRead;
 
         try {
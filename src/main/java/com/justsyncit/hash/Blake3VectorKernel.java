@@ -0,0 +1,356 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.hash;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * BLAKE3 chunk kernel built on the incubating Vector API.
+ * Each vector lane carries the state of a different chunk, so one compression
+ * step advances {@code lanes} chunks at once (the "hash many" strategy of the
+ * reference implementation). Independent inputs of up to one chunk can share a call
+ * the same way, one input per lane. Only loaded through {@link Blake3Kernels} when the
+ * {@code jdk.incubator.vector} module is available.
+ */
+final class Blake3VectorKernel implements Blake3ChunkKernel {
+
+    /** Number of blocks in a chunk. */
+    private static final int BLOCKS_PER_CHUNK = Blake3Compression.CHUNK_LEN / Blake3Compression.BLOCK_LEN;
+    /** Scratch row holding the low counter words (rows 0-15 hold the message words). */
+    private static final int COUNTER_LOW = 16;
+    /** Scratch row holding the high counter words. */
+    private static final int COUNTER_HIGH = 17;
+    /** First of the eight scratch rows holding the chaining values. */
+    private static final int STATE = 18;
+    /** Scratch row holding the length of the current block of each lane. */
+    private static final int BLOCK_LENS = 26;
+
+    /** Vector species used for the lanes. */
+    private final VectorSpecies<Integer> species;
+    /** Number of lanes. */
+    private final int lanes;
+    /** Instruction set this kernel targets. */
+    private final String instructionSet;
+
+    /**
+     * Creates a new Blake3VectorKernel.
+     *
+     * @param species vector species to use
+     * @param instructionSet instruction set name for reporting
+     */
+    private Blake3VectorKernel(VectorSpecies<Integer> species, String instructionSet) {
+        this.species = species;
+        this.lanes = species.length();
+        this.instructionSet = instructionSet;
+    }
+
+    /**
+     * Creates a kernel for the given vector width, capped at the widest width the hardware supports.
+     * Invoked reflectively so the Vector API is only linked when it is present.
+     *
+     * @param vectorBits requested vector width in bits (128, 256 or 512)
+     * @param instructionSet instruction set name for reporting
+     * @return a new kernel
+     */
+    static Blake3ChunkKernel create(int vectorBits, String instructionSet) {
+        VectorSpecies<Integer> species;
+        switch (vectorBits) {
+            case 512:
+                species = IntVector.SPECIES_512;
+                break;
+            case 256:
+                species = IntVector.SPECIES_256;
+                break;
+            default:
+                species = IntVector.SPECIES_128;
+                break;
+        }
+        if (species.length() > IntVector.SPECIES_PREFERRED.length()) {
+            species = IntVector.SPECIES_PREFERRED;
+        }
+        return new Blake3VectorKernel(species, instructionSet);
+    }
+
+    @Override
+    public int getLanes() {
+        return lanes;
+    }
+
+    @Override
+    public String getInstructionSet() {
+        return instructionSet;
+    }
+
+    @Override
+    public void compressChunks(byte[] array, ByteBuffer buffer, int offset, long chunkCounter, int[] scratch, int[] cvs) {
+        for (int l = 0; l < lanes; l++) {
+            long counter = chunkCounter + l;
+            scratch[COUNTER_LOW * lanes + l] = (int) counter;
+            scratch[COUNTER_HIGH * lanes + l] = (int) (counter >>> 32);
+        }
+        for (int i = 0; i < 8; i++) {
+            IntVector.broadcast(species, Blake3Compression.IV[i]).intoArray(scratch, (STATE + i) * lanes);
+        }
+        IntVector.broadcast(species, Blake3Compression.BLOCK_LEN).intoArray(scratch, BLOCK_LENS * lanes);
+
+        for (int block = 0; block < BLOCKS_PER_CHUNK; block++) {
+            loadTransposed(array, buffer, offset + block * Blake3Compression.BLOCK_LEN, scratch);
+            int flags = (block == 0 ? Blake3Compression.CHUNK_START : 0)
+                    | (block == BLOCKS_PER_CHUNK - 1 ? Blake3Compression.CHUNK_END : 0);
+            compressBlock(scratch, flags);
+        }
+
+        for (int l = 0; l < lanes; l++) {
+            for (int i = 0; i < 8; i++) {
+                cvs[l * 8 + i] = scratch[(STATE + i) * lanes + l];
+            }
+        }
+    }
+
+    @Override
+    public void hashRootChunks(ByteBuffer[] inputs, int count, int blocks, int[] scratch, int[] hashes) {
+        // Every input is chunk 0 of its own tree
+        Arrays.fill(scratch, COUNTER_LOW * lanes, (COUNTER_HIGH + 1) * lanes, 0);
+        for (int i = 0; i < 8; i++) {
+            IntVector.broadcast(species, Blake3Compression.IV[i]).intoArray(scratch, (STATE + i) * lanes);
+        }
+
+        for (int block = 0; block < blocks; block++) {
+            int blockStart = block * Blake3Compression.BLOCK_LEN;
+            for (int l = 0; l < lanes; l++) {
+                if (l < count) {
+                    loadLane(inputs[l], blockStart, l, scratch);
+                } else {
+                    // Idle lane: compress zeros and discard the result
+                    for (int w = 0; w < 16; w++) {
+                        scratch[w * lanes + l] = 0;
+                    }
+                    scratch[BLOCK_LENS * lanes + l] = 0;
+                }
+            }
+            int flags = (block == 0 ? Blake3Compression.CHUNK_START : 0)
+                    | (block == blocks - 1 ? Blake3Compression.CHUNK_END | Blake3Compression.ROOT : 0);
+            compressBlock(scratch, flags);
+        }
+
+        for (int l = 0; l < count; l++) {
+            for (int i = 0; i < 8; i++) {
+                hashes[l * 8 + i] = scratch[(STATE + i) * lanes + l];
+            }
+        }
+    }
+
+    /**
+     * Compresses one transposed block in every lane. Reads the message words, counters, block
+     * lengths and chaining values from {@code scratch} and writes the new chaining values back.
+     * All vectors stay in locals so that they can live in registers.
+     */
+    private void compressBlock(int[] scratch, int flags) {
+        IntVector m0 = IntVector.fromArray(species, scratch, 0);
+        IntVector m1 = IntVector.fromArray(species, scratch, 1 * lanes);
+        IntVector m2 = IntVector.fromArray(species, scratch, 2 * lanes);
+        IntVector m3 = IntVector.fromArray(species, scratch, 3 * lanes);
+        IntVector m4 = IntVector.fromArray(species, scratch, 4 * lanes);
+        IntVector m5 = IntVector.fromArray(species, scratch, 5 * lanes);
+        IntVector m6 = IntVector.fromArray(species, scratch, 6 * lanes);
+        IntVector m7 = IntVector.fromArray(species, scratch, 7 * lanes);
+        IntVector m8 = IntVector.fromArray(species, scratch, 8 * lanes);
+        IntVector m9 = IntVector.fromArray(species, scratch, 9 * lanes);
+        IntVector m10 = IntVector.fromArray(species, scratch, 10 * lanes);
+        IntVector m11 = IntVector.fromArray(species, scratch, 11 * lanes);
+        IntVector m12 = IntVector.fromArray(species, scratch, 12 * lanes);
+        IntVector m13 = IntVector.fromArray(species, scratch, 13 * lanes);
+        IntVector m14 = IntVector.fromArray(species, scratch, 14 * lanes);
+        IntVector m15 = IntVector.fromArray(species, scratch, 15 * lanes);
+
+        IntVector v0 = IntVector.fromArray(species, scratch, (STATE + 0) * lanes);
+        IntVector v1 = IntVector.fromArray(species, scratch, (STATE + 1) * lanes);
+        IntVector v2 = IntVector.fromArray(species, scratch, (STATE + 2) * lanes);
+        IntVector v3 = IntVector.fromArray(species, scratch, (STATE + 3) * lanes);
+        IntVector v4 = IntVector.fromArray(species, scratch, (STATE + 4) * lanes);
+        IntVector v5 = IntVector.fromArray(species, scratch, (STATE + 5) * lanes);
+        IntVector v6 = IntVector.fromArray(species, scratch, (STATE + 6) * lanes);
+        IntVector v7 = IntVector.fromArray(species, scratch, (STATE + 7) * lanes);
+        IntVector v8 = IntVector.broadcast(species, Blake3Compression.IV[0]);
+        IntVector v9 = IntVector.broadcast(species, Blake3Compression.IV[1]);
+        IntVector v10 = IntVector.broadcast(species, Blake3Compression.IV[2]);
+        IntVector v11 = IntVector.broadcast(species, Blake3Compression.IV[3]);
+        IntVector v12 = IntVector.fromArray(species, scratch, COUNTER_LOW * lanes);
+        IntVector v13 = IntVector.fromArray(species, scratch, COUNTER_HIGH * lanes);
+        IntVector v14 = IntVector.fromArray(species, scratch, BLOCK_LENS * lanes);
+        IntVector v15 = IntVector.broadcast(species, flags);
+
+        for (int r = 0; r < 7; r++) {
+            // Mix the columns
+            v0 = v0.add(v4).add(m0);
+            v12 = v12.lanewise(VectorOperators.XOR, v0).lanewise(VectorOperators.ROR, 16);
+            v8 = v8.add(v12);
+            v4 = v4.lanewise(VectorOperators.XOR, v8).lanewise(VectorOperators.ROR, 12);
+            v0 = v0.add(v4).add(m1);
+            v12 = v12.lanewise(VectorOperators.XOR, v0).lanewise(VectorOperators.ROR, 8);
+            v8 = v8.add(v12);
+            v4 = v4.lanewise(VectorOperators.XOR, v8).lanewise(VectorOperators.ROR, 7);
+            v1 = v1.add(v5).add(m2);
+            v13 = v13.lanewise(VectorOperators.XOR, v1).lanewise(VectorOperators.ROR, 16);
+            v9 = v9.add(v13);
+            v5 = v5.lanewise(VectorOperators.XOR, v9).lanewise(VectorOperators.ROR, 12);
+            v1 = v1.add(v5).add(m3);
+            v13 = v13.lanewise(VectorOperators.XOR, v1).lanewise(VectorOperators.ROR, 8);
+            v9 = v9.add(v13);
+            v5 = v5.lanewise(VectorOperators.XOR, v9).lanewise(VectorOperators.ROR, 7);
+            v2 = v2.add(v6).add(m4);
+            v14 = v14.lanewise(VectorOperators.XOR, v2).lanewise(VectorOperators.ROR, 16);
+            v10 = v10.add(v14);
+            v6 = v6.lanewise(VectorOperators.XOR, v10).lanewise(VectorOperators.ROR, 12);
+            v2 = v2.add(v6).add(m5);
+            v14 = v14.lanewise(VectorOperators.XOR, v2).lanewise(VectorOperators.ROR, 8);
+            v10 = v10.add(v14);
+            v6 = v6.lanewise(VectorOperators.XOR, v10).lanewise(VectorOperators.ROR, 7);
+            v3 = v3.add(v7).add(m6);
+            v15 = v15.lanewise(VectorOperators.XOR, v3).lanewise(VectorOperators.ROR, 16);
+            v11 = v11.add(v15);
+            v7 = v7.lanewise(VectorOperators.XOR, v11).lanewise(VectorOperators.ROR, 12);
+            v3 = v3.add(v7).add(m7);
+            v15 = v15.lanewise(VectorOperators.XOR, v3).lanewise(VectorOperators.ROR, 8);
+            v11 = v11.add(v15);
+            v7 = v7.lanewise(VectorOperators.XOR, v11).lanewise(VectorOperators.ROR, 7);
+            // Mix the diagonals
+            v0 = v0.add(v5).add(m8);
+            v15 = v15.lanewise(VectorOperators.XOR, v0).lanewise(VectorOperators.ROR, 16);
+            v10 = v10.add(v15);
+            v5 = v5.lanewise(VectorOperators.XOR, v10).lanewise(VectorOperators.ROR, 12);
+            v0 = v0.add(v5).add(m9);
+            v15 = v15.lanewise(VectorOperators.XOR, v0).lanewise(VectorOperators.ROR, 8);
+            v10 = v10.add(v15);
+            v5 = v5.lanewise(VectorOperators.XOR, v10).lanewise(VectorOperators.ROR, 7);
+            v1 = v1.add(v6).add(m10);
+            v12 = v12.lanewise(VectorOperators.XOR, v1).lanewise(VectorOperators.ROR, 16);
+            v11 = v11.add(v12);
+            v6 = v6.lanewise(VectorOperators.XOR, v11).lanewise(VectorOperators.ROR, 12);
+            v1 = v1.add(v6).add(m11);
+            v12 = v12.lanewise(VectorOperators.XOR, v1).lanewise(VectorOperators.ROR, 8);
+            v11 = v11.add(v12);
+            v6 = v6.lanewise(VectorOperators.XOR, v11).lanewise(VectorOperators.ROR, 7);
+            v2 = v2.add(v7).add(m12);
+            v13 = v13.lanewise(VectorOperators.XOR, v2).lanewise(VectorOperators.ROR, 16);
+            v8 = v8.add(v13);
+            v7 = v7.lanewise(VectorOperators.XOR, v8).lanewise(VectorOperators.ROR, 12);
+            v2 = v2.add(v7).add(m13);
+            v13 = v13.lanewise(VectorOperators.XOR, v2).lanewise(VectorOperators.ROR, 8);
+            v8 = v8.add(v13);
+            v7 = v7.lanewise(VectorOperators.XOR, v8).lanewise(VectorOperators.ROR, 7);
+            v3 = v3.add(v4).add(m14);
+            v14 = v14.lanewise(VectorOperators.XOR, v3).lanewise(VectorOperators.ROR, 16);
+            v9 = v9.add(v14);
+            v4 = v4.lanewise(VectorOperators.XOR, v9).lanewise(VectorOperators.ROR, 12);
+            v3 = v3.add(v4).add(m15);
+            v14 = v14.lanewise(VectorOperators.XOR, v3).lanewise(VectorOperators.ROR, 8);
+            v9 = v9.add(v14);
+            v4 = v4.lanewise(VectorOperators.XOR, v9).lanewise(VectorOperators.ROR, 7);
+
+            // Permute the message words for the next round
+            IntVector p0 = m2;
+            IntVector p1 = m6;
+            IntVector p2 = m3;
+            IntVector p3 = m10;
+            IntVector p4 = m7;
+            IntVector p5 = m0;
+            IntVector p6 = m4;
+            IntVector p7 = m13;
+            IntVector p8 = m1;
+            IntVector p9 = m11;
+            IntVector p10 = m12;
+            IntVector p11 = m5;
+            IntVector p12 = m9;
+            IntVector p13 = m14;
+            IntVector p14 = m15;
+            IntVector p15 = m8;
+            m0 = p0;
+            m1 = p1;
+            m2 = p2;
+            m3 = p3;
+            m4 = p4;
+            m5 = p5;
+            m6 = p6;
+            m7 = p7;
+            m8 = p8;
+            m9 = p9;
+            m10 = p10;
+            m11 = p11;
+            m12 = p12;
+            m13 = p13;
+            m14 = p14;
+            m15 = p15;
+        }
+
+        v0.lanewise(VectorOperators.XOR, v8).intoArray(scratch, (STATE + 0) * lanes);
+        v1.lanewise(VectorOperators.XOR, v9).intoArray(scratch, (STATE + 1) * lanes);
+        v2.lanewise(VectorOperators.XOR, v10).intoArray(scratch, (STATE + 2) * lanes);
+        v3.lanewise(VectorOperators.XOR, v11).intoArray(scratch, (STATE + 3) * lanes);
+        v4.lanewise(VectorOperators.XOR, v12).intoArray(scratch, (STATE + 4) * lanes);
+        v5.lanewise(VectorOperators.XOR, v13).intoArray(scratch, (STATE + 5) * lanes);
+        v6.lanewise(VectorOperators.XOR, v14).intoArray(scratch, (STATE + 6) * lanes);
+        v7.lanewise(VectorOperators.XOR, v15).intoArray(scratch, (STATE + 7) * lanes);
+    }
+
+    /**
+     * Loads one block from every lane's chunk so that word {@code w} of lane {@code l}
+     * ends up at {@code scratch[w * lanes + l]}.
+     */
+    private void loadTransposed(byte[] array, ByteBuffer buffer, int blockOffset, int[] scratch) {
+        for (int l = 0; l < lanes; l++) {
+            int base = blockOffset + l * Blake3Compression.CHUNK_LEN;
+            if (array != null) {
+                for (int w = 0; w < 16; w++) {
+                    scratch[w * lanes + l] = Blake3Compression.loadWord(array, base + (w << 2));
+                }
+            } else {
+                for (int w = 0; w < 16; w++) {
+                    scratch[w * lanes + l] = Blake3Compression.loadWord(buffer, base + (w << 2));
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads one block of a single-chunk input into lane {@code lane}, zero-padding past the
+     * end of the input, and records the block length.
+     */
+    private void loadLane(ByteBuffer input, int blockStart, int lane, int[] scratch) {
+        int base = input.position() + blockStart;
+        int length = Math.min(input.limit() - base, Blake3Compression.BLOCK_LEN);
+        int fullWords = length >> 2;
+        for (int w = 0; w < fullWords; w++) {
+            scratch[w * lanes + lane] = Blake3Compression.loadWord(input, base + (w << 2));
+        }
+        for (int w = fullWords; w < 16; w++) {
+            int word = 0;
+            for (int b = (w << 2); b < length; b++) {
+                word |= (input.get(base + b) & 0xFF) << ((b & 3) << 3);
+            }
+            scratch[w * lanes + lane] = word;
+        }
+        scratch[BLOCK_LENS * lanes + lane] = length;
+    }
+}
@@ -18,6 +18,9 @@
 
 package com.justsyncit.hash;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+
 /**
  * Interface for buffer hashing operations.
  * Follows Interface Segregation Principle by focusing only on buffer operations.
@@ -32,4 +35,35 @@ public interface BufferHasher {
      * @throws IllegalArgumentException if the data is null
      */
     String hashBuffer(byte[] data) throws HashingException;
+
+    /**
+     * Hashes the remaining bytes of a buffer without copying direct buffers onto the heap.
+     * The buffer's position is advanced to its limit.
+     *
+     * @param data the buffer to hash
+     * @return the hash as a hexadecimal string
+     * @throws IllegalArgumentException if the data is null
+     */
+    String hashBuffer(ByteBuffer data) throws HashingException;
+
+    /**
+     * Hashes the remaining bytes of a buffer into a binary chunk ID, skipping hex encoding.
+     * The buffer's position is advanced to its limit.
+     *
+     * @param data the buffer to hash
+     * @return the chunk ID
+     * @throws IllegalArgumentException if the data is null
+     */
+    ChunkId hashChunkId(ByteBuffer data) throws HashingException;
+
+    /**
+     * Hashes many independent buffers in one call, consuming the remaining bytes of each.
+     * Per-call setup is paid once for the whole batch and no hex is produced; with a SIMD
+     * kernel, small inputs are hashed several at a time in vector lanes.
+     *
+     * @param inputs the buffers to hash
+     * @return the chunk ID of each buffer, in input order
+     * @throws IllegalArgumentException if the list or any buffer is null
+     */
+    ChunkId[] hashAll(List<ByteBuffer> inputs) throws HashingException;
 }
\ No newline at end of file
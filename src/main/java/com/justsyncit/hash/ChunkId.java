@@ -0,0 +1,252 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Immutable 256-bit chunk identity (a BLAKE3 or SHA-256 digest).
+ * Holds the digest as four longs, so it takes 48 bytes of heap instead of the 150+ bytes
+ * of a 64-character hex string, and compares and hashes without touching characters.
+ * Hex is only produced on demand, for display and for APIs that still take strings.
+ */
+public final class ChunkId implements Comparable<ChunkId> {
+
+    /** Length of a chunk ID in bytes. */
+    public static final int BYTES = 32;
+    /** Length of a chunk ID in hex characters. */
+    public static final int HEX_LENGTH = BYTES * 2;
+
+    /** Hex digits used for encoding. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Digest bytes 0-7, big-endian. */
+    private final long w0;
+    /** Digest bytes 8-15, big-endian. */
+    private final long w1;
+    /** Digest bytes 16-23, big-endian. */
+    private final long w2;
+    /** Digest bytes 24-31, big-endian. */
+    private final long w3;
+
+    /**
+     * Creates a new ChunkId.
+     *
+     * @param w0 digest bytes 0-7
+     * @param w1 digest bytes 8-15
+     * @param w2 digest bytes 16-23
+     * @param w3 digest bytes 24-31
+     */
+    private ChunkId(long w0, long w1, long w2, long w3) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+    }
+
+    /**
+     * Creates a chunk ID from a 32-byte digest.
+     *
+     * @param digest the digest bytes
+     * @return the chunk ID
+     * @throws IllegalArgumentException if digest is null or not 32 bytes long
+     */
+    public static ChunkId of(byte[] digest) {
+        if (digest == null) {
+            throw new IllegalArgumentException("Digest cannot be null");
+        }
+        if (digest.length != BYTES) {
+            throw new IllegalArgumentException("Digest must be " + BYTES + " bytes, got " + digest.length);
+        }
+        return read(ByteBuffer.wrap(digest));
+    }
+
+    /**
+     * Parses a chunk ID from its 64-character hex form (either case).
+     *
+     * @param hex the hex string
+     * @return the chunk ID
+     * @throws IllegalArgumentException if hex is null or not a 64-character hex string
+     */
+    public static ChunkId fromHex(String hex) {
+        if (hex == null) {
+            throw new IllegalArgumentException("Hash cannot be null");
+        }
+        if (hex.length() != HEX_LENGTH) {
+            throw new IllegalArgumentException("Hash must be " + HEX_LENGTH + " hex characters: " + hex);
+        }
+        return new ChunkId(parseLong(hex, 0), parseLong(hex, 16), parseLong(hex, 32), parseLong(hex, 48));
+    }
+
+    /**
+     * Checks whether a string is a valid hex chunk ID.
+     *
+     * @param hex the string to check
+     * @return true if {@link #fromHex(String)} would accept it
+     */
+    public static boolean isValidHex(String hex) {
+        if (hex == null || hex.length() != HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HEX_LENGTH; i++) {
+            if (hexDigit(hex.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a chunk ID in its 32-byte binary form at the buffer's position, advancing it.
+     *
+     * @param buffer the source buffer
+     * @return the chunk ID
+     * @throws java.nio.BufferUnderflowException if fewer than 32 bytes remain
+     */
+    public static ChunkId read(ByteBuffer buffer) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try {
+            return new ChunkId(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+        } finally {
+            buffer.order(order);
+        }
+    }
+
+    /**
+     * Writes the 32-byte binary form at the buffer's position, advancing it.
+     *
+     * @param buffer the destination buffer
+     * @throws java.nio.BufferOverflowException if fewer than 32 bytes remain
+     */
+    public void writeTo(ByteBuffer buffer) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try {
+            buffer.putLong(w0).putLong(w1).putLong(w2).putLong(w3);
+        } finally {
+            buffer.order(order);
+        }
+    }
+
+    /**
+     * Gets the digest bytes.
+     *
+     * @return a new 32-byte array
+     */
+    public byte[] toBytes() {
+        byte[] bytes = new byte[BYTES];
+        writeTo(ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    /**
+     * Gets the lowercase hex form, as produced by the hashing services.
+     *
+     * @return the 64-character hex string
+     */
+    public String toHex() {
+        char[] chars = new char[HEX_LENGTH];
+        appendHex(w0, chars, 0);
+        appendHex(w1, chars, 16);
+        appendHex(w2, chars, 32);
+        appendHex(w3, chars, 48);
+        return new String(chars);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ChunkId)) {
+            return false;
+        }
+        ChunkId that = (ChunkId) o;
+        return w0 == that.w0 && w1 == that.w1 && w2 == that.w2 && w3 == that.w3;
+    }
+
+    @Override
+    public int hashCode() {
+        // Digest bits are uniformly distributed already
+        return (int) (w0 ^ (w0 >>> 32));
+    }
+
+    @Override
+    public int compareTo(ChunkId other) {
+        int result = Long.compareUnsigned(w0, other.w0);
+        if (result == 0) {
+            result = Long.compareUnsigned(w1, other.w1);
+        }
+        if (result == 0) {
+            result = Long.compareUnsigned(w2, other.w2);
+        }
+        if (result == 0) {
+            result = Long.compareUnsigned(w3, other.w3);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    /**
+     * Parses sixteen hex characters as a long.
+     */
+    private static long parseLong(String hex, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 16; i++) {
+            int digit = hexDigit(hex.charAt(i));
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid hex character in hash: " + hex);
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Gets the value of an ASCII hex digit. Unlike {@link Character#digit(char, int)}, non-ASCII
+     * digits such as full-width ones are rejected.
+     *
+     * @return the digit value, or -1 if the character is not [0-9a-fA-F]
+     */
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a long as sixteen lowercase hex characters.
+     */
+    private static void appendHex(long value, char[] chars, int offset) {
+        for (int i = 15; i >= 0; i--) {
+            chars[offset + 15 - i] = HEX_DIGITS[(int) (value >>> (i << 2)) & 0xF];
+        }
+    }
+}
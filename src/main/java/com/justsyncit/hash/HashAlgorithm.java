@@ -18,9 +18,13 @@
 
 package com.justsyncit.hash;
 
+import java.nio.ByteBuffer;
+
 /**
  * Interface for hash algorithm implementations.
  * Provides a contract for different hash algorithms to follow.
+ * Implementations hold mutable state and are not thread-safe; use {@link #newInstance()}
+ * to obtain an independent instance for each thread.
  */
 public interface HashAlgorithm {
 
@@ -42,6 +46,15 @@ public interface HashAlgorithm {
      */
     void update(byte[] data, int offset, int length);
 
+    /**
+     * Updates the hash with the remaining bytes of the buffer.
+     * Direct buffers are read in place; the buffer's position is advanced to its limit.
+     *
+     * @param data the buffer containing the data to hash
+     * @throws IllegalArgumentException if the data is null
+     */
+    void update(ByteBuffer data);
+
     /**
      * Finalizes the hash computation and returns the result.
      * After calling this method, the algorithm cannot be used for further updates.
@@ -68,4 +81,12 @@ public interface HashAlgorithm {
      * @return the hash length in bytes
      */
     int getHashLength();
+
+    /**
+     * Creates a new, independent instance of the same algorithm in its initial state.
+     *
+     * @return a new hash algorithm instance
+     * @throws HashingException if the instance cannot be created
+     */
+    HashAlgorithm newInstance() throws HashingException;
 }
\ No newline at end of file
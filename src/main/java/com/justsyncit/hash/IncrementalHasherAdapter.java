@@ -18,6 +18,8 @@
 
 package com.justsyncit.hash;
 
+import java.nio.ByteBuffer;
+
 /**
  * Adapter to bridge IncrementalHasherFactory.IncrementalHasher to Blake3Service.Blake3IncrementalHasher.
  * Follows Adapter pattern to maintain compatibility while using new interfaces.
@@ -46,6 +48,11 @@ public class IncrementalHasherAdapter implements Blake3Service.Blake3Incremental
         adaptedHasher.update(data, offset, length);
     }
 
+    @Override
+    public void update(ByteBuffer data) {
+        adaptedHasher.update(data);
+    }
+
     @Override
     public String digest() throws HashingException {
         return adaptedHasher.digest();
@@ -18,6 +18,7 @@
 
 package com.justsyncit.hash;
 
+import java.nio.ByteBuffer;
 /**
  * Factory interface for creating incremental hashers.
  * Follows Interface Segregation Principle by focusing only on factory operations.
@@ -56,6 +57,15 @@ public interface IncrementalHasherFactory {
          */
         void update(byte[] data, int offset, int length);
 
+        /**
+         * Updates the hash with the remaining bytes of the buffer, without copying
+         * direct buffers onto the heap. The buffer's position is advanced to its limit.
+         *
+         * @param data the buffer containing the data to add to the hash
+         * @throws IllegalArgumentException if the data is null
+         */
+        void update(ByteBuffer data);
+
         /**
          * Finalizes the hash computation and returns the result.
          * After calling this method, the hasher cannot be used for further updates.
@@ -18,13 +18,15 @@
 
 package com.justsyncit.hash;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
  * SHA-256 hash algorithm implementation.
  * This class implements the HashAlgorithm interface using Java's built-in SHA-256.
- * Note: This is currently used as a fallback until a true BLAKE3 implementation is available.
+ * Used for repositories created before BLAKE3 became the default hash algorithm.
+ * Instances are not thread-safe; see {@link ThreadLocalHashAlgorithm}.
  */
 public final class Sha256HashAlgorithm implements HashAlgorithm {
 
@@ -57,9 +59,7 @@ public final class Sha256HashAlgorithm implements HashAlgorithm {
         if (data == null) {
             throw new IllegalArgumentException("Data cannot be null");
         }
-        synchronized (digest) {
-            digest.update(data);
-        }
+        digest.update(data);
     }
 
     @Override
@@ -70,23 +70,25 @@ public final class Sha256HashAlgorithm implements HashAlgorithm {
         if (offset < 0 || length < 0 || offset + length > data.length) {
             throw new IllegalArgumentException("Invalid offset or length");
         }
-        synchronized (digest) {
-            digest.update(data, offset, length);
+        digest.update(data, offset, length);
+    }
+
+    @Override
+    public void update(ByteBuffer data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
         }
+        digest.update(data);
     }
 
     @Override
     public byte[] digest() {
-        synchronized (digest) {
-            return digest.digest();
-        }
+        return digest.digest();
     }
 
     @Override
     public void reset() {
-        synchronized (digest) {
-            digest.reset();
-        }
+        digest.reset();
     }
 
     @Override
@@ -98,4 +100,9 @@ public final class Sha256HashAlgorithm implements HashAlgorithm {
     public int getHashLength() {
         return 32; // SHA-256 produces 256-bit hash = 32 bytes
     }
+
+    @Override
+    public HashAlgorithm newInstance() throws HashingException {
+        return create();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.hash;
+
+/**
+ * Hands out one hash algorithm instance per thread, derived from a prototype.
+ * Lets shared hashing services run concurrently without locks and without threads
+ * interleaving update/digest/reset calls on the same state.
+ */
+public final class ThreadLocalHashAlgorithm {
+
+    /** Prototype used to create the per-thread instances. */
+    private final HashAlgorithm prototype;
+    /** Per-thread hash algorithm instances. */
+    private final ThreadLocal<HashAlgorithm> instances = new ThreadLocal<>();
+
+    /**
+     * Creates a new ThreadLocalHashAlgorithm.
+     *
+     * @param prototype the prototype algorithm
+     */
+    private ThreadLocalHashAlgorithm(HashAlgorithm prototype) {
+        this.prototype = prototype;
+    }
+
+    /**
+     * Creates a new ThreadLocalHashAlgorithm.
+     *
+     * @param prototype the algorithm whose {@link HashAlgorithm#newInstance()} creates the per-thread instances
+     * @return a new ThreadLocalHashAlgorithm
+     * @throws IllegalArgumentException if prototype is null
+     */
+    public static ThreadLocalHashAlgorithm create(HashAlgorithm prototype) {
+        if (prototype == null) {
+            throw new IllegalArgumentException("Hash algorithm cannot be null");
+        }
+        return new ThreadLocalHashAlgorithm(prototype);
+    }
+
+    /**
+     * Returns the calling thread's instance in its initial state, creating it on first use.
+     *
+     * @return a hash algorithm instance confined to the calling thread
+     * @throws HashingException if the instance cannot be created
+     */
+    public HashAlgorithm get() throws HashingException {
+        HashAlgorithm algorithm = instances.get();
+        if (algorithm == null) {
+            algorithm = prototype.newInstance();
+            instances.set(algorithm);
+        } else {
+            // A previous call may have failed half-way; never leak its state
+            algorithm.reset();
+        }
+        return algorithm;
+    }
+
+    /**
+     * Gets the name of the underlying hash algorithm.
+     *
+     * @return the algorithm name
+     */
+    public String getAlgorithmName() {
+        return prototype.getAlgorithmName();
+    }
+}
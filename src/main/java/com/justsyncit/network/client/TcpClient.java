@@ -18,6 +18,7 @@
 
 package com.justsyncit.network.client;
 
+import com.justsyncit.concurrent.IoExecutors;
 import com.justsyncit.network.protocol.ProtocolMessage;
 
 import java.io.IOException;
@@ -77,11 +78,7 @@ public class TcpClient {
         this.listeners = new CopyOnWriteArrayList<>();
         this.connections = new ConcurrentHashMap<>();
         this.pendingConnections = new ConcurrentHashMap<>();
-        this.executorService = Executors.newCachedThreadPool(r -> {
-            Thread t = new Thread(r, "TcpClient-Worker-" + System.currentTimeMillis());
-            t.setDaemon(true);
-            return t;
-        });
+        this.executorService = IoExecutors.newCachedExecutor("TcpClient-Worker", IoExecutors.defaultMode());
         this.scheduledExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
             Thread t = new Thread(r, "TcpClient-Scheduler");
             t.setDaemon(true);
@@ -18,6 +18,7 @@
 
 package com.justsyncit.network.quic;
 
+import com.justsyncit.concurrent.IoExecutors;
 import com.justsyncit.network.protocol.ProtocolMessage;
 
 import java.io.IOException;
@@ -26,7 +27,6 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
@@ -71,11 +71,7 @@ public class QuicClient {
         this.configuration = configuration;
         this.listeners = new CopyOnWriteArrayList<>();
         this.connections = new ConcurrentHashMap<>();
-        this.executorService = Executors.newCachedThreadPool(r -> {
-            Thread t = new Thread(r, "QuicClient-Worker-" + System.currentTimeMillis());
-            t.setDaemon(true);
-            return t;
-        });
+        this.executorService = IoExecutors.newCachedExecutor("QuicClient-Worker", IoExecutors.defaultMode());
         this.running = new AtomicBoolean(false);
     }
 
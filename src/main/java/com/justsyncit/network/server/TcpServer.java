@@ -18,6 +18,7 @@
 
 package com.justsyncit.network.server;
 
+import com.justsyncit.concurrent.IoExecutors;
 import com.justsyncit.ServiceException;
 import com.justsyncit.network.protocol.ProtocolMessage;
 
@@ -35,7 +36,6 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -77,11 +77,7 @@ public class TcpServer {
     public TcpServer() {
         this.listeners = new CopyOnWriteArrayList<>();
         this.clients = new ConcurrentHashMap<>();
-        this.executorService = Executors.newCachedThreadPool(r -> {
-            Thread t = new Thread(r, "TcpServer-Worker-" + System.currentTimeMillis());
-            t.setDaemon(true);
-            return t;
-        });
+        this.executorService = IoExecutors.newCachedExecutor("TcpServer-Worker", IoExecutors.defaultMode());
         this.running = new AtomicBoolean(false);
         this.accepting = new AtomicBoolean(false);
     }
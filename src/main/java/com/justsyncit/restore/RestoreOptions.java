@@ -19,6 +19,7 @@
 package com.justsyncit.restore;
 
 import com.justsyncit.network.TransportType;
+import com.justsyncit.storage.VerificationMode;
 
 import java.net.InetSocketAddress;
 import java.nio.file.FileSystems;
@@ -39,6 +40,9 @@ public class RestoreOptions {
     /** Whether to verify integrity after restore. */
     private final boolean verifyIntegrity;
 
+    /** How chunks are verified while they are restored. */
+    private final VerificationMode chunkVerification;
+
     /** Whether to preserve file attributes. */
     private final boolean preserveAttributes;
 
@@ -66,6 +70,7 @@ public class RestoreOptions {
         this.overwriteExisting = builder.overwriteExisting;
         this.backupExisting = builder.backupExisting;
         this.verifyIntegrity = builder.verifyIntegrity;
+        this.chunkVerification = builder.chunkVerification;
         this.preserveAttributes = builder.preserveAttributes;
         this.includePattern = builder.includePattern;
         this.includePatternString = builder.includePatternString;
@@ -83,6 +88,7 @@ public class RestoreOptions {
         this.overwriteExisting = false;
         this.backupExisting = false;
         this.verifyIntegrity = true;
+        this.chunkVerification = VerificationMode.CHECKSUM;
         this.preserveAttributes = true;
         this.includePattern = null;
         this.includePatternString = null;
@@ -105,6 +111,16 @@ public class RestoreOptions {
         return verifyIntegrity;
     }
 
+    /**
+     * Gets how chunks are verified while they are restored. CHECKSUM (the default) relies on
+     * the stored CRC32C; FULL also re-hashes every chunk and the reassembled file.
+     *
+     * @return the chunk verification mode
+     */
+    public VerificationMode getChunkVerification() {
+        return chunkVerification;
+    }
+
     public boolean isPreserveAttributes() {
         return preserveAttributes;
     }
@@ -143,6 +159,7 @@ public class RestoreOptions {
                 "overwriteExisting=" + overwriteExisting +
                 ", backupExisting=" + backupExisting +
                 ", verifyIntegrity=" + verifyIntegrity +
+                ", chunkVerification=" + chunkVerification +
                 ", preserveAttributes=" + preserveAttributes +
                 ", includePatternString='" + includePatternString + '\'' +
                 ", excludePatternString='" + excludePatternString + '\'' +
@@ -156,6 +173,7 @@ public class RestoreOptions {
         private boolean overwriteExisting = false;
         private boolean backupExisting = false;
         private boolean verifyIntegrity = true;
+        private VerificationMode chunkVerification = VerificationMode.CHECKSUM;
         private boolean preserveAttributes = true;
         private PathMatcher includePattern;
         private PathMatcher excludePattern;
@@ -182,6 +200,14 @@ public class RestoreOptions {
             return this;
         }
 
+        public Builder chunkVerification(VerificationMode chunkVerification) {
+            if (chunkVerification == null) {
+                throw new IllegalArgumentException("Chunk verification mode cannot be null");
+            }
+            this.chunkVerification = chunkVerification;
+            return this;
+        }
+
         public Builder preserveAttributes(boolean preserveAttributes) {
             this.preserveAttributes = preserveAttributes;
             return this;
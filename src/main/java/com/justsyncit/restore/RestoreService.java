@@ -19,19 +19,26 @@
 package com.justsyncit.restore;
 
 import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.hash.ChunkId;
 import com.justsyncit.storage.ContentStore;
 import com.justsyncit.storage.StorageIntegrityException;
+import com.justsyncit.storage.VerificationMode;
 import com.justsyncit.storage.metadata.FileMetadata;
 import com.justsyncit.storage.metadata.MetadataService;
+import com.justsyncit.storage.metadata.PackedExtent;
 import com.justsyncit.storage.metadata.Snapshot;
+import com.justsyncit.storage.metadata.ZeroExtent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -45,6 +52,12 @@ public class RestoreService {
     /** Logger for restore operations. */
     private static final Logger logger = LoggerFactory.getLogger(RestoreService.class);
 
+    /** Maximum number of chunks verified in one batch. */
+    private static final int VERIFY_BATCH_CHUNKS = 64;
+
+    /** Maximum number of chunk bytes held for one verification batch. */
+    private static final long VERIFY_BATCH_BYTES = 4L * 1024 * 1024;
+
     /** Content store for retrieving chunks. */
     private final ContentStore contentStore;
 
@@ -57,6 +70,9 @@ public class RestoreService {
     /** Progress tracker for restore operations. */
     private RestoreProgressTracker progressTracker;
 
+    /** The pack chunk last read for a packed file; packed files are restored in runs from the same pack. */
+    private volatile CachedPack lastPack;
+
     /**
      * Creates a new RestoreService with required dependencies.
      *
@@ -323,7 +339,7 @@ public class RestoreService {
         }
 
         // Reconstruct file from chunks
-        reconstructFileFromChunks(fileMetadata, targetFile);
+        reconstructFileFromChunks(fileMetadata, targetFile, options.getChunkVerification());
 
         // Set file permissions and timestamps
         if (options.isPreserveAttributes()) {
@@ -333,32 +349,89 @@ public class RestoreService {
 
     /**
      * Reconstructs a file from its chunks.
+     * Chunks are read with the store's checksum check. Full verification additionally
+     * re-hashes them in batches, and computes the file hash from the chunks as they are
+     * written instead of reading the restored file back.
      */
-    private void reconstructFileFromChunks(FileMetadata fileMetadata, Path targetFile) throws IOException {
+    private void reconstructFileFromChunks(FileMetadata fileMetadata, Path targetFile, VerificationMode verification)
+            throws IOException {
         try {
             // Create file and write chunks
             java.io.FileOutputStream outputStream = new java.io.FileOutputStream(targetFile.toFile());
 
-            for (String chunkHash : fileMetadata.getChunkHashes()) {
-                byte[] chunkData = contentStore.retrieveChunk(chunkHash);
+            List<String> chunkHashes = fileMetadata.getChunkHashes();
+            boolean fullVerification = verification == VerificationMode.FULL;
+            boolean zeroExtents = ZeroExtent.containsMarkers(chunkHashes);
+            boolean packed = chunkHashes.size() == 1 && PackedExtent.isMarker(chunkHashes.get(0));
+            // A file of a single data chunk hashes to its chunk's hash, so only other files need a file hasher
+            Blake3Service.Blake3IncrementalHasher fileHasher = fullVerification && (chunkHashes.size() > 1 || packed
+                    || zeroExtents) ? blake3Service.createIncrementalHasher() : null;
+            FileChannel channel = outputStream.getChannel();
+
+            List<String> batchHashes = new ArrayList<>();
+            List<byte[]> batchData = new ArrayList<>();
+            long batchBytes = 0;
+            for (String chunkHash : chunkHashes) {
+                if (ZeroExtent.isMarker(chunkHash)) {
+                    // Leave a hole, which reads back as zeros
+                    writeVerifiedChunks(batchHashes, batchData, outputStream, fileHasher);
+                    batchBytes = 0;
+                    long zeros = ZeroExtent.length(chunkHash);
+                    if (fileHasher != null) {
+                        ZeroExtent.hashZeros(fileHasher, zeros);
+                    }
+                    channel.position(channel.position() + zeros);
+                    continue;
+                }
+                if (PackedExtent.isMarker(chunkHash)) {
+                    writeVerifiedChunks(batchHashes, batchData, outputStream, fileHasher);
+                    batchBytes = 0;
+                    byte[] extent = PackedExtent.slice(chunkHash, retrievePack(PackedExtent.chunkHash(chunkHash),
+                            fullVerification));
+                    if (fileHasher != null) {
+                        fileHasher.update(extent);
+                    }
+                    outputStream.write(extent);
+                    continue;
+                }
+                byte[] chunkData = contentStore.retrieveChunk(chunkHash, VerificationMode.CHECKSUM);
                 if (chunkData == null) {
                     throw new IOException("Chunk not found in content store: " + chunkHash);
                 }
 
-                // Verify chunk integrity
-                if (!verifyChunkIntegrity(chunkHash, chunkData)) {
-                    throw new StorageIntegrityException("Chunk integrity verification failed: " + chunkHash);
+                if (!fullVerification) {
+                    outputStream.write(chunkData);
+                    continue;
+                }
+                batchHashes.add(chunkHash);
+                batchData.add(chunkData);
+                batchBytes += chunkData.length;
+                if (batchHashes.size() >= VERIFY_BATCH_CHUNKS || batchBytes >= VERIFY_BATCH_BYTES) {
+                    writeVerifiedChunks(batchHashes, batchData, outputStream, fileHasher);
+                    batchBytes = 0;
                 }
-
-                outputStream.write(chunkData);
+            }
+            writeVerifiedChunks(batchHashes, batchData, outputStream, fileHasher);
+            if (channel.size() < channel.position()) {
+                // A trailing hole only counts towards the file size once something is written after it
+                channel.write(ByteBuffer.allocate(1), channel.position() - 1);
             }
 
             outputStream.close();
 
             // Verify file integrity
-            String actualHash = blake3Service.hashFile(targetFile);
-            if (!actualHash.equals(fileMetadata.getFileHash())) {
-                throw new StorageIntegrityException("File integrity verification failed for: " + targetFile);
+            if (fullVerification) {
+                String actualHash;
+                if (fileHasher != null) {
+                    actualHash = fileHasher.digest();
+                } else if (chunkHashes.isEmpty()) {
+                    actualHash = blake3Service.hashBuffer(new byte[0]);
+                } else {
+                    actualHash = chunkHashes.get(0);
+                }
+                if (!actualHash.equals(fileMetadata.getFileHash())) {
+                    throw new StorageIntegrityException("File integrity verification failed for: " + targetFile);
+                }
             }
 
             logger.debug("Successfully restored file: {}", targetFile);
@@ -371,18 +444,81 @@ public class RestoreService {
     }
 
     /**
-     * Verifies chunk integrity.
+     * Gets the contents of a pack chunk, reusing the one last read if it is the same pack.
+     * Full verification re-hashes the pack the first time it is read with full verification.
+     */
+    private byte[] retrievePack(String packHash, boolean fullVerification)
+            throws IOException, StorageIntegrityException {
+        CachedPack cached = lastPack;
+        if (cached != null && cached.hash.equals(packHash) && (cached.verified || !fullVerification)) {
+            return cached.data;
+        }
+        byte[] data = contentStore.retrieveChunk(packHash, VerificationMode.CHECKSUM);
+        if (data == null) {
+            throw new IOException("Chunk not found in content store: " + packHash);
+        }
+        if (fullVerification) {
+            ChunkId[] actualIds = hashChunks(List.of(data));
+            if (actualIds == null || !verifyChunkIntegrity(packHash, actualIds[0])) {
+                throw new StorageIntegrityException("Chunk integrity verification failed: " + packHash);
+            }
+        }
+        lastPack = new CachedPack(packHash, data, fullVerification);
+        return data;
+    }
+
+    /**
+     * Verifies a batch of chunks with one hashing call and writes them out in order,
+     * feeding them to the file hasher if there is one. Both lists are cleared afterwards.
      */
-    private boolean verifyChunkIntegrity(String expectedHash, byte[] chunkData) {
+    private void writeVerifiedChunks(List<String> hashes, List<byte[]> chunks, java.io.OutputStream outputStream,
+                                     Blake3Service.Blake3IncrementalHasher fileHasher)
+            throws IOException, StorageIntegrityException {
+        if (hashes.isEmpty()) {
+            return;
+        }
+
+        ChunkId[] actualIds = hashChunks(chunks);
+        for (int i = 0; i < hashes.size(); i++) {
+            String chunkHash = hashes.get(i);
+            // Verify chunk integrity
+            if (actualIds == null || !verifyChunkIntegrity(chunkHash, actualIds[i])) {
+                throw new StorageIntegrityException("Chunk integrity verification failed: " + chunkHash);
+            }
+            if (fileHasher != null) {
+                fileHasher.update(chunks.get(i));
+            }
+            outputStream.write(chunks.get(i));
+        }
+        hashes.clear();
+        chunks.clear();
+    }
+
+    /**
+     * Hashes a batch of chunks.
+     *
+     * @return the chunk IDs, or null if hashing failed
+     */
+    private ChunkId[] hashChunks(List<byte[]> chunks) {
+        List<ByteBuffer> buffers = new ArrayList<>(chunks.size());
+        for (byte[] chunk : chunks) {
+            buffers.add(ByteBuffer.wrap(chunk));
+        }
         try {
-            String actualHash = blake3Service.hashBuffer(chunkData);
-            return expectedHash.equals(actualHash);
+            return blake3Service.hashAll(buffers);
         } catch (Exception e) {
-            logger.warn("Failed to verify chunk integrity: {}", expectedHash, e);
-            return false;
+            logger.warn("Failed to verify integrity of {} chunks", chunks.size(), e);
+            return null;
         }
     }
 
+    /**
+     * Verifies chunk integrity.
+     */
+    private boolean verifyChunkIntegrity(String expectedHash, ChunkId actualId) {
+        return ChunkId.isValidHex(expectedHash) && ChunkId.fromHex(expectedHash).equals(actualId);
+    }
+
     /**
      * Backs up an existing file.
      */
@@ -414,8 +550,7 @@ public class RestoreService {
             for (FileMetadata originalFile : originalFiles) {
                 Path restoredFile = targetDirectory.resolve(originalFile.getPath());
                 if (Files.exists(restoredFile)) {
-                    String actualHash = blake3Service.hashFile(restoredFile);
-                    if (!actualHash.equals(originalFile.getFileHash())) {
+                    if (!blake3Service.hashFile(restoredFile).equals(originalFile.getFileHash())) {
                         logger.error("Integrity verification failed for file: {}", restoredFile);
                         return false;
                     }
@@ -446,6 +581,24 @@ public class RestoreService {
         return progressTracker;
     }
 
+    /**
+     * A pack chunk kept for the packed files restored after it.
+     */
+    private static final class CachedPack {
+        /** Hash of the pack chunk. */
+        private final String hash;
+        /** Contents of the pack chunk. */
+        private final byte[] data;
+        /** Whether the contents were re-hashed against the hash. */
+        private final boolean verified;
+
+        CachedPack(String hash, byte[] data, boolean verified) {
+            this.hash = hash;
+            this.data = data;
+            this.verified = verified;
+        }
+    }
+
     /**
      * Result of a restore operation.
      */
@@ -135,9 +135,10 @@ public class ByteBufferPool implements BufferPool {
             throw new IllegalArgumentException("Size must be positive");
         }
 
-        // Try to find an existing buffer that's large enough
-        ByteBuffer buffer = availableBuffers.poll();
-        while (buffer != null) {
+        // Try to find an existing buffer that's large enough, looking at each available buffer once
+        ByteBuffer buffer;
+        int candidates = availableBuffers.size();
+        for (int i = 0; i < candidates && (buffer = availableBuffers.poll()) != null; i++) {
             if (buffer.capacity() >= size) {
                 buffersInUse.incrementAndGet();
                 buffer.clear();
@@ -146,7 +147,6 @@ public class ByteBufferPool implements BufferPool {
             }
             // Buffer is too small, put it back and try another
             availableBuffers.offer(buffer);
-            buffer = availableBuffers.poll();
         }
 
         // No suitable buffer found, allocate a new one
@@ -0,0 +1,210 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.scanner;
+
+import com.justsyncit.hash.ChunkId;
+import com.justsyncit.storage.metadata.PackedExtent;
+import com.justsyncit.storage.metadata.ZeroExtent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A file's chunk list as the chunkers build it. Stored chunks are kept as binary {@link ChunkId}s;
+ * only zero and packed extents, which are rare, are kept as their file metadata markers. The hex
+ * form recorded in file metadata is produced by {@link #toEntries()} when the file is recorded.
+ */
+final class ChunkList {
+
+    /** Stored chunk of each entry in order, or null for zero extents. */
+    private final List<ChunkId> chunks;
+    /** Marker of each zero or packed extent, by entry index. */
+    private final Map<Integer, String> extents;
+    /** Number of zero extents. */
+    private int zeroExtentCount;
+    /** Total length of the zero extents in bytes. */
+    private long zeroLength;
+
+    /**
+     * Creates an empty chunk list.
+     */
+    ChunkList() {
+        this(10);
+    }
+
+    /**
+     * Creates an empty chunk list with room for the expected number of entries.
+     *
+     * @param expectedSize the expected number of entries
+     */
+    ChunkList(int expectedSize) {
+        this.chunks = new ArrayList<>(expectedSize);
+        this.extents = new HashMap<>();
+    }
+
+    /**
+     * Creates a copy of a chunk list.
+     *
+     * @param other the chunk list to copy
+     */
+    ChunkList(ChunkList other) {
+        this.chunks = new ArrayList<>(other.chunks);
+        this.extents = new HashMap<>(other.extents);
+        this.zeroExtentCount = other.zeroExtentCount;
+        this.zeroLength = other.zeroLength;
+    }
+
+    /**
+     * Parses a chunk list in the form recorded in file metadata.
+     *
+     * @param entries hex chunk hashes and extent markers, in order
+     * @return the chunk list
+     * @throws IllegalArgumentException if an entry is neither a chunk hash nor a valid marker
+     */
+    static ChunkList fromEntries(List<String> entries) {
+        ChunkList chunkList = new ChunkList(entries.size());
+        for (String entry : entries) {
+            if (ZeroExtent.isMarker(entry)) {
+                chunkList.addZeros(ZeroExtent.length(entry));
+            } else if (PackedExtent.isMarker(entry)) {
+                chunkList.addPacked(ChunkId.fromHex(PackedExtent.chunkHash(entry)),
+                        PackedExtent.offset(entry), PackedExtent.length(entry));
+            } else {
+                chunkList.addChunk(ChunkId.fromHex(entry));
+            }
+        }
+        return chunkList;
+    }
+
+    /**
+     * Appends a stored chunk.
+     *
+     * @param chunkId the chunk ID
+     * @throws IllegalArgumentException if chunkId is null
+     */
+    void addChunk(ChunkId chunkId) {
+        if (chunkId == null) {
+            throw new IllegalArgumentException("Chunk ID cannot be null");
+        }
+        chunks.add(chunkId);
+    }
+
+    /**
+     * Appends a zero extent, merging it into a zero extent that ends the list.
+     *
+     * @param length length of the extent in bytes
+     * @throws IllegalArgumentException if length is not positive
+     */
+    void addZeros(long length) {
+        int last = chunks.size() - 1;
+        String lastExtent = extents.get(last);
+        if (last >= 0 && ZeroExtent.isMarker(lastExtent)) {
+            extents.put(last, ZeroExtent.marker(ZeroExtent.length(lastExtent) + length));
+        } else {
+            extents.put(chunks.size(), ZeroExtent.marker(length));
+            chunks.add(null);
+            zeroExtentCount++;
+        }
+        zeroLength += length;
+    }
+
+    /**
+     * Appends a file's bytes within a pack chunk.
+     *
+     * @param packId the ID of the pack chunk
+     * @param offset offset of the file's bytes within the pack
+     * @param length length of the file's bytes
+     * @throws IllegalArgumentException if packId is null or the range is invalid
+     */
+    void addPacked(ChunkId packId, long offset, long length) {
+        if (packId == null) {
+            throw new IllegalArgumentException("Chunk ID cannot be null");
+        }
+        extents.put(chunks.size(), PackedExtent.marker(packId.toHex(), offset, length));
+        chunks.add(packId);
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return the number of entries
+     */
+    int size() {
+        return chunks.size();
+    }
+
+    /**
+     * Gets the stored chunk of an entry.
+     *
+     * @param index the entry index
+     * @return the chunk ID, which is the pack chunk for a packed extent, or null for a zero extent
+     */
+    ChunkId getChunkId(int index) {
+        return chunks.get(index);
+    }
+
+    /**
+     * Gets the number of entries that are not zero extents.
+     *
+     * @return the number of data chunks
+     */
+    int getDataChunkCount() {
+        return chunks.size() - zeroExtentCount;
+    }
+
+    /**
+     * Gets the total length of the zero extents.
+     *
+     * @return the zero-extent length in bytes
+     */
+    long getZeroLength() {
+        return zeroLength;
+    }
+
+    /**
+     * Gets the chunks the file is stored in, in order; zero extents are not stored and left out.
+     *
+     * @return the chunk IDs
+     */
+    List<ChunkId> getStoredChunks() {
+        List<ChunkId> stored = new ArrayList<>(chunks.size() - zeroExtentCount);
+        for (ChunkId chunkId : chunks) {
+            if (chunkId != null) {
+                stored.add(chunkId);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Gets the chunk list in the form recorded in file metadata.
+     *
+     * @return hex chunk hashes and extent markers, in order
+     */
+    List<String> toEntries() {
+        List<String> entries = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            String extent = extents.get(i);
+            entries.add(extent != null ? extent : chunks.get(i).toHex());
+        }
+        return entries;
+    }
+}
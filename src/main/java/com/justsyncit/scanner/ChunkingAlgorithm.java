@@ -0,0 +1,58 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.scanner;
+
+/**
+ * Enumeration of algorithms for splitting files into chunks.
+ */
+public enum ChunkingAlgorithm {
+
+    /**
+     * Cut every chunk at the same size.
+     * Fast, but inserting or removing bytes shifts every later boundary.
+     */
+    FIXED("Fixed-size chunks"),
+
+    /**
+     * Cut where a rolling gear hash of the content matches (FastCDC).
+     * Boundaries follow the content, so an edit only changes the chunks around it.
+     */
+    FASTCDC("Content-defined chunks (FastCDC)");
+
+    /** Human-readable description of the algorithm. */
+    private final String description;
+
+    /**
+     * Creates a new ChunkingAlgorithm with the specified description.
+     *
+     * @param description human-readable description of the algorithm
+     */
+    ChunkingAlgorithm(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Gets the description of this algorithm.
+     *
+     * @return the description
+     */
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,474 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.scanner;
+
+import com.justsyncit.concurrent.ExecutionMode;
+import com.justsyncit.concurrent.IoExecutors;
+import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.hash.ChunkId;
+import com.justsyncit.hash.HashingException;
+import com.justsyncit.storage.ContentStore;
+import com.justsyncit.storage.StorageIntegrityException;
+import com.justsyncit.storage.metadata.ZeroExtent;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Implementation of FileChunker with content-defined chunking (FastCDC).
+ * A gear hash rolls over the file and a chunk ends where its top bits are zero, so boundaries
+ * depend on the content rather than on offsets: inserting or removing bytes only changes the
+ * chunks around the edit, and the rest still deduplicate against earlier versions of the file.
+ *
+ * <p>As in FastCDC, the first {@code minChunkSize} bytes of a chunk are skipped without hashing,
+ * and a stricter mask applies before the average size than after it (normalized chunking),
+ * which narrows the spread of chunk sizes. No chunk is larger than {@code maxChunkSize}.
+ * The file is read sequentially into a pooled direct buffer; the boundary search reads it in
+ * place, and the chunks found in each buffer fill are hashed as one batch.</p>
+ */
+public class FastCdcFileChunker implements FileChunker {
+
+    /** Logger for the chunker. */
+    private static final Logger logger = LoggerFactory.getLogger(FastCdcFileChunker.class);
+
+    /** Default average chunk size (64KB). */
+    private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    /** Default number of files chunked concurrently. */
+    private static final int DEFAULT_THREAD_COUNT = 4;
+    /** Bytes read per buffer fill, unless twice the maximum chunk size is larger. */
+    private static final int READ_BUFFER_BYTES = 1024 * 1024;
+    /** Seed of the gear table; changing it moves every chunk boundary and defeats deduplication. */
+    private static final long GEAR_SEED = 0x4A75737453796E63L;
+    /** Random value added to the gear hash for each byte value. */
+    private static final long[] GEAR = createGearTable(GEAR_SEED);
+
+    /** BLAKE3 service for hash calculation. */
+    private final Blake3Service blake3Service;
+    /** Buffer pool for memory management. */
+    private BufferPool bufferPool;
+    /** Current average chunk size. */
+    private volatile int chunkSize;
+    /** Runs the per-file chunking tasks: a small platform pool, or a virtual thread per file. */
+    private final ExecutorService executorService;
+    /** Runs chunk hashing; a bounded platform pool when files are read on virtual threads. */
+    private final HashExecutor hashExecutor;
+    /** Whether the chunker has been closed. */
+    private volatile boolean closed;
+    /** Content store for storing chunks. */
+    private ContentStore contentStore;
+
+    /**
+     * Creates a new FastCdcFileChunker.
+     *
+     * @param blake3Service BLAKE3 service for hash calculation
+     * @param bufferPool    buffer pool for memory management
+     * @param chunkSize     average chunk size in bytes
+     * @param contentStore  content store for storing chunks, may be null
+     * @param executionMode how the threads reading files are provided, already resolved
+     */
+    private FastCdcFileChunker(Blake3Service blake3Service, BufferPool bufferPool, int chunkSize,
+                               ContentStore contentStore, ExecutionMode executionMode) {
+        this.blake3Service = blake3Service;
+        this.bufferPool = bufferPool;
+        this.chunkSize = chunkSize;
+        this.contentStore = contentStore;
+        this.executorService = IoExecutors.newExecutor("FastCdcFileChunker", DEFAULT_THREAD_COUNT, executionMode);
+        this.hashExecutor = HashExecutor.create("FastCdcFileChunker-hash", executionMode);
+        this.closed = false;
+    }
+
+    /**
+     * Creates a new FastCdcFileChunker with default settings.
+     *
+     * @param blake3Service BLAKE3 service for hash calculation
+     * @return a new FastCdcFileChunker with default settings
+     * @throws IllegalArgumentException if blake3Service is null
+     */
+    public static FastCdcFileChunker create(Blake3Service blake3Service) {
+        return create(blake3Service, ByteBufferPool.create(), DEFAULT_CHUNK_SIZE, null);
+    }
+
+    /**
+     * Creates a new FastCdcFileChunker with custom settings.
+     *
+     * @param blake3Service BLAKE3 service for hash calculation
+     * @param bufferPool    buffer pool for memory management
+     * @param chunkSize     average chunk size in bytes
+     * @return a new FastCdcFileChunker with custom settings
+     * @throws IllegalArgumentException if parameters are invalid
+     */
+    public static FastCdcFileChunker create(Blake3Service blake3Service, BufferPool bufferPool, int chunkSize) {
+        return create(blake3Service, bufferPool, chunkSize, null);
+    }
+
+    /**
+     * Creates a new FastCdcFileChunker with custom settings and content store.
+     *
+     * @param blake3Service BLAKE3 service for hash calculation
+     * @param bufferPool    buffer pool for memory management
+     * @param chunkSize     average chunk size in bytes
+     * @param contentStore  content store for storing chunks
+     * @return a new FastCdcFileChunker with custom settings and content store
+     * @throws IllegalArgumentException if parameters are invalid
+     */
+    public static FastCdcFileChunker create(Blake3Service blake3Service, BufferPool bufferPool, int chunkSize,
+                                           ContentStore contentStore) {
+        return create(blake3Service, bufferPool, chunkSize, contentStore, IoExecutors.defaultMode());
+    }
+
+    /**
+     * Creates a new FastCdcFileChunker that reads in the given execution mode. In virtual mode
+     * each file is read on its own virtual thread while hashing runs on a pool of platform threads
+     * sized to the processor count.
+     *
+     * @param blake3Service BLAKE3 service for hash calculation
+     * @param bufferPool    buffer pool for memory management
+     * @param chunkSize     average chunk size in bytes
+     * @param contentStore  content store for storing chunks, may be null
+     * @param executionMode how the threads reading and storing chunks are provided
+     * @return a new FastCdcFileChunker
+     * @throws IllegalArgumentException if parameters are invalid
+     */
+    public static FastCdcFileChunker create(Blake3Service blake3Service, BufferPool bufferPool, int chunkSize,
+                                           ContentStore contentStore, ExecutionMode executionMode) {
+        if (blake3Service == null) {
+            throw new IllegalArgumentException("BLAKE3 service cannot be null");
+        }
+        if (bufferPool == null) {
+            throw new IllegalArgumentException("Buffer pool cannot be null");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        return new FastCdcFileChunker(blake3Service, bufferPool, chunkSize, contentStore,
+                IoExecutors.resolve(executionMode));
+    }
+
+    /**
+     * Chunks a file. The options' chunk size is the average chunk size; chunks are between the
+     * options' minimum and maximum chunk sizes, except that the last chunk may be smaller.
+     */
+    @Override
+    public CompletableFuture<ChunkingResult> chunkFile(Path file, ChunkingOptions options) {
+        if (file == null) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("File cannot be null"));
+        }
+        if (closed) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("Chunker has been closed"));
+        }
+        if (!Files.isRegularFile(file)) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Path is not a regular file: " + file));
+        }
+
+        ChunkingOptions finalOptions = options != null ? options : new ChunkingOptions().withChunkSize(chunkSize);
+        int avgSize = finalOptions.getChunkSize();
+        int minSize = finalOptions.getMinChunkSize();
+        int maxSize = finalOptions.getMaxChunkSize();
+        if (minSize > avgSize || avgSize > maxSize || maxSize > Integer.MAX_VALUE / 2) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                    "Chunk sizes must satisfy min <= average <= max <= 1GB: " + minSize + ", " + avgSize + ", " + maxSize));
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return performChunking(file, minSize, avgSize, maxSize, finalOptions.isDetectSparseFiles());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return FileChunker.ChunkingResult.createFailed(file, e);
+            } catch (Exception e) {
+                logger.error("Error chunking file: {}", file, e);
+                return FileChunker.ChunkingResult.createFailed(file, e);
+            }
+        }, executorService);
+    }
+
+    /**
+     * Reads the file sequentially, cutting, hashing and storing the chunks of each buffer fill.
+     * When detecting zeros, a run of at least the minimum chunk size of zero bytes at a chunk start
+     * becomes a zero extent, which is neither hashed nor stored.
+     */
+    private FileChunker.ChunkingResult performChunking(Path file, int minSize, int avgSize, int maxSize,
+                                                       boolean detectZeros)
+            throws IOException, HashingException, InterruptedException {
+        // Normalized chunking: two more mask bits before the average size, two fewer after it
+        int bits = 31 - Integer.numberOfLeadingZeros(avgSize);
+        long strictMask = topBits(Math.min(bits + 2, 63));
+        long looseMask = topBits(Math.max(bits - 2, 1));
+
+        ChunkList chunkList = new ChunkList();
+        Blake3Service.Blake3IncrementalHasher fileHasher = blake3Service.createIncrementalHasher();
+        long totalSize = 0;
+        // Room for two maximum chunks, so a fill always completes at least one chunk before the end of file
+        ByteBuffer buffer = bufferPool.acquire(Math.max(READ_BUFFER_BYTES, 2 * maxSize));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<ByteBuffer> chunks = new ArrayList<>();
+            List<ByteBuffer> views = new ArrayList<>();
+            BitSet zeroChunks = new BitSet();
+            boolean eof = false;
+            while (true) {
+                while (!eof && buffer.hasRemaining()) {
+                    eof = channel.read(buffer) < 0;
+                }
+                buffer.flip();
+
+                // Cut every chunk whose maximum extent is in the buffer; the rest waits for the next fill
+                int start = 0;
+                int end = buffer.limit();
+                chunks.clear();
+                views.clear();
+                zeroChunks.clear();
+                while (start < end && (eof || end - start >= maxSize)) {
+                    int zeros = detectZeros ? zeroRunLength(buffer, start, end) : 0;
+                    // A zero run that reaches the end of the buffer continues in the next fill and merges there
+                    boolean zeroExtent = zeros > 0 && (zeros >= minSize || zeros == end - start);
+                    int length = zeroExtent ? zeros : findBoundary(buffer, start, end - start, minSize, avgSize,
+                            maxSize, strictMask, looseMask);
+                    ByteBuffer chunk = buffer.duplicate();
+                    chunk.limit(start + length).position(start);
+                    if (zeroExtent) {
+                        zeroChunks.set(chunks.size());
+                    } else {
+                        views.add(chunk.duplicate());
+                    }
+                    chunks.add(chunk);
+                    start += length;
+                }
+
+                if (!chunks.isEmpty()) {
+                    ChunkId[] ids = views.isEmpty() ? new ChunkId[0] : hashExecutor.call(() -> blake3Service.hashAll(views));
+                    // A single-chunk file hashes to its chunk's hash, so it needs no separate file hash
+                    boolean onlyChunk = eof && chunkList.size() == 0 && chunks.size() == 1;
+                    int next = 0;
+                    for (int i = 0; i < chunks.size(); i++) {
+                        ByteBuffer chunk = chunks.get(i);
+                        if (zeroChunks.get(i)) {
+                            int zeros = chunk.remaining();
+                            totalSize += zeros;
+                            hashExecutor.call(() -> {
+                                ZeroExtent.hashZeros(fileHasher, zeros);
+                                return null;
+                            });
+                            chunkList.addZeros(zeros);
+                            continue;
+                        }
+                        ChunkId chunkId = ids[next++];
+                        totalSize += chunk.remaining();
+                        if (!onlyChunk) {
+                            ByteBuffer view = chunk.duplicate();
+                            hashExecutor.call(() -> {
+                                fileHasher.update(view);
+                                return null;
+                            });
+                        }
+                        storeChunk(chunk, chunkId);
+                        chunkList.addChunk(chunkId);
+                    }
+                }
+
+                if (eof) {
+                    break;
+                }
+                buffer.position(start);
+                buffer.compact();
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+
+        String fileHash = chunkList.size() == 1 && chunkList.getChunkId(0) != null
+                ? chunkList.getChunkId(0).toHex() : fileHasher.digest();
+        logger.debug("Chunked file {} ({} bytes) into {} content-defined chunks and {} zero bytes",
+                file, totalSize, chunkList.getDataChunkCount(), chunkList.getZeroLength());
+        return new FileChunker.ChunkingResult(file, totalSize, fileHash, chunkList);
+    }
+
+    /**
+     * Counts the zero bytes in the buffer from start, up to end.
+     */
+    private static int zeroRunLength(ByteBuffer buffer, int start, int end) {
+        return ZeroExtent.zeroPrefixLength(buffer.duplicate().limit(end).position(start));
+    }
+
+    /**
+     * Finds the end of the chunk starting at the given buffer index.
+     *
+     * @param buffer the buffer holding the data
+     * @param start index of the chunk's first byte
+     * @param available bytes available from start; fewer than maxSize only at the end of the file
+     * @param minSize minimum chunk size
+     * @param avgSize average chunk size
+     * @param maxSize maximum chunk size
+     * @param strictMask mask that must match below the average size
+     * @param looseMask mask that must match from the average size on
+     * @return the chunk length
+     */
+    private static int findBoundary(ByteBuffer buffer, int start, int available, int minSize, int avgSize,
+                                    int maxSize, long strictMask, long looseMask) {
+        if (available <= minSize) {
+            return available;
+        }
+        int normalSize = Math.min(avgSize, available);
+        int limit = Math.min(maxSize, available);
+        long hash = 0;
+        int i = minSize;
+        for (; i < normalSize; i++) {
+            hash = (hash << 1) + GEAR[buffer.get(start + i) & 0xFF];
+            if ((hash & strictMask) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i++) {
+            hash = (hash << 1) + GEAR[buffer.get(start + i) & 0xFF];
+            if ((hash & looseMask) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Creates a mask of the top bits of a long. The gear hash shifts left, so its top bits depend
+     * on the most recent 64 bytes and its low bits on only the last few.
+     */
+    private static long topBits(int count) {
+        return -1L << (64 - count);
+    }
+
+    /**
+     * Creates the gear table with SplitMix64, so the table never depends on a library's random generator.
+     */
+    private static long[] createGearTable(long seed) {
+        long[] table = new long[256];
+        long state = seed;
+        for (int i = 0; i < table.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            table[i] = z ^ (z >>> 31);
+        }
+        return table;
+    }
+
+    /**
+     * Stores the remaining bytes of a chunk buffer under its ID if a content store is available.
+     * A failure fails the chunking of the file, so no file is recorded with a chunk that was not stored.
+     */
+    private void storeChunk(ByteBuffer buffer, ChunkId chunkId) throws IOException {
+        if (contentStore == null) {
+            return;
+        }
+        contentStore.storeChunk(chunkId, buffer);
+        logger.debug("Stored chunk {} ({} bytes)", chunkId, buffer.remaining());
+    }
+
+    @Override
+    public String storeChunk(byte[] data) throws IOException {
+        return requireContentStore().storeChunk(data);
+    }
+
+    @Override
+    public byte[] retrieveChunk(String hash) throws IOException, StorageIntegrityException {
+        return requireContentStore().retrieveChunk(hash);
+    }
+
+    @Override
+    public boolean existsChunk(String hash) throws IOException {
+        return requireContentStore().existsChunk(hash);
+    }
+
+    /**
+     * Gets the content store that chunk storage calls delegate to.
+     *
+     * @throws IOException if no content store is configured
+     */
+    private ContentStore requireContentStore() throws IOException {
+        ContentStore store = contentStore;
+        if (store == null) {
+            throw new IOException("No content store configured for chunk storage");
+        }
+        return store;
+    }
+
+    @Override
+    @SuppressWarnings("EI_EXPOSE_REP2")
+    @SuppressFBWarnings("EI_EXPOSE_REP2")
+    public void setBufferPool(BufferPool bufferPool) {
+        if (bufferPool == null) {
+            throw new IllegalArgumentException("Buffer pool cannot be null");
+        }
+        this.bufferPool = bufferPool;
+        logger.debug("Updated buffer pool to {}", bufferPool.getClass().getSimpleName());
+    }
+
+    @Override
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+        logger.debug("Updated average chunk size to {}", chunkSize);
+    }
+
+    @Override
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Closes the chunker and releases resources.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        executorService.shutdown();
+        hashExecutor.shutdown();
+        bufferPool.clear();
+        logger.info("Closed FastCdcFileChunker");
+    }
+
+    /**
+     * Sets the content store for storing chunks.
+     *
+     * @param contentStore the content store to use
+     */
+    public void setContentStore(ContentStore contentStore) {
+        this.contentStore = contentStore;
+        logger.debug("Set content store to {}", contentStore != null
+                ? contentStore.getClass().getSimpleName() : "null");
+    }
+}
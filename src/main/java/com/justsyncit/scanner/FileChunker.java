@@ -18,20 +18,21 @@
 
 package com.justsyncit.scanner;
 
+import com.justsyncit.hash.ChunkId;
 import com.justsyncit.storage.ChunkStorage;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.nio.file.Path;
 import java.util.concurrent.CompletableFuture;
 
 /**
- * Interface for chunking files into fixed-size pieces.
+ * Interface for chunking files into pieces.
  * Extends ChunkStorage to maintain compatibility with existing storage system.
  * Follows Interface Segregation Principle by providing focused chunking operations.
  */
 public interface FileChunker extends ChunkStorage {
 
     /**
-     * Chunks a file into fixed-size pieces.
+     * Chunks a file into pieces.
      *
      * @param file the file to chunk
      * @param options the chunking options
@@ -49,7 +50,7 @@ public interface FileChunker extends ChunkStorage {
     void setBufferPool(BufferPool bufferPool);
 
     /**
-     * Sets the chunk size for chunking operations.
+     * Sets the chunk size for chunking operations; the average chunk size for content-defined chunkers.
      * Default is 64KB.
      *
      * @param chunkSize the chunk size in bytes
@@ -78,8 +79,8 @@ public interface FileChunker extends ChunkStorage {
         private final long sparseSize;
         /** Hash of the entire file. */
         private final String fileHash;
-        /** List of chunk hashes in order. */
-        private final java.util.List<String> chunkHashes;
+        /** Chunk list in order, with the stored chunks as binary IDs. */
+        private final ChunkList chunks;
         /** Error if chunking failed. */
         private final Exception error;
 
@@ -91,7 +92,8 @@ public interface FileChunker extends ChunkStorage {
          * @param totalSize total file size in bytes
          * @param sparseSize size of sparse regions in bytes
          * @param fileHash hash of the entire file
-         * @param chunkHashes list of chunk hashes in order
+         * @param chunkHashes list of chunk hashes and extent markers in order
+         * @throws IllegalArgumentException if an entry is neither a chunk hash nor a valid marker
          */
         public ChunkingResult(Path file, int chunkCount, long totalSize, long sparseSize,
                           String fileHash, java.util.List<String> chunkHashes) {
@@ -100,7 +102,26 @@ public interface FileChunker extends ChunkStorage {
             this.totalSize = totalSize;
             this.sparseSize = sparseSize;
             this.fileHash = fileHash;
-            this.chunkHashes = chunkHashes != null ? new java.util.ArrayList<>(chunkHashes) : null;
+            this.chunks = chunkHashes != null ? ChunkList.fromEntries(chunkHashes) : null;
+            this.error = null;
+        }
+
+        /**
+         * Creates a successful ChunkingResult from a chunker's chunk list, which gives the chunk
+         * count and the size of the zero extents.
+         *
+         * @param file the file that was chunked
+         * @param totalSize total file size in bytes
+         * @param fileHash hash of the entire file
+         * @param chunks the chunk list in order
+         */
+        ChunkingResult(Path file, long totalSize, String fileHash, ChunkList chunks) {
+            this.file = file;
+            this.chunkCount = chunks.getDataChunkCount();
+            this.totalSize = totalSize;
+            this.sparseSize = chunks.getZeroLength();
+            this.fileHash = fileHash;
+            this.chunks = new ChunkList(chunks);
             this.error = null;
         }
 
@@ -120,7 +141,7 @@ public interface FileChunker extends ChunkStorage {
             this.totalSize = 0;
             this.sparseSize = 0;
             this.fileHash = null;
-            this.chunkHashes = java.util.Collections.emptyList();
+            this.chunks = new ChunkList(0);
             this.error = error != null ? createExceptionCopy(error) : null;
         }
 
@@ -181,12 +202,23 @@ public interface FileChunker extends ChunkStorage {
         }
 
         /**
-         * Gets the list of chunk hashes in order.
+         * Gets the chunk list in order, in the form recorded in file metadata: hex chunk hashes,
+         * and markers for zero and packed extents.
          *
-         * @return immutable list of chunk hashes
+         * @return a new list of chunk hashes and extent markers
          */
         public java.util.List<String> getChunkHashes() {
-            return chunkHashes != null ? new java.util.ArrayList<>(chunkHashes) : null;
+            return chunks != null ? chunks.toEntries() : null;
+        }
+
+        /**
+         * Gets the IDs of the chunks the file is stored in, in order: its data chunks, or the pack
+         * chunk of a packed file. Zero extents are not stored and are left out.
+         *
+         * @return a new list of chunk IDs
+         */
+        public java.util.List<ChunkId> getChunkIds() {
+            return chunks != null ? chunks.getStoredChunks() : null;
         }
 
         /**
@@ -239,7 +271,7 @@ public interface FileChunker extends ChunkStorage {
         /** Default async I/O setting. */
         public static final boolean DEFAULT_USE_ASYNC_IO = true;
         /** Default sparse file detection. */
-        public static final boolean DEFAULT_DETECT_SPARSE = true;
+        public static final boolean DEFAULT_DETECT_SPARSE = false;
 
         /** Current chunk size in bytes. */
         private int chunkSize = DEFAULT_CHUNK_SIZE;
@@ -247,10 +279,18 @@ public interface FileChunker extends ChunkStorage {
         private boolean useAsyncIO = DEFAULT_USE_ASYNC_IO;
         /** Number of buffers to use for chunking. */
         private int bufferCount = DEFAULT_BUFFER_COUNT;
-        /** Whether to detect sparse files. */
+        /** Whether to record holes and other all-zero ranges as zero extents instead of chunks. */
         private boolean detectSparseFiles = DEFAULT_DETECT_SPARSE;
         /** Maximum number of concurrent chunks. */
         private int maxConcurrentChunks = 4;
+        /** Algorithm choosing chunk boundaries. */
+        private ChunkingAlgorithm algorithm = ChunkingAlgorithm.FIXED;
+        /** Smallest content-defined chunk in bytes, or 0 for a quarter of the chunk size. */
+        private int minChunkSize;
+        /** Largest content-defined chunk in bytes, or 0 for four times the chunk size. */
+        private int maxChunkSize;
+        /** Size from which files are memory-mapped instead of read, or 0 to never map them. */
+        private long memoryMappingThreshold;
 
         /**
          * Creates a new ChunkingOptions with defaults.
@@ -269,6 +309,10 @@ public interface FileChunker extends ChunkStorage {
             this.bufferCount = other.bufferCount;
             this.detectSparseFiles = other.detectSparseFiles;
             this.maxConcurrentChunks = other.maxConcurrentChunks;
+            this.algorithm = other.algorithm;
+            this.minChunkSize = other.minChunkSize;
+            this.maxChunkSize = other.maxChunkSize;
+            this.memoryMappingThreshold = other.memoryMappingThreshold;
         }
 
         // Getters and setters
@@ -326,5 +370,68 @@ public interface FileChunker extends ChunkStorage {
             this.maxConcurrentChunks = maxConcurrentChunks;
             return this;
         }
+
+        public ChunkingAlgorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public ChunkingOptions withAlgorithm(ChunkingAlgorithm algorithm) {
+            if (algorithm == null) {
+                throw new IllegalArgumentException("Algorithm cannot be null");
+            }
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * Gets the smallest content-defined chunk size.
+         *
+         * @return the minimum chunk size in bytes
+         */
+        public int getMinChunkSize() {
+            return minChunkSize > 0 ? minChunkSize : Math.max(1, chunkSize / 4);
+        }
+
+        public ChunkingOptions withMinChunkSize(int minChunkSize) {
+            if (minChunkSize <= 0) {
+                throw new IllegalArgumentException("Min chunk size must be positive");
+            }
+            this.minChunkSize = minChunkSize;
+            return this;
+        }
+
+        /**
+         * Gets the largest content-defined chunk size.
+         *
+         * @return the maximum chunk size in bytes
+         */
+        public int getMaxChunkSize() {
+            return maxChunkSize > 0 ? maxChunkSize : (int) Math.min(Integer.MAX_VALUE / 2, (long) chunkSize * 4);
+        }
+
+        public ChunkingOptions withMaxChunkSize(int maxChunkSize) {
+            if (maxChunkSize <= 0) {
+                throw new IllegalArgumentException("Max chunk size must be positive");
+            }
+            this.maxChunkSize = maxChunkSize;
+            return this;
+        }
+
+        /**
+         * Gets the size from which files are memory-mapped and chunks hashed in place.
+         *
+         * @return the threshold in bytes, or 0 if files are never mapped
+         */
+        public long getMemoryMappingThreshold() {
+            return memoryMappingThreshold;
+        }
+
+        public ChunkingOptions withMemoryMappingThreshold(long memoryMappingThreshold) {
+            if (memoryMappingThreshold < 0) {
+                throw new IllegalArgumentException("Memory mapping threshold cannot be negative");
+            }
+            this.memoryMappingThreshold = memoryMappingThreshold;
+            return this;
+        }
     }
 }
\ No newline at end of file
@@ -1,10 +1,16 @@
 package com.justsyncit.scanner;
 
+import com.justsyncit.concurrent.ExecutionMode;
+import com.justsyncit.concurrent.IoExecutors;
+import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.hash.ChunkId;
+import com.justsyncit.hash.HashingException;
 import com.justsyncit.storage.ContentStore;
+import com.justsyncit.storage.RecentChunks;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import com.justsyncit.storage.metadata.ChunkMetadata;
 import com.justsyncit.storage.metadata.FileMetadata;
 import com.justsyncit.storage.metadata.MetadataService;
+import com.justsyncit.storage.metadata.PackedExtent;
 import com.justsyncit.storage.metadata.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,12 +21,19 @@ import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -28,10 +41,23 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * Service that orchestrates the workflow between filesystem scanning and chunking.
  * Integrates with ContentStore and MetadataService to provide complete file processing.
+ *
+ * <p>Files flow through a staged pipeline: the scan streams each file to the chunk stage,
+ * which reads, hashes and stores it, and that queues the result for the metadata stage,
+ * which records the file in the snapshot. Each stage has its own worker count and a bounded
+ * queue, so a slow stage holds back the one before it, down to the scanner, whose demand is
+ * only renewed once a file has found room in the pipeline. Scanned files are not collected,
+ * and the scan result only counts them.</p>
  */
 public class FileProcessor {
     /** Logger instance for the FileProcessor class. */
     private static final Logger logger = LoggerFactory.getLogger(FileProcessor.class);
+    /** Default number of files that may wait in front of each pipeline stage. */
+    private static final int DEFAULT_QUEUE_CAPACITY = 256;
+    /** Default number of chunk stage workers when they run on virtual threads. */
+    private static final int DEFAULT_VIRTUAL_CHUNK_WORKERS = 256;
+    /** Number of recently confirmed chunks a run remembers, enough for the files in flight. */
+    private static final int CONFIRMED_CHUNK_WINDOW = 1 << 14;
     /** Filesystem scanner for discovering files. */
     private final FilesystemScanner scanner;
     /** File chunker for processing files into chunks. */
@@ -51,12 +77,32 @@ public class FileProcessor {
     private final AtomicInteger skippedFiles = new AtomicInteger(0);
     /** Counter for files with errors. */
     private final AtomicInteger errorFiles = new AtomicInteger(0);
+    /** Counter for unchanged files carried over from the parent snapshot. */
+    private final AtomicInteger unchangedFiles = new AtomicInteger(0);
     /** Total bytes in all files. */
     private final AtomicLong totalBytes = new AtomicLong(0);
     /** Total bytes processed. */
     private final AtomicLong processedBytes = new AtomicLong(0);
     /** Current snapshot ID for this processing session. */
     private String currentSnapshotId;
+    /** Snapshot unchanged files are carried over from, or null when not processing incrementally. */
+    private volatile String parentSnapshotId;
+    /** Options passed to the chunker, or null for its own chunk size with defaults. */
+    private volatile FileChunker.ChunkingOptions chunkingOptions;
+    /** Number of workers reading, hashing and storing files, or 0 for the default of the execution mode. */
+    private volatile int chunkWorkers;
+    /** Number of workers recording files in the snapshot. */
+    private volatile int metadataWorkers = Runtime.getRuntime().availableProcessors();
+    /** Number of files that may wait in front of each pipeline stage. */
+    private volatile int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    /** Pipeline stages of the current or last run, in pipeline order. */
+    private volatile List<PipelineStage<?>> stages = List.of();
+    /** How the pipeline stage workers, which mostly block on I/O and the database, are provided. */
+    private volatile ExecutionMode executionMode = IoExecutors.defaultMode();
+    /** Size below which files are packed together instead of chunked on their own, or 0 to chunk every file. */
+    private volatile int smallFileThreshold;
+    /** BLAKE3 service for the file hashes of packed files, or null while packing is off. */
+    private volatile Blake3Service packingHashService;
 
     /**
      * Creates a new FileProcessor with specified dependencies.
@@ -78,6 +124,8 @@ public class FileProcessor {
         // Set content store on chunker if it supports it
         if (chunker instanceof FixedSizeFileChunker) {
             ((FixedSizeFileChunker) chunker).setContentStore(contentStore);
+        } else if (chunker instanceof FastCdcFileChunker) {
+            ((FastCdcFileChunker) chunker).setContentStore(contentStore);
         }
 
         this.executorService = Executors.newFixedThreadPool(
@@ -121,6 +169,59 @@ public class FileProcessor {
      * Processes files from the specified directory using the given options.
      */
     public CompletableFuture<ProcessingResult> processDirectory(Path directory, ScanOptions options) {
+        return processDirectory(directory, options, null);
+    }
+
+    /**
+     * Processes files from the specified directory incrementally. A file whose size, modification
+     * time and file key match its entry in the parent snapshot is not opened; its stored chunk
+     * list is carried over into the new snapshot instead.
+     *
+     * @param directory the directory to process
+     * @param options the scan options
+     * @param parentSnapshotId the snapshot to compare against, or null to process every file
+     * @return a future that completes with the processing result
+     */
+    public CompletableFuture<ProcessingResult> processDirectory(Path directory, ScanOptions options,
+                                                                String parentSnapshotId) {
+        return process(directory, null, options, parentSnapshotId);
+    }
+
+    /**
+     * Processes a directory incrementally for callers that already know what changed (e.g. from
+     * filesystem change notifications). Files at or under a changed path are always read; every other
+     * file is looked up in the parent snapshot by path and carried over if it is unchanged. Files that
+     * no longer exist are left out of the new snapshot.
+     *
+     * @param directory the directory the parent snapshot was taken of
+     * @param changedPaths the changed files and directories, all below the directory
+     * @param options the scan options
+     * @param parentSnapshotId the snapshot to carry unchanged files over from
+     * @return a future that completes with the processing result
+     * @throws IllegalArgumentException if changedPaths or parentSnapshotId is null
+     */
+    public CompletableFuture<ProcessingResult> processChanges(Path directory, Collection<Path> changedPaths,
+                                                              ScanOptions options, String parentSnapshotId) {
+        if (changedPaths == null) {
+            throw new IllegalArgumentException("Changed paths cannot be null");
+        }
+        if (parentSnapshotId == null) {
+            throw new IllegalArgumentException("Parent snapshot ID cannot be null");
+        }
+        return process(directory, new ArrayList<>(changedPaths), options, parentSnapshotId);
+    }
+
+    /**
+     * Processes a directory into a new snapshot.
+     *
+     * @param directory the directory to process
+     * @param changedPaths the only paths to read, or null to scan the whole directory
+     * @param options the scan options
+     * @param parentSnapshotId the snapshot to compare against, or null to process every file
+     * @return a future that completes with the processing result
+     */
+    private CompletableFuture<ProcessingResult> process(Path directory, List<Path> changedPaths, ScanOptions options,
+                                                        String parentSnapshotId) {
         // Check if executor has been shut down (stopped) and don't restart
         if (executorService.isShutdown()) {
             throw new IllegalStateException("FileProcessor has been stopped and cannot be restarted");
@@ -141,28 +242,15 @@ public class FileProcessor {
                     + UUID.randomUUID().toString().substring(0, 8);
             logger.info("Starting file processing for directory: {} with snapshot: {}", directory, currentSnapshotId);
 
+            ChunkingFileVisitor fileVisitor = null;
             try {
-                // Create snapshot first in a transaction to ensure visibility
-                // Use a transaction to ensure the snapshot is properly committed and visible
+                // Create snapshot first; it is committed, and visible to the workers, once createSnapshot returns
                 Transaction snapshotTransaction = null;
                 try {
                     snapshotTransaction = metadataService.beginTransaction();
                     metadataService.createSnapshot(currentSnapshotId, "Processing session for directory: " + directory);
                     snapshotTransaction.commit();
                     logger.debug("Snapshot created and committed: {}", currentSnapshotId);
-                    // Wait a moment to ensure the snapshot is visible to all connections
-                    // This addresses SQLite's connection isolation issues with DELETE journal mode
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        // Don't fail the operation if interrupted
-                    }
-                    // Verify the snapshot exists before proceeding
-                    if (!metadataService.getSnapshot(currentSnapshotId).isPresent()) {
-                        throw new IOException("Snapshot was not committed properly: " + currentSnapshotId);
-                    }
-                    logger.debug("Snapshot verified to exist: {}", currentSnapshotId);
                 } catch (IOException e) {
                     if (snapshotTransaction != null) {
                         try {
@@ -184,30 +272,42 @@ public class FileProcessor {
                     }
                 }
 
-                // Configure scanner with file visitor that handles chunking
-                ChunkingFileVisitor fileVisitor = new ChunkingFileVisitor();
+                // Files are looked up in the parent snapshot one by one as they are scanned
+                this.parentSnapshotId = parentSnapshotId;
+                if (parentSnapshotId != null) {
+                    logger.info("Comparing against parent snapshot {}", parentSnapshotId);
+                }
+
+                // Configure scanner with file visitor that stops the scan when processing stops
+                fileVisitor = new ChunkingFileVisitor();
                 scanner.setFileVisitor(fileVisitor);
 
                 // Configure scanner with progress listener
                 scanner.setProgressListener(new ProcessingProgressListener());
                 // Perform scan
-                CompletableFuture<ScanResult> scanFuture = scanner.scanDirectory(directory, options);
-                ScanResult scanResult = scanFuture.get();
+                ScanResult scanResult = changedPaths == null
+                        ? scanner.scanDirectory(directory, options, new ScanFeed(fileVisitor)).get()
+                        : scanChanges(directory, changedPaths, options, fileVisitor);
 
-                // Wait for all async operations to complete
-                fileVisitor.waitForCompletion();
+                // Let the stages drain
+                fileVisitor.finish();
                 ProcessingResult result = ProcessingResult.create(
                         scanResult,
                         processedFiles.get(),
                         skippedFiles.get(),
                         errorFiles.get(),
                         totalBytes.get(),
-                        processedBytes.get()
+                        processedBytes.get(),
+                        unchangedFiles.get(),
+                        currentSnapshotId
                 );
 
-                logger.info("File processing completed. Processed: {}, Skipped: {}, Errors: {}, Total bytes: {}",
-                        result.getProcessedFiles(), result.getSkippedFiles(), result.getErrorFiles(),
-                        result.getTotalBytes());
+                logger.info("File processing completed. Processed: {} ({} unchanged), Skipped: {}, Errors: {}, "
+                        + "Total bytes: {}", result.getProcessedFiles(), result.getUnchangedFiles(),
+                        result.getSkippedFiles(), result.getErrorFiles(), result.getTotalBytes());
+                for (PipelineStageStats stageStats : getStageStats()) {
+                    logger.info("Pipeline stage {}", stageStats);
+                }
 
                 return result;
 
@@ -224,17 +324,120 @@ public class FileProcessor {
                 logger.error("Error during file processing", e);
                 throw new CompletionException("File processing failed", e);
             } finally {
+                if (fileVisitor != null) {
+                    fileVisitor.cancel();
+                }
                 isRunning = false;
                 currentSnapshotId = null;
+                this.parentSnapshotId = null;
             }
         }, executorService);
     }
 
+    /**
+     * Sets the options every file is chunked with, such as the chunk sizes and the chunking algorithm.
+     * The chunker must implement the chosen algorithm.
+     *
+     * @param chunkingOptions the chunking options, or null for the chunker's chunk size with defaults
+     */
+    public void setChunkingOptions(FileChunker.ChunkingOptions chunkingOptions) {
+        this.chunkingOptions = chunkingOptions != null ? new FileChunker.ChunkingOptions(chunkingOptions) : null;
+    }
+
+    /**
+     * Sets the number of worker threads of each pipeline stage: the chunk stage reads, hashes and
+     * stores files, the metadata stage records them in the snapshot. Takes effect with the next run.
+     *
+     * @param chunkWorkers the number of chunk stage workers
+     * @param metadataWorkers the number of metadata stage workers
+     * @throws IllegalArgumentException if either count is not positive
+     */
+    public void setStageWorkers(int chunkWorkers, int metadataWorkers) {
+        if (chunkWorkers <= 0 || metadataWorkers <= 0) {
+            throw new IllegalArgumentException("Worker counts must be positive: " + chunkWorkers + ", " + metadataWorkers);
+        }
+        this.chunkWorkers = chunkWorkers;
+        this.metadataWorkers = metadataWorkers;
+    }
+
+    /**
+     * Sets whether the pipeline stage workers run on platform or virtual threads. With virtual
+     * threads the chunk stage defaults to {@value #DEFAULT_VIRTUAL_CHUNK_WORKERS} workers instead
+     * of one per processor, so that many more reads can be outstanding on high-latency storage;
+     * hashing is bounded separately by the chunker. Takes effect with the next run.
+     *
+     * @param executionMode the execution mode; virtual falls back to platform where unsupported
+     * @throws IllegalArgumentException if executionMode is null
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = IoExecutors.resolve(executionMode);
+    }
+
+    /**
+     * Enables packing of small files: files below the threshold are concatenated into shared pack
+     * chunks of the chunk size, and each is recorded as a {@link PackedExtent} of its pack instead
+     * of a chunk of its own. Takes effect with the next run.
+     *
+     * @param threshold size in bytes below which files are packed, or 0 to chunk every file on its own
+     * @param blake3Service BLAKE3 service for the file hashes of packed files; may be null if threshold is 0
+     * @throws IllegalArgumentException if threshold is negative, or positive without a BLAKE3 service
+     */
+    public void setSmallFilePacking(int threshold, Blake3Service blake3Service) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Small-file threshold cannot be negative: " + threshold);
+        }
+        if (threshold > 0 && blake3Service == null) {
+            throw new IllegalArgumentException("BLAKE3 service cannot be null");
+        }
+        this.packingHashService = threshold > 0 ? blake3Service : null;
+        this.smallFileThreshold = threshold;
+    }
+
+    /**
+     * Gets the execution mode of the pipeline stage workers.
+     *
+     * @return the execution mode, resolved for this runtime
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Sets how many files may wait in front of each pipeline stage before the stage feeding it,
+     * and ultimately the scanner, has to wait. Takes effect with the next run.
+     *
+     * @param queueCapacity the queue capacity of each stage
+     * @throws IllegalArgumentException if queueCapacity is not positive
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Gets the queue depth and throughput counters of each pipeline stage, for the run in progress
+     * or else the last run.
+     *
+     * @return the statistics of each stage in pipeline order, empty before the first run
+     */
+    public List<PipelineStageStats> getStageStats() {
+        List<PipelineStageStats> stats = new ArrayList<>();
+        for (PipelineStage<?> stage : stages) {
+            stats.add(stage.getStats());
+        }
+        return stats;
+    }
+
     /**
      * Stops the current processing operation.
      */
     public void stop() {
         isRunning = false;
+        for (PipelineStage<?> stage : stages) {
+            stage.cancel();
+        }
         if (!executorService.isShutdown()) {
             executorService.shutdown();
         }
@@ -255,103 +458,164 @@ public class FileProcessor {
         return isRunning;
     }
 
+    /**
+     * Scans the directory for a run over known changes. Each scanned file is looked up in the parent
+     * snapshot by path, as in any incremental run, so no catalog is loaded; files at or under a changed
+     * path are always read, since a change may leave their size and modification time as they were.
+     *
+     * @param directory the directory being processed
+     * @param changedPaths the changed files and directories
+     * @param options the scan options
+     * @param fileVisitor the visitor that chunks or carries over each file
+     * @return the scan result
+     * @throws Exception if the scan fails
+     */
+    private ScanResult scanChanges(Path directory, List<Path> changedPaths, ScanOptions options,
+                                   ChunkingFileVisitor fileVisitor) throws Exception {
+        Set<Path> changed = new HashSet<>();
+        for (Path path : changedPaths) {
+            if (!path.startsWith(directory)) {
+                throw new IllegalArgumentException("Changed path is not below " + directory + ": " + path);
+            }
+            changed.add(path);
+        }
+        fileVisitor.setChangedPaths(changed);
+        return scanner.scanDirectory(directory, options, new ScanFeed(fileVisitor)).get();
+    }
+
+    /**
+     * Checks whether a path or one of its ancestors is in a set of paths.
+     *
+     * @param path the path to check, may be null
+     * @param paths the set of paths
+     * @return true if the path is at or under one of the paths
+     */
+    private static boolean isAtOrUnder(Path path, Set<Path> paths) {
+        for (Path current = path; current != null; current = current.getParent()) {
+            if (paths.contains(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a thread factory for the workers of a pipeline stage.
+     *
+     * @param stageName the stage name
+     * @param mode the execution mode of the workers
+     * @return the thread factory
+     */
+    private static ThreadFactory stageThreadFactory(String stageName, ExecutionMode mode) {
+        return IoExecutors.threadFactory("FileProcessor-" + stageName, mode);
+    }
+
+    /**
+     * Gets the number of chunk stage workers for the next run.
+     */
+    private int effectiveChunkWorkers(ExecutionMode mode) {
+        if (chunkWorkers > 0) {
+            return chunkWorkers;
+        }
+        return mode == ExecutionMode.VIRTUAL ? DEFAULT_VIRTUAL_CHUNK_WORKERS : Runtime.getRuntime().availableProcessors();
+    }
+
     private void resetCounters() {
         processedFiles.set(0);
         skippedFiles.set(0);
         errorFiles.set(0);
+        unchangedFiles.set(0);
         totalBytes.set(0);
         processedBytes.set(0);
     }
 
     /**
-     * File visitor that handles chunking of files during scanning.
+     * Feeds scanned files into the processing pipeline. As the scanner's file visitor it only stops
+     * the scan once processing stops; the files themselves arrive through a {@link ScanFeed}.
      */
     private class ChunkingFileVisitor implements FileVisitor {
-        /** List of futures for chunking operations. */
-        private final List<CompletableFuture<FileChunker.ChunkingResult>> chunkingFutures = new ArrayList<>();
-        /** Lock for synchronizing access to chunkingFutures list. */
-        private final Object chunkingFuturesLock = new Object();
+        /** Options every file is chunked with. */
+        private final FileChunker.ChunkingOptions options = chunkingOptions != null
+                ? chunkingOptions
+                : new FileChunker.ChunkingOptions()
+                        .withChunkSize(chunker.getChunkSize())
+                        .withUseAsyncIO(true)
+                        .withDetectSparseFiles(true);
+        /** Stage that reads, hashes and stores files. */
+        private final PipelineStage<PendingFile> chunkStage;
+        /** Stage that records files in the snapshot. */
+        private final PipelineStage<PendingFile> metadataStage;
+        /** Recent chunks known to be stored and to have metadata, so they are not checked again. */
+        private final RecentChunks confirmedChunks = RecentChunks.create(CONFIRMED_CHUNK_WINDOW);
+        /** Size below which files are packed, or 0 if every file is chunked on its own. */
+        private final int packThreshold = smallFileThreshold;
+        /** Packs small files together, or null if every file is chunked on its own. */
+        private final SmallFilePacker<PendingFile> packer;
+        /** Paths known to have changed, whose files are always read. */
+        private Set<Path> changedPaths = Collections.emptySet();
+
+        /**
+         * Creates the visitor and starts the pipeline stages.
+         */
+        ChunkingFileVisitor() {
+            int packSize = options.getChunkSize() > 0 ? options.getChunkSize() : chunker.getChunkSize();
+            packer = packThreshold > 0
+                    ? new SmallFilePacker<>(packingHashService, contentStore, Math.max(packSize, packThreshold)) : null;
+            ExecutionMode mode = executionMode;
+            chunkStage = new PipelineStage<>("chunk", effectiveChunkWorkers(mode), queueCapacity, this::chunk,
+                    stageThreadFactory("chunk", mode));
+            metadataStage = new PipelineStage<>("metadata", metadataWorkers, queueCapacity, this::record,
+                    stageThreadFactory("metadata", mode));
+            stages = List.of(chunkStage, metadataStage);
+            chunkStage.start();
+            metadataStage.start();
+        }
 
         @Override
         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            return isRunning ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+        }
+
+        /**
+         * Queues a scanned file for the chunk stage, or for the metadata stage if it is unchanged
+         * since the parent snapshot, waiting while that stage's queue is full.
+         *
+         * @param file the scanned file
+         * @return false if processing stopped and the scan should stop too
+         */
+        boolean queue(ScanResult.ScannedFile file) {
             if (!isRunning) {
-                return FileVisitResult.TERMINATE;
+                return false;
             }
 
-            // Only process regular files, skip directories and special files
-            if (!attrs.isRegularFile()) {
-                logger.debug("Skipping non-regular file: {}", file);
+            // Only process regular files, skip special files and recorded symlinks
+            if (!file.isRegularFile()) {
+                logger.debug("Skipping non-regular file: {}", file.getPath());
                 skippedFiles.incrementAndGet();
-                return FileVisitResult.CONTINUE;
+                return true;
             }
+            totalBytes.addAndGet(file.getSize());
 
             try {
-                // Create chunking options
-                FileChunker.ChunkingOptions options = new FileChunker.ChunkingOptions()
-                        .withChunkSize(chunker.getChunkSize())
-                        .withUseAsyncIO(true)
-                        .withDetectSparseFiles(true);
-
-                // Start chunking file
-                CompletableFuture<FileChunker.ChunkingResult> chunkingFuture = chunker.chunkFile(file, options)
-                        .thenCompose(result -> {
-                            return CompletableFuture.supplyAsync(() -> {
-                                try {
-                                    if (result.isSuccess()) {
-                                        processChunkingResult(result);
-                                    } else {
-                                        logger.error("Chunking failed for file: {}", file, result.getError());
-                                        errorFiles.incrementAndGet();
-                                    }
-                                    return result;
-                                } catch (Exception e) {
-                                    logger.error("Error processing chunking result for file: {}", file, e);
-                                    errorFiles.incrementAndGet();
-                                    IOException ioException = e instanceof IOException
-                                            ? (IOException) e
-                                            : new IOException(e);
-                                    return FileChunker.ChunkingResult.createFailed(file, ioException);
-                                }
-                            }, executorService);
-                        })
-                        .exceptionally(throwable -> {
-                            logger.error("Error chunking file: {}", file, throwable);
-                            errorFiles.incrementAndGet();
-                            IOException ioException = throwable instanceof IOException
-                                    ? (IOException) throwable
-                                    : new IOException(throwable);
-                            return FileChunker.ChunkingResult.createFailed(file, ioException);
-                        })
-                        .handle((result, throwable) -> {
-                            // Ensure we always return a valid result, even if both result and throwable are null
-                            if (result == null) {
-                                if (throwable != null) {
-                                    logger.error("Null result with throwable for file: {}", file, throwable);
-                                    errorFiles.incrementAndGet();
-                                    IOException ioException = throwable instanceof IOException
-                                            ? (IOException) throwable
-                                            : new IOException(throwable);
-                                    return FileChunker.ChunkingResult.createFailed(file, ioException);
-                                } else {
-                                    logger.error("Both result and throwable are null for file: {}", file);
-                                    errorFiles.incrementAndGet();
-                                    return FileChunker.ChunkingResult.createFailed(file,
-                                            new IOException("Unexpected null result without exception"));
-                                }
-                            }
-                            return result;
-                        });
-
-                synchronized (chunkingFuturesLock) {
-                    chunkingFutures.add(chunkingFuture);
-                }
-
-            } catch (RuntimeException e) {
-                logger.error("Error starting chunking for file: {}", file, e);
-                errorFiles.incrementAndGet();
+                // Carry over unchanged files from the parent snapshot without reading them
+                FileMetadata previous = changedPaths.isEmpty() || !isAtOrUnder(file.getPath(), changedPaths)
+                        ? findUnchangedFile(file) : null;
+                return previous != null
+                        ? metadataStage.put(new PendingFile(file.getPath(), file, null, previous, file.getFileKey()))
+                        : chunkStage.put(new PendingFile(file.getPath(), file, null, null, null));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
             }
+        }
 
-            return FileVisitResult.CONTINUE;
+        /**
+         * Sets the paths known to have changed. Files at or under them are read even if they look unchanged.
+         *
+         * @param changedPaths the changed files and directories
+         */
+        void setChangedPaths(Set<Path> changedPaths) {
+            this.changedPaths = changedPaths;
         }
 
         @Override
@@ -366,42 +630,205 @@ public class FileProcessor {
             return FileVisitResult.CONTINUE;
         }
 
-        private void processChunkingResult(FileChunker.ChunkingResult result) {
+        /**
+         * Finds the parent snapshot's entry for a file if the file is unchanged since then.
+         *
+         * @param file the scanned file
+         * @return the parent snapshot's metadata, or null if the file must be processed
+         */
+        private FileMetadata findUnchangedFile(ScanResult.ScannedFile file) {
+            String parent = parentSnapshotId;
+            if (parent == null) {
+                return null;
+            }
             try {
-                // Create file metadata with generated ID and snapshot ID
-                String fileId = java.util.UUID.randomUUID().toString();
+                return metadataService.findUnchangedFile(parent, file.getPath().toString(), file.getSize(),
+                        file.getLastModified(), file.getFileKey()).orElse(null);
+            } catch (IOException e) {
+                logger.warn("Cannot look up {} in parent snapshot, reading it: {}", file.getPath(), e.getMessage());
+                return null;
+            }
+        }
 
-                // The FixedSizeFileChunker now handles chunk storage automatically
-                // when it has a content store set, so we don't need to
-                // manually ensure chunks exist here.
-                List<String> chunkHashes = result.getChunkHashes();
+        /**
+         * Chunks a file, storing its chunks, and queues the result for the metadata stage.
+         * Small files are added to a pack instead.
+         *
+         * @param pending the file
+         * @return the size of the file
+         * @throws InterruptedException if interrupted while chunking or waiting for the metadata stage
+         */
+        private long chunk(PendingFile pending) throws InterruptedException {
+            if (!isRunning) {
+                return 0;
+            }
+            if (packer != null && isPackable(pending.scanned.getSize())) {
+                return pack(pending);
+            }
+            return chunkOnItsOwn(pending);
+        }
 
-                // Wait longer to ensure all chunk metadata is committed
-                // This addresses SQLite's connection isolation issues
-                try {
-                    Thread.sleep(3000); // Further increased delay to ensure chunk metadata is committed
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    // Don't fail operation if interrupted
+        /**
+         * Checks whether a file of the given size is packed rather than chunked on its own.
+         * Empty files have no bytes to pack.
+         */
+        private boolean isPackable(long size) {
+            return size > 0 && size < packThreshold;
+        }
+
+        /**
+         * Reads a small file into the open pack. Files that filled up a pack are sealed and queued
+         * for the metadata stage.
+         *
+         * @param pending the file
+         * @return the size of the file
+         * @throws InterruptedException if interrupted while waiting for the metadata stage
+         */
+        private long pack(PendingFile pending) throws InterruptedException {
+            byte[] data;
+            try {
+                data = Files.readAllBytes(pending.file);
+            } catch (IOException e) {
+                logger.error("Error reading file: {}", pending.file, e);
+                errorFiles.incrementAndGet();
+                return 0;
+            }
+            if (!isPackable(data.length)) {
+                // The file changed since it was scanned
+                return chunkOnItsOwn(pending);
+            }
+            SmallFilePacker.Pack<PendingFile> full = packer.add(pending, pending.file, data);
+            if (full != null) {
+                seal(full);
+            }
+            return data.length;
+        }
+
+        /**
+         * Stores a closed pack and queues its files for the metadata stage.
+         *
+         * @param pack the pack
+         * @throws InterruptedException if interrupted while waiting for the metadata stage
+         */
+        private void seal(SmallFilePacker.Pack<PendingFile> pack) throws InterruptedException {
+            List<SmallFilePacker.Packed<PendingFile>> packedFiles;
+            try {
+                packedFiles = packer.seal(pack);
+            } catch (IOException | HashingException e) {
+                logger.error("Error storing a pack of {} small files", pack.getFileCount(), e);
+                errorFiles.addAndGet(pack.getFileCount());
+                return;
+            }
+            for (SmallFilePacker.Packed<PendingFile> packed : packedFiles) {
+                PendingFile pending = packed.getTag();
+                if (!metadataStage.put(new PendingFile(pending.file, pending.scanned, packed.getResult(), null, null))) {
+                    return;
                 }
+            }
+        }
 
-                // Verify chunks exist with retries
-                boolean allChunksExist = true;
-                for (String chunkHash : chunkHashes) {
-                    if (!verifyChunkExists(chunkHash)) {
-                        allChunksExist = false;
-                        // Continue checking other chunks to give them more time to appear
-                        logger.warn("Chunk {} verification failed, continuing with other chunks", chunkHash);
-                    }
+        /**
+         * Chunks a file on its own, storing its chunks, and queues the result for the metadata stage.
+         *
+         * @param pending the file
+         * @return the size of the file
+         * @throws InterruptedException if interrupted while chunking or waiting for the metadata stage
+         */
+        private long chunkOnItsOwn(PendingFile pending) throws InterruptedException {
+            Path file = pending.file;
+            FileChunker.ChunkingResult result;
+            try {
+                result = chunker.chunkFile(file, options).get();
+            } catch (ExecutionException e) {
+                logger.error("Error chunking file: {}", file, e.getCause());
+                errorFiles.incrementAndGet();
+                return 0;
+            } catch (RuntimeException e) {
+                logger.error("Error starting chunking for file: {}", file, e);
+                errorFiles.incrementAndGet();
+                return 0;
+            }
+            if (result == null || !result.isSuccess()) {
+                logger.error("Chunking failed for file: {}", file, result != null ? result.getError() : null);
+                errorFiles.incrementAndGet();
+                return 0;
+            }
+            metadataStage.put(new PendingFile(file, pending.scanned, result, null, null));
+            return result.getTotalSize();
+        }
+
+        /**
+         * Records a chunked or unchanged file in the current snapshot.
+         *
+         * @param pending the file
+         * @return the size of the file
+         */
+        private long record(PendingFile pending) {
+            if (!isRunning) {
+                return 0;
+            }
+            try {
+                if (pending.previous != null) {
+                    reuseFileMetadata(pending.file, pending.previous, pending.fileKey);
+                    return pending.previous.getSize();
                 }
-                
-                // If not all chunks exist, don't process this file but don't count as error
-                // This allows for transient storage issues to resolve themselves
-                if (!allChunksExist) {
-                    logger.warn("Not all chunks exist for file {}, skipping file processing", result.getFile());
-                    skippedFiles.incrementAndGet();
-                    processedBytes.addAndGet(result.getTotalSize());
-                    return;
+                processChunkingResult(pending.result, pending.scanned);
+                return pending.result.getTotalSize();
+            } catch (RuntimeException e) {
+                logger.error("Error processing chunking result for file: {}", pending.file, e);
+                errorFiles.incrementAndGet();
+                return 0;
+            }
+        }
+
+        /**
+         * Records an unchanged file in the current snapshot with the parent snapshot's chunk list.
+         *
+         * @param file the file
+         * @param previous the parent snapshot's metadata for the file
+         * @param fileKey the file's current file key
+         */
+        private void reuseFileMetadata(Path file, FileMetadata previous, String fileKey) {
+            List<String> chunkHashes = previous.getChunkHashes();
+            try {
+                FileMetadata fileMetadata = new FileMetadata(
+                        java.util.UUID.randomUUID().toString(),
+                        currentSnapshotId,
+                        file.toString(),
+                        previous.getSize(),
+                        previous.getModifiedTime(),
+                        previous.getFileHash(),
+                        chunkHashes,
+                        fileKey
+                );
+                storeFileMetadata(fileMetadata, ChunkList.fromEntries(chunkHashes).getStoredChunks());
+                unchangedFiles.incrementAndGet();
+                processedFiles.incrementAndGet();
+                processedBytes.addAndGet(previous.getSize());
+                logger.debug("Reused {} chunks of unchanged file: {}", chunkHashes.size(), file);
+            } catch (IOException e) {
+                logger.error("Error storing metadata for unchanged file: {}", file, e);
+                errorFiles.incrementAndGet();
+            }
+        }
+
+        private void processChunkingResult(FileChunker.ChunkingResult result, ScanResult.ScannedFile scanned) {
+            try {
+                // Create file metadata with generated ID and snapshot ID
+                String fileId = java.util.UUID.randomUUID().toString();
+
+                // The chunker has stored every chunk by the time it completes, so a chunk that is
+                // missing now will not appear later; zero extents are never stored, packed extents
+                // are stored in their pack
+                List<ChunkId> storedChunks = result.getChunkIds();
+                for (ChunkId chunkId : storedChunks) {
+                    if (!confirmedChunks.contains(chunkId) && !contentStore.existsChunk(chunkId)) {
+                        logger.warn("Chunk {} of file {} is not in the content store, skipping file",
+                                chunkId, result.getFile());
+                        skippedFiles.incrementAndGet();
+                        processedBytes.addAndGet(result.getTotalSize());
+                        return;
+                    }
                 }
 
                 FileMetadata fileMetadata = new FileMetadata(
@@ -409,12 +836,12 @@ public class FileProcessor {
                         currentSnapshotId,
                         result.getFile().toString(),
                         result.getTotalSize(),
-                        Instant.now(),
+                        scanned.getLastModified(),
                         result.getFileHash(),
-                        chunkHashes
+                        result.getChunkHashes(),
+                        scanned.getFileKey()
                 );
-                // Store file metadata with retry for foreign key constraint
-                storeFileMetadataWithRetry(fileMetadata, chunkHashes, result);
+                storeFileMetadata(fileMetadata, storedChunks);
 
                 processedFiles.incrementAndGet();
                 processedBytes.addAndGet(result.getTotalSize());
@@ -428,209 +855,118 @@ public class FileProcessor {
         }
 
         /**
-         * Verifies that a chunk exists in the content store with retries.
+         * Stores file metadata. The metadata service records it atomically, adding metadata for
+         * any of its chunks that have none.
          *
-         * @param chunkHash the hash of the chunk to verify
-         * @return true if the chunk exists, false otherwise
+         * @param fileMetadata the file metadata to store
+         * @param storedChunks the chunks the file is stored in
+         * @throws IOException if storing fails
          */
-        private boolean verifyChunkExists(String chunkHash) {
-            boolean chunkExists = false;
-            int maxRetries = 15; // Increased retries for better reliability
-            for (int attempt = 1; attempt <= maxRetries; attempt++) {
-                try {
-                    if (contentStore.existsChunk(chunkHash)) {
-                        chunkExists = true;
-                        logger.debug("Chunk {} is visible (attempt {}/{})", chunkHash, attempt, maxRetries);
-                        break;
-                    } else if (attempt < maxRetries) {
-                        logger.debug("Chunk {} not yet visible (attempt {}/{}), waiting...",
-                                chunkHash, attempt, maxRetries);
-                        try {
-                            // Use exponential backoff for better reliability
-                            // 200ms, 400ms, 800ms, 1600ms, 3200ms, 6400ms, etc.
-                            long delayMs = 200L * (1L << (attempt - 1));
-                            // Cap at 5 seconds to avoid excessive delays
-                            delayMs = Math.min(delayMs, 5000L);
-                            Thread.sleep(delayMs);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            return false;
-                        }
-                    }
-                } catch (IOException e) {
-                    logger.warn("Failed to check if chunk exists: {} (attempt {}/{})",
-                            chunkHash, attempt, maxRetries, e);
-                    if (attempt < maxRetries) {
-                        try {
-                            long delayMs = 200L * (1L << (attempt - 1));
-                            delayMs = Math.min(delayMs, 5000L);
-                            Thread.sleep(delayMs);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            return false;
-                        }
-                    }
-                }
+        private void storeFileMetadata(FileMetadata fileMetadata, List<ChunkId> storedChunks) throws IOException {
+            metadataService.insertFile(fileMetadata);
+            for (ChunkId chunkId : storedChunks) {
+                confirmedChunks.add(chunkId);
             }
-            if (!chunkExists) {
-                logger.error("Chunk {} does not exist in content store after {} retries", chunkHash, maxRetries);
-                // Don't increment error count here - let the caller handle it
-                // This allows for more graceful handling of transient failures
-                return false;
-            }
-            return true;
         }
 
         /**
-         * Stores file metadata with retry logic for foreign key constraints.
+         * Waits for every queued file to pass through the pipeline, sealing the last pack of small
+         * files once the chunk stage is done, then stops the workers.
          *
-         * @param fileMetadata the file metadata to store
-         * @param chunkHashes the list of chunk hashes
-         * @param result the chunking result
-         * @throws IOException if storing fails after all retries
+         * @throws InterruptedException if interrupted while waiting
          */
-        private void storeFileMetadataWithRetry(FileMetadata fileMetadata, List<String> chunkHashes,
-                FileChunker.ChunkingResult result) throws IOException {
-            int maxRetries = 12; // Increased retries for better reliability
-            IOException lastException = null;
-
-            for (int attempt = 1; attempt <= maxRetries; attempt++) {
-                Transaction transaction = null;
-                try {
-                    // Begin transaction for file metadata
-                    transaction = metadataService.beginTransaction();
-
-                    // Ensure all chunk metadata exists before inserting file
-                    try {
-                        ensureChunkMetadataExists(chunkHashes);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new IOException("Interrupted while ensuring chunk metadata exists", ie);
-                    }
-
-                    // Now insert file metadata
-                    metadataService.insertFile(fileMetadata);
-                    transaction.commit();
-                    // Success, break out of retry loop
-                    break;
-                } catch (IOException e) {
-                    lastException = e;
-                    if (transaction != null) {
-                        try {
-                            transaction.rollback();
-                        } catch (Exception rollbackEx) {
-                            logger.warn("Failed to rollback transaction for file {}: {}",
-                                    result.getFile(), rollbackEx.getMessage());
-                        }
-                    }
-                    // If it's a foreign key constraint or visibility issue, chunks might not be visible yet
-                    if (e.getMessage() != null
-                            && (e.getMessage().contains("FOREIGN KEY constraint failed")
-                            || e.getMessage().contains("SQLITE_CONSTRAINT_FOREIGNKEY")
-                            || e.getMessage().contains("Not all chunk metadata is visible"))) {
-                        if (attempt < maxRetries) {
-                            // Increased backoff: 400ms, 800ms, 1200ms, 1600ms, 2000ms, 2400ms,
-                            // 2800ms, 3200ms, 3600ms, 4000ms, 4400ms, 4800ms
-                            long delayMs = 400L * attempt;
-                            logger.warn(
-                                    "Chunk metadata visibility issue for file {} (attempt {}), retrying after {}ms...",
-                                    result.getFile(), attempt, delayMs);
-                            try {
-                                Thread.sleep(delayMs);
-                            } catch (InterruptedException ie) {
-                                Thread.currentThread().interrupt();
-                                throw new IOException("Interrupted while retrying file insertion", ie);
-                            }
-                        } else {
-                            logger.error("Failed to insert file metadata after {} attempts: {}",
-                                    maxRetries, result.getFile());
-                            throw lastException;
-                        }
-                    } else {
-                        // Not a foreign key constraint, don't retry
-                        throw e;
-                    }
-                } finally {
-                    if (transaction != null) {
-                        try {
-                            transaction.close();
-                        } catch (Exception closeEx) {
-                            logger.warn("Failed to close transaction for file {}: {}",
-                                    result.getFile(), closeEx.getMessage());
-                        }
-                    }
+        void finish() throws InterruptedException {
+            chunkStage.finish();
+            chunkStage.awaitTermination();
+            if (packer != null) {
+                SmallFilePacker.Pack<PendingFile> last = packer.drain();
+                if (last != null) {
+                    seal(last);
                 }
             }
+            metadataStage.finish();
+            metadataStage.awaitTermination();
         }
 
         /**
-         * Ensures that all chunk metadata exists before inserting file metadata.
-         *
-         * @param chunkHashes the list of chunk hashes to verify
-         * @throws InterruptedException if the thread is interrupted
-         * @throws IOException if there's an error creating chunk metadata
+         * Drops any queued files and stops the workers; has no effect once {@link #finish()} returned.
          */
-        private void ensureChunkMetadataExists(List<String> chunkHashes)
-                throws InterruptedException, IOException {
-            for (String chunkHash : chunkHashes) {
-                if (!metadataService.getChunkMetadata(chunkHash).isPresent()) {
-                    // Create missing chunk metadata
-                    ChunkMetadata chunkMetadata = new ChunkMetadata(
-                            chunkHash,
-                            0, // Size unknown, will be updated when chunk is accessed
-                            java.time.Instant.now(),
-                            1, // Initial reference count
-                            java.time.Instant.now()
-                    );
-                    metadataService.upsertChunk(chunkMetadata);
-                    logger.debug("Created missing chunk metadata for: {}", chunkHash);
-                    // Wait a bit for the chunk metadata to be committed
-                    Thread.sleep(1000);
-                }
-            }
+        void cancel() {
+            chunkStage.cancel();
+            metadataStage.cancel();
         }
+    }
 
-        public void waitForCompletion() {
-            try {
-                // Filter out null futures to avoid ForEachOps issues
-                List<CompletableFuture<FileChunker.ChunkingResult>> validFutures;
-                synchronized (chunkingFuturesLock) {
-                    validFutures = new ArrayList<>();
-                    for (CompletableFuture<FileChunker.ChunkingResult> future : chunkingFutures) {
-                        if (future != null) {
-                            validFutures.add(future);
-                        }
-                    }
-                }
+    /**
+     * A file on its way through the pipeline.
+     */
+    private static final class PendingFile {
+        /** The file. */
+        private final Path file;
+        /** The scanned file, or null for files carried over without being looked at. */
+        private final ScanResult.ScannedFile scanned;
+        /** The chunking result, once the file has been chunked. */
+        private final FileChunker.ChunkingResult result;
+        /** The parent snapshot's metadata for an unchanged file, or null if the file is chunked. */
+        private final FileMetadata previous;
+        /** The current file key of an unchanged file. */
+        private final String fileKey;
 
-                if (validFutures.isEmpty()) {
-                    logger.debug("No valid futures to wait for");
-                    return;
-                }
+        PendingFile(Path file, ScanResult.ScannedFile scanned, FileChunker.ChunkingResult result,
+                    FileMetadata previous, String fileKey) {
+            this.file = file;
+            this.scanned = scanned;
+            this.result = result;
+            this.previous = previous;
+            this.fileKey = fileKey;
+        }
+    }
 
-                // Add timeout to prevent infinite hanging
-                // Use the filtered list to create the array for allOf()
-                // Ensure no null elements in array to prevent ForEachOps issues
-                CompletableFuture<FileChunker.ChunkingResult>[] futuresArray = validFutures.toArray(
-                    new CompletableFuture[validFutures.size()]);
-                CompletableFuture.allOf(futuresArray)
-                        .get(60, java.util.concurrent.TimeUnit.SECONDS); // Reduced timeout for test performance
-            } catch (java.util.concurrent.TimeoutException e) {
-                logger.error("Timeout waiting for chunking completion after 60 seconds", e);
-                // Cancel any remaining futures
-                synchronized (chunkingFuturesLock) {
-                    // Create a copy to avoid concurrent modification
-                    List<CompletableFuture<FileChunker.ChunkingResult>> futuresCopy = new ArrayList<>(chunkingFutures);
-                    for (CompletableFuture<FileChunker.ChunkingResult> future : futuresCopy) {
-                        if (future != null && !future.isDone()) {
-                            future.cancel(true);
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                logger.error("Error waiting for chunking completion", e);
+    /**
+     * Subscriber of one streamed scan that hands each file to the pipeline. It asks for one file at
+     * a time, and only once the previous file has found room in the pipeline's bounded queue, so
+     * the scan never runs ahead of processing and scanned files do not pile up in memory.
+     */
+    private static final class ScanFeed implements Flow.Subscriber<ScanResult.ScannedFile> {
+        /** Visitor queuing the files into the pipeline. */
+        private final ChunkingFileVisitor visitor;
+        /** Subscription to the scan. */
+        private Flow.Subscription subscription;
+
+        /**
+         * Creates a feed into the pipeline of a visitor.
+         *
+         * @param visitor the visitor queuing the files
+         */
+        ScanFeed(ChunkingFileVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(ScanResult.ScannedFile file) {
+            if (visitor.queue(file)) {
+                subscription.request(1);
+            } else {
+                subscription.cancel();
             }
         }
+
+        @Override
+        public void onError(Throwable error) {
+            // The scan's future fails with the same error
+            logger.debug("Scan failed: {}", error.getMessage());
+        }
+
+        @Override
+        public void onComplete() {
+            // The scan's future completes with the counters
+        }
     }
 
     /**
@@ -644,19 +980,14 @@ public class FileProcessor {
 
         @Override
         public void onFileProcessed(Path file, long filesProcessed, long totalFiles) {
-            try {
-                long fileSize = java.nio.file.Files.size(file);
-                totalBytes.addAndGet(fileSize);
-                logger.debug("Processed file: {} ({} bytes)", file, fileSize);
-            } catch (IOException e) {
-                logger.warn("Could not get size for file: {}", file, e);
-            }
+            // Sizes are counted from the scanned files as they are queued, without another stat
+            logger.debug("Scanned file {}: {}", filesProcessed, file);
         }
 
         @Override
         public void onScanCompleted(ScanResult result) {
             logger.info("Scan completed. Found {} files, {} errors",
-                    result.getScannedFiles().size(), result.getErrors().size());
+                    result.getScannedFileCount(), result.getErrors().size());
         }
 
         @Override
@@ -682,6 +1013,10 @@ public class FileProcessor {
         private final long totalBytes;
         /** Total bytes processed. */
         private final long processedBytes;
+        /** Number of unchanged files carried over from the parent snapshot. */
+        private final int unchangedFiles;
+        /** ID of the snapshot the files were recorded in, or null if unknown. */
+        private final String snapshotId;
 
         /**
          * Creates a new ProcessingResult.
@@ -690,12 +1025,19 @@ public class FileProcessor {
         @Deprecated
         public ProcessingResult(ScanResult scanResult, int processedFiles, int skippedFiles,
                               int errorFiles, long totalBytes, long processedBytes) {
+            this(scanResult, processedFiles, skippedFiles, errorFiles, totalBytes, processedBytes, 0, null);
+        }
+
+        private ProcessingResult(ScanResult scanResult, int processedFiles, int skippedFiles, int errorFiles,
+                              long totalBytes, long processedBytes, int unchangedFiles, String snapshotId) {
             this.scanResult = scanResult;
             this.processedFiles = processedFiles;
             this.skippedFiles = skippedFiles;
             this.errorFiles = errorFiles;
             this.totalBytes = totalBytes;
             this.processedBytes = processedBytes;
+            this.unchangedFiles = unchangedFiles;
+            this.snapshotId = snapshotId;
         }
 
         /**
@@ -712,7 +1054,26 @@ public class FileProcessor {
         public static ProcessingResult create(ScanResult scanResult, int processedFiles, int skippedFiles,
                                              int errorFiles, long totalBytes, long processedBytes) {
             return new ProcessingResult(scanResult, processedFiles, skippedFiles,
-                    errorFiles, totalBytes, processedBytes);
+                    errorFiles, totalBytes, processedBytes, 0, null);
+        }
+
+        /**
+         * Creates a new ProcessingResult for a run that recorded its files in a snapshot.
+         *
+         * @param scanResult the scan result from the filesystem scanner
+         * @param processedFiles the number of successfully processed files, including unchanged ones
+         * @param skippedFiles the number of skipped files
+         * @param errorFiles the number of files with errors
+         * @param totalBytes the total bytes in all files
+         * @param processedBytes the total bytes processed
+         * @param unchangedFiles the number of unchanged files carried over from the parent snapshot
+         * @param snapshotId the ID of the snapshot the files were recorded in
+         * @return a new ProcessingResult instance
+         */
+        public static ProcessingResult create(ScanResult scanResult, int processedFiles, int skippedFiles, int errorFiles,
+                                             long totalBytes, long processedBytes, int unchangedFiles, String snapshotId) {
+            return new ProcessingResult(scanResult, processedFiles, skippedFiles,
+                    errorFiles, totalBytes, processedBytes, unchangedFiles, snapshotId);
         }
 
         public ScanResult getScanResult() {
@@ -739,6 +1100,14 @@ public class FileProcessor {
             return processedBytes;
         }
 
+        public int getUnchangedFiles() {
+            return unchangedFiles;
+        }
+
+        public String getSnapshotId() {
+            return snapshotId;
+        }
+
         public double getProcessingPercentage() {
             return totalBytes > 0 ? (double) processedBytes / totalBytes * 100 : 0;
         }
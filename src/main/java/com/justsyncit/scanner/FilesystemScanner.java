@@ -20,6 +20,7 @@ package com.justsyncit.scanner;
 
 import java.nio.file.Path;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 /**
  * Interface for filesystem scanning operations.
@@ -37,6 +38,22 @@ public interface FilesystemScanner {
      */
     CompletableFuture<ScanResult> scanDirectory(Path directory, ScanOptions options);
 
+    /**
+     * Scans a directory recursively, publishing each scanned file to the subscriber as it is
+     * found instead of collecting it, so memory use stays flat however many files are scanned.
+     * The scan waits whenever the subscriber has no outstanding demand, and stops if the
+     * subscription is cancelled. The returned result carries only counters and errors.
+     *
+     * @param directory the directory to scan
+     * @param options the scanning options
+     * @param subscriber the subscriber receiving scanned files
+     * @return a CompletableFuture that completes with the scan result once the subscriber has
+     *         been completed
+     * @throws IllegalArgumentException if directory is null or invalid, or subscriber is null
+     */
+    CompletableFuture<ScanResult> scanDirectory(Path directory, ScanOptions options,
+                                                Flow.Subscriber<? super ScanResult.ScannedFile> subscriber);
+
     /**
      * Sets the file visitor for custom file processing.
      * If no visitor is set, default scanning behavior will be used.
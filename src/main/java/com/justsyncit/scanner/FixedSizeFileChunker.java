@@ -18,16 +18,22 @@
 
 package com.justsyncit.scanner;
 
+import com.justsyncit.concurrent.ExecutionMode;
+import com.justsyncit.concurrent.IoExecutors;
 import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.hash.ChunkId;
 import com.justsyncit.storage.ContentStore;
 import com.justsyncit.storage.StorageIntegrityException;
+import com.justsyncit.storage.metadata.ZeroExtent;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -35,12 +41,13 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of FileChunker with fixed-size chunking and async I/O.
  * Uses AsynchronousFileChannel for optimal SSD/HDD performance.
+ * Each chunk is read once and its buffer feeds both the chunk hash and the whole-file hash.
  * Follows Single Responsibility Principle by focusing only on chunking operations.
  */
 public class FixedSizeFileChunker implements FileChunker {
@@ -52,6 +59,14 @@ public class FixedSizeFileChunker implements FileChunker {
     private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
     /** Default buffer count. */
     private static final int DEFAULT_BUFFER_COUNT = 4;
+    /** Chunks of large files read concurrently when reading on virtual threads. */
+    private static final int VIRTUAL_READS_IN_FLIGHT = 1024;
+
+    /** Bytes of consecutive chunks read and hashed as one batch by the synchronous path. */
+    private static final int SYNC_BATCH_BYTES = 1024 * 1024;
+
+    /** Size of the windows in which memory-mapped files are mapped and read ahead. */
+    private static final long MAP_WINDOW_BYTES = 64L * 1024 * 1024;
 
     /** BLAKE3 service for hash calculation. */
     private final Blake3Service blake3Service;
@@ -59,8 +74,17 @@ public class FixedSizeFileChunker implements FileChunker {
     private BufferPool bufferPool;
     /** Current chunk size. */
     private volatile int chunkSize;
-    /** Executor service for async operations. */
+    /** Runs the per-file work, which waits for the file's chunk reads; never runs chunk reads itself. */
+    private final ExecutorService fileExecutor;
+    /** Runs chunk reads: a small platform pool, or a virtual thread per task. */
     private final ExecutorService executorService;
+    /** Runs chunk hashing; a bounded platform pool when reads run on virtual threads. */
+    private final HashExecutor hashExecutor;
+    /** Bounds the chunks read concurrently on virtual threads; null when the platform pool bounds them. */
+    private final Semaphore readPermits;
+    /** Loads upcoming windows of memory-mapped files on one daemon thread, started on first use. */
+    private final ExecutorService readAheadExecutor =
+            IoExecutors.newExecutor("FixedSizeFileChunker-readahead", 1, ExecutionMode.PLATFORM);
     /** Whether the chunker has been closed. */
     private volatile boolean closed;
     /** Content store for storing chunks. */
@@ -102,6 +126,25 @@ public class FixedSizeFileChunker implements FileChunker {
      */
     public static FixedSizeFileChunker create(Blake3Service blake3Service, BufferPool bufferPool, int chunkSize,
                                              ContentStore contentStore) {
+        return create(blake3Service, bufferPool, chunkSize, contentStore, IoExecutors.defaultMode());
+    }
+
+    /**
+     * Creates a new FixedSizeFileChunker that reads in the given execution mode. In virtual mode
+     * every chunk of a large file is read on its own virtual thread, up to
+     * {@value #VIRTUAL_READS_IN_FLIGHT} at once, while hashing runs on a pool of platform threads
+     * sized to the processor count.
+     *
+     * @param blake3Service BLAKE3 service for hash calculation
+     * @param bufferPool    buffer pool for memory management
+     * @param chunkSize    chunk size in bytes
+     * @param contentStore  content store for storing chunks, may be null
+     * @param executionMode how the threads reading and storing chunks are provided
+     * @return a new FixedSizeFileChunker
+     * @throws IllegalArgumentException if parameters are invalid
+     */
+    public static FixedSizeFileChunker create(Blake3Service blake3Service, BufferPool bufferPool, int chunkSize,
+                                             ContentStore contentStore, ExecutionMode executionMode) {
         if (blake3Service == null) {
             throw new IllegalArgumentException("BLAKE3 service cannot be null");
         }
@@ -112,7 +155,8 @@ public class FixedSizeFileChunker implements FileChunker {
             throw new IllegalArgumentException("Chunk size must be positive");
         }
 
-        return new FixedSizeFileChunker(blake3Service, bufferPool, chunkSize, contentStore);
+        return new FixedSizeFileChunker(blake3Service, bufferPool, chunkSize, contentStore,
+                IoExecutors.resolve(executionMode));
     }
 
     /**
@@ -125,12 +169,7 @@ public class FixedSizeFileChunker implements FileChunker {
     @Deprecated
     public FixedSizeFileChunker(Blake3Service blake3Service) {
         // No validation in constructor - use static factory method instead
-        this.blake3Service = blake3Service;
-        this.bufferPool = ByteBufferPool.create();
-        this.chunkSize = DEFAULT_CHUNK_SIZE;
-        this.contentStore = null;
-        this.executorService = Executors.newFixedThreadPool(DEFAULT_BUFFER_COUNT);
-        this.closed = false;
+        this(blake3Service, ByteBufferPool.create(), DEFAULT_CHUNK_SIZE, null, IoExecutors.defaultMode());
     }
 
     /**
@@ -147,12 +186,7 @@ public class FixedSizeFileChunker implements FileChunker {
     @SuppressFBWarnings("EI_EXPOSE_REP2")
     public FixedSizeFileChunker(Blake3Service blake3Service, BufferPool bufferPool, int chunkSize) {
         // No validation in constructor - use static factory method instead
-        this.blake3Service = blake3Service;
-        this.bufferPool = bufferPool;
-        this.chunkSize = chunkSize;
-        this.contentStore = null;
-        this.executorService = Executors.newFixedThreadPool(DEFAULT_BUFFER_COUNT);
-        this.closed = false;
+        this(blake3Service, bufferPool, chunkSize, null, IoExecutors.defaultMode());
     }
 
     /**
@@ -171,11 +205,25 @@ public class FixedSizeFileChunker implements FileChunker {
     public FixedSizeFileChunker(Blake3Service blake3Service, BufferPool bufferPool, int chunkSize,
                                 ContentStore contentStore) {
         // No validation in constructor - use static factory method instead
+        this(blake3Service, bufferPool, chunkSize, contentStore, IoExecutors.defaultMode());
+    }
+
+    /**
+     * Creates a new FixedSizeFileChunker reading in the given, already resolved, execution mode.
+     */
+    @SuppressWarnings("EI_EXPOSE_REP2")
+    @SuppressFBWarnings("EI_EXPOSE_REP2")
+    private FixedSizeFileChunker(Blake3Service blake3Service, BufferPool bufferPool, int chunkSize,
+                                 ContentStore contentStore, ExecutionMode executionMode) {
         this.blake3Service = blake3Service;
         this.bufferPool = bufferPool;
         this.chunkSize = chunkSize;
         this.contentStore = contentStore;
-        this.executorService = Executors.newFixedThreadPool(DEFAULT_BUFFER_COUNT);
+        // Files wait for their chunk reads, so sharing a pool with them lets waiting files take every thread
+        this.fileExecutor = IoExecutors.newExecutor("FixedSizeFileChunker-file", DEFAULT_BUFFER_COUNT, executionMode);
+        this.executorService = IoExecutors.newExecutor("FixedSizeFileChunker", DEFAULT_BUFFER_COUNT, executionMode);
+        this.hashExecutor = HashExecutor.create("FixedSizeFileChunker-hash", executionMode);
+        this.readPermits = executionMode == ExecutionMode.VIRTUAL ? new Semaphore(VIRTUAL_READS_IN_FLIGHT) : null;
         this.closed = false;
     }
 
@@ -209,7 +257,7 @@ public class FixedSizeFileChunker implements FileChunker {
                 logger.error("Error chunking file: {}", file, e);
                 return FileChunker.ChunkingResult.createFailed(file, e);
             }
-        }, executorService);
+        }, fileExecutor);
     }
 
     @Override
@@ -273,7 +321,7 @@ public class FixedSizeFileChunker implements FileChunker {
         if (fileSize == 0) {
             try {
                 String fileHash = blake3Service.hashBuffer(new byte[0]);
-                return new FileChunker.ChunkingResult(file, 0, 0, 0, fileHash, new ArrayList<>());
+                return new FileChunker.ChunkingResult(file, 0, fileHash, new ChunkList(0));
             } catch (Exception e) {
                 return FileChunker.ChunkingResult.createFailed(file, e);
             }
@@ -281,7 +329,7 @@ public class FixedSizeFileChunker implements FileChunker {
 
         // Calculate number of chunks
         int chunkCount = (int) Math.ceil((double) fileSize / effectiveChunkSize);
-        List<String> chunkHashes = new ArrayList<>(chunkCount);
+        ChunkList chunkList = new ChunkList(chunkCount);
 
         logger.debug("Chunking file {} ({} bytes) into {} chunks of {} bytes each",
                 file, fileSize, chunkCount, effectiveChunkSize);
@@ -290,10 +338,13 @@ public class FixedSizeFileChunker implements FileChunker {
         // Async I/O provides no benefit for small files and causes channel closure problems
         boolean useAsyncIO = options.isUseAsyncIO() && fileSize >= 1024 * 1024;
 
-        if (useAsyncIO) {
-            return performAsyncChunking(file, options, effectiveChunkSize, fileSize, chunkCount, chunkHashes);
+        long mappingThreshold = options.getMemoryMappingThreshold();
+        if (mappingThreshold > 0 && fileSize >= mappingThreshold) {
+            return performMappedChunking(file, options, effectiveChunkSize, fileSize, chunkCount, chunkList);
+        } else if (useAsyncIO) {
+            return performAsyncChunking(file, options, effectiveChunkSize, fileSize, chunkCount, chunkList);
         } else {
-            return performSyncChunking(file, options, effectiveChunkSize, fileSize, chunkCount, chunkHashes);
+            return performSyncChunking(file, options, effectiveChunkSize, fileSize, chunkCount, chunkList);
         }
     }
 
@@ -301,13 +352,16 @@ public class FixedSizeFileChunker implements FileChunker {
      * Performs chunking using asynchronous I/O.
      */
     private FileChunker.ChunkingResult performAsyncChunking(Path file, ChunkingOptions options, int chunkSize,
-                                             long fileSize, int chunkCount, List<String> chunkHashes) {
+                                             long fileSize, int chunkCount, ChunkList chunkList) {
         AsynchronousFileChannel channel = null;
         try {
             channel = AsynchronousFileChannel.open(file, StandardOpenOption.READ);
-            String fileHash = calculateFileHash(channel, fileSize);
+            OrderedFileHasher fileHasher = new OrderedFileHasher(blake3Service.createIncrementalHasher(), hashExecutor);
             AtomicInteger completedChunks = new AtomicInteger(0);
             CompletableFuture<Void>[] chunkFutures = new CompletableFuture[chunkCount];
+            // Chunks complete out of order; keep their IDs in file order, null for all-zero chunks
+            ChunkId[] orderedIds = new ChunkId[chunkCount];
+            boolean[] completed = new boolean[chunkCount];
 
             // Process chunks concurrently
             for (int i = 0; i < chunkCount; i++) {
@@ -315,29 +369,25 @@ public class FixedSizeFileChunker implements FileChunker {
                 final long offset = (long) i * chunkSize;
                 final int length = (int) Math.min(chunkSize, fileSize - offset);
 
-                chunkFutures[i] = processChunkAsync(channel, offset, length, chunkIndex)
-                        .thenAccept(hash -> {
-                            synchronized (chunkHashes) {
-                                chunkHashes.add(hash);
-                            }
+                // Permits are taken in chunk order, so the chunk the file hash waits for always has one
+                acquireReadPermit(fileHasher);
+                chunkFutures[i] = processChunkAsync(channel, offset, length, chunkIndex, fileHasher,
+                        options.isDetectSparseFiles())
+                        .thenAccept(chunkId -> {
+                            orderedIds[chunkIndex] = chunkId;
+                            completed[chunkIndex] = true;
                             completedChunks.incrementAndGet();
                         })
                         .exceptionally(throwable -> {
                             logger.error("Error processing chunk at offset {} length {}", offset, length, throwable);
+                            fileHasher.fail();
                             return null; // Return null for exceptionally case
                         });
             }
 
-            // Wait for all chunks to complete with timeout
+            // Chunk reads run on their own pool, so they always make progress while this waits
             try {
-                CompletableFuture.allOf(chunkFutures).get(120, java.util.concurrent.TimeUnit.SECONDS);
-            } catch (java.util.concurrent.TimeoutException e) {
-                logger.error("Timeout waiting for chunk processing after 120 seconds", e);
-                // Cancel any remaining futures
-                for (CompletableFuture<?> future : chunkFutures) {
-                    future.cancel(true);
-                }
-                throw new java.util.concurrent.CompletionException("Chunk processing timed out after 120 seconds", e);
+                CompletableFuture.allOf(chunkFutures).get();
             } catch (java.lang.InterruptedException e) {
                 Thread.currentThread().interrupt();
                 throw new java.util.concurrent.CompletionException("Interrupted while waiting for chunk processing", e);
@@ -345,8 +395,18 @@ public class FixedSizeFileChunker implements FileChunker {
                 throw new java.util.concurrent.CompletionException("Failed to process chunks", e);
             }
 
-            FileChunker.ChunkingResult result = new FileChunker.ChunkingResult(
-                    file, chunkCount, fileSize, 0, fileHash, chunkHashes);
+            for (int i = 0; i < chunkCount; i++) {
+                if (!completed[i]) {
+                    throw new IOException("File hash incomplete: a chunk failed");
+                } else if (orderedIds[i] == null) {
+                    chunkList.addZeros(Math.min(chunkSize, fileSize - (long) i * chunkSize));
+                } else {
+                    chunkList.addChunk(orderedIds[i]);
+                }
+            }
+            // Fails if any chunk did not make it into the file hash
+            String fileHash = fileHasher.digest(chunkCount);
+            FileChunker.ChunkingResult result = new FileChunker.ChunkingResult(file, fileSize, fileHash, chunkList);
 
             // Close channel after all async operations complete successfully
             if (channel != null) {
@@ -358,7 +418,7 @@ public class FixedSizeFileChunker implements FileChunker {
             }
 
             return result;
-        } catch (IOException e) {
+        } catch (IOException | com.justsyncit.hash.HashingException e) {
             // Close channel on exception
             if (channel != null) {
                 try {
@@ -387,22 +447,22 @@ public class FixedSizeFileChunker implements FileChunker {
      * Performs chunking using synchronous I/O.
      */
     private FileChunker.ChunkingResult performSyncChunking(Path file, ChunkingOptions options, int chunkSize,
-                                             long fileSize, int chunkCount, List<String> chunkHashes) {
+                                             long fileSize, int chunkCount, ChunkList chunkList) {
         AsynchronousFileChannel channel = null;
         try {
             channel = AsynchronousFileChannel.open(file, StandardOpenOption.READ);
-            String fileHash = calculateFileHash(channel, fileSize);
-
-            // Process chunks sequentially
-            for (int i = 0; i < chunkCount; i++) {
-                long offset = (long) i * chunkSize;
-                int length = (int) Math.min(chunkSize, fileSize - offset);
-
-                String chunkHash = processChunkSync(channel, offset, length);
-                chunkHashes.add(chunkHash);
+            // A single-chunk file hashes to its chunk's hash, so it needs no separate file hash
+            OrderedFileHasher fileHasher = chunkCount > 1
+                    ? new OrderedFileHasher(blake3Service.createIncrementalHasher(), hashExecutor) : null;
+
+            // Process chunks sequentially, hashing consecutive chunks in batches
+            int batchChunks = Math.max(1, SYNC_BATCH_BYTES / chunkSize);
+            for (int first = 0; first < chunkCount; first += batchChunks) {
+                int count = Math.min(batchChunks, chunkCount - first);
+                processChunkBatchSync(channel, first, count, chunkSize, fileSize, fileHasher,
+                        options.isDetectSparseFiles(), chunkList);
             }
-
-            return new FileChunker.ChunkingResult(file, chunkCount, fileSize, 0, fileHash, chunkHashes);
+            return createResult(file, chunkCount, fileSize, fileHasher, chunkList);
         } catch (Exception e) {
             return FileChunker.ChunkingResult.createFailed(file, e);
         } finally {
@@ -416,14 +476,85 @@ public class FixedSizeFileChunker implements FileChunker {
         }
     }
 
+    /**
+     * Performs chunking over memory-mapped windows of the file. Chunks are hashed as slices of the
+     * mapping instead of being read into pooled buffers, and the next window is loaded in the
+     * background while the current one is hashed, much like sequential read-ahead.
+     */
+    private FileChunker.ChunkingResult performMappedChunking(Path file, ChunkingOptions options, int chunkSize,
+                                             long fileSize, int chunkCount, ChunkList chunkList) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // A single-chunk file hashes to its chunk's hash, so it needs no separate file hash
+            OrderedFileHasher fileHasher = chunkCount > 1
+                    ? new OrderedFileHasher(blake3Service.createIncrementalHasher(), hashExecutor) : null;
+            // Whole chunks per window, so that no chunk spans two mappings
+            long windowSize = Math.max(1, MAP_WINDOW_BYTES / chunkSize) * (long) chunkSize;
+            int batchChunks = Math.max(1, SYNC_BATCH_BYTES / chunkSize);
+
+            MappedByteBuffer window = map(channel, 0, windowSize, fileSize);
+            for (long windowStart = 0; windowStart < fileSize; windowStart += windowSize) {
+                MappedByteBuffer next = null;
+                if (windowStart + windowSize < fileSize) {
+                    next = map(channel, windowStart + windowSize, windowSize, fileSize);
+                    CompletableFuture.runAsync(next::load, readAheadExecutor);
+                }
+
+                int firstChunk = (int) (windowStart / chunkSize);
+                int windowChunks = (int) ((window.capacity() + (long) chunkSize - 1) / chunkSize);
+                for (int first = 0; first < windowChunks; first += batchChunks) {
+                    ByteBuffer[] slices = new ByteBuffer[Math.min(batchChunks, windowChunks - first)];
+                    for (int i = 0; i < slices.length; i++) {
+                        int offset = (first + i) * chunkSize;
+                        slices[i] = window.slice(offset, Math.min(chunkSize, window.capacity() - offset));
+                    }
+                    recordChunks(slices, firstChunk + first, fileHasher, options.isDetectSparseFiles(), chunkList);
+                }
+                window = next;
+            }
+            return createResult(file, chunkCount, fileSize, fileHasher, chunkList);
+        } catch (Exception e) {
+            return FileChunker.ChunkingResult.createFailed(file, e);
+        }
+    }
+
+    /**
+     * Maps the window of the file starting at the given position, up to the end of the file.
+     */
+    private static MappedByteBuffer map(FileChannel channel, long position, long windowSize, long fileSize)
+            throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, fileSize - position));
+    }
+
+    /**
+     * Creates the result of sequential chunking once every chunk has been recorded.
+     */
+    private FileChunker.ChunkingResult createResult(Path file, int chunkCount, long fileSize,
+                                                    OrderedFileHasher fileHasher, ChunkList chunkList)
+            throws IOException, com.justsyncit.hash.HashingException {
+        long sparseSize = chunkList.getZeroLength();
+        String fileHash;
+        if (fileHasher != null) {
+            fileHash = fileHasher.digest(chunkCount);
+        } else if (sparseSize > 0) {
+            // A single all-zero chunk
+            Blake3Service.Blake3IncrementalHasher zeroHasher = blake3Service.createIncrementalHasher();
+            ZeroExtent.hashZeros(zeroHasher, sparseSize);
+            fileHash = zeroHasher.digest();
+        } else {
+            fileHash = chunkList.getChunkId(0).toHex();
+        }
+        return new FileChunker.ChunkingResult(file, fileSize, fileHash, chunkList);
+    }
+
     /**
      * Processes a single chunk asynchronously with enhanced error handling.
      */
-    private CompletableFuture<String> processChunkAsync(AsynchronousFileChannel channel, long offset, int length,
-                                                    int chunkIndex) {
+    private CompletableFuture<ChunkId> processChunkAsync(AsynchronousFileChannel channel, long offset, int length,
+                                                    int chunkIndex, OrderedFileHasher fileHasher,
+                                                    boolean detectZeros) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                return processChunkSync(channel, offset, length);
+                return processChunkSync(channel, offset, length, chunkIndex, fileHasher, detectZeros);
             } catch (OutOfMemoryError e) {
                 logger.error("Out of memory while processing chunk at offset {} length {}", offset, length, e);
                 throw new java.util.concurrent.CompletionException("Insufficient memory for chunk processing", e);
@@ -431,137 +562,173 @@ public class FixedSizeFileChunker implements FileChunker {
                 logger.error("Unexpected error processing chunk at offset {} length {} chunk {}",
                         offset, length, chunkIndex, e);
                 throw new java.util.concurrent.CompletionException("Failed to process chunk " + chunkIndex, e);
+            } finally {
+                if (readPermits != null) {
+                    readPermits.release();
+                }
             }
         }, executorService);
     }
 
     /**
-     * Processes a single chunk synchronously.
+     * Waits until another chunk may be read, when reading on virtual threads.
      */
-    private String processChunkSync(AsynchronousFileChannel channel, long offset, int length) {
-        ByteBuffer buffer = bufferPool.acquire(length);
+    private void acquireReadPermit(OrderedFileHasher fileHasher) {
+        if (readPermits == null) {
+            return;
+        }
         try {
-            // Read chunk data
-            channel.read(buffer, offset).get();
-            buffer.flip();
-
-            // Calculate hash
-            byte[] chunkData = new byte[buffer.remaining()];
-            buffer.get(chunkData);
-
-            String hash = blake3Service.hashBuffer(chunkData);
+            readPermits.acquire();
+        } catch (java.lang.InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Chunks already submitted must not wait for the ones that will never be
+            fileHasher.fail();
+            throw new java.util.concurrent.CompletionException("Interrupted while submitting chunks", e);
+        }
+    }
 
-            // Store chunk if content store is available
-            if (contentStore != null) {
-                try {
-                    // Just try to store the chunk - content store should handle deduplication
-                    // This avoids the extra existsChunk check which can cause database contention
-                    contentStore.storeChunk(chunkData);
-                    logger.debug("Stored chunk {} ({} bytes)", hash, chunkData.length);
-                } catch (IOException e) {
-                    logger.warn("Failed to store chunk {}: {}", hash, e.getMessage());
-                    // Don't fail the operation - the hash is still valid
-                }
+    /**
+     * Processes a single chunk synchronously, feeding its data to the file hash as well.
+     * An all-zero chunk is not stored, and null is returned instead of its ID.
+     */
+    private ChunkId processChunkSync(AsynchronousFileChannel channel, long offset, int length,
+                                    int chunkIndex, OrderedFileHasher fileHasher, boolean detectZeros) {
+        ByteBuffer buffer = bufferPool.acquire(length);
+        boolean fed = false;
+        try {
+            readChunk(channel, buffer, offset, length);
+            if (detectZeros && ZeroExtent.isAllZero(buffer)) {
+                fileHasher.updateZeros(chunkIndex, length);
+                fed = true;
+                return null;
             }
 
-            return hash;
+            // Hash the pooled (direct) buffer in place; the duplicates keep the buffer readable for storage
+            ByteBuffer view = buffer.duplicate();
+            ChunkId chunkId = hashExecutor.call(() -> blake3Service.hashChunkId(view));
+            fileHasher.update(chunkIndex, buffer.duplicate());
+            fed = true;
+
+            storeChunk(buffer, chunkId);
+            return chunkId;
         } catch (java.lang.InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new java.util.concurrent.CompletionException("Interrupted while processing chunk", e);
-        } catch (java.util.concurrent.ExecutionException e) {
-            throw new java.util.concurrent.CompletionException("Failed to read chunk", e);
+        } catch (java.util.concurrent.ExecutionException | IOException e) {
+            throw new java.util.concurrent.CompletionException("Failed to read or store chunk", e);
         } catch (com.justsyncit.hash.HashingException e) {
             throw new java.util.concurrent.CompletionException("Failed to hash chunk", e);
         } catch (RuntimeException e) {
             logger.error("Error processing chunk at offset {} length {}", offset, length, e);
             throw new java.util.concurrent.CompletionException("Failed to process chunk", e);
         } finally {
+            if (!fed) {
+                // Later chunks must not wait for a chunk that will never arrive
+                fileHasher.fail();
+            }
             bufferPool.release(buffer);
         }
     }
 
     /**
-     * Calculates the hash of the entire file using incremental hashing for large files.
+     * Processes consecutive chunks synchronously, reading them into pooled buffers and recording
+     * them with {@link #recordChunks}.
      */
-    private String calculateFileHash(AsynchronousFileChannel channel, long fileSize) throws IOException {
-        // Handle empty file case
-        if (fileSize == 0) {
-            try {
-                return blake3Service.hashBuffer(new byte[0]);
-            } catch (Exception e) {
-                logger.error("Error hashing empty file", e);
-                throw new IOException("Failed to calculate empty file hash", e);
-            }
-        }
-
+    private void processChunkBatchSync(AsynchronousFileChannel channel, int firstChunk, int count, int chunkSize,
+                                       long fileSize, OrderedFileHasher fileHasher, boolean detectZeros,
+                                       ChunkList chunkList) {
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        boolean recorded = false;
         try {
-            // Use incremental hashing for large files to avoid memory issues
-            if (fileSize <= bufferPool.getDefaultBufferSize()) {
-                // Small file - read all at once
-                ByteBuffer buffer = bufferPool.acquire((int) fileSize);
-                try {
-                    int bytesRead = channel.read(buffer, 0).get();
-                    buffer.flip();
-
-                    byte[] fileData = new byte[bytesRead];
-                    buffer.get(fileData);
-
-                    return blake3Service.hashBuffer(fileData);
-                } finally {
+            for (int i = 0; i < count; i++) {
+                long offset = (long) (firstChunk + i) * chunkSize;
+                int length = (int) Math.min(chunkSize, fileSize - offset);
+                buffers[i] = bufferPool.acquire(length);
+                readChunk(channel, buffers[i], offset, length);
+            }
+            recordChunks(buffers, firstChunk, fileHasher, detectZeros, chunkList);
+            recorded = true;
+        } catch (java.lang.InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.util.concurrent.CompletionException("Interrupted while processing chunks", e);
+        } catch (java.util.concurrent.ExecutionException | IOException e) {
+            throw new java.util.concurrent.CompletionException("Failed to read or store chunks", e);
+        } catch (com.justsyncit.hash.HashingException e) {
+            throw new java.util.concurrent.CompletionException("Failed to hash chunks", e);
+        } finally {
+            if (!recorded && fileHasher != null) {
+                fileHasher.fail();
+            }
+            for (ByteBuffer buffer : buffers) {
+                if (buffer != null) {
                     bufferPool.release(buffer);
                 }
-            } else {
-                // Large file - use incremental hashing
-                return calculateFileHashIncrementally(channel, fileSize);
             }
-        } catch (Exception e) {
-            logger.error("Error calculating file hash", e);
-            throw new IOException("Failed to calculate file hash", e);
         }
     }
 
     /**
-     * Calculates file hash incrementally for large files.
+     * Records consecutive chunks, appending them to the chunk list. They are hashed with one batch
+     * call, then fed to the file hash (if any) in order and stored. All-zero chunks are appended as
+     * zero extents instead, without being stored.
      */
-    private String calculateFileHashIncrementally(AsynchronousFileChannel channel, long fileSize) throws IOException {
-        try {
-            com.justsyncit.hash.IncrementalHasherFactory hasherFactory =
-                    new com.justsyncit.hash.Blake3IncrementalHasherFactory(
-                            com.justsyncit.hash.Sha256HashAlgorithm.create());
-            com.justsyncit.hash.IncrementalHasherFactory.IncrementalHasher incrementalHasher =
-                    hasherFactory.createIncrementalHasher();
-
-            ByteBuffer buffer = bufferPool.acquire(bufferPool.getDefaultBufferSize());
-            try {
-                long position = 0;
-                while (position < fileSize) {
-                    buffer.clear();
-                    int bytesRead = channel.read(buffer, position).get();
-                    if (bytesRead <= 0) {
-                        break;
-                    }
-
-                    buffer.flip();
-                    int actualBytesRead = buffer.remaining();
-                    if (actualBytesRead <= 0) {
-                        break;
-                    }
-
-                    // Create a byte array of the exact size needed
-                    byte[] chunkData = new byte[actualBytesRead];
-                    buffer.get(chunkData);
+    private void recordChunks(ByteBuffer[] chunks, int firstChunk, OrderedFileHasher fileHasher, boolean detectZeros,
+                              ChunkList chunkList)
+            throws IOException, InterruptedException, com.justsyncit.hash.HashingException {
+        boolean[] zero = new boolean[chunks.length];
+        List<ByteBuffer> views = new ArrayList<>(chunks.length);
+        for (int i = 0; i < chunks.length; i++) {
+            zero[i] = detectZeros && ZeroExtent.isAllZero(chunks[i]);
+            if (!zero[i]) {
+                views.add(chunks[i].duplicate());
+            }
+        }
 
-                    incrementalHasher.update(chunkData);
-                    position += bytesRead;
+        ChunkId[] ids = views.isEmpty() ? new ChunkId[0] : hashExecutor.call(() -> blake3Service.hashAll(views));
+        int next = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            if (zero[i]) {
+                if (fileHasher != null) {
+                    fileHasher.updateZeros(firstChunk + i, chunks[i].remaining());
                 }
-                return incrementalHasher.digest();
-            } finally {
-                bufferPool.release(buffer);
+                chunkList.addZeros(chunks[i].remaining());
+                continue;
             }
-        } catch (Exception e) {
-            logger.error("Error in incremental file hashing", e);
-            throw new IOException("Failed to calculate incremental file hash", e);
+            ChunkId chunkId = ids[next++];
+            if (fileHasher != null) {
+                fileHasher.update(firstChunk + i, chunks[i].duplicate());
+            }
+            storeChunk(chunks[i], chunkId);
+            chunkList.addChunk(chunkId);
+        }
+    }
+
+    /**
+     * Reads a chunk into the buffer and flips it; a single read may return fewer bytes than requested.
+     */
+    private void readChunk(AsynchronousFileChannel channel, ByteBuffer buffer, long offset, int length)
+            throws IOException, InterruptedException, java.util.concurrent.ExecutionException {
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()).get() < 0) {
+                throw new IOException("Unexpected end of file at offset " + (offset + buffer.position()));
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Stores the remaining bytes of a chunk buffer under its ID if a content store is available.
+     * A failure fails the chunking of the file, so no file is recorded with a chunk that was not stored.
+     */
+    private void storeChunk(ByteBuffer buffer, ChunkId chunkId) throws IOException {
+        if (contentStore == null) {
+            return;
         }
+        // Just try to store the chunk - content store should handle deduplication
+        // This avoids the extra existsChunk check which can cause database contention
+        contentStore.storeChunk(chunkId, buffer);
+        logger.debug("Stored chunk {} ({} bytes)", chunkId, buffer.remaining());
     }
 
     /**
@@ -573,7 +740,10 @@ public class FixedSizeFileChunker implements FileChunker {
         }
 
         closed = true;
+        fileExecutor.shutdown();
         executorService.shutdown();
+        hashExecutor.shutdown();
+        readAheadExecutor.shutdown();
         bufferPool.clear();
         logger.info("Closed FixedSizeFileChunker");
     }
@@ -0,0 +1,115 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.scanner;
+
+import com.justsyncit.concurrent.ExecutionMode;
+import com.justsyncit.concurrent.IoExecutors;
+import com.justsyncit.hash.HashingException;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs the hashing of chunks read by a chunker. With platform threads the reading thread hashes
+ * its own chunks. With virtual threads the hashing is handed to a bounded pool of platform threads,
+ * so that CPU-bound work never occupies the carrier threads the blocking readers run on.
+ */
+final class HashExecutor {
+
+    /** Hashes on the calling thread. */
+    static final HashExecutor DIRECT = new HashExecutor(null);
+
+    /** Pool of platform threads doing the hashing, or null to hash on the calling thread. */
+    private final ExecutorService executor;
+
+    /**
+     * Work that hashes data.
+     *
+     * @param <T> the result type
+     */
+    interface HashTask<T> {
+        /**
+         * Hashes the data.
+         *
+         * @return the result
+         * @throws HashingException if hashing fails
+         */
+        T call() throws HashingException;
+    }
+
+    /**
+     * Creates a new HashExecutor.
+     *
+     * @param executor pool of platform threads doing the hashing, or null to hash on the calling thread
+     */
+    private HashExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Creates the hash executor for readers running in the given mode.
+     *
+     * @param name the thread name prefix of the hashing pool
+     * @param mode the execution mode of the reading threads
+     * @return {@link #DIRECT} for platform readers, otherwise a new bounded pool
+     */
+    static HashExecutor create(String name, ExecutionMode mode) {
+        if (IoExecutors.resolve(mode) == ExecutionMode.PLATFORM) {
+            return DIRECT;
+        }
+        return new HashExecutor(IoExecutors.newCpuExecutor(name));
+    }
+
+    /**
+     * Runs a hashing task and waits for its result.
+     *
+     * @param task the hashing task
+     * @param <T> the result type
+     * @return the result of the task
+     * @throws HashingException if hashing fails
+     * @throws InterruptedException if interrupted while waiting for the hashing pool
+     */
+    <T> T call(HashTask<T> task) throws HashingException, InterruptedException {
+        if (executor == null) {
+            return task.call();
+        }
+        try {
+            return executor.submit(task::call).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HashingException) {
+                throw (HashingException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new HashingException("Hashing failed", cause);
+        }
+    }
+
+    /**
+     * Stops the hashing pool, if any, once queued tasks have run.
+     */
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -18,6 +18,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -36,25 +37,52 @@ public class NioFilesystemScanner implements FilesystemScanner {
 
     @Override
     public CompletableFuture<ScanResult> scanDirectory(Path directory, ScanOptions options) {
+        return scan(directory, options, null);
+    }
+
+    @Override
+    public CompletableFuture<ScanResult> scanDirectory(Path directory, ScanOptions options,
+                                                       Flow.Subscriber<? super ScanResult.ScannedFile> subscriber) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("Subscriber cannot be null");
+        }
+        return scan(directory, options, subscriber);
+    }
+
+    /**
+     * Scans a directory, collecting scanned files or publishing them to a subscriber.
+     *
+     * @param directory the directory to scan
+     * @param options the scanning options
+     * @param subscriber the subscriber to publish to, or null to collect files
+     * @return a CompletableFuture that completes with the scan result
+     */
+    private CompletableFuture<ScanResult> scan(Path directory, ScanOptions options,
+                                               Flow.Subscriber<? super ScanResult.ScannedFile> subscriber) {
         return CompletableFuture.supplyAsync(() -> {
             final ScanOptions finalOptions = options != null ? options : new ScanOptions();
+            ScanSink sink = subscriber != null ? ScanSink.publishing(subscriber) : ScanSink.collecting();
 
-            if (directory == null) {
-                throw new IllegalArgumentException("Directory cannot be null");
-            }
+            try {
+                if (directory == null) {
+                    throw new IllegalArgumentException("Directory cannot be null");
+                }
 
-            // Check if directory exists and is actually a directory
-            if (!Files.exists(directory)) {
-                throw new IllegalArgumentException("Directory does not exist: " + directory);
-            }
-            if (!Files.isDirectory(directory)) {
-                throw new IllegalArgumentException("Path is not a directory: " + directory);
+                // Check if directory exists and is actually a directory
+                if (!Files.exists(directory)) {
+                    throw new IllegalArgumentException("Directory does not exist: " + directory);
+                }
+                if (!Files.isDirectory(directory)) {
+                    throw new IllegalArgumentException("Path is not a directory: " + directory);
+                }
+            } catch (IllegalArgumentException e) {
+                sink.fail(e);
+                throw e;
             }
 
             logger.info("Starting scan of directory: {} with options: {}", directory, finalOptions);
 
             Instant startTime = Instant.now();
-            List<ScanResult.ScannedFile> scannedFiles = new ArrayList<>();
             List<ScanResult.ScanError> errors = new ArrayList<>();
             Map<String, Object> metadata = new HashMap<>();
             AtomicLong filesProcessed = new AtomicLong(0);
@@ -64,32 +92,37 @@ public class NioFilesystemScanner implements FilesystemScanner {
             }
 
             try {
-                NioFileVisitor nioVisitor = new NioFileVisitor(finalOptions, scannedFiles, errors, filesProcessed);
+                NioFileVisitor nioVisitor = new NioFileVisitor(finalOptions, sink, errors, filesProcessed);
                 Set<FileVisitOption> visitOptions = EnumSet.noneOf(FileVisitOption.class);
                 if (finalOptions.getSymlinkStrategy() == SymlinkStrategy.FOLLOW) {
                     visitOptions.add(FileVisitOption.FOLLOW_LINKS);
                 }
                 Files.walkFileTree(directory, visitOptions, finalOptions.getMaxDepth(), nioVisitor);
                 Instant endTime = Instant.now();
-                ScanResult result = new ScanResult(directory, scannedFiles, errors, startTime, endTime, metadata);
+                ScanResult result = sink.toResult(directory, errors, startTime, endTime, metadata);
+                sink.complete();
                 if (progressListener != null) {
                     progressListener.onScanCompleted(result);
                 }
 
                 logger.info("Scan completed. Files: {}, Errors: {}, Duration: {}ms",
-                        scannedFiles.size(), errors.size(), result.getDurationMillis());
+                        result.getScannedFileCount(), errors.size(), result.getDurationMillis());
 
                 return result;
             } catch (IOException e) {
                 logger.error("Error scanning directory: {}", directory, e);
                 errors.add(new ScanResult.ScanError(directory, e, e.getMessage()));
                 Instant endTime = Instant.now();
-                ScanResult result = new ScanResult(directory, scannedFiles, errors, startTime, endTime, metadata);
+                ScanResult result = sink.toResult(directory, errors, startTime, endTime, metadata);
+                sink.complete();
                 if (progressListener != null) {
                     progressListener.onScanError(directory, e);
                 }
 
                 return result;
+            } catch (RuntimeException e) {
+                sink.fail(e);
+                throw e;
             }
         });
     }
@@ -110,8 +143,8 @@ public class NioFilesystemScanner implements FilesystemScanner {
     private class NioFileVisitor extends SimpleFileVisitor<Path> {
         /** Scan options. */
         private final ScanOptions options;
-        /** List of scanned files. */
-        private final List<ScanResult.ScannedFile> scannedFiles;
+        /** Destination of scanned files. */
+        private final ScanSink sink;
         /** List of scan errors. */
         private final List<ScanResult.ScanError> errors;
         /** Counter for processed files. */
@@ -119,10 +152,10 @@ public class NioFilesystemScanner implements FilesystemScanner {
         /** Set of visited paths to detect cycles. */
         private final Set<Path> visitedPaths = ConcurrentHashMap.newKeySet();
 
-        NioFileVisitor(ScanOptions options, List<ScanResult.ScannedFile> scannedFiles,
+        NioFileVisitor(ScanOptions options, ScanSink sink,
                 List<ScanResult.ScanError> errors, AtomicLong filesProcessed) {
             this.options = options;
-            this.scannedFiles = scannedFiles;
+            this.sink = sink;
             this.errors = errors;
             this.filesProcessed = filesProcessed;
         }
@@ -258,9 +291,12 @@ public class NioFilesystemScanner implements FilesystemScanner {
                 boolean isSparse = detectSparseFile(file, attrs);
                 // Create scanned file record
                 ScanResult.ScannedFile scannedFile = new ScanResult.ScannedFile(
-                        file, fileSize, attrs.lastModifiedTime().toInstant(), isSymlink, isSparse, linkTarget
+                        file, fileSize, attrs.lastModifiedTime().toInstant(), isSymlink, isSparse, linkTarget,
+                        attrs.isRegularFile(), ScanFilters.fileKeyOf(attrs)
                 );
-                scannedFiles.add(scannedFile);
+                if (!sink.accept(scannedFile)) {
+                    return FileVisitResult.TERMINATE;
+                }
 
                 // Call custom file visitor if set
                 if (fileVisitor != null) {
@@ -320,20 +356,12 @@ public class NioFilesystemScanner implements FilesystemScanner {
 
         /**
          * Checks if path matches include pattern.
-     *
-     * @param path the path to check
+         *
+         * @param path the path to check
          * @return true if matches include pattern
-     */
+         */
         private boolean matchesIncludePattern(Path path) {
-            if (options.getIncludePattern() == null) {
-                return true;
-            }
-            // Try full path first, then filename if that fails
-            // This handles both simple patterns (*.txt) and complex patterns (**/*.txt)
-            boolean matches = options.getIncludePattern().matches(path)
-                    || options.getIncludePattern().matches(path.getFileName());
-            logger.debug("Include pattern match for {}: {}", path, matches);
-            return matches;
+            return ScanFilters.matchesIncludePattern(options, path);
         }
 
         /**
@@ -343,15 +371,7 @@ public class NioFilesystemScanner implements FilesystemScanner {
          * @return true if matches exclude pattern
          */
         private boolean matchesExcludePattern(Path path) {
-            if (options.getExcludePattern() == null) {
-                return false;
-            }
-            // Try full path first, then filename if that fails
-            // This handles both simple patterns (*.tmp) and complex patterns
-            boolean matches = options.getExcludePattern().matches(path)
-                    || options.getExcludePattern().matches(path.getFileName());
-            logger.debug("Exclude pattern match for {}: {}", path, matches);
-            return matches;
+            return ScanFilters.matchesExcludePattern(options, path);
         }
 
         /**
@@ -362,63 +382,7 @@ public class NioFilesystemScanner implements FilesystemScanner {
          * @return true if file is sparse
          */
         private boolean detectSparseFile(Path file, BasicFileAttributes attrs) {
-            if (!options.isDetectSparseFiles()) {
-                return false;
-            }
-
-            try {
-                // On Unix systems, check for sparse file attribute
-                if (System.getProperty("os.name").toLowerCase(java.util.Locale.ROOT).contains("linux")
-                        || System.getProperty("os.name").toLowerCase(java.util.Locale.ROOT).contains("mac")) {
-
-                    try {
-                        Object sparseAttr = Files.getAttribute(file, "unix:sparse");
-                        if (sparseAttr instanceof Boolean) {
-                            return (Boolean) sparseAttr;
-                        }
-                    } catch (IllegalArgumentException e) {
-                        // 'sparse' attribute not supported on this filesystem
-                        logger.debug("Sparse attribute not supported for: {}", file);
-                    }
-                }
-
-                // Fallback: compare logical size with actual block allocation
-                try {
-                    long logicalSize = attrs.size();
-                    Object blockSize = Files.getAttribute(file, "unix:blocksize");
-                    Object blocks = Files.getAttribute(file, "unix:blocks");
-
-                    if (blockSize instanceof Integer && blocks instanceof Long) {
-                        long allocatedSize = (Long) blocks * (Integer) blockSize;
-                        // If allocated size is significantly less than logical size, it's likely sparse
-                        logger.debug("Sparse check for {}: logical={}, allocated={}, ratio={}",
-                                file, logicalSize, allocatedSize, (double) allocatedSize / logicalSize);
-                        return allocatedSize < logicalSize * 0.9;
-                    }
-                } catch (IllegalArgumentException e) {
-                    // Block attributes not supported on this filesystem
-                    logger.debug("Block attributes not supported for: {}", file);
-                } catch (IOException e) {
-                    // IO error accessing attributes
-                    logger.debug("IO error accessing block attributes for: {}", file, e);
-                }
-            } catch (UnsupportedOperationException e) {
-                // Attribute not supported on this platform
-                logger.debug("Sparse file detection not supported for: {}", file);
-            } catch (IOException e) {
-                logger.debug("Error checking sparse file attributes for: {}", file, e);
-            }
-            // For test purposes, check if filename contains "sparse" as a fallback
-            // This helps with tests on filesystems that don't support sparse files
-            Path fileNamePath = file.getFileName();
-            String fileName = fileNamePath != null
-                    ? fileNamePath.toString().toLowerCase(java.util.Locale.ROOT) : "";
-            if (fileName.contains("sparse")) {
-                logger.debug("File contains 'sparse' in name, treating as sparse for test compatibility: {}", file);
-                return true;
-            }
-
-            return false;
+            return ScanFilters.detectSparseFile(options, file, attrs);
         }
 
         /**
@@ -427,8 +391,7 @@ public class NioFilesystemScanner implements FilesystemScanner {
          * @return true if running
          */
         private boolean isRunning() {
-            // This could be enhanced with external cancellation support
-            return true;
+            return !sink.isCancelled();
         }
     }
 }
\ No newline at end of file
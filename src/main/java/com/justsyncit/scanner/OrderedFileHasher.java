@@ -0,0 +1,172 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.scanner;
+
+import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.hash.HashingException;
+import com.justsyncit.storage.metadata.ZeroExtent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Computes the hash of a whole file from the chunk buffers the chunker has already read,
+ * so that every byte is read from disk once. Chunks may be read and hashed concurrently;
+ * each one is fed to the file hash in file order, and callers of
+ * {@link #update(int, ByteBuffer)} block until the preceding chunks have been fed.
+ *
+ * <p>Chunk tasks must be started in chunk order (e.g. submitted in order to a FIFO executor)
+ * so that the chunk being waited for is always already running. Waiting uses a lock rather than
+ * a monitor, so that waiting virtual threads release their carrier thread.</p>
+ */
+final class OrderedFileHasher {
+
+    /** Incremental hasher for the file contents. */
+    private final Blake3Service.Blake3IncrementalHasher hasher;
+    /** Runs the hashing of each chunk fed. */
+    private final HashExecutor hashExecutor;
+    /** Guards the state below and orders the chunks. */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Signalled whenever a chunk was fed or the file hash failed. */
+    private final Condition turn = lock.newCondition();
+    /** Index of the next chunk to feed. */
+    private int nextChunk;
+    /** Set once a chunk failed; the file hash can then no longer be completed. */
+    private boolean failed;
+
+    /**
+     * Creates a new OrderedFileHasher.
+     *
+     * @param hasher the incremental hasher for the file contents
+     */
+    OrderedFileHasher(Blake3Service.Blake3IncrementalHasher hasher) {
+        this(hasher, HashExecutor.DIRECT);
+    }
+
+    /**
+     * Creates a new OrderedFileHasher that hashes on the given executor.
+     *
+     * @param hasher the incremental hasher for the file contents
+     * @param hashExecutor runs the hashing of each chunk fed
+     */
+    OrderedFileHasher(Blake3Service.Blake3IncrementalHasher hasher, HashExecutor hashExecutor) {
+        this.hasher = hasher;
+        this.hashExecutor = hashExecutor;
+    }
+
+    /**
+     * Feeds a chunk to the file hash once all preceding chunks have been fed.
+     *
+     * @param chunkIndex index of the chunk within the file
+     * @param data the chunk data; consumed by this call
+     * @throws IOException if a preceding chunk failed
+     * @throws InterruptedException if interrupted while waiting for preceding chunks
+     */
+    void update(int chunkIndex, ByteBuffer data) throws IOException, InterruptedException {
+        feed(chunkIndex, () -> hasher.update(data));
+    }
+
+    /**
+     * Feeds an all-zero chunk, such as a zero extent, to the file hash once all preceding chunks
+     * have been fed, without needing its data.
+     *
+     * @param chunkIndex index of the chunk within the file
+     * @param length length of the chunk in bytes
+     * @throws IOException if a preceding chunk failed
+     * @throws InterruptedException if interrupted while waiting for preceding chunks
+     */
+    void updateZeros(int chunkIndex, long length) throws IOException, InterruptedException {
+        feed(chunkIndex, () -> ZeroExtent.hashZeros(hasher, length));
+    }
+
+    /**
+     * Runs the hashing of a chunk on the hash executor once it is the chunk's turn.
+     */
+    private void feed(int chunkIndex, Runnable hashing) throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            awaitTurn(chunkIndex);
+            boolean fed = false;
+            try {
+                hashExecutor.call(() -> {
+                    hashing.run();
+                    return null;
+                });
+                fed = true;
+            } catch (HashingException e) {
+                throw new IOException("Failed to hash chunk " + chunkIndex, e);
+            } finally {
+                if (!fed) {
+                    fail();
+                }
+            }
+            nextChunk++;
+            turn.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the given chunk is the next one to feed; the lock must be held.
+     */
+    private void awaitTurn(int chunkIndex) throws IOException, InterruptedException {
+        while (nextChunk != chunkIndex && !failed) {
+            turn.await();
+        }
+        if (failed) {
+            throw new IOException("File hash aborted because an earlier chunk failed");
+        }
+    }
+
+    /**
+     * Marks the file hash as failed and releases every waiting chunk.
+     */
+    void fail() {
+        lock.lock();
+        try {
+            failed = true;
+            turn.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Completes the file hash.
+     *
+     * @param expectedChunks number of chunks the file was split into
+     * @return the hex-encoded file hash
+     * @throws IOException if not every chunk was fed
+     * @throws HashingException if hashing fails
+     */
+    String digest(int expectedChunks) throws IOException, HashingException {
+        lock.lock();
+        try {
+            if (failed || nextChunk != expectedChunks) {
+                throw new IOException("File hash incomplete: " + nextChunk + " of " + expectedChunks + " chunks hashed");
+            }
+            return hasher.digest();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,521 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.scanner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Filesystem scanner that walks directory trees in parallel on a work-stealing ForkJoin pool.
+ * Every directory is listed by its own task and each subdirectory found is forked right away,
+ * so idle threads steal whole subtrees from busy ones. Each entry's attributes are read with a
+ * single call; on filesystems with DOS attributes the hidden flag comes from that same read.
+ *
+ * <p>Filtering, symlink handling, depth limits and visitor results behave as in
+ * {@link NioFilesystemScanner}, but scanned files are returned in no particular order.
+ * The file visitor and progress listener are called from the walker threads, possibly
+ * concurrently, and must be thread-safe.</p>
+ */
+public class ParallelFilesystemScanner implements FilesystemScanner {
+    /** Logger for the filesystem scanner. */
+    private static final Logger logger = LoggerFactory.getLogger(ParallelFilesystemScanner.class);
+
+    /** File visitor for custom file processing. */
+    private volatile FileVisitor fileVisitor;
+    /** Progress listener for scan progress updates. */
+    private volatile ProgressListener progressListener;
+
+    @Override
+    public CompletableFuture<ScanResult> scanDirectory(Path directory, ScanOptions options) {
+        return scan(directory, options, null);
+    }
+
+    @Override
+    public CompletableFuture<ScanResult> scanDirectory(Path directory, ScanOptions options,
+                                                       Flow.Subscriber<? super ScanResult.ScannedFile> subscriber) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("Subscriber cannot be null");
+        }
+        return scan(directory, options, subscriber);
+    }
+
+    /**
+     * Scans a directory, collecting scanned files or publishing them to a subscriber.
+     *
+     * @param directory the directory to scan
+     * @param options the scanning options
+     * @param subscriber the subscriber to publish to, or null to collect files
+     * @return a CompletableFuture that completes with the scan result
+     */
+    private CompletableFuture<ScanResult> scan(Path directory, ScanOptions options,
+                                               Flow.Subscriber<? super ScanResult.ScannedFile> subscriber) {
+        return CompletableFuture.supplyAsync(() -> {
+            final ScanOptions finalOptions = options != null ? options : new ScanOptions();
+            ScanSink sink = subscriber != null ? ScanSink.publishing(subscriber) : ScanSink.collecting();
+
+            try {
+                if (directory == null) {
+                    throw new IllegalArgumentException("Directory cannot be null");
+                }
+                if (!Files.exists(directory)) {
+                    throw new IllegalArgumentException("Directory does not exist: " + directory);
+                }
+                if (!Files.isDirectory(directory)) {
+                    throw new IllegalArgumentException("Path is not a directory: " + directory);
+                }
+            } catch (IllegalArgumentException e) {
+                sink.fail(e);
+                throw e;
+            }
+
+            String fileStoreType = null;
+            boolean dosAttributes = false;
+            try {
+                FileStore fileStore = Files.getFileStore(directory);
+                fileStoreType = fileStore.type();
+                // Linux stores may emulate the DOS view, but there hidden means a leading dot
+                dosAttributes = fileStore.supportsFileAttributeView(DosFileAttributeView.class)
+                        && !fileStore.supportsFileAttributeView(PosixFileAttributeView.class);
+            } catch (IOException e) {
+                logger.debug("Cannot determine file store of {}", directory, e);
+            }
+            int parallelism = finalOptions.getParallelism(fileStoreType);
+
+            logger.info("Starting parallel scan of directory: {} ({} threads, file store {}) with options: {}",
+                    directory, parallelism, fileStoreType, finalOptions);
+
+            Instant startTime = Instant.now();
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("parallelism", parallelism);
+            ProgressListener listener = progressListener;
+            if (listener != null) {
+                listener.onScanStarted(directory);
+            }
+
+            Walk walk = new Walk(finalOptions, fileVisitor, listener, dosAttributes, sink);
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(walk.new RootTask(directory));
+            } catch (RuntimeException e) {
+                sink.fail(e);
+                throw e;
+            } finally {
+                pool.shutdown();
+            }
+
+            List<ScanResult.ScanError> errors = new ArrayList<>(walk.errors);
+            ScanResult result = sink.toResult(directory, errors, startTime, Instant.now(), metadata);
+            sink.complete();
+            if (listener != null) {
+                listener.onScanCompleted(result);
+            }
+
+            logger.info("Scan completed. Files: {}, Errors: {}, Duration: {}ms",
+                    result.getScannedFileCount(), errors.size(), result.getDurationMillis());
+            return result;
+        });
+    }
+
+    @Override
+    public void setFileVisitor(FileVisitor visitor) {
+        this.fileVisitor = visitor;
+    }
+
+    @Override
+    public void setProgressListener(ProgressListener listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * What the directory listing an entry should do after visiting it.
+     */
+    private enum Next {
+        /** Continue with the next entry. */
+        CONTINUE,
+        /** Skip the remaining entries of the directory. */
+        SKIP_SIBLINGS
+    }
+
+    /**
+     * State shared by all tasks of one scan.
+     */
+    private static final class Walk {
+        /** Scan options. */
+        private final ScanOptions options;
+        /** Custom file visitor, or null. */
+        private final FileVisitor visitor;
+        /** Progress listener, or null. */
+        private final ProgressListener listener;
+        /** Whether entries are read as DOS attributes, which carry the hidden flag. */
+        private final boolean dosAttributes;
+        /** Whether symbolic links are followed. */
+        private final boolean followLinks;
+        /** Destination of scanned files. */
+        private final ScanSink sink;
+        /** Scan errors. */
+        private final Queue<ScanResult.ScanError> errors = new ConcurrentLinkedQueue<>();
+        /** Counter for processed files. */
+        private final AtomicLong filesProcessed = new AtomicLong(0);
+        /** Set of visited symlink targets to detect cycles. */
+        private final Set<Path> visitedPaths = ConcurrentHashMap.newKeySet();
+        /** Set once the visitor asked to terminate the scan. */
+        private volatile boolean terminated;
+
+        Walk(ScanOptions options, FileVisitor visitor, ProgressListener listener, boolean dosAttributes,
+             ScanSink sink) {
+            this.options = options;
+            this.visitor = visitor;
+            this.listener = listener;
+            this.dosAttributes = dosAttributes;
+            this.sink = sink;
+            this.followLinks = options.getSymlinkStrategy() == SymlinkStrategy.FOLLOW;
+        }
+
+        /**
+         * Visits the scan root.
+         */
+        private final class RootTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            /** The scan root. */
+            private final transient Path root;
+
+            RootTask(Path root) {
+                this.root = root;
+            }
+
+            @Override
+            protected void compute() {
+                List<DirectoryTask> forked = new ArrayList<>(1);
+                visitEntry(root, 0, null, forked);
+                for (DirectoryTask task : forked) {
+                    task.join();
+                }
+            }
+        }
+
+        /**
+         * Lists one directory, visiting its files and forking a task per subdirectory.
+         */
+        private final class DirectoryTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            /** The directory to list. */
+            private final transient Path dir;
+            /** Depth of the directory below the scan root. */
+            private final int depth;
+            /** File key of the directory, used to detect loops when following links. */
+            private final transient Object fileKey;
+            /** Task of the parent directory, or null for the root. */
+            private final transient DirectoryTask parent;
+
+            DirectoryTask(Path dir, int depth, Object fileKey, DirectoryTask parent) {
+                this.dir = dir;
+                this.depth = depth;
+                this.fileKey = fileKey;
+                this.parent = parent;
+            }
+
+            @Override
+            protected void compute() {
+                List<DirectoryTask> forked = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                    for (Path entry : stream) {
+                        if (terminated || visitEntry(entry, depth + 1, this, forked) == Next.SKIP_SIBLINGS) {
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    visitFailed(dir, e);
+                } catch (DirectoryIteratorException e) {
+                    visitFailed(dir, e.getCause());
+                }
+                for (DirectoryTask task : forked) {
+                    task.join();
+                }
+            }
+
+            /**
+             * Checks whether this directory or one of its ancestors is the given directory.
+             */
+            private boolean isLoop(Path candidate, Object candidateKey) {
+                for (DirectoryTask task = this; task != null; task = task.parent) {
+                    try {
+                        if (candidateKey != null && task.fileKey != null
+                                ? candidateKey.equals(task.fileKey)
+                                : Files.isSameFile(candidate, task.dir)) {
+                            return true;
+                        }
+                    } catch (IOException e) {
+                        logger.debug("Cannot compare {} with {}", candidate, task.dir, e);
+                    }
+                }
+                return false;
+            }
+        }
+
+        /**
+         * Visits one directory entry, reading its attributes once. Directories within the depth
+         * limit are forked as new tasks; everything else (including directories at the limit,
+         * as with {@link Files#walkFileTree}) is visited as a file.
+         */
+        private Next visitEntry(Path path, int depth, DirectoryTask parent, List<DirectoryTask> forked) {
+            BasicFileAttributes attrs;
+            boolean isSymlink;
+            try {
+                attrs = readAttributes(path, LinkOption.NOFOLLOW_LINKS);
+                isSymlink = attrs.isSymbolicLink();
+                if (isSymlink && followLinks) {
+                    try {
+                        attrs = readAttributes(path);
+                    } catch (IOException e) {
+                        // Broken link: visit the link itself
+                        logger.debug("Cannot follow symlink: {}", path, e);
+                    }
+                }
+            } catch (IOException e) {
+                return visitFailed(path, e);
+            }
+
+            if (attrs.isDirectory() && depth < options.getMaxDepth()) {
+                if (followLinks && parent != null && parent.isLoop(path, attrs.fileKey())) {
+                    return visitFailed(path, new FileSystemLoopException(path.toString()));
+                }
+                return preVisitDirectory(path, attrs, isSymlink, depth, parent, forked);
+            }
+            return visitFile(path, attrs, isSymlink);
+        }
+
+        /**
+         * Applies the directory rules of {@link NioFilesystemScanner} and forks a task for the
+         * directory if it is to be walked.
+         */
+        private Next preVisitDirectory(Path dir, BasicFileAttributes attrs, boolean isSymlink, int depth,
+                                       DirectoryTask parent, List<DirectoryTask> forked) {
+            // Check for symlink cycles
+            if (isSymlink) {
+                try {
+                    Path realPath = dir.toRealPath();
+                    if (!visitedPaths.add(realPath)) {
+                        logger.warn("Symlink cycle detected: {} -> {}", dir, realPath);
+                        return Next.CONTINUE;
+                    }
+                } catch (IOException e) {
+                    logger.warn("Cannot resolve symlink directory: {}", dir, e);
+                    return Next.CONTINUE;
+                }
+            }
+
+            // Handle hidden directories
+            try {
+                if (!options.isIncludeHiddenFiles() && isHidden(dir, attrs)) {
+                    return Next.CONTINUE;
+                }
+
+                // Call custom file visitor if set
+                if (visitor != null) {
+                    switch (visitor.visitDirectory(dir, attrs)) {
+                        case SKIP_SUBTREE:
+                            return Next.CONTINUE;
+                        case SKIP:
+                            return Next.SKIP_SIBLINGS;
+                        case TERMINATE:
+                            terminated = true;
+                            return Next.SKIP_SIBLINGS;
+                        case CONTINUE:
+                        default:
+                            break;
+                    }
+                }
+            } catch (IOException e) {
+                return visitFailed(dir, e);
+            }
+
+            DirectoryTask task = new DirectoryTask(dir, depth, attrs.fileKey(), parent);
+            task.fork();
+            forked.add(task);
+            return Next.CONTINUE;
+        }
+
+        /**
+         * Applies the file rules of {@link NioFilesystemScanner} and records the file.
+         */
+        private Next visitFile(Path file, BasicFileAttributes attrs, boolean isSymlink) {
+            try {
+                // Handle hidden files first
+                if (!options.isIncludeHiddenFiles() && isHidden(file, attrs)) {
+                    logger.debug("Skipping hidden file: {}", file);
+                    return Next.CONTINUE;
+                }
+                // Apply filtering
+                if (!ScanFilters.matchesIncludePattern(options, file) || ScanFilters.matchesExcludePattern(options, file)) {
+                    return Next.CONTINUE;
+                }
+                // Check file size limits
+                long fileSize = attrs.size();
+                if (options.getMinFileSize() > 0 && fileSize < options.getMinFileSize()) {
+                    return Next.CONTINUE;
+                }
+                if (options.getMaxFileSize() > 0 && fileSize > options.getMaxFileSize()) {
+                    return Next.CONTINUE;
+                }
+                // Handle symlinks
+                Path linkTarget = null;
+                if (isSymlink) {
+                    try {
+                        linkTarget = Files.readSymbolicLink(file);
+                        if (options.getSymlinkStrategy() == SymlinkStrategy.SKIP) {
+                            logger.debug("Skipping symlink: {}", file);
+                            return Next.CONTINUE;
+                        }
+                        if (followLinks) {
+                            try {
+                                Path realPath = file.toRealPath();
+                                if (!visitedPaths.add(realPath)) {
+                                    logger.warn("Symlink cycle detected: {} -> {}", file, realPath);
+                                    return Next.CONTINUE;
+                                }
+                            } catch (IOException e) {
+                                logger.warn("Cannot resolve symlink target for: {}", file, e);
+                                return Next.CONTINUE;
+                            }
+                        }
+                    } catch (IOException e) {
+                        logger.warn("Cannot read symlink: {}", file, e);
+                        // For RECORD strategy, we still want to record broken symlinks
+                        if (options.getSymlinkStrategy() != SymlinkStrategy.RECORD) {
+                            errors.add(new ScanResult.ScanError(file, e, "Cannot read symlink"));
+                            return Next.CONTINUE;
+                        }
+                    }
+                }
+
+                boolean isSparse = ScanFilters.detectSparseFile(options, file, attrs);
+                if (!sink.accept(new ScanResult.ScannedFile(
+                        file, fileSize, attrs.lastModifiedTime().toInstant(), isSymlink, isSparse, linkTarget,
+                        attrs.isRegularFile(), ScanFilters.fileKeyOf(attrs)))) {
+                    terminated = true;
+                    return Next.SKIP_SIBLINGS;
+                }
+
+                // Call custom file visitor if set
+                if (visitor != null) {
+                    switch (visitor.visitFile(file, attrs)) {
+                        case SKIP_SUBTREE:
+                            return Next.SKIP_SIBLINGS;
+                        case TERMINATE:
+                            terminated = true;
+                            return Next.SKIP_SIBLINGS;
+                        case SKIP:
+                        case CONTINUE:
+                        default:
+                            break;
+                    }
+                }
+                // Update progress
+                long processed = filesProcessed.incrementAndGet();
+                if (listener != null) {
+                    listener.onFileProcessed(file, processed, -1); // Unknown total
+                }
+            } catch (Exception e) {
+                logger.error("Error visiting file: {}", file, e);
+                errors.add(new ScanResult.ScanError(file, e, e.getMessage()));
+                if (listener != null) {
+                    listener.onScanError(file, e);
+                }
+            }
+            return Next.CONTINUE;
+        }
+
+        /**
+         * Records an entry that could not be visited.
+         */
+        private Next visitFailed(Path file, IOException exc) {
+            logger.warn("Failed to visit file: {}", file, exc);
+            errors.add(new ScanResult.ScanError(file, exc, exc.getMessage()));
+            if (listener != null) {
+                listener.onScanError(file, exc);
+            }
+            if (visitor != null) {
+                try {
+                    switch (visitor.visitFailed(file, exc)) {
+                        case TERMINATE:
+                            terminated = true;
+                            return Next.SKIP_SIBLINGS;
+                        case SKIP_SUBTREE:
+                            return Next.SKIP_SIBLINGS;
+                        case SKIP:
+                        case CONTINUE:
+                        default:
+                            break;
+                    }
+                } catch (IOException e) {
+                    logger.warn("File visitor failed for: {}", file, e);
+                }
+            }
+            return Next.CONTINUE;
+        }
+
+        /**
+         * Reads the attributes of an entry, including the DOS hidden flag where supported.
+         */
+        private BasicFileAttributes readAttributes(Path path, LinkOption... linkOptions) throws IOException {
+            if (dosAttributes) {
+                return Files.readAttributes(path, DosFileAttributes.class, linkOptions);
+            }
+            return Files.readAttributes(path, BasicFileAttributes.class, linkOptions);
+        }
+
+        /**
+         * Checks whether an entry is hidden without another attribute read where possible.
+         * On POSIX filesystems {@link Files#isHidden} only looks at the name.
+         */
+        private boolean isHidden(Path path, BasicFileAttributes attrs) throws IOException {
+            if (attrs instanceof DosFileAttributes) {
+                return ((DosFileAttributes) attrs).isHidden();
+            }
+            return Files.isHidden(path);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.justsyncit.scanner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One stage of a staged processing pipeline: a bounded queue drained by a fixed number of
+ * worker threads. {@link #put(Object)} blocks while the queue is full, so a slow stage holds
+ * back whoever feeds it, up to the thread producing the first stage's work.
+ *
+ * <p>Items are handed to the handler in queue order, but with several workers they may
+ * complete out of order.</p>
+ *
+ * @param <T> the type of the items the stage processes
+ */
+final class PipelineStage<T> {
+
+    /** Logger instance for the PipelineStage class. */
+    private static final Logger logger = LoggerFactory.getLogger(PipelineStage.class);
+    /** Queue entry telling a worker that no more items will arrive. */
+    private static final Object END = new Object();
+
+    /**
+     * Processes the items of a stage.
+     *
+     * @param <T> the type of the items
+     */
+    @FunctionalInterface
+    interface Handler<T> {
+        /**
+         * Processes one item.
+         *
+         * @param item the item
+         * @return the number of bytes the item accounted for, for throughput reporting
+         * @throws Exception if processing fails; the stage counts the failure and moves on
+         */
+        long handle(T item) throws Exception;
+    }
+
+    /** Name of the stage. */
+    private final String name;
+    /** Items waiting for a worker, plus one END entry per worker once finished. */
+    private final BlockingQueue<Object> queue;
+    /** Capacity of the queue. */
+    private final int capacity;
+    /** Processes the items. */
+    private final Handler<T> handler;
+    /** Worker threads. */
+    private final List<Thread> workers;
+    /** Number of items accepted. */
+    private final AtomicLong submitted = new AtomicLong(0);
+    /** Number of items processed successfully. */
+    private final AtomicLong completed = new AtomicLong(0);
+    /** Number of items whose handler threw. */
+    private final AtomicLong failed = new AtomicLong(0);
+    /** Bytes accounted for by processed items. */
+    private final AtomicLong bytes = new AtomicLong(0);
+    /** Time workers spent in the handler, in nanoseconds. */
+    private final AtomicLong busyNanos = new AtomicLong(0);
+    /** Time producers spent waiting for room in the queue, in nanoseconds. */
+    private final AtomicLong blockedNanos = new AtomicLong(0);
+    /** Largest number of items seen waiting in the queue. */
+    private final AtomicInteger peakQueueDepth = new AtomicInteger(0);
+    /** When the stage was started, from System.nanoTime(). */
+    private volatile long startNanos;
+    /** When the last worker exited, from System.nanoTime(), or 0 while running. */
+    private volatile long endNanos;
+    /** Whether the stage was cancelled. */
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a new stage; its workers are started by {@link #start()}.
+     *
+     * @param name the stage name, used in thread names and statistics
+     * @param workerCount the number of worker threads
+     * @param capacity the maximum number of items waiting in the queue
+     * @param handler processes the items
+     * @param threadFactory creates the worker threads
+     * @throws IllegalArgumentException if workerCount or capacity is not positive
+     */
+    PipelineStage(String name, int workerCount, int capacity, Handler<T> handler, ThreadFactory threadFactory) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Worker count must be positive: " + workerCount);
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.handler = handler;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(threadFactory.newThread(this::work));
+        }
+    }
+
+    /**
+     * Starts the worker threads.
+     */
+    void start() {
+        startNanos = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues an item, waiting while the queue is full.
+     *
+     * @param item the item
+     * @return false if the stage was cancelled and the item dropped
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean put(T item) throws InterruptedException {
+        if (cancelled) {
+            return false;
+        }
+        if (!queue.offer(item)) {
+            long waitStart = System.nanoTime();
+            queue.put(item);
+            blockedNanos.addAndGet(System.nanoTime() - waitStart);
+        }
+        submitted.incrementAndGet();
+        peakQueueDepth.accumulateAndGet(queue.size(), Math::max);
+        return true;
+    }
+
+    /**
+     * Tells the workers that no more items will be queued. They exit once the queue is drained.
+     *
+     * @throws InterruptedException if interrupted while waiting for room in the queue
+     */
+    void finish() throws InterruptedException {
+        if (cancelled) {
+            return;
+        }
+        for (int i = 0; i < workers.size(); i++) {
+            queue.put(END);
+        }
+    }
+
+    /**
+     * Waits for the workers to exit, after {@link #finish()} or {@link #cancel()}.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void awaitTermination() throws InterruptedException {
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * Drops the queued items and interrupts the workers.
+     */
+    void cancel() {
+        cancelled = true;
+        queue.clear();
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * Takes and processes items until told to finish or cancelled.
+     */
+    @SuppressWarnings("unchecked")
+    private void work() {
+        try {
+            while (!cancelled) {
+                Object item = queue.take();
+                if (item == END) {
+                    break;
+                }
+                long begin = System.nanoTime();
+                try {
+                    bytes.addAndGet(handler.handle((T) item));
+                    completed.incrementAndGet();
+                } catch (InterruptedException e) {
+                    failed.incrementAndGet();
+                    throw e;
+                } catch (Exception e) {
+                    logger.error("Error in pipeline stage {}", name, e);
+                    failed.incrementAndGet();
+                } finally {
+                    busyNanos.addAndGet(System.nanoTime() - begin);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Gets the stage's current counters.
+     *
+     * @return a snapshot of the stage's statistics
+     */
+    PipelineStageStats getStats() {
+        long end = endNanos != 0 && workers.stream().noneMatch(Thread::isAlive) ? endNanos : System.nanoTime();
+        long elapsed = startNanos != 0 ? end - startNanos : 0;
+        return new PipelineStageStats(name, workers.size(), capacity, queue.size(), peakQueueDepth.get(),
+                submitted.get(), completed.get(), failed.get(), bytes.get(), busyNanos.get(), blockedNanos.get(),
+                elapsed);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.justsyncit.scanner;
+
+/**
+ * Counters of one stage of the {@link FileProcessor} pipeline at a point in time.
+ */
+public final class PipelineStageStats {
+
+    /** Name of the stage. */
+    private final String name;
+    /** Number of worker threads. */
+    private final int workers;
+    /** Maximum number of items waiting in the queue. */
+    private final int queueCapacity;
+    /** Number of items waiting in the queue. */
+    private final int queueDepth;
+    /** Largest number of items seen waiting in the queue. */
+    private final int peakQueueDepth;
+    /** Number of items queued. */
+    private final long submitted;
+    /** Number of items processed successfully. */
+    private final long completed;
+    /** Number of items that failed. */
+    private final long failed;
+    /** Bytes accounted for by processed items. */
+    private final long bytes;
+    /** Time workers spent processing items, in nanoseconds. */
+    private final long busyNanos;
+    /** Time producers spent waiting for room in the queue, in nanoseconds. */
+    private final long blockedNanos;
+    /** Time since the stage started, or its total running time once finished, in nanoseconds. */
+    private final long elapsedNanos;
+
+    /**
+     * Creates a new PipelineStageStats.
+     *
+     * @param name the stage name
+     * @param workers the number of worker threads
+     * @param queueCapacity the maximum number of items waiting in the queue
+     * @param queueDepth the number of items waiting in the queue
+     * @param peakQueueDepth the largest number of items seen waiting in the queue
+     * @param submitted the number of items queued
+     * @param completed the number of items processed successfully
+     * @param failed the number of items that failed
+     * @param bytes the bytes accounted for by processed items
+     * @param busyNanos the time workers spent processing items
+     * @param blockedNanos the time producers spent waiting for room in the queue
+     * @param elapsedNanos the time the stage has been running
+     */
+    PipelineStageStats(String name, int workers, int queueCapacity, int queueDepth, int peakQueueDepth,
+                       long submitted, long completed, long failed, long bytes, long busyNanos,
+                       long blockedNanos, long elapsedNanos) {
+        this.name = name;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.queueDepth = queueDepth;
+        this.peakQueueDepth = peakQueueDepth;
+        this.submitted = submitted;
+        this.completed = completed;
+        this.failed = failed;
+        this.bytes = bytes;
+        this.busyNanos = busyNanos;
+        this.blockedNanos = blockedNanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getPeakQueueDepth() {
+        return peakQueueDepth;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    /**
+     * Gets the time producers spent waiting for room in this stage's queue, i.e. how long the
+     * stage held back the stage before it.
+     *
+     * @return the blocked time in nanoseconds
+     */
+    public long getBlockedNanos() {
+        return blockedNanos;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Gets the number of items processed per second since the stage started.
+     *
+     * @return the item throughput, or 0 if no time has passed
+     */
+    public double getItemsPerSecond() {
+        return elapsedNanos > 0 ? (completed + failed) * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * Gets the number of bytes processed per second since the stage started.
+     *
+     * @return the byte throughput, or 0 if no time has passed
+     */
+    public double getBytesPerSecond() {
+        return elapsedNanos > 0 ? bytes * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * Gets the fraction of the available worker time spent processing items.
+     *
+     * @return the utilization between 0 and 1
+     */
+    public double getUtilization() {
+        return elapsedNanos > 0 ? Math.min(1.0, (double) busyNanos / ((double) elapsedNanos * workers)) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(java.util.Locale.ROOT,
+                "%s{workers=%d, queue=%d/%d, peak=%d, completed=%d, failed=%d, %.1f items/s, %.1f MB/s, "
+                        + "utilization=%.0f%%, blocked=%dms}",
+                name, workers, queueDepth, queueCapacity, peakQueueDepth, completed, failed, getItemsPerSecond(),
+                getBytesPerSecond() / (1024 * 1024), getUtilization() * 100, blockedNanos / 1_000_000);
+    }
+}
@@ -19,6 +19,9 @@
 package com.justsyncit.scanner;
 
 import java.nio.file.PathMatcher;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Configuration options for filesystem scanning operations.
@@ -48,6 +51,10 @@ public class ScanOptions {
     private long maxFileSize = Long.MAX_VALUE;
     /** Minimum file size to process (bytes). */
     private long minFileSize = 0;
+    /** Number of threads walking directories in parallel. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    /** Parallelism overrides keyed by lower-case file store type (e.g. "nfs"). */
+    private final Map<String, Integer> fileStoreParallelism = new HashMap<>();
 
     /**
      * Creates a new ScanOptions with default values.
@@ -71,6 +78,8 @@ public class ScanOptions {
         this.includeHiddenFiles = other.includeHiddenFiles;
         this.maxFileSize = other.maxFileSize;
         this.minFileSize = other.minFileSize;
+        this.parallelism = other.parallelism;
+        this.fileStoreParallelism.putAll(other.fileStoreParallelism);
     }
 
     /**
@@ -184,6 +193,40 @@ public class ScanOptions {
         return this;
     }
 
+    /**
+     * Sets the number of threads that walk directories in parallel.
+     *
+     * @param parallelism number of walker threads
+     * @return this builder for method chaining
+     */
+    public ScanOptions withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets the number of walker threads for scans rooted on a given type of file store.
+     * High-latency network mounts are bound by round trips rather than CPU and usually
+     * benefit from many more threads than local disks.
+     *
+     * @param fileStoreType file store type as reported by {@link java.nio.file.FileStore#type()} (e.g. "nfs")
+     * @param parallelism number of walker threads
+     * @return this builder for method chaining
+     */
+    public ScanOptions withFileStoreParallelism(String fileStoreType, int parallelism) {
+        if (fileStoreType == null) {
+            throw new IllegalArgumentException("File store type cannot be null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.fileStoreParallelism.put(fileStoreType.toLowerCase(Locale.ROOT), parallelism);
+        return this;
+    }
+
     // Getters
 
     public PathMatcher getIncludePattern() {
@@ -222,4 +265,21 @@ public class ScanOptions {
     public long getMinFileSize() {
         return minFileSize;
     }
-}
\ No newline at end of file
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Gets the number of walker threads for a scan rooted on the given type of file store.
+     *
+     * @param fileStoreType the file store type, or null if unknown
+     * @return the override for that type, or the default parallelism
+     */
+    public int getParallelism(String fileStoreType) {
+        if (fileStoreType == null) {
+            return parallelism;
+        }
+        return fileStoreParallelism.getOrDefault(fileStoreType.toLowerCase(Locale.ROOT), parallelism);
+    }
+}
@@ -32,8 +32,12 @@ public class ScanResult {
 
     /** The root directory that was scanned. */
     private final Path rootDirectory;
-    /** List of files that were successfully scanned. */
+    /** List of files that were successfully scanned; empty for streamed scans. */
     private final List<ScannedFile> scannedFiles;
+    /** Number of files that were successfully scanned. */
+    private final long scannedFileCount;
+    /** Total size of the scanned files in bytes. */
+    private final long totalSize;
     /** List of errors that occurred during scanning. */
     private final List<ScanError> errors;
     /** Timestamp when the scan started. */
@@ -57,6 +61,32 @@ public class ScanResult {
                    Instant startTime, Instant endTime, Map<String, Object> metadata) {
         this.rootDirectory = rootDirectory;
         this.scannedFiles = scannedFiles != null ? new java.util.ArrayList<>(scannedFiles) : null;
+        this.scannedFileCount = scannedFiles != null ? scannedFiles.size() : 0;
+        this.totalSize = scannedFiles != null ? scannedFiles.stream().mapToLong(ScannedFile::getSize).sum() : 0;
+        this.errors = errors != null ? new java.util.ArrayList<>(errors) : null;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.metadata = metadata != null ? new java.util.HashMap<>(metadata) : null;
+    }
+
+    /**
+     * Creates a new ScanResult for a streamed scan, whose files were handed to a subscriber
+     * instead of being kept; only their count and total size are recorded.
+     *
+     * @param rootDirectory the root directory that was scanned
+     * @param scannedFileCount number of successfully scanned files
+     * @param totalSize total size of the scanned files in bytes
+     * @param errors list of errors that occurred
+     * @param startTime when the scan started
+     * @param endTime when the scan completed
+     * @param metadata additional scan metadata
+     */
+    public ScanResult(Path rootDirectory, long scannedFileCount, long totalSize, List<ScanError> errors,
+                   Instant startTime, Instant endTime, Map<String, Object> metadata) {
+        this.rootDirectory = rootDirectory;
+        this.scannedFiles = java.util.Collections.emptyList();
+        this.scannedFileCount = scannedFileCount;
+        this.totalSize = totalSize;
         this.errors = errors != null ? new java.util.ArrayList<>(errors) : null;
         this.startTime = startTime;
         this.endTime = endTime;
@@ -74,6 +104,7 @@ public class ScanResult {
 
     /**
      * Gets the list of successfully scanned files.
+     * Streamed scans do not keep their files, and return an empty list.
      *
      * @return immutable list of scanned files
      */
@@ -123,7 +154,7 @@ public class ScanResult {
      * @return the number of scanned files
      */
     public int getScannedFileCount() {
-        return scannedFiles.size();
+        return (int) Math.min(scannedFileCount, Integer.MAX_VALUE);
     }
 
     /**
@@ -141,9 +172,7 @@ public class ScanResult {
      * @return the total size in bytes
      */
     public long getTotalSize() {
-        return scannedFiles.stream()
-                .mapToLong(ScannedFile::getSize)
-                .sum();
+        return totalSize;
     }
 
     /**
@@ -171,6 +200,10 @@ public class ScanResult {
         private final boolean isSparse;
         /** Target of the symbolic link (if applicable). */
         private final Path linkTarget;
+        /** Whether the scanned path, after following links if they are followed, is a regular file. */
+        private final boolean isRegularFile;
+        /** Filesystem key identifying the file, such as its device and inode, or null if unavailable. */
+        private final String fileKey;
 
         /**
          * Creates a new ScannedFile.
@@ -184,12 +217,32 @@ public class ScanResult {
          */
         public ScannedFile(Path path, long size, Instant lastModified, boolean isSymbolicLink,
                         boolean isSparse, Path linkTarget) {
+            this(path, size, lastModified, isSymbolicLink, isSparse, linkTarget, !isSymbolicLink, null);
+        }
+
+        /**
+         * Creates a new ScannedFile with the type and identity of the file, so that consumers of a
+         * streamed scan need not read its attributes again.
+         *
+         * @param path the file path
+         * @param size the file size
+         * @param lastModified the last modified time
+         * @param isSymbolicLink whether the file is a symbolic link
+         * @param isSparse whether the file is sparse
+         * @param linkTarget the symbolic link target (if applicable)
+         * @param isRegularFile whether the path, after following links if they are followed, is a regular file
+         * @param fileKey the filesystem key of the file, or null if unavailable
+         */
+        public ScannedFile(Path path, long size, Instant lastModified, boolean isSymbolicLink,
+                        boolean isSparse, Path linkTarget, boolean isRegularFile, String fileKey) {
             this.path = path;
             this.size = size;
             this.lastModified = lastModified;
             this.isSymbolicLink = isSymbolicLink;
             this.isSparse = isSparse;
             this.linkTarget = linkTarget;
+            this.isRegularFile = isRegularFile;
+            this.fileKey = fileKey;
         }
 
         public Path getPath() {
@@ -215,6 +268,14 @@ public class ScanResult {
         public Path getLinkTarget() {
             return linkTarget;
         }
+
+        public boolean isRegularFile() {
+            return isRegularFile;
+        }
+
+        public String getFileKey() {
+            return fileKey;
+        }
     }
 
     /**
@@ -0,0 +1,209 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.scanner;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Destination for the files found by a scan. Either collects them for the {@link ScanResult},
+ * or publishes each one to a {@link Flow.Subscriber} as soon as it is found and keeps only
+ * counters, so that memory use does not grow with the size of the tree.
+ *
+ * <p>When publishing, {@link #accept(ScanResult.ScannedFile)} blocks the scanning thread until
+ * the subscriber has requested more files, and signals are serialized even if several threads
+ * scan concurrently.</p>
+ */
+final class ScanSink implements Flow.Subscription {
+
+    /** Subscriber receiving scanned files, or null when collecting. */
+    private final Flow.Subscriber<? super ScanResult.ScannedFile> subscriber;
+    /** Collected files, or null when publishing. */
+    private final Queue<ScanResult.ScannedFile> files;
+    /** Number of files published. */
+    private final AtomicLong fileCount = new AtomicLong(0);
+    /** Total size of the files published. */
+    private final AtomicLong totalSize = new AtomicLong(0);
+    /** Serializes signals to the subscriber. */
+    private final Object signalLock = new Object();
+    /** Guards demand and cancelled. */
+    private final Object demandLock = new Object();
+    /** Number of files requested by the subscriber and not yet delivered. */
+    private long demand;
+    /** Whether the subscriber cancelled the subscription. */
+    private volatile boolean cancelled;
+    /** Whether onComplete or onError has been signalled. */
+    private boolean done;
+
+    /**
+     * Creates a new ScanSink.
+     *
+     * @param subscriber the subscriber to publish to, or null to collect files
+     */
+    private ScanSink(Flow.Subscriber<? super ScanResult.ScannedFile> subscriber) {
+        this.subscriber = subscriber;
+        this.files = subscriber == null ? new ConcurrentLinkedQueue<>() : null;
+    }
+
+    /**
+     * Creates a sink that collects every scanned file for the result.
+     *
+     * @return a new collecting sink
+     */
+    static ScanSink collecting() {
+        return new ScanSink(null);
+    }
+
+    /**
+     * Creates a sink that publishes scanned files to a subscriber and subscribes it.
+     *
+     * @param subscriber the subscriber
+     * @return a new publishing sink
+     * @throws IllegalArgumentException if subscriber is null
+     */
+    static ScanSink publishing(Flow.Subscriber<? super ScanResult.ScannedFile> subscriber) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("Subscriber cannot be null");
+        }
+        ScanSink sink = new ScanSink(subscriber);
+        subscriber.onSubscribe(sink);
+        return sink;
+    }
+
+    /**
+     * Accepts a scanned file, waiting for demand when publishing.
+     *
+     * @param file the scanned file
+     * @return false if the subscriber cancelled and the scan should stop
+     */
+    boolean accept(ScanResult.ScannedFile file) {
+        if (files != null) {
+            files.add(file);
+            return true;
+        }
+        synchronized (signalLock) {
+            synchronized (demandLock) {
+                try {
+                    while (demand == 0 && !cancelled) {
+                        demandLock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelled = true;
+                }
+                if (cancelled) {
+                    return false;
+                }
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+            }
+            fileCount.incrementAndGet();
+            totalSize.addAndGet(file.getSize());
+            subscriber.onNext(file);
+        }
+        return !cancelled;
+    }
+
+    /**
+     * Checks whether the subscriber cancelled the subscription.
+     *
+     * @return true if the scan should stop
+     */
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Builds the scan result: with the collected files, or with counters only when publishing.
+     *
+     * @param rootDirectory the scanned directory
+     * @param errors errors that occurred
+     * @param startTime when the scan started
+     * @param endTime when the scan completed
+     * @param metadata additional scan metadata
+     * @return the scan result
+     */
+    ScanResult toResult(Path rootDirectory, List<ScanResult.ScanError> errors, Instant startTime, Instant endTime,
+                        Map<String, Object> metadata) {
+        if (files != null) {
+            return new ScanResult(rootDirectory, new ArrayList<>(files), errors, startTime, endTime, metadata);
+        }
+        return new ScanResult(rootDirectory, fileCount.get(), totalSize.get(), errors, startTime, endTime, metadata);
+    }
+
+    /**
+     * Signals the subscriber that the scan finished.
+     */
+    void complete() {
+        synchronized (signalLock) {
+            if (subscriber != null && !done && !cancelled) {
+                done = true;
+                subscriber.onComplete();
+            }
+        }
+    }
+
+    /**
+     * Signals the subscriber that the scan failed.
+     *
+     * @param error the failure
+     */
+    void fail(Throwable error) {
+        synchronized (signalLock) {
+            if (subscriber != null && !done && !cancelled) {
+                done = true;
+                subscriber.onError(error);
+            }
+        }
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            cancel();
+            synchronized (signalLock) {
+                if (!done) {
+                    done = true;
+                    subscriber.onError(new IllegalArgumentException("Requested count must be positive: " + n));
+                }
+            }
+            return;
+        }
+        synchronized (demandLock) {
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            demandLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (demandLock) {
+            cancelled = true;
+            demandLock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.scanner;
+
+import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.hash.ChunkId;
+import com.justsyncit.hash.HashingException;
+import com.justsyncit.storage.ContentStore;
+import com.justsyncit.storage.metadata.PackedExtent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concatenates small files into shared pack chunks, so that a file of a few hundred bytes does not
+ * cost a chunk of its own, with its chunk file, index entry and metadata rows. Each packed file is
+ * recorded as a single {@link PackedExtent} locating its bytes within the pack; its file hash is
+ * still the hash of its contents.
+ *
+ * <p>Files are added from any thread. Adding a file that does not fit the open pack closes that
+ * pack and hands it back to the caller, which seals it (hashes and stores it) outside the lock.</p>
+ *
+ * @param <T> the type of the tag identifying each file to the caller
+ */
+final class SmallFilePacker<T> {
+
+    /** BLAKE3 service for the file hashes of packed files. */
+    private final Blake3Service blake3Service;
+    /** Content store the packs are stored in. */
+    private final ContentStore contentStore;
+    /** Capacity of a pack in bytes. */
+    private final int packSize;
+    /** Guards the open pack. */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** The pack files are currently added to, or null before the first file. */
+    private Pack<T> open;
+
+    /**
+     * Creates a new SmallFilePacker.
+     *
+     * @param blake3Service BLAKE3 service for the file hashes of packed files
+     * @param contentStore content store the packs are stored in
+     * @param packSize capacity of a pack in bytes
+     * @throws IllegalArgumentException if a service is null or packSize is not positive
+     */
+    SmallFilePacker(Blake3Service blake3Service, ContentStore contentStore, int packSize) {
+        if (blake3Service == null) {
+            throw new IllegalArgumentException("BLAKE3 service cannot be null");
+        }
+        if (contentStore == null) {
+            throw new IllegalArgumentException("Content store cannot be null");
+        }
+        if (packSize <= 0) {
+            throw new IllegalArgumentException("Pack size must be positive");
+        }
+        this.blake3Service = blake3Service;
+        this.contentStore = contentStore;
+        this.packSize = packSize;
+    }
+
+    /**
+     * Adds a file to the open pack.
+     *
+     * @param tag the caller's tag for the file
+     * @param file the file
+     * @param data the contents of the file, at most the pack size
+     * @return the previously open pack if the file did not fit into it, for the caller to seal, otherwise null
+     * @throws IllegalArgumentException if data is empty or larger than a pack
+     */
+    Pack<T> add(T tag, Path file, byte[] data) {
+        if (data.length == 0 || data.length > packSize) {
+            throw new IllegalArgumentException("Cannot pack " + data.length + " bytes into packs of " + packSize);
+        }
+        lock.lock();
+        try {
+            Pack<T> full = null;
+            if (open != null && open.size + data.length > packSize) {
+                full = open;
+                open = null;
+            }
+            if (open == null) {
+                open = new Pack<>(packSize);
+            }
+            open.append(tag, file, data);
+            return full;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the open pack.
+     *
+     * @return the open pack for the caller to seal, or null if no files are waiting
+     */
+    Pack<T> drain() {
+        lock.lock();
+        try {
+            Pack<T> pack = open;
+            open = null;
+            return pack;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Seals a closed pack: stores it as one chunk and hashes each of its files.
+     *
+     * @param pack the pack returned by {@link #add} or {@link #drain}
+     * @return the chunking result of each file in the pack, with its tag, in the order they were added
+     * @throws IOException if the pack cannot be stored
+     * @throws HashingException if hashing fails
+     */
+    List<Packed<T>> seal(Pack<T> pack) throws IOException, HashingException {
+        List<ByteBuffer> contents = new ArrayList<>(pack.tags.size());
+        for (int i = 0; i < pack.tags.size(); i++) {
+            contents.add(ByteBuffer.wrap(pack.data, pack.offsets.get(i), pack.lengths.get(i)));
+        }
+        ChunkId[] fileHashes = blake3Service.hashAll(contents);
+        ChunkId packId = ChunkId.fromHex(contentStore.storeChunk(Arrays.copyOf(pack.data, pack.size)));
+
+        List<Packed<T>> packed = new ArrayList<>(pack.tags.size());
+        for (int i = 0; i < pack.tags.size(); i++) {
+            int length = pack.lengths.get(i);
+            ChunkList chunkList = new ChunkList(1);
+            chunkList.addPacked(packId, pack.offsets.get(i), length);
+            packed.add(new Packed<>(pack.tags.get(i), new FileChunker.ChunkingResult(
+                    pack.files.get(i), length, fileHashes[i].toHex(), chunkList)));
+        }
+        return packed;
+    }
+
+    /**
+     * Files concatenated into one pack chunk.
+     *
+     * @param <T> the type of the tag identifying each file
+     */
+    static final class Pack<T> {
+        /** Concatenated contents of the files. */
+        private final byte[] data;
+        /** Number of bytes used. */
+        private int size;
+        /** Tag of each file. */
+        private final List<T> tags = new ArrayList<>();
+        /** Each file. */
+        private final List<Path> files = new ArrayList<>();
+        /** Offset of each file's contents. */
+        private final List<Integer> offsets = new ArrayList<>();
+        /** Length of each file's contents. */
+        private final List<Integer> lengths = new ArrayList<>();
+
+        private Pack(int capacity) {
+            this.data = new byte[capacity];
+        }
+
+        private void append(T tag, Path file, byte[] contents) {
+            System.arraycopy(contents, 0, data, size, contents.length);
+            tags.add(tag);
+            files.add(file);
+            offsets.add(size);
+            lengths.add(contents.length);
+            size += contents.length;
+        }
+
+        /**
+         * Gets the number of files in the pack.
+         *
+         * @return the file count
+         */
+        int getFileCount() {
+            return tags.size();
+        }
+    }
+
+    /**
+     * A packed file.
+     *
+     * @param <T> the type of the tag identifying the file
+     */
+    static final class Packed<T> {
+        /** The caller's tag for the file. */
+        private final T tag;
+        /** The chunking result, whose chunk list is the file's packed extent. */
+        private final FileChunker.ChunkingResult result;
+
+        private Packed(T tag, FileChunker.ChunkingResult result) {
+            this.tag = tag;
+            this.result = result;
+        }
+
+        /**
+         * Gets the caller's tag for the file.
+         *
+         * @return the tag
+         */
+        T getTag() {
+            return tag;
+        }
+
+        /**
+         * Gets the chunking result of the file.
+         *
+         * @return the chunking result
+         */
+        FileChunker.ChunkingResult getResult() {
+            return result;
+        }
+    }
+}
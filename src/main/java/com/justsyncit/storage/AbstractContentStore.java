@@ -18,10 +18,12 @@
 
 package com.justsyncit.storage;
 
+import com.justsyncit.hash.ChunkId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -60,11 +62,31 @@ public abstract class AbstractContentStore implements ContentStore {
         return doStoreChunk(data);
     }
 
+    @Override
+    public final void storeChunk(ChunkId chunkId, ByteBuffer data) throws IOException {
+        validateNotClosed();
+        validateChunkId(chunkId);
+        if (data == null || !data.hasRemaining()) {
+            throw new IllegalArgumentException("Data cannot be null or empty");
+        }
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        doStoreChunk(chunkId, bytes);
+    }
+
     @Override
     public final byte[] retrieveChunk(String hash) throws IOException, StorageIntegrityException {
+        return retrieveChunk(hash, VerificationMode.CHECKSUM);
+    }
+
+    @Override
+    public final byte[] retrieveChunk(String hash, VerificationMode mode) throws IOException, StorageIntegrityException {
         validateNotClosed();
         validateHash(hash);
-        return doRetrieveChunk(hash);
+        if (mode == null) {
+            throw new IllegalArgumentException("Verification mode cannot be null");
+        }
+        return doRetrieveChunk(hash, mode);
     }
 
     @Override
@@ -74,6 +96,29 @@ public abstract class AbstractContentStore implements ContentStore {
         return doExistsChunk(hash);
     }
 
+    @Override
+    public final byte[] retrieveChunk(ChunkId chunkId) throws IOException, StorageIntegrityException {
+        return retrieveChunk(chunkId, VerificationMode.CHECKSUM);
+    }
+
+    @Override
+    public final byte[] retrieveChunk(ChunkId chunkId, VerificationMode mode)
+            throws IOException, StorageIntegrityException {
+        validateNotClosed();
+        validateChunkId(chunkId);
+        if (mode == null) {
+            throw new IllegalArgumentException("Verification mode cannot be null");
+        }
+        return doRetrieveChunk(chunkId, mode);
+    }
+
+    @Override
+    public final boolean existsChunk(ChunkId chunkId) throws IOException {
+        validateNotClosed();
+        validateChunkId(chunkId);
+        return doExistsChunk(chunkId);
+    }
+
     @Override
     public final long getChunkCount() throws IOException {
         validateNotClosed();
@@ -128,16 +173,31 @@ public abstract class AbstractContentStore implements ContentStore {
      */
     protected abstract String doStoreChunk(byte[] data) throws IOException;
 
+    /**
+     * Template method for storing a chunk whose ID is already known.
+     * Stores override this to skip hashing the data again; the default hashes it and checks the ID.
+     *
+     * @param chunkId the ID of the chunk
+     * @param data the chunk data to store, owned by the store
+     * @throws IOException if an I/O error occurs during storage
+     */
+    protected void doStoreChunk(ChunkId chunkId, byte[] data) throws IOException {
+        if (!chunkId.toHex().equals(doStoreChunk(data))) {
+            throw new IOException("Stored chunk does not match its ID " + chunkId);
+        }
+    }
+
     /**
      * Template method for retrieving a chunk.
      * Subclasses must implement this method to provide specific retrieval logic.
      *
      * @param hash the hash of the chunk to retrieve
+     * @param mode how to verify the retrieved data
      * @return the chunk data, or null if not found
      * @throws IOException if an I/O error occurs during retrieval
      * @throws StorageIntegrityException if the retrieved data fails integrity verification
      */
-    protected abstract byte[] doRetrieveChunk(String hash) throws IOException, StorageIntegrityException;
+    protected abstract byte[] doRetrieveChunk(String hash, VerificationMode mode) throws IOException, StorageIntegrityException;
 
     /**
      * Template method for checking if a chunk exists.
@@ -149,6 +209,33 @@ public abstract class AbstractContentStore implements ContentStore {
      */
     protected abstract boolean doExistsChunk(String hash) throws IOException;
 
+    /**
+     * Template method for retrieving a chunk by its binary ID.
+     * Stores keyed by binary IDs override this to skip the hex form.
+     *
+     * @param chunkId the ID of the chunk to retrieve
+     * @param mode how to verify the retrieved data
+     * @return the chunk data, or null if not found
+     * @throws IOException if an I/O error occurs during retrieval
+     * @throws StorageIntegrityException if the retrieved data fails integrity verification
+     */
+    protected byte[] doRetrieveChunk(ChunkId chunkId, VerificationMode mode)
+            throws IOException, StorageIntegrityException {
+        return doRetrieveChunk(chunkId.toHex(), mode);
+    }
+
+    /**
+     * Template method for checking if a chunk exists by its binary ID.
+     * Stores keyed by binary IDs override this to skip the hex form.
+     *
+     * @param chunkId the chunk ID to check
+     * @return true if the chunk exists, false otherwise
+     * @throws IOException if an I/O error occurs during the check
+     */
+    protected boolean doExistsChunk(ChunkId chunkId) throws IOException {
+        return doExistsChunk(chunkId.toHex());
+    }
+
     /**
      * Template method for getting the chunk count.
      * Subclasses must implement this method to provide specific count logic.
@@ -229,6 +316,18 @@ public abstract class AbstractContentStore implements ContentStore {
         }
     }
 
+    /**
+     * Validates that a chunk ID is not null.
+     *
+     * @param chunkId the chunk ID to validate
+     * @throws IllegalArgumentException if chunkId is null
+     */
+    protected void validateChunkId(ChunkId chunkId) {
+        if (chunkId == null) {
+            throw new IllegalArgumentException("Chunk ID cannot be null");
+        }
+    }
+
     /**
      * Validates that active hashes set is not null.
      *
@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 /**
  * Implementation of IntegrityVerifier using BLAKE3 hashing service.
  * Provides cryptographic integrity verification for stored chunks.
+ * Safe to share between threads: the BLAKE3 service hashes with thread-confined instances.
  */
 public final class Blake3IntegrityVerifier implements IntegrityVerifier {
 
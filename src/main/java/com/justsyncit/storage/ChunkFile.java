@@ -0,0 +1,146 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * On-disk layout of a chunk file in a filesystem content store.
+ * Chunk files start with an 8-byte header holding a magic number and the CRC32C of the
+ * chunk data, so routine reads can detect corruption without re-hashing the chunk.
+ * Files written before the header existed hold only the raw data; they, and any file whose
+ * checksum does not match, are returned whole and left to full hash verification.
+ */
+final class ChunkFile {
+
+    /** Magic number at the start of a checksummed chunk file ("JSC1"). */
+    static final int MAGIC = 0x4A534331;
+    /** Size of the header in bytes. */
+    static final int HEADER_SIZE = 8;
+
+    /** The chunk data. */
+    private final byte[] data;
+    /** Whether the data was checked against a stored checksum. */
+    private final boolean checksumVerified;
+
+    /**
+     * Creates a new ChunkFile.
+     *
+     * @param data the chunk data
+     * @param checksumVerified whether the data matched its stored checksum
+     */
+    private ChunkFile(byte[] data, boolean checksumVerified) {
+        this.data = data;
+        this.checksumVerified = checksumVerified;
+    }
+
+    /**
+     * Wraps chunk data read from elsewhere, such as a pack segment, that was checked against its own checksum.
+     *
+     * @param data the chunk data
+     * @param checksumVerified whether the data matched its stored checksum
+     * @return the chunk contents
+     */
+    static ChunkFile of(byte[] data, boolean checksumVerified) {
+        return new ChunkFile(data, checksumVerified);
+    }
+
+    /**
+     * Writes a new chunk file with a checksum header. The file is written and forced beside its
+     * final path and then moved into place, so a crash never leaves a partial file at the chunk's
+     * address; a file already there, such as one left partial by an older version, is replaced.
+     *
+     * @param path the chunk file path
+     * @param data the chunk data
+     * @throws IOException if the file cannot be written
+     */
+    static void write(Path path, byte[] data) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(checksum(data, 0, data.length)).flip();
+        ByteBuffer[] buffers = {header, ByteBuffer.wrap(data)};
+        Path tempPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                while (buffers[1].hasRemaining()) {
+                    channel.write(buffers);
+                }
+                channel.force(true);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a chunk file and checks its checksum, if it has one.
+     *
+     * @param path the chunk file path
+     * @return the chunk file contents
+     * @throws IOException if the file cannot be read
+     */
+    static ChunkFile read(Path path) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length >= HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.wrap(bytes, 0, HEADER_SIZE);
+            if (header.getInt() == MAGIC
+                    && header.getInt() == checksum(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE)) {
+                return new ChunkFile(Arrays.copyOfRange(bytes, HEADER_SIZE, bytes.length), true);
+            }
+        }
+        // Legacy file without a header, or a corrupted one
+        return new ChunkFile(bytes, false);
+    }
+
+    /**
+     * Gets the chunk data. For files whose checksum was not verified this is the whole file.
+     *
+     * @return the chunk data
+     */
+    byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Checks whether the data matched a checksum stored in the file.
+     *
+     * @return true if the checksum was present and matched
+     */
+    boolean isChecksumVerified() {
+        return checksumVerified;
+    }
+
+    /**
+     * Computes the CRC32C of a byte range.
+     */
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
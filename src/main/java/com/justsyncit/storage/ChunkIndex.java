@@ -18,6 +18,8 @@
 
 package com.justsyncit.storage;
 
+import com.justsyncit.hash.ChunkId;
+
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Set;
@@ -93,10 +95,72 @@ public interface ChunkIndex {
      */
     long retainAll(Set<String> activeHashes) throws IOException;
 
+    /**
+     * Adds or updates a chunk entry in the index by its binary ID.
+     *
+     * @param chunkId the chunk ID
+     * @param filePath the path where the chunk is stored
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if chunkId or filePath is null
+     */
+    default void putChunk(ChunkId chunkId, Path filePath) throws IOException {
+        putChunk(requireChunkId(chunkId).toHex(), filePath);
+    }
+
+    /**
+     * Gets the file path for a chunk by its binary ID.
+     *
+     * @param chunkId the chunk ID
+     * @return the file path, or null if not found
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if chunkId is null
+     */
+    default Path getChunkPath(ChunkId chunkId) throws IOException {
+        return getChunkPath(requireChunkId(chunkId).toHex());
+    }
+
+    /**
+     * Checks if a chunk exists in the index by its binary ID.
+     *
+     * @param chunkId the chunk ID
+     * @return true if the chunk exists, false otherwise
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if chunkId is null
+     */
+    default boolean containsChunk(ChunkId chunkId) throws IOException {
+        return containsChunk(requireChunkId(chunkId).toHex());
+    }
+
+    /**
+     * Removes a chunk from the index by its binary ID.
+     *
+     * @param chunkId the chunk ID to remove
+     * @return true if the chunk was removed, false if it didn't exist
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if chunkId is null
+     */
+    default boolean removeChunk(ChunkId chunkId) throws IOException {
+        return removeChunk(requireChunkId(chunkId).toHex());
+    }
+
     /**
      * Closes the index and releases any resources.
      *
      * @throws IOException if an I/O error occurs during closing
      */
     void close() throws IOException;
+
+    /**
+     * Validates a chunk ID argument.
+     *
+     * @param chunkId the chunk ID
+     * @return the chunk ID
+     * @throws IllegalArgumentException if chunkId is null
+     */
+    private static ChunkId requireChunkId(ChunkId chunkId) {
+        if (chunkId == null) {
+            throw new IllegalArgumentException("Chunk ID cannot be null");
+        }
+        return chunkId;
+    }
 }
\ No newline at end of file
@@ -58,6 +58,27 @@ public final class ChunkIndexFactory {
         return FilesystemChunkIndex.create(storageDirectory, indexFile);
     }
 
+    /**
+     * Creates a chunk index held off the heap and memory-mapped from a table file, for
+     * repositories with too many chunks to index on the heap. Chunk paths must be those of
+     * {@link TwoLevelChunkPathGenerator}.
+     *
+     * @param storageDirectory the directory where chunks are stored
+     * @param tableFile the file holding the table
+     * @param expectedChunks the number of chunks to size a new table for
+     * @return a new ChunkIndex instance
+     * @throws IOException if the index cannot be created
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public static ChunkIndex createOffHeapIndex(Path storageDirectory, Path tableFile, long expectedChunks)
+            throws IOException {
+        validateParameters(storageDirectory, tableFile);
+
+        logger.info("Creating off-heap chunk index at {}", tableFile);
+
+        return OffHeapChunkIndex.open(storageDirectory, tableFile, expectedChunks);
+    }
+
     /**
      * Creates an in-memory chunk index for testing or temporary use.
      *
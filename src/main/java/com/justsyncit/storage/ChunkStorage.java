@@ -18,11 +18,15 @@
 
 package com.justsyncit.storage;
 
+import com.justsyncit.hash.ChunkId;
+
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Interface for basic chunk storage operations.
  * Follows Interface Segregation Principle by focusing only on storage functionality.
+ * Chunks can be addressed by their 64-character hex hash or by their binary {@link ChunkId}.
  */
 public interface ChunkStorage {
 
@@ -38,8 +42,30 @@ public interface ChunkStorage {
     String storeChunk(byte[] data) throws IOException;
 
     /**
-     * Retrieves a chunk by its hash.
-     * The integrity of the retrieved data is verified against the hash.
+     * Stores a chunk whose ID the caller has already computed, so that the store need not hash it
+     * again. The buffer's remaining bytes are stored; its position is not changed.
+     * If the chunk already exists, it will not be stored again.
+     *
+     * @param chunkId the ID of the chunk, which must be the hash of the data
+     * @param data the chunk data to store
+     * @throws IOException if an I/O error occurs during storage, or the data does not match the ID
+     * @throws IllegalArgumentException if chunkId is null, or data is null or empty
+     */
+    default void storeChunk(ChunkId chunkId, ByteBuffer data) throws IOException {
+        requireChunkId(chunkId);
+        if (data == null || !data.hasRemaining()) {
+            throw new IllegalArgumentException("Data cannot be null or empty");
+        }
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        if (!chunkId.toHex().equals(storeChunk(bytes))) {
+            throw new IOException("Stored chunk does not match its ID " + chunkId);
+        }
+    }
+
+    /**
+     * Retrieves a chunk by its hash with the store's routine verification: a stored checksum
+     * where the store keeps one, otherwise a full hash check.
      *
      * @param hash the hash of the chunk to retrieve
      * @return the chunk data, or null if not found
@@ -49,6 +75,24 @@ public interface ChunkStorage {
      */
     byte[] retrieveChunk(String hash) throws IOException, StorageIntegrityException;
 
+    /**
+     * Retrieves a chunk by its hash, verifying it as thoroughly as requested.
+     * Stores without stored checksums always verify the full hash.
+     *
+     * @param hash the hash of the chunk to retrieve
+     * @param mode how to verify the retrieved data
+     * @return the chunk data, or null if not found
+     * @throws IOException if an I/O error occurs during retrieval
+     * @throws StorageIntegrityException if the retrieved data fails integrity verification
+     * @throws IllegalArgumentException if hash is null or invalid, or mode is null
+     */
+    default byte[] retrieveChunk(String hash, VerificationMode mode) throws IOException, StorageIntegrityException {
+        if (mode == null) {
+            throw new IllegalArgumentException("Verification mode cannot be null");
+        }
+        return retrieveChunk(hash);
+    }
+
     /**
      * Checks if a chunk with the given hash exists in storage.
      *
@@ -58,4 +102,57 @@ public interface ChunkStorage {
      * @throws IllegalArgumentException if hash is null or invalid
      */
     boolean existsChunk(String hash) throws IOException;
+
+    /**
+     * Retrieves a chunk by its binary ID with the store's routine verification.
+     *
+     * @param chunkId the ID of the chunk to retrieve
+     * @return the chunk data, or null if not found
+     * @throws IOException if an I/O error occurs during retrieval
+     * @throws StorageIntegrityException if the retrieved data fails integrity verification
+     * @throws IllegalArgumentException if chunkId is null
+     */
+    default byte[] retrieveChunk(ChunkId chunkId) throws IOException, StorageIntegrityException {
+        return retrieveChunk(requireChunkId(chunkId).toHex());
+    }
+
+    /**
+     * Retrieves a chunk by its binary ID, verifying it as thoroughly as requested.
+     *
+     * @param chunkId the ID of the chunk to retrieve
+     * @param mode how to verify the retrieved data
+     * @return the chunk data, or null if not found
+     * @throws IOException if an I/O error occurs during retrieval
+     * @throws StorageIntegrityException if the retrieved data fails integrity verification
+     * @throws IllegalArgumentException if chunkId or mode is null
+     */
+    default byte[] retrieveChunk(ChunkId chunkId, VerificationMode mode) throws IOException, StorageIntegrityException {
+        return retrieveChunk(requireChunkId(chunkId).toHex(), mode);
+    }
+
+    /**
+     * Checks if a chunk with the given binary ID exists in storage.
+     *
+     * @param chunkId the chunk ID to check
+     * @return true if the chunk exists, false otherwise
+     * @throws IOException if an I/O error occurs during the check
+     * @throws IllegalArgumentException if chunkId is null
+     */
+    default boolean existsChunk(ChunkId chunkId) throws IOException {
+        return existsChunk(requireChunkId(chunkId).toHex());
+    }
+
+    /**
+     * Validates a chunk ID argument.
+     *
+     * @param chunkId the chunk ID
+     * @return the chunk ID
+     * @throws IllegalArgumentException if chunkId is null
+     */
+    private static ChunkId requireChunkId(ChunkId chunkId) {
+        if (chunkId == null) {
+            throw new IllegalArgumentException("Chunk ID cannot be null");
+        }
+        return chunkId;
+    }
 }
\ No newline at end of file
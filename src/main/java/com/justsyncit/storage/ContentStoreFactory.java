@@ -23,6 +23,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
@@ -35,6 +37,15 @@ public final class ContentStoreFactory {
     /** Logger instance. */
     private static final Logger logger = LoggerFactory.getLogger(ContentStoreFactory.class);
 
+    /** Default directory holding the chunks of the local repository. */
+    public static final String DEFAULT_STORAGE_DIRECTORY = "storage/chunks";
+    /** System property choosing the layout of new local repositories: "files" (default) or "packs". */
+    public static final String LAYOUT_PROPERTY = "justsyncit.storage.layout";
+    /** Layout that stores each chunk in its own file. */
+    public static final String FILES_LAYOUT = "files";
+    /** Layout that appends chunks to pack segment files. */
+    public static final String PACKS_LAYOUT = "packs";
+
     /** Private constructor to prevent instantiation. */
     private ContentStoreFactory() {
         // Utility class
@@ -61,6 +72,69 @@ public final class ContentStoreFactory {
         return FilesystemContentStore.create(storageDirectory, chunkIndex, blake3Service);
     }
 
+    /**
+     * Creates a content store backed by pack segment files.
+     *
+     * @param storageDirectory the directory to store segments in
+     * @param blake3Service the BLAKE3 service for hashing
+     * @return a new ContentStore instance
+     * @throws IOException if the store cannot be created
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public static ContentStore createPackStore(Path storageDirectory, Blake3Service blake3Service)
+            throws IOException {
+        validateParameters(storageDirectory, blake3Service);
+
+        logger.info("Creating pack file content store at {}", storageDirectory);
+
+        return PackFileContentStore.create(storageDirectory, blake3Service);
+    }
+
+    /**
+     * Creates a content store for a local repository in whichever layout it uses.
+     * An existing repository keeps its layout; a new one uses the layout named by the
+     * {@value #LAYOUT_PROPERTY} system property, which defaults to a file per chunk.
+     *
+     * @param storageDirectory the directory to store chunks in
+     * @param blake3Service the BLAKE3 service for hashing
+     * @return a new ContentStore instance
+     * @throws IOException if the store cannot be created
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public static ContentStore createLocalStore(Path storageDirectory, Blake3Service blake3Service)
+            throws IOException {
+        validateParameters(storageDirectory, blake3Service);
+        if (usesPackLayout(storageDirectory)) {
+            return createPackStore(storageDirectory, blake3Service);
+        }
+        return createFilesystemStore(storageDirectory, blake3Service);
+    }
+
+    /**
+     * Checks whether a local repository uses, or if new will use, the pack file layout.
+     *
+     * @param storageDirectory the storage directory
+     * @return true if chunks are stored in pack segments
+     * @throws IOException if the storage directory cannot be listed
+     */
+    public static boolean usesPackLayout(Path storageDirectory) throws IOException {
+        if (PackFileContentStore.isPackRepository(storageDirectory)) {
+            return true;
+        }
+        String layout = System.getProperty(LAYOUT_PROPERTY, FILES_LAYOUT).trim();
+        if (!PACKS_LAYOUT.equalsIgnoreCase(layout)) {
+            if (!FILES_LAYOUT.equalsIgnoreCase(layout)) {
+                logger.warn("Unknown repository layout '{}'; using {}", layout, FILES_LAYOUT);
+            }
+            return false;
+        }
+        if (holdsChunkFiles(storageDirectory)) {
+            logger.warn("Repository at {} stores a file per chunk; keeping that layout", storageDirectory);
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Creates a filesystem-based content store with custom components.
      *
@@ -119,6 +193,27 @@ public final class ContentStoreFactory {
         return new MemoryContentStore(integrityVerifier);
     }
 
+    /**
+     * Checks whether a storage directory already holds anything besides the format file.
+     *
+     * @param storageDirectory the storage directory
+     * @return true if a file-per-chunk repository lives there
+     * @throws IOException if the directory cannot be listed
+     */
+    private static boolean holdsChunkFiles(Path storageDirectory) throws IOException {
+        if (!Files.isDirectory(storageDirectory)) {
+            return false;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(storageDirectory)) {
+            for (Path entry : entries) {
+                if (!RepositoryFormat.FORMAT_FILE_NAME.equals(entry.getFileName().toString())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Validates parameters for filesystem store creation.
      *
@@ -202,8 +297,6 @@ public final class ContentStoreFactory {
     public static ContentStore createDefaultSqliteStore(
                                             com.justsyncit.storage.metadata.MetadataService metadataService,
                                             Blake3Service blake3Service) throws IOException {
-        // Use default storage directory
-        String defaultStorageDir = "storage/chunks";
-        return createSqliteStore(defaultStorageDir, metadataService, blake3Service);
+        return createSqliteStore(DEFAULT_STORAGE_DIRECTORY, metadataService, blake3Service);
     }
 }
\ No newline at end of file
@@ -18,15 +18,21 @@
 
 package com.justsyncit.storage;
 
+import com.justsyncit.concurrent.ExecutionMode;
+import com.justsyncit.concurrent.IoExecutors;
+import com.justsyncit.hash.ChunkId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -34,20 +40,27 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * Filesystem-based implementation of ChunkIndex.
  * Thread-safe implementation using concurrent collections and read-write locks.
  * Delegates persistence operations to IndexPersistence following Single Responsibility Principle.
+ * Changes are appended to the index journal as they are made; when the journal has grown as
+ * large as the snapshot, a background thread compacts it into a new snapshot.
+ * Entries are keyed by binary {@link ChunkId}s; the string methods accept 64-character hex hashes.
  */
 public final class FilesystemChunkIndex implements ChunkIndex {
 
     /** Logger instance. */
     private static final Logger logger = LoggerFactory.getLogger(FilesystemChunkIndex.class);
 
-    /** The in-memory index mapping hashes to file paths. */
-    private final ConcurrentHashMap<String, Path> indexMap;
+    /** The in-memory index mapping chunk IDs to file paths. */
+    private final ConcurrentHashMap<ChunkId, Path> indexMap;
     /** Lock for thread-safe access to the index. */
     private final ReadWriteLock lock;
     /** Flag indicating if the index has been closed. */
     private volatile boolean closed;
     /** Persistence handler for loading and saving the index. */
     private final IndexPersistence persistence;
+    /** Thread compacting the journal, created with the first compaction. */
+    private ExecutorService compactionExecutor;
+    /** The running compaction, if any. */
+    private CompletableFuture<Void> compaction;
 
     /**
      * Creates a new FilesystemChunkIndex.
@@ -82,7 +95,13 @@ public final class FilesystemChunkIndex implements ChunkIndex {
     @Override
     public void putChunk(String hash, Path filePath) throws IOException {
         validateNotClosed();
-        validateHash(hash);
+        putChunk(parseHash(hash), filePath);
+    }
+
+    @Override
+    public void putChunk(ChunkId hash, Path filePath) throws IOException {
+        validateNotClosed();
+        validateChunkId(hash);
 
         if (filePath == null) {
             throw new IllegalArgumentException("File path cannot be null");
@@ -91,7 +110,8 @@ public final class FilesystemChunkIndex implements ChunkIndex {
         lock.writeLock().lock();
         try {
             indexMap.put(hash, filePath);
-            persistence.saveIndex(indexMap);
+            persistence.recordPut(hash, filePath);
+            compactIfNeeded();
             logger.debug("Added chunk {} to index at path {}", hash, filePath);
         } finally {
             lock.writeLock().unlock();
@@ -102,6 +122,14 @@ public final class FilesystemChunkIndex implements ChunkIndex {
     public Path getChunkPath(String hash) throws IOException {
         validateNotClosed();
         validateHash(hash);
+        // Anything that is not a chunk ID cannot be in the index
+        return ChunkId.isValidHex(hash) ? getChunkPath(ChunkId.fromHex(hash)) : null;
+    }
+
+    @Override
+    public Path getChunkPath(ChunkId hash) throws IOException {
+        validateNotClosed();
+        validateChunkId(hash);
 
         lock.readLock().lock();
         try {
@@ -115,6 +143,13 @@ public final class FilesystemChunkIndex implements ChunkIndex {
     public boolean containsChunk(String hash) throws IOException {
         validateNotClosed();
         validateHash(hash);
+        return ChunkId.isValidHex(hash) && containsChunk(ChunkId.fromHex(hash));
+    }
+
+    @Override
+    public boolean containsChunk(ChunkId hash) throws IOException {
+        validateNotClosed();
+        validateChunkId(hash);
 
         lock.readLock().lock();
         try {
@@ -128,12 +163,20 @@ public final class FilesystemChunkIndex implements ChunkIndex {
     public boolean removeChunk(String hash) throws IOException {
         validateNotClosed();
         validateHash(hash);
+        return ChunkId.isValidHex(hash) && removeChunk(ChunkId.fromHex(hash));
+    }
+
+    @Override
+    public boolean removeChunk(ChunkId hash) throws IOException {
+        validateNotClosed();
+        validateChunkId(hash);
 
         lock.writeLock().lock();
         try {
             Path removed = indexMap.remove(hash);
             if (removed != null) {
-                persistence.saveIndex(indexMap);
+                persistence.recordRemove(hash);
+                compactIfNeeded();
                 logger.debug("Removed chunk {} from index", hash);
                 return true;
             }
@@ -149,7 +192,11 @@ public final class FilesystemChunkIndex implements ChunkIndex {
 
         lock.readLock().lock();
         try {
-            return new HashSet<>(indexMap.keySet());
+            Set<String> hashes = new HashSet<>(indexMap.size() * 2);
+            for (ChunkId chunkId : indexMap.keySet()) {
+                hashes.add(chunkId.toHex());
+            }
+            return hashes;
         } finally {
             lock.readLock().unlock();
         }
@@ -175,21 +222,30 @@ public final class FilesystemChunkIndex implements ChunkIndex {
             throw new IllegalArgumentException("Active hashes set cannot be null");
         }
 
+        // Hashes that are not valid chunk IDs cannot be in the index
+        Set<ChunkId> activeIds = new HashSet<>(activeHashes.size() * 2);
+        for (String hash : activeHashes) {
+            if (ChunkId.isValidHex(hash)) {
+                activeIds.add(ChunkId.fromHex(hash));
+            }
+        }
+
         lock.writeLock().lock();
         try {
-            Set<String> toRemove = new HashSet<>();
-            for (String hash : indexMap.keySet()) {
-                if (!activeHashes.contains(hash)) {
+            Set<ChunkId> toRemove = new HashSet<>();
+            for (ChunkId hash : indexMap.keySet()) {
+                if (!activeIds.contains(hash)) {
                     toRemove.add(hash);
                 }
             }
 
-            for (String hash : toRemove) {
+            for (ChunkId hash : toRemove) {
                 indexMap.remove(hash);
+                persistence.recordRemove(hash);
             }
 
             if (!toRemove.isEmpty()) {
-                persistence.saveIndex(indexMap);
+                compactIfNeeded();
                 logger.debug("Retained {} chunks, removed {} orphaned chunks",
                             activeHashes.size(), toRemove.size());
             }
@@ -205,8 +261,15 @@ public final class FilesystemChunkIndex implements ChunkIndex {
         lock.writeLock().lock();
         try {
             if (!closed) {
-                persistence.saveIndex(indexMap);
                 closed = true;
+                try {
+                    awaitCompaction();
+                } finally {
+                    if (compactionExecutor != null) {
+                        compactionExecutor.shutdown();
+                    }
+                    persistence.close();
+                }
                 logger.debug("Closed chunk index");
             }
         } finally {
@@ -223,7 +286,7 @@ public final class FilesystemChunkIndex implements ChunkIndex {
         lock.writeLock().lock();
         try {
             indexMap.clear();
-            Map<String, Path> loadedIndex = persistence.loadIndex();
+            Map<ChunkId, Path> loadedIndex = persistence.loadIndex();
             indexMap.putAll(loadedIndex);
             logger.debug("Loaded {} chunks from index", indexMap.size());
         } finally {
@@ -231,6 +294,51 @@ public final class FilesystemChunkIndex implements ChunkIndex {
         }
     }
 
+    /**
+     * Starts a background compaction if the journal has grown enough and none is running.
+     * Must be called with the write lock held. The journal is rotated and the index copied
+     * here, so the snapshot matches the rotated journal; writing it happens in the background.
+     *
+     * @throws IOException if the journal cannot be rotated
+     */
+    private void compactIfNeeded() throws IOException {
+        if (!persistence.needsCompaction() || (compaction != null && !compaction.isDone())) {
+            return;
+        }
+        persistence.rotateJournal();
+        Map<ChunkId, Path> snapshot = new HashMap<>(indexMap);
+        if (compactionExecutor == null) {
+            compactionExecutor = IoExecutors.newExecutor("chunk-index-compaction", 1, ExecutionMode.PLATFORM);
+        }
+        compaction = CompletableFuture.runAsync(() -> {
+            try {
+                persistence.compact(snapshot);
+            } catch (IOException e) {
+                // The journals are still there, so nothing is lost; the next change retries
+                logger.warn("Failed to compact chunk index: {}", e.getMessage());
+            }
+        }, compactionExecutor);
+    }
+
+    /**
+     * Waits for a running compaction to finish.
+     *
+     * @throws IOException if interrupted while waiting
+     */
+    private void awaitCompaction() throws IOException {
+        if (compaction == null) {
+            return;
+        }
+        try {
+            compaction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for chunk index compaction", e);
+        } catch (java.util.concurrent.ExecutionException e) {
+            throw new IOException("Chunk index compaction failed", e.getCause());
+        }
+    }
+
     private void validateNotClosed() throws IOException {
         if (closed) {
             throw new IOException("Chunk index has been closed");
@@ -242,4 +350,15 @@ public final class FilesystemChunkIndex implements ChunkIndex {
             throw new IllegalArgumentException("Hash cannot be null or empty");
         }
     }
+
+    private ChunkId parseHash(String hash) {
+        validateHash(hash);
+        return ChunkId.fromHex(hash);
+    }
+
+    private void validateChunkId(ChunkId hash) {
+        if (hash == null) {
+            throw new IllegalArgumentException("Chunk ID cannot be null");
+        }
+    }
 }
\ No newline at end of file
@@ -19,6 +19,7 @@
 package com.justsyncit.storage;
 
 import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.hash.ChunkId;
 import com.justsyncit.hash.HashingException;
 import com.justsyncit.ServiceException;
 import org.slf4j.Logger;
@@ -27,12 +28,17 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Filesystem-based implementation of ContentStore using Java NIO.
  * Provides content-addressable storage with automatic deduplication.
+ * Each chunk file carries a CRC32C of its data (see {@link ChunkFile}), which routine reads
+ * check instead of re-hashing the chunk.
+ * Chunks are written under the shared read lock and a lock striped by hash, so different
+ * chunks are written in parallel; only garbage collection and closing take the write lock.
  * Follows Single Responsibility Principle by delegating to specialized components.
  * Extends AbstractContentStore to follow Open/Closed Principle.
  */
@@ -40,6 +46,8 @@ public final class FilesystemContentStore extends AbstractContentStore {
 
     /** Logger instance. */
     private static final Logger logger = LoggerFactory.getLogger(FilesystemContentStore.class);
+    /** Number of chunk write locks; a power of two. */
+    private static final int WRITE_STRIPES = 64;
 
     /** The directory where chunks are stored. */
     private final Path storageDirectory;
@@ -49,6 +57,8 @@ public final class FilesystemContentStore extends AbstractContentStore {
     private final IntegrityVerifier integrityVerifier;
     /** The path generator for chunk file paths. */
     private final ChunkPathGenerator pathGenerator;
+    /** Locks serializing writes of the same chunk, chosen by hash. */
+    private final Lock[] writeStripes;
 
     /**
      * Creates a new FilesystemContentStore.
@@ -66,6 +76,10 @@ public final class FilesystemContentStore extends AbstractContentStore {
         this.chunkIndex = chunkIndex;
         this.integrityVerifier = integrityVerifier;
         this.pathGenerator = pathGenerator;
+        this.writeStripes = new Lock[WRITE_STRIPES];
+        for (int i = 0; i < WRITE_STRIPES; i++) {
+            writeStripes[i] = new ReentrantLock();
+        }
 
         // Create storage directory if it doesn't exist
         Files.createDirectories(storageDirectory);
@@ -79,10 +93,15 @@ public final class FilesystemContentStore extends AbstractContentStore {
      * @param chunkIndex chunk index to use
      * @param blake3Service BLAKE3 service for hashing
      * @return a new FilesystemContentStore instance
-     * @throws IOException if storage cannot be initialized
+     * @throws IOException if storage cannot be initialized or was written with a different hash algorithm
      */
     public static FilesystemContentStore create(Path storageDirectory, ChunkIndex chunkIndex,
                                           Blake3Service blake3Service) throws IOException {
+        Blake3Service.Blake3Info info = blake3Service != null ? blake3Service.getInfo() : null;
+        if (info != null && info.getHashAlgorithm() != null) {
+            // Chunks are addressed by their hash, so a repository must never mix algorithms
+            RepositoryFormat.ensureCompatible(storageDirectory, info.getHashAlgorithm());
+        }
         IntegrityVerifier integrityVerifier = new Blake3IntegrityVerifier(blake3Service);
         ChunkPathGenerator pathGenerator = new TwoLevelChunkPathGenerator();
         return new FilesystemContentStore(storageDirectory, chunkIndex, integrityVerifier, pathGenerator);
@@ -113,26 +132,53 @@ public final class FilesystemContentStore extends AbstractContentStore {
         } catch (HashingException e) {
             throw new IOException("Failed to calculate hash for chunk", e);
         }
+        return storeHashedChunk(hash, data);
+    }
+
+    @Override
+    protected void doStoreChunk(ChunkId chunkId, byte[] data) throws IOException {
+        storeHashedChunk(chunkId.toHex(), data);
+    }
 
-        // Check if chunk already exists
+    /**
+     * Stores a chunk unless it already exists.
+     *
+     * @param hash the hash of the chunk
+     * @param data the chunk data
+     * @return the hash of the chunk
+     * @throws IOException if the chunk cannot be written
+     */
+    private String storeHashedChunk(String hash, byte[] data) throws IOException {
+        // The read lock keeps garbage collection and closing out; writers only exclude each other per stripe
         lock.readLock().lock();
         try {
+            // Check if chunk already exists
             if (chunkIndex.containsChunk(hash)) {
                 logger.debug("Chunk {} already exists, skipping storage", hash);
                 return hash;
             }
+
+            Lock stripe = writeStripes[stripe(hash)];
+            stripe.lock();
+            try {
+                // Double-check after acquiring the chunk's lock
+                if (chunkIndex.containsChunk(hash)) {
+                    return hash;
+                }
+                return writeChunk(hash, data);
+            } finally {
+                stripe.unlock();
+            }
         } finally {
             lock.readLock().unlock();
         }
+    }
 
-        // Store the chunk
-        lock.writeLock().lock();
+    /**
+     * Writes a chunk file and adds it to the index. Must be called holding the chunk's stripe lock.
+     */
+    private String writeChunk(String hash, byte[] data) throws IOException {
         try {
-            // Double-check after acquiring write lock
-            if (chunkIndex.containsChunk(hash)) {
-                return hash;
-            }
-
             Path chunkPath;
             try {
                 chunkPath = pathGenerator.generatePath(storageDirectory, hash);
@@ -140,8 +186,8 @@ public final class FilesystemContentStore extends AbstractContentStore {
                 throw new IOException("Failed to generate path for chunk", e);
             }
 
-            // Write chunk to file
-            Files.write(chunkPath, data, StandardOpenOption.CREATE_NEW);
+            // Write chunk to file, prefixed with its checksum
+            ChunkFile.write(chunkPath, data);
 
             // Add to index
             chunkIndex.putChunk(hash, chunkPath);
@@ -165,13 +211,22 @@ public final class FilesystemContentStore extends AbstractContentStore {
                 logger.warn("Failed to cleanup partial chunk file: {}", cleanupException.getMessage());
             }
             throw e;
-        } finally {
-            lock.writeLock().unlock();
         }
     }
 
+    /**
+     * Gets the write stripe of a chunk.
+     *
+     * @param hash the chunk hash
+     * @return the index of the chunk's write lock
+     */
+    static int stripe(String hash) {
+        int h = hash.hashCode();
+        return (h ^ (h >>> 16)) & (WRITE_STRIPES - 1);
+    }
+
     @Override
-    protected byte[] doRetrieveChunk(String hash) throws IOException, StorageIntegrityException {
+    protected byte[] doRetrieveChunk(String hash, VerificationMode mode) throws IOException, StorageIntegrityException {
         lock.readLock().lock();
         try {
             Path chunkPath = chunkIndex.getChunkPath(hash);
@@ -190,10 +245,14 @@ public final class FilesystemContentStore extends AbstractContentStore {
                 }
                 return null;
             }
-            byte[] data = Files.readAllBytes(chunkPath);
+            ChunkFile chunkFile = ChunkFile.read(chunkPath);
+            byte[] data = chunkFile.getData();
 
-            // Verify integrity
-            integrityVerifier.verifyIntegrity(data, hash);
+            // A matching CRC32C is enough for routine reads; files without one (written before
+            // checksums were stored, or corrupted) always get the full hash check
+            if (mode == VerificationMode.FULL || !chunkFile.isChecksumVerified()) {
+                integrityVerifier.verifyIntegrity(data, hash);
+            }
 
             logger.debug("Retrieved chunk {} ({} bytes)", hash, data.length);
             return data;
@@ -213,6 +272,16 @@ public final class FilesystemContentStore extends AbstractContentStore {
         }
     }
 
+    @Override
+    protected boolean doExistsChunk(ChunkId chunkId) throws IOException {
+        lock.readLock().lock();
+        try {
+            return chunkIndex.containsChunk(chunkId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     @Override
     protected long doGetChunkCount() throws IOException {
         lock.readLock().lock();
@@ -18,32 +18,59 @@
 
 package com.justsyncit.storage;
 
+import com.justsyncit.hash.ChunkId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.CRC32C;
 
 /**
  * Handles persistence of the chunk index to and from disk.
- * Uses a simple text format with hash|relative_path entries.
+ * The index is kept as a snapshot file of hash|relative_path entries, sorted by hash and ending
+ * with a checksum line, plus a journal of the changes made since. Each put or remove appends one
+ * line to the journal, so recording a change costs the same however large the index is. Once the
+ * journal has grown as large as the snapshot, the index is compacted into a new snapshot; the
+ * journal is rotated first so that changes can keep being recorded while the snapshot is written.
+ * Loading reads the snapshot and replays the journals on top of it.
  */
 public final class IndexPersistence {
 
     /** Logger instance. */
     private static final Logger logger = LoggerFactory.getLogger(IndexPersistence.class);
 
-    /** The file used to store the index. */
+    /** Journal size, in records, below which the index is never compacted. */
+    static final long MIN_COMPACTION_RECORDS = 4096;
+    /** Start of the checksum line that ends a snapshot. */
+    private static final String CHECKSUM_PREFIX = "#entries=";
+
+    /** The file used to store the index snapshot. */
     private final Path indexFile;
     /** The directory where chunks are stored. */
     private final Path storageDirectory;
+    /** The journal recording changes since the snapshot. */
+    private final Path journalFile;
+    /** The journal being folded into a new snapshot by a compaction. */
+    private final Path rotatedJournalFile;
+    /** Open channel to the journal, created with the first record. */
+    private FileChannel journal;
+    /** Number of records in the journal. */
+    private long journalRecords;
+    /** Number of entries in the last snapshot. */
+    private volatile long snapshotEntries;
 
     /**
      * Creates a new IndexPersistence.
@@ -61,82 +88,296 @@ public final class IndexPersistence {
         }
         this.storageDirectory = storageDirectory;
         this.indexFile = indexFile;
+        this.journalFile = indexFile.resolveSibling(indexFile.getFileName() + ".journal");
+        this.rotatedJournalFile = indexFile.resolveSibling(indexFile.getFileName() + ".journal.old");
     }
 
     /**
-     * Loads the index from disk.
+     * Loads the index from disk: the snapshot, then any journal left by an unfinished
+     * compaction, then the current journal. A torn record at the end of the current journal,
+     * left by a crash while it was being appended, is cut off.
      *
-     * @return a map of hashes to file paths
-     * @throws IOException if an I/O error occurs
+     * @return a map of chunk IDs to file paths
+     * @throws IOException if an I/O error occurs or the snapshot fails its checksum
      */
-    public Map<String, Path> loadIndex() throws IOException {
-        Map<String, Path> indexMap = new HashMap<>();
+    public Map<ChunkId, Path> loadIndex() throws IOException {
+        Map<ChunkId, Path> indexMap = new HashMap<>();
 
-        if (!Files.exists(indexFile)) {
+        if (Files.exists(indexFile)) {
+            loadSnapshot(indexMap);
+        } else {
             logger.debug("Index file does not exist, starting with empty index");
-            return indexMap;
         }
+        snapshotEntries = indexMap.size();
+        if (Files.exists(rotatedJournalFile)) {
+            replayJournal(rotatedJournalFile, indexMap);
+        }
+        journalRecords = Files.exists(journalFile) ? replayJournal(journalFile, indexMap) : 0;
+
+        logger.debug("Loaded {} chunks from index ({} journal records)", indexMap.size(), journalRecords);
+        return indexMap;
+    }
+
+    /**
+     * Saves the whole index to disk as a new snapshot and empties the journals.
+     *
+     * @param indexMap the map of chunk IDs to file paths to save
+     * @throws IOException if an I/O error occurs
+     */
+    public void saveIndex(Map<ChunkId, Path> indexMap) throws IOException {
+        writeSnapshot(indexMap);
+        closeJournal();
+        Files.deleteIfExists(journalFile);
+        Files.deleteIfExists(rotatedJournalFile);
+        journalRecords = 0;
+    }
+
+    /**
+     * Records that a chunk was added to the index.
+     *
+     * @param chunkId the chunk ID
+     * @param filePath the path of the chunk file
+     * @throws IOException if the journal cannot be written
+     */
+    public void recordPut(ChunkId chunkId, Path filePath) throws IOException {
+        appendRecord("+" + chunkId.toHex() + "|" + storageDirectory.relativize(filePath) + "\n");
+    }
+
+    /**
+     * Records that a chunk was removed from the index.
+     *
+     * @param chunkId the chunk ID
+     * @throws IOException if the journal cannot be written
+     */
+    public void recordRemove(ChunkId chunkId) throws IOException {
+        appendRecord("-" + chunkId.toHex() + "\n");
+    }
+
+    /**
+     * Checks whether the journal has grown enough to be compacted into a new snapshot.
+     *
+     * @return true if the journal holds at least as many records as the snapshot
+     */
+    public boolean needsCompaction() {
+        return journalRecords >= Math.max(MIN_COMPACTION_RECORDS, snapshotEntries);
+    }
+
+    /**
+     * Starts a compaction by moving the journal aside, so that the changes made from now on
+     * go to a new journal. Must be called while no changes are being recorded, with the map
+     * the snapshot is then written from taken at the same time.
+     * If the journal of an earlier, failed compaction is still there, the current journal is
+     * kept instead; it is then replayed on top of the new snapshot, which is equally correct.
+     *
+     * @throws IOException if the journal cannot be moved
+     */
+    public void rotateJournal() throws IOException {
+        if (Files.exists(rotatedJournalFile) || !Files.exists(journalFile)) {
+            return;
+        }
+        closeJournal();
+        Files.move(journalFile, rotatedJournalFile, StandardCopyOption.ATOMIC_MOVE);
+        journalRecords = 0;
+    }
+
+    /**
+     * Finishes a compaction: writes the snapshot and deletes the rotated journal, whose changes
+     * the snapshot now holds. Can run while changes are recorded to the current journal.
+     *
+     * @param indexMap the index as it was when the journal was rotated
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void compact(Map<ChunkId, Path> indexMap) throws IOException {
+        writeSnapshot(indexMap);
+        Files.deleteIfExists(rotatedJournalFile);
+        logger.debug("Compacted chunk index into a snapshot of {} chunks", indexMap.size());
+    }
+
+    /**
+     * Closes the journal. The index can still be loaded from disk afterwards.
+     *
+     * @throws IOException if the journal cannot be closed
+     */
+    public void close() throws IOException {
+        closeJournal();
+    }
+
+    /**
+     * Ensures the necessary directories exist for index persistence.
+     *
+     * @throws IOException if directories cannot be created
+     */
+    public void ensureDirectoriesExist() throws IOException {
+        Files.createDirectories(storageDirectory);
+        Path indexParentDir = indexFile.getParent();
+        if (indexParentDir != null) {
+            Files.createDirectories(indexParentDir);
+        }
+    }
 
+    /**
+     * Reads the snapshot into the map. Snapshots written before they had a checksum line are
+     * accepted as they are.
+     */
+    private void loadSnapshot(Map<ChunkId, Path> indexMap) throws IOException {
+        CRC32C crc = new CRC32C();
+        long entries = 0;
+        String checksumLine = null;
         try (BufferedReader reader = Files.newBufferedReader(indexFile)) {
             String line;
             while ((line = reader.readLine()) != null) {
+                if (line.startsWith(CHECKSUM_PREFIX)) {
+                    checksumLine = line;
+                    break;
+                }
+                crc.update((line + "\n").getBytes(StandardCharsets.UTF_8));
                 line = line.trim();
                 if (!line.isEmpty()) {
                     String[] parts = line.split("\\|", 2);
                     if (parts.length == 2) {
                         String hash = parts[0].trim();
                         String relativePath = parts[1].trim();
+                        if (!ChunkId.isValidHex(hash)) {
+                            logger.warn("Skipping index entry with invalid chunk hash: {}", hash);
+                            continue;
+                        }
                         Path fullPath = storageDirectory.resolve(relativePath);
-                        indexMap.put(hash, fullPath);
+                        indexMap.put(ChunkId.fromHex(hash), fullPath);
+                        entries++;
                     }
                 }
             }
         }
-
-        logger.debug("Loaded {} chunks from index", indexMap.size());
-        return indexMap;
+        if (checksumLine != null && !checksumLine.equals(checksumLine(entries, crc))) {
+            throw new IOException("Chunk index snapshot " + indexFile + " is corrupted: expected "
+                    + checksumLine + " but read " + checksumLine(entries, crc));
+        }
     }
 
     /**
-     * Saves the index to disk.
-     *
-     * @param indexMap the map of hashes to file paths to save
-     * @throws IOException if an I/O error occurs
+     * Writes a snapshot of the map, sorted by chunk ID, to a temporary file and moves it over
+     * the snapshot.
      */
-    public void saveIndex(Map<String, Path> indexMap) throws IOException {
+    private void writeSnapshot(Map<ChunkId, Path> indexMap) throws IOException {
+        List<Map.Entry<ChunkId, Path>> entries = new ArrayList<>(indexMap.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+
         // Write to temporary file first, then atomically move
         Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
-
+        CRC32C crc = new CRC32C();
         try (BufferedWriter writer = Files.newBufferedWriter(tempFile,
                 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
 
-            for (Map.Entry<String, Path> entry : indexMap.entrySet()) {
-                String hash = entry.getKey();
+            for (Map.Entry<ChunkId, Path> entry : entries) {
+                String hash = entry.getKey().toHex();
                 Path fullPath = entry.getValue();
                 Path relativePath = storageDirectory.relativize(fullPath);
-                writer.write(hash + "|" + relativePath.toString());
-                writer.newLine();
+                String line = hash + "|" + relativePath.toString();
+                crc.update((line + "\n").getBytes(StandardCharsets.UTF_8));
+                writer.write(line);
+                writer.write('\n');
             }
+            writer.write(checksumLine(entries.size(), crc));
+            writer.write('\n');
+        }
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
         }
 
         // Atomically replace the old index file
         Files.move(tempFile, indexFile,
                   StandardCopyOption.ATOMIC_MOVE,
                   StandardCopyOption.REPLACE_EXISTING);
+        snapshotEntries = entries.size();
 
-        logger.debug("Saved {} chunks to index", indexMap.size());
+        logger.debug("Saved {} chunks to index", entries.size());
     }
 
     /**
-     * Ensures the necessary directories exist for index persistence.
+     * Replays a journal into the map, stopping at the first incomplete or malformed record.
+     * The current journal is truncated there so that new records follow the last good one.
      *
-     * @throws IOException if directories cannot be created
+     * @return the number of records replayed
      */
-    public void ensureDirectoriesExist() throws IOException {
-        Files.createDirectories(storageDirectory);
-        Path indexParentDir = indexFile.getParent();
-        if (indexParentDir != null) {
-            Files.createDirectories(indexParentDir);
+    private long replayJournal(Path file, Map<ChunkId, Path> indexMap) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        long records = 0;
+        int start = 0;
+        while (start < bytes.length) {
+            int end = start;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end++;
+            }
+            if (end == bytes.length || !applyRecord(new String(bytes, start, end - start, StandardCharsets.UTF_8),
+                    indexMap)) {
+                break;
+            }
+            records++;
+            start = end + 1;
         }
+        if (start < bytes.length) {
+            logger.warn("Ignoring {} bytes of incomplete records at the end of {}", bytes.length - start, file);
+            if (file.equals(journalFile)) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(start);
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Applies one journal record to the map.
+     *
+     * @return false if the record is malformed
+     */
+    private boolean applyRecord(String record, Map<ChunkId, Path> indexMap) {
+        if (record.startsWith("-") && ChunkId.isValidHex(record.substring(1))) {
+            indexMap.remove(ChunkId.fromHex(record.substring(1)));
+            return true;
+        }
+        int separator = record.indexOf('|');
+        if (record.startsWith("+") && separator > 0 && separator < record.length() - 1
+                && ChunkId.isValidHex(record.substring(1, separator))) {
+            indexMap.put(ChunkId.fromHex(record.substring(1, separator)),
+                    storageDirectory.resolve(record.substring(separator + 1)));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Appends a record to the journal with a single write.
+     */
+    private void appendRecord(String record) throws IOException {
+        if (journal == null) {
+            journal = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+        journalRecords++;
+    }
+
+    /**
+     * Closes the journal channel if it is open.
+     */
+    private void closeJournal() throws IOException {
+        if (journal != null) {
+            try {
+                journal.close();
+            } finally {
+                journal = null;
+            }
+        }
+    }
+
+    /**
+     * Formats the checksum line that ends a snapshot.
+     */
+    private static String checksumLine(long entries, CRC32C crc) {
+        return CHECKSUM_PREFIX + entries + " crc32c=" + String.format("%08x", crc.getValue());
     }
-}
\ No newline at end of file
+}
@@ -18,6 +18,7 @@
 
 package com.justsyncit.storage;
 
+import com.justsyncit.hash.ChunkId;
 import com.justsyncit.hash.HashingException;
 import java.io.IOException;
 import java.util.HashMap;
@@ -74,15 +75,26 @@ public final class MemoryContentStore extends AbstractContentStore {
     }
 
     @Override
-    protected byte[] doRetrieveChunk(String hash) throws IOException, StorageIntegrityException {
+    protected void doStoreChunk(ChunkId chunkId, byte[] data) throws IOException {
+        // The data is already a private copy
+        if (chunkStorage.putIfAbsent(chunkId.toHex(), data) == null) {
+            logger.debug("Stored chunk {} ({} bytes) in memory", chunkId, data.length);
+        }
+    }
+
+    @Override
+    protected byte[] doRetrieveChunk(String hash, VerificationMode mode) throws IOException, StorageIntegrityException {
         byte[] data = chunkStorage.get(hash);
         if (data == null) {
             logger.debug("Chunk {} not found in memory", hash);
             return new byte[0]; // Return empty array instead of null
         }
 
-        // Verify integrity
-        integrityVerifier.verifyIntegrity(data, hash);
+        // Stored copies are private to this store and cannot suffer media corruption,
+        // so there is no checksum to keep and only full verification re-hashes them
+        if (mode == VerificationMode.FULL) {
+            integrityVerifier.verifyIntegrity(data, hash);
+        }
 
         logger.debug("Retrieved chunk {} ({} bytes) from memory", hash, data.length);
         return data.clone(); // Defensive copy
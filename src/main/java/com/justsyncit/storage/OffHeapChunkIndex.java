@@ -0,0 +1,258 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.storage;
+
+import com.justsyncit.hash.ChunkId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Chunk index held in an off-heap open-addressing table (see {@link OffHeapChunkTable}),
+ * optionally memory-mapped from a file so it survives restarts without being reloaded.
+ * Only the 32-byte chunk IDs are stored: chunk paths are those of
+ * {@link TwoLevelChunkPathGenerator} and are derived from the ID, so an entry costs about
+ * 53 bytes outside the heap instead of a key and a Path object on it.
+ * Lookups take no lock.
+ */
+public final class OffHeapChunkIndex implements ChunkIndex {
+
+    /** Logger instance. */
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapChunkIndex.class);
+
+    /** The directory where chunks are stored. */
+    private final Path storageDirectory;
+    /** The table of chunk IDs. */
+    private final OffHeapChunkTable table;
+    /** Flag indicating if the index has been closed. */
+    private volatile boolean closed;
+
+    /**
+     * Creates a new OffHeapChunkIndex.
+     *
+     * @param storageDirectory the directory where chunks are stored
+     * @param table the table of chunk IDs
+     */
+    private OffHeapChunkIndex(Path storageDirectory, OffHeapChunkTable table) {
+        this.storageDirectory = storageDirectory;
+        this.table = table;
+        this.closed = false;
+    }
+
+    /**
+     * Creates an index held in direct memory.
+     *
+     * @param storageDirectory directory where chunks are stored
+     * @param expectedChunks number of chunks to size the table for; it grows past that as needed
+     * @return a new OffHeapChunkIndex instance
+     * @throws IllegalArgumentException if storageDirectory is null
+     */
+    public static OffHeapChunkIndex create(Path storageDirectory, long expectedChunks) {
+        if (storageDirectory == null) {
+            throw new IllegalArgumentException("Storage directory cannot be null");
+        }
+        return new OffHeapChunkIndex(storageDirectory, OffHeapChunkTable.allocate(expectedChunks));
+    }
+
+    /**
+     * Opens an index memory-mapped from a table file, creating the file if it does not exist.
+     * A file that was not closed cleanly is still opened; its entries were written to the
+     * mapping as they were made, so only an operating system crash can lose any.
+     *
+     * @param storageDirectory directory where chunks are stored
+     * @param tableFile file holding the table
+     * @param expectedChunks number of chunks to size a new table for; it grows past that as needed
+     * @return a new OffHeapChunkIndex instance
+     * @throws IOException if the table file cannot be opened
+     * @throws IllegalArgumentException if storageDirectory or tableFile is null
+     */
+    public static OffHeapChunkIndex open(Path storageDirectory, Path tableFile, long expectedChunks)
+            throws IOException {
+        if (storageDirectory == null) {
+            throw new IllegalArgumentException("Storage directory cannot be null");
+        }
+        if (tableFile == null) {
+            throw new IllegalArgumentException("Table file cannot be null");
+        }
+        OffHeapChunkTable table = OffHeapChunkTable.map(tableFile, expectedChunks);
+        if (!table.isTrusted()) {
+            logger.warn("Chunk table {} was not closed cleanly", tableFile);
+        }
+        logger.debug("Opened chunk table {} with {} chunks", tableFile, table.size());
+        return new OffHeapChunkIndex(storageDirectory, table);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if filePath is not the two-level path of the chunk
+     */
+    @Override
+    public void putChunk(String hash, Path filePath) throws IOException {
+        validateNotClosed();
+        validateHash(hash);
+        putChunk(ChunkId.fromHex(hash), filePath);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if filePath is not the two-level path of the chunk
+     */
+    @Override
+    public void putChunk(ChunkId hash, Path filePath) throws IOException {
+        validateNotClosed();
+        validateChunkId(hash);
+        if (filePath == null) {
+            throw new IllegalArgumentException("File path cannot be null");
+        }
+        Path expected = chunkPath(hash);
+        if (!expected.equals(filePath)) {
+            throw new IllegalArgumentException("Chunk " + hash + " must be stored at " + expected + ", not " + filePath);
+        }
+
+        table.put(hash, 0);
+        logger.debug("Added chunk {} to index", hash);
+    }
+
+    @Override
+    public Path getChunkPath(String hash) throws IOException {
+        validateNotClosed();
+        validateHash(hash);
+        // Anything that is not a chunk ID cannot be in the index
+        return ChunkId.isValidHex(hash) ? getChunkPath(ChunkId.fromHex(hash)) : null;
+    }
+
+    @Override
+    public Path getChunkPath(ChunkId hash) throws IOException {
+        validateNotClosed();
+        validateChunkId(hash);
+        return table.contains(hash) ? chunkPath(hash) : null;
+    }
+
+    @Override
+    public boolean containsChunk(String hash) throws IOException {
+        validateNotClosed();
+        validateHash(hash);
+        return ChunkId.isValidHex(hash) && containsChunk(ChunkId.fromHex(hash));
+    }
+
+    @Override
+    public boolean containsChunk(ChunkId hash) throws IOException {
+        validateNotClosed();
+        validateChunkId(hash);
+        return table.contains(hash);
+    }
+
+    @Override
+    public boolean removeChunk(String hash) throws IOException {
+        validateNotClosed();
+        validateHash(hash);
+        return ChunkId.isValidHex(hash) && removeChunk(ChunkId.fromHex(hash));
+    }
+
+    @Override
+    public boolean removeChunk(ChunkId hash) throws IOException {
+        validateNotClosed();
+        validateChunkId(hash);
+        boolean removed = table.remove(hash) != OffHeapChunkTable.ABSENT;
+        if (removed) {
+            logger.debug("Removed chunk {} from index", hash);
+        }
+        return removed;
+    }
+
+    @Override
+    public Set<String> getAllHashes() throws IOException {
+        validateNotClosed();
+        Set<String> hashes = new HashSet<>((int) Math.min(Integer.MAX_VALUE, table.size() * 2));
+        table.forEach((chunkId, value) -> hashes.add(chunkId.toHex()));
+        return hashes;
+    }
+
+    @Override
+    public long getChunkCount() throws IOException {
+        validateNotClosed();
+        return table.size();
+    }
+
+    @Override
+    public long retainAll(Set<String> activeHashes) throws IOException {
+        validateNotClosed();
+
+        if (activeHashes == null) {
+            throw new IllegalArgumentException("Active hashes set cannot be null");
+        }
+
+        List<ChunkId> toRemove = new ArrayList<>();
+        table.forEach((chunkId, value) -> {
+            if (!activeHashes.contains(chunkId.toHex())) {
+                toRemove.add(chunkId);
+            }
+        });
+        for (ChunkId chunkId : toRemove) {
+            table.remove(chunkId);
+        }
+        if (!toRemove.isEmpty()) {
+            logger.debug("Retained {} chunks, removed {} orphaned chunks", table.size(), toRemove.size());
+        }
+        return toRemove.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            table.close();
+            logger.debug("Closed chunk index");
+        }
+    }
+
+    /**
+     * Gets the path of a chunk, laid out as by {@link TwoLevelChunkPathGenerator}.
+     */
+    private Path chunkPath(ChunkId hash) {
+        String hex = hash.toHex();
+        return storageDirectory.resolve(hex.substring(0, 2)).resolve(hex.substring(2));
+    }
+
+    private void validateNotClosed() throws IOException {
+        if (closed) {
+            throw new IOException("Chunk index has been closed");
+        }
+    }
+
+    private void validateHash(String hash) {
+        if (hash == null || hash.trim().isEmpty()) {
+            throw new IllegalArgumentException("Hash cannot be null or empty");
+        }
+    }
+
+    private void validateChunkId(ChunkId hash) {
+        if (hash == null) {
+            throw new IllegalArgumentException("Chunk ID cannot be null");
+        }
+    }
+}
@@ -0,0 +1,648 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.storage;
+
+import com.justsyncit.hash.ChunkId;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Open-addressing hash table from chunk IDs to longs, held outside the Java heap.
+ * Each slot is 40 bytes: a state word and the 32-byte chunk ID, so an entry costs about
+ * 53 bytes at the maximum load instead of the hundreds a map of objects takes. The slots live
+ * in direct buffers, or in a memory-mapped file that keeps the table across restarts.
+ * <p>
+ * Reads take no lock. A slot's key is written before its state word is published with release
+ * semantics, and is never changed afterwards: removal only marks the slot as a tombstone, and
+ * re-adding a removed ID revives its old slot. Writers are serialized. When live entries and
+ * tombstones fill the table, a writer rebuilds it into new slots and publishes them in one
+ * step; readers still holding the old slots see the table as it was before the rebuild, and
+ * nothing waits for them. A rebuild needs the old and new slots at once, so a table that will
+ * grow very large should be created with its expected size.
+ */
+final class OffHeapChunkTable {
+
+    /** Value returned for IDs that are not in the table. */
+    static final long ABSENT = -1;
+    /** Largest value the table can hold; values are stored plus one so that zero means empty. */
+    static final long MAX_VALUE = Long.MAX_VALUE - 1;
+
+    /** Magic number at the start of a table file ("JSH1"). */
+    static final int MAGIC = 0x4A534831;
+    /** Format version of table files. */
+    static final int VERSION = 1;
+    /** Size of the table file header in bytes. */
+    static final int HEADER_SIZE = 64;
+    /** Size of a slot in bytes: state word and chunk ID. */
+    static final int SLOT_SIZE = 8 + ChunkId.BYTES;
+    /** Smallest number of slots. */
+    static final long MIN_CAPACITY = 1024;
+    /** Largest fraction of slots used by live entries and tombstones before a rebuild. */
+    static final double MAX_LOAD = 0.75;
+
+    /** State of a slot that has never been used. */
+    private static final long EMPTY = 0;
+    /** State of a slot whose entry was removed. */
+    private static final long TOMBSTONE = -1;
+    /** Slots per buffer, as a power of two; a buffer holds at most 640 MiB. */
+    private static final int PAGE_SHIFT = 24;
+    /** Slots per buffer. */
+    private static final long PAGE_SLOTS = 1L << PAGE_SHIFT;
+    /** Header offset of the capacity. */
+    private static final int CAPACITY_OFFSET = 8;
+    /** Header offset of the live entry count. */
+    private static final int SIZE_OFFSET = 16;
+    /** Header offset of the tombstone count. */
+    private static final int TOMBSTONES_OFFSET = 24;
+    /** Header offset of the flag set when the table was closed cleanly. */
+    static final int CLEAN_OFFSET = 32;
+    /** Access to slot state words with memory ordering. */
+    private static final VarHandle STATE = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** The table file, or null if the table is held in direct memory. */
+    private final Path file;
+    /** Serializes writers. */
+    private final ReentrantLock writeLock;
+    /** The current slots. */
+    private volatile Slots slots;
+    /** Number of live entries. */
+    private volatile long size;
+    /** Number of tombstones. */
+    private long tombstones;
+    /** Whether the table file was closed cleanly before it was opened. */
+    private final boolean trusted;
+
+    /**
+     * Creates a new OffHeapChunkTable.
+     *
+     * @param file the table file, or null
+     * @param slots the initial slots
+     * @param size the number of live entries in the slots
+     * @param tombstones the number of tombstones in the slots
+     * @param trusted whether the contents of an existing file can be trusted
+     */
+    private OffHeapChunkTable(Path file, Slots slots, long size, long tombstones, boolean trusted) {
+        this.file = file;
+        this.writeLock = new ReentrantLock();
+        this.slots = slots;
+        this.size = size;
+        this.tombstones = tombstones;
+        this.trusted = trusted;
+    }
+
+    /**
+     * Creates a table held in direct memory.
+     *
+     * @param expectedEntries the number of entries to size the table for
+     * @return the new table
+     */
+    static OffHeapChunkTable allocate(long expectedEntries) {
+        return new OffHeapChunkTable(null, Slots.allocate(capacityFor(expectedEntries)), 0, 0, true);
+    }
+
+    /**
+     * Opens a table kept in a memory-mapped file, creating the file if it does not exist.
+     * The file is marked as in use until the table is closed; a file that was not closed
+     * cleanly, for example after a crash, has its counts recomputed and is reported as
+     * untrusted by {@link #isTrusted()}, as is a newly created file.
+     *
+     * @param file the table file
+     * @param expectedEntries the number of entries to size a new table for
+     * @return the opened table
+     * @throws IOException if the file cannot be opened or is not a table file
+     */
+    static OffHeapChunkTable map(Path file, long expectedEntries) throws IOException {
+        if (!Files.exists(file)) {
+            Slots slots = Slots.map(file, capacityFor(expectedEntries), true);
+            return new OffHeapChunkTable(file, slots, 0, 0, false);
+        }
+        Slots slots = Slots.map(file, -1, false);
+        ByteBuffer header = slots.header;
+        boolean clean = header.getInt(CLEAN_OFFSET) == 1;
+        long liveEntries = header.getLong(SIZE_OFFSET);
+        long deadEntries = header.getLong(TOMBSTONES_OFFSET);
+        if (!clean) {
+            liveEntries = 0;
+            deadEntries = 0;
+            for (long slot = 0; slot < slots.capacity; slot++) {
+                long state = slots.state(slot);
+                if (state == TOMBSTONE) {
+                    deadEntries++;
+                } else if (state != EMPTY) {
+                    liveEntries++;
+                }
+            }
+        }
+        // Until the table is closed again, a crash leaves the file marked as not clean
+        header.putInt(CLEAN_OFFSET, 0);
+        slots.forceHeader();
+        return new OffHeapChunkTable(file, slots, liveEntries, deadEntries, clean);
+    }
+
+    /**
+     * Gets the value stored for a chunk ID. Takes no lock.
+     *
+     * @param chunkId the chunk ID
+     * @return the value, or {@link #ABSENT} if the ID is not in the table
+     */
+    long get(ChunkId chunkId) {
+        Key key = new Key(chunkId);
+        Slots current = slots;
+        long slot = current.find(key);
+        if (slot < 0) {
+            return ABSENT;
+        }
+        long state = current.state(slot);
+        return state == TOMBSTONE ? ABSENT : state - 1;
+    }
+
+    /**
+     * Checks whether a chunk ID is in the table. Takes no lock.
+     *
+     * @param chunkId the chunk ID
+     * @return true if the ID has a value
+     */
+    boolean contains(ChunkId chunkId) {
+        return get(chunkId) != ABSENT;
+    }
+
+    /**
+     * Stores a value for a chunk ID, replacing any previous value.
+     *
+     * @param chunkId the chunk ID
+     * @param value the value, between 0 and {@link #MAX_VALUE}
+     * @return the previous value, or {@link #ABSENT} if there was none
+     * @throws IOException if a file-backed table cannot be grown
+     */
+    long put(ChunkId chunkId, long value) throws IOException {
+        if (value < 0 || value > MAX_VALUE) {
+            throw new IllegalArgumentException("Value out of range: " + value);
+        }
+        Key key = new Key(chunkId);
+        writeLock.lock();
+        try {
+            Slots current = slots;
+            long slot = current.find(key);
+            if (slot >= 0) {
+                long previous = current.state(slot);
+                current.publish(slot, value + 1);
+                if (previous != TOMBSTONE) {
+                    return previous - 1;
+                }
+                tombstones--;
+                size++;
+                return ABSENT;
+            }
+            if (size + tombstones + 1 > maxEntries(current.capacity)) {
+                current = rebuild(capacityFor(2 * (size + 1)));
+            }
+            current.insert(key, value + 1);
+            size++;
+            return ABSENT;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes a chunk ID.
+     *
+     * @param chunkId the chunk ID
+     * @return the removed value, or {@link #ABSENT} if the ID was not in the table
+     */
+    long remove(ChunkId chunkId) {
+        Key key = new Key(chunkId);
+        writeLock.lock();
+        try {
+            Slots current = slots;
+            long slot = current.find(key);
+            if (slot < 0) {
+                return ABSENT;
+            }
+            long state = current.state(slot);
+            if (state == TOMBSTONE) {
+                return ABSENT;
+            }
+            current.publish(slot, TOMBSTONE);
+            size--;
+            tombstones++;
+            return state - 1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes every entry.
+     *
+     * @throws IOException if a file-backed table cannot be recreated
+     */
+    void clear() throws IOException {
+        writeLock.lock();
+        try {
+            size = 0;
+            tombstones = 0;
+            rebuild(MIN_CAPACITY);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Calls the visitor for every live entry. Entries added or removed during the walk may
+     * or may not be visited.
+     *
+     * @param visitor the visitor
+     */
+    void forEach(EntryVisitor visitor) {
+        Slots current = slots;
+        ByteBuffer keyBuffer = ByteBuffer.allocate(ChunkId.BYTES);
+        for (long slot = 0; slot < current.capacity; slot++) {
+            long state = current.state(slot);
+            if (state != EMPTY && state != TOMBSTONE) {
+                current.readKey(slot, keyBuffer);
+                visitor.visit(ChunkId.read(keyBuffer.clear()), state - 1);
+                keyBuffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of live entries.
+     *
+     * @return the entry count
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of slots.
+     *
+     * @return the capacity
+     */
+    long capacity() {
+        return slots.capacity;
+    }
+
+    /**
+     * Checks whether the table's contents can be trusted: always for a table in direct memory,
+     * and for a file-backed table only if the file existed and was closed cleanly.
+     *
+     * @return true if the contents can be trusted
+     */
+    boolean isTrusted() {
+        return trusted;
+    }
+
+    /**
+     * Closes the table. A file-backed table is flushed and marked as closed cleanly.
+     *
+     * @throws IOException if the table file cannot be flushed or closed
+     */
+    void close() throws IOException {
+        writeLock.lock();
+        try {
+            Slots current = slots;
+            if (current.channel != null) {
+                current.force();
+                current.header.putLong(SIZE_OFFSET, size);
+                current.header.putLong(TOMBSTONES_OFFSET, tombstones);
+                current.header.putInt(CLEAN_OFFSET, 1);
+                current.forceHeader();
+                current.channel.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Releases a file-backed table without marking it as closed cleanly, so that its next user
+     * does not trust it, for example when the contents it was being filled with turned out to
+     * be unreadable.
+     *
+     * @throws IOException if the table file cannot be closed
+     */
+    void abandon() throws IOException {
+        writeLock.lock();
+        try {
+            if (slots.channel != null) {
+                slots.channel.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of slots for a number of entries.
+     *
+     * @param entries the number of entries
+     * @return the capacity that holds them below the maximum load
+     */
+    static long capacityFor(long entries) {
+        return Math.max(MIN_CAPACITY, (long) Math.ceil(Math.max(0, entries) / MAX_LOAD) + 1);
+    }
+
+    /**
+     * Gets the number of live entries and tombstones a capacity holds before a rebuild.
+     */
+    private static long maxEntries(long capacity) {
+        return (long) (capacity * MAX_LOAD);
+    }
+
+    /**
+     * Copies the live entries into new slots and publishes them. Must be called with the
+     * write lock held. A file-backed table is written to a new file that replaces the old one.
+     *
+     * @return the new slots
+     */
+    private Slots rebuild(long capacity) throws IOException {
+        Slots current = slots;
+        Slots rebuilt;
+        Path tempFile = null;
+        if (file == null) {
+            rebuilt = Slots.allocate(capacity);
+        } else {
+            tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.deleteIfExists(tempFile);
+            rebuilt = Slots.map(tempFile, capacity, true);
+        }
+        long copied = 0;
+        if (size > 0) {
+            ByteBuffer keyBuffer = ByteBuffer.allocate(ChunkId.BYTES);
+            for (long slot = 0; slot < current.capacity; slot++) {
+                long state = current.state(slot);
+                if (state != EMPTY && state != TOMBSTONE) {
+                    current.readKey(slot, keyBuffer);
+                    rebuilt.insert(new Key(keyBuffer.clear()), state);
+                    keyBuffer.clear();
+                    copied++;
+                }
+            }
+        }
+        size = copied;
+        tombstones = 0;
+        if (tempFile != null) {
+            rebuilt.force();
+            rebuilt.header.putLong(SIZE_OFFSET, size);
+            rebuilt.header.putLong(TOMBSTONES_OFFSET, 0);
+            rebuilt.forceHeader();
+            // The old mapping stays valid for readers after the file is replaced
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            current.channel.close();
+        }
+        slots = rebuilt;
+        return rebuilt;
+    }
+
+    /**
+     * Receives the entries of a table.
+     */
+    @FunctionalInterface
+    interface EntryVisitor {
+
+        /**
+         * Visits one entry.
+         *
+         * @param chunkId the chunk ID
+         * @param value the value stored for it
+         */
+        void visit(ChunkId chunkId, long value);
+    }
+
+    /**
+     * A chunk ID as the four words stored in a slot, with its mixed hash.
+     */
+    private static final class Key {
+        /** Digest bytes 0-7. */
+        private final long w0;
+        /** Digest bytes 8-15. */
+        private final long w1;
+        /** Digest bytes 16-23. */
+        private final long w2;
+        /** Digest bytes 24-31. */
+        private final long w3;
+
+        Key(ChunkId chunkId) {
+            this(toBuffer(chunkId));
+        }
+
+        Key(ByteBuffer buffer) {
+            this.w0 = buffer.getLong(0);
+            this.w1 = buffer.getLong(8);
+            this.w2 = buffer.getLong(16);
+            this.w3 = buffer.getLong(24);
+        }
+
+        /**
+         * Gets the home slot of the key in a table of the given capacity.
+         */
+        long home(long capacity) {
+            // Digests are uniform, but test and synthetic IDs often differ only in the last word
+            long h = w0 ^ Long.rotateLeft(w1, 16) ^ Long.rotateLeft(w2, 32) ^ Long.rotateLeft(w3, 48);
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            return Math.multiplyHigh(h >>> 1, capacity << 1);
+        }
+
+        private static ByteBuffer toBuffer(ChunkId chunkId) {
+            if (chunkId == null) {
+                throw new IllegalArgumentException("Chunk ID cannot be null");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(ChunkId.BYTES);
+            chunkId.writeTo(buffer);
+            return buffer;
+        }
+    }
+
+    /**
+     * One generation of slots: the buffers holding them and, for a file-backed table, the file.
+     */
+    private static final class Slots {
+        /** Number of slots. */
+        private final long capacity;
+        /** Buffers of {@link #PAGE_SLOTS} slots each; the last may be shorter. */
+        private final ByteBuffer[] pages;
+        /** Channel to the table file, or null for direct memory. */
+        private final FileChannel channel;
+        /** The mapped file header, or null for direct memory. */
+        private final MappedByteBuffer header;
+
+        private Slots(long capacity, ByteBuffer[] pages, FileChannel channel, MappedByteBuffer header) {
+            this.capacity = capacity;
+            this.pages = pages;
+            this.channel = channel;
+            this.header = header;
+        }
+
+        static Slots allocate(long capacity) {
+            ByteBuffer[] pages = new ByteBuffer[pageCount(capacity)];
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = ByteBuffer.allocateDirect((int) (pageSlots(capacity, i) * SLOT_SIZE));
+            }
+            return new Slots(capacity, pages, null, null);
+        }
+
+        /**
+         * Maps a table file, creating it with the given capacity or reading the capacity of an existing one.
+         */
+        static Slots map(Path file, long capacity, boolean create) throws IOException {
+            FileChannel channel = create
+                    ? FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                MappedByteBuffer header;
+                if (create) {
+                    // Extending the file leaves the slots zero-filled, that is empty
+                    channel.write(ByteBuffer.allocate(1), HEADER_SIZE + capacity * SLOT_SIZE - 1);
+                    header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                    header.putInt(0, MAGIC).putInt(4, VERSION).putLong(CAPACITY_OFFSET, capacity);
+                } else {
+                    if (channel.size() < HEADER_SIZE) {
+                        throw new IOException("Not a chunk table file: " + file);
+                    }
+                    header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                    capacity = header.getLong(CAPACITY_OFFSET);
+                    if (header.getInt(0) != MAGIC || capacity <= 0
+                            || channel.size() < HEADER_SIZE + capacity * SLOT_SIZE) {
+                        throw new IOException("Not a chunk table file: " + file);
+                    }
+                    if (header.getInt(4) > VERSION) {
+                        throw new IOException("Unsupported chunk table version " + header.getInt(4) + " in " + file);
+                    }
+                }
+                ByteBuffer[] pages = new ByteBuffer[pageCount(capacity)];
+                for (int i = 0; i < pages.length; i++) {
+                    pages[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + (i * PAGE_SLOTS) * SLOT_SIZE,
+                            pageSlots(capacity, i) * SLOT_SIZE);
+                }
+                return new Slots(capacity, pages, channel, header);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Finds the slot holding a key, live or tombstone.
+         *
+         * @return the slot, or -1 if the key is not in the slots
+         */
+        long find(Key key) {
+            long slot = key.home(capacity);
+            for (long probes = 0; probes < capacity; probes++) {
+                long state = state(slot);
+                if (state == EMPTY) {
+                    return -1;
+                }
+                if (keyEquals(slot, key)) {
+                    return slot;
+                }
+                slot = slot + 1 == capacity ? 0 : slot + 1;
+            }
+            return -1;
+        }
+
+        /**
+         * Puts a key that is not in the slots into the first empty slot of its probe sequence.
+         */
+        void insert(Key key, long state) {
+            long slot = key.home(capacity);
+            while (state(slot) != EMPTY) {
+                slot = slot + 1 == capacity ? 0 : slot + 1;
+            }
+            ByteBuffer page = pages[(int) (slot >>> PAGE_SHIFT)];
+            int position = offset(slot);
+            page.putLong(position + 8, key.w0);
+            page.putLong(position + 16, key.w1);
+            page.putLong(position + 24, key.w2);
+            page.putLong(position + 32, key.w3);
+            publish(slot, state);
+        }
+
+        /**
+         * Reads the state word of a slot with acquire semantics.
+         */
+        long state(long slot) {
+            return (long) STATE.getAcquire(pages[(int) (slot >>> PAGE_SHIFT)], offset(slot));
+        }
+
+        /**
+         * Writes the state word of a slot with release semantics, publishing its key.
+         */
+        void publish(long slot, long state) {
+            STATE.setRelease(pages[(int) (slot >>> PAGE_SHIFT)], offset(slot), state);
+        }
+
+        /**
+         * Copies the key of a slot into a 32-byte buffer.
+         */
+        void readKey(long slot, ByteBuffer keyBuffer) {
+            ByteBuffer page = pages[(int) (slot >>> PAGE_SHIFT)];
+            int position = offset(slot);
+            keyBuffer.putLong(0, page.getLong(position + 8));
+            keyBuffer.putLong(8, page.getLong(position + 16));
+            keyBuffer.putLong(16, page.getLong(position + 24));
+            keyBuffer.putLong(24, page.getLong(position + 32));
+        }
+
+        void force() {
+            for (ByteBuffer page : pages) {
+                ((MappedByteBuffer) page).force();
+            }
+        }
+
+        void forceHeader() {
+            header.force();
+        }
+
+        private boolean keyEquals(long slot, Key key) {
+            ByteBuffer page = pages[(int) (slot >>> PAGE_SHIFT)];
+            int position = offset(slot);
+            return page.getLong(position + 8) == key.w0 && page.getLong(position + 16) == key.w1
+                    && page.getLong(position + 24) == key.w2 && page.getLong(position + 32) == key.w3;
+        }
+
+        private static int offset(long slot) {
+            return (int) ((slot & (PAGE_SLOTS - 1)) * SLOT_SIZE);
+        }
+
+        private static int pageCount(long capacity) {
+            return (int) ((capacity + PAGE_SLOTS - 1) >>> PAGE_SHIFT);
+        }
+
+        private static long pageSlots(long capacity, int page) {
+            return Math.min(PAGE_SLOTS, capacity - page * PAGE_SLOTS);
+        }
+    }
+}
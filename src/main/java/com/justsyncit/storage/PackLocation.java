@@ -0,0 +1,72 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.storage;
+
+/**
+ * Where a chunk's data lives in a {@link PackFileContentStore}: a segment and a byte range in it.
+ */
+final class PackLocation {
+
+    /** Number of the segment holding the chunk. */
+    private final int segment;
+    /** Offset of the chunk data in the segment file. */
+    private final long offset;
+    /** Length of the chunk data in bytes. */
+    private final int length;
+
+    /**
+     * Creates a new PackLocation.
+     *
+     * @param segment the segment number
+     * @param offset the offset of the chunk data
+     * @param length the length of the chunk data
+     */
+    PackLocation(int segment, long offset, int length) {
+        this.segment = segment;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Gets the number of the segment holding the chunk.
+     *
+     * @return the segment number
+     */
+    int getSegment() {
+        return segment;
+    }
+
+    /**
+     * Gets the offset of the chunk data in the segment file.
+     *
+     * @return the offset in bytes
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the length of the chunk data.
+     *
+     * @return the length in bytes
+     */
+    int getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,479 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.storage;
+
+import com.justsyncit.hash.ChunkId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * One segment file of a {@link PackFileContentStore}.
+ * A segment starts with an 8-byte header (magic number and format version) followed by chunk
+ * records, each holding the chunk ID, the data length, the CRC32C of the data and the data.
+ * Records are only ever appended, and a sealed segment is never written again. The index file
+ * next to a segment lists its records, so opening the store reads the index instead of the
+ * segment itself; only records appended after the index was written need a scan.
+ */
+final class PackSegment {
+
+    /** Magic number at the start of a segment file ("JSP1"). */
+    static final int MAGIC = 0x4A535031;
+    /** Magic number at the start of a segment index file ("JSX1"). */
+    static final int INDEX_MAGIC = 0x4A535831;
+    /** Format version of segment and index files. */
+    static final int VERSION = 1;
+    /** Size of the segment header in bytes. */
+    static final int HEADER_SIZE = 8;
+    /** Size of a record header in bytes: chunk ID, length and CRC32C. */
+    static final int RECORD_HEADER_SIZE = ChunkId.BYTES + 8;
+    /** Size of the index file header in bytes: magic number, version, covered size and entry count. */
+    static final int INDEX_HEADER_SIZE = 24;
+    /** Size of an index entry in bytes: chunk ID, offset and length. */
+    static final int INDEX_ENTRY_SIZE = ChunkId.BYTES + 12;
+    /** File name extension of segment files. */
+    static final String PACK_EXTENSION = ".pack";
+    /** File name extension of segment index files. */
+    static final String INDEX_EXTENSION = ".idx";
+
+    /** Number of the segment; segments are written in increasing order. */
+    private final int id;
+    /** Path of the segment file. */
+    private final Path path;
+    /** Channel to the segment file, writable only while the segment is active. */
+    private final FileChannel channel;
+    /** Size of the segment file, which is where the next record goes. */
+    private long size;
+    /** Whether the segment has been sealed. */
+    private boolean sealed;
+
+    /**
+     * Creates a new PackSegment.
+     *
+     * @param id the segment number
+     * @param path the segment file path
+     * @param channel the open channel to the segment file
+     * @param size the size of the segment file
+     * @param sealed whether the segment is sealed
+     */
+    private PackSegment(int id, Path path, FileChannel channel, long size, boolean sealed) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.size = size;
+        this.sealed = sealed;
+    }
+
+    /**
+     * Creates a new, empty segment to append records to.
+     *
+     * @param directory the directory holding the segments
+     * @param id the segment number
+     * @return the new segment
+     * @throws IOException if the segment file cannot be created
+     */
+    static PackSegment create(Path directory, int id) throws IOException {
+        Path path = directory.resolve(fileName(id, PACK_EXTENSION));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(channel, header, 0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new PackSegment(id, path, channel, HEADER_SIZE, false);
+    }
+
+    /**
+     * Opens an existing segment, adding its records to the given map.
+     * Records listed in the segment's index file are taken from there; anything written after
+     * the index is found by scanning the rest of the segment, which stops at the first torn or
+     * corrupted record. Such a record, left by a crash while it was being appended, is cut off
+     * if the segment is opened for appending. Without a map, a sealed segment is opened as is,
+     * for callers that already know where its records are.
+     *
+     * @param path the segment file path
+     * @param id the segment number
+     * @param writable whether records will be appended to the segment
+     * @param records the map to add the segment's records to, or null to skip reading them
+     * @return the opened segment
+     * @throws IOException if the segment cannot be read or is not a segment file
+     */
+    static PackSegment open(Path path, int id, boolean writable, Map<ChunkId, PackLocation> records)
+            throws IOException {
+        FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.read(header, 0) != HEADER_SIZE || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a pack segment: " + path);
+            }
+            if (header.getInt(4) > VERSION) {
+                throw new IOException("Unsupported pack segment version " + header.getInt(4) + " in " + path);
+            }
+            PackSegment segment = new PackSegment(id, path, channel, channel.size(), !writable);
+            if (records == null) {
+                return segment;
+            }
+            long end = segment.loadRecords(records);
+            if (writable && end < channel.size()) {
+                channel.truncate(end);
+            }
+            segment.size = end;
+            return segment;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a chunk record.
+     *
+     * @param chunkId the chunk ID
+     * @param data the chunk data
+     * @return the location of the chunk data
+     * @throws IOException if the record cannot be written
+     */
+    PackLocation append(ChunkId chunkId, byte[] data) throws IOException {
+        if (sealed) {
+            throw new IOException("Pack segment is sealed: " + path);
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        chunkId.writeTo(header);
+        header.putInt(data.length).putInt(checksum(data)).flip();
+        long recordOffset = size;
+        writeFully(channel, header, recordOffset);
+        writeFully(channel, ByteBuffer.wrap(data), recordOffset + RECORD_HEADER_SIZE);
+        size = recordOffset + RECORD_HEADER_SIZE + data.length;
+        return new PackLocation(id, recordOffset + RECORD_HEADER_SIZE, data.length);
+    }
+
+    /**
+     * Reads the data of a record with positional reads and checks its CRC32C. The length and
+     * checksum come from the record header just before the data.
+     *
+     * @param dataOffset the offset of the chunk data
+     * @return the chunk data and whether it matched its checksum
+     * @throws IOException if the segment cannot be read or holds no record there
+     */
+    ChunkFile read(long dataOffset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        readFully(header, dataOffset - 8);
+        int length = header.getInt(0);
+        if (length <= 0 || dataOffset + length > size) {
+            throw new IOException("Pack segment " + path + " has no chunk at offset " + dataOffset);
+        }
+        byte[] data = new byte[length];
+        readFully(ByteBuffer.wrap(data), dataOffset);
+        return ChunkFile.of(data, checksum(data) == header.getInt(4));
+    }
+
+    /**
+     * Reads the records of the segment: those in its index file and any written after it.
+     *
+     * @return the records by chunk ID
+     * @throws IOException if the segment cannot be read
+     */
+    Map<ChunkId, PackLocation> readRecords() throws IOException {
+        Map<ChunkId, PackLocation> records = new HashMap<>();
+        loadRecords(records);
+        return records;
+    }
+
+    /**
+     * Seals the segment: flushes it to disk and writes its index file. Nothing is appended to a
+     * sealed segment afterwards.
+     *
+     * @param records the records of this segment
+     * @throws IOException if the segment cannot be flushed or the index cannot be written
+     */
+    void seal(Map<ChunkId, PackLocation> records) throws IOException {
+        sync(records);
+        sealed = true;
+    }
+
+    /**
+     * Flushes the segment to disk and writes its index file, leaving the segment open for
+     * appending if it is not sealed.
+     *
+     * @param records the records of this segment
+     * @throws IOException if the segment cannot be flushed or the index cannot be written
+     */
+    void sync(Map<ChunkId, PackLocation> records) throws IOException {
+        if (!sealed) {
+            channel.force(true);
+        }
+        writeIndex(records);
+    }
+
+    /**
+     * Writes the index file of the segment. The index covers the segment up to its current size
+     * and lists the given records, which need not be all of them: records dropped by garbage
+     * collection are left out and stay unreachable.
+     *
+     * @param records the live records of this segment
+     * @throws IOException if the index cannot be written
+     */
+    void writeIndex(Map<ChunkId, PackLocation> records) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_HEADER_SIZE + records.size() * INDEX_ENTRY_SIZE + 4);
+        buffer.putInt(INDEX_MAGIC).putInt(VERSION).putLong(size).putLong(records.size());
+        for (Map.Entry<ChunkId, PackLocation> record : records.entrySet()) {
+            record.getKey().writeTo(buffer);
+            buffer.putLong(record.getValue().getOffset()).putInt(record.getValue().getLength());
+        }
+        buffer.putInt(checksum(buffer.array(), 0, buffer.position()));
+        buffer.flip();
+
+        // Written beside the old index and moved over it, so a crash never leaves a partial index
+        Path indexPath = indexPath(path);
+        Path tempPath = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, buffer, 0);
+            out.force(true);
+        }
+        Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Closes the segment's file.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Closes the segment and deletes its files.
+     *
+     * @throws IOException if the files cannot be deleted
+     */
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(indexPath(path));
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Gets the segment number.
+     *
+     * @return the segment number
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the size of the segment file.
+     *
+     * @return the size in bytes
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Checks whether the segment holds no records.
+     *
+     * @return true if nothing has been appended
+     */
+    boolean isEmpty() {
+        return size == HEADER_SIZE;
+    }
+
+    /**
+     * Checks whether the segment has been sealed.
+     *
+     * @return true if the segment is sealed
+     */
+    boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Gets the file name of a segment file or its index.
+     *
+     * @param id the segment number
+     * @param extension the file name extension
+     * @return the file name
+     */
+    static String fileName(int id, String extension) {
+        return String.format("pack-%08d%s", id, extension);
+    }
+
+    /**
+     * Parses the segment number from a segment file name.
+     *
+     * @param fileName the file name
+     * @return the segment number, or -1 if the name is not that of a segment file
+     */
+    static int parseId(String fileName) {
+        if (!fileName.startsWith("pack-") || !fileName.endsWith(PACK_EXTENSION)
+                || fileName.length() != fileName(0, PACK_EXTENSION).length()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(fileName.substring(5, fileName.length() - PACK_EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Adds the records of the segment to the given map.
+     *
+     * @param records the map to add the records to
+     * @return the end of the last intact record
+     * @throws IOException if the segment cannot be read
+     */
+    private long loadRecords(Map<ChunkId, PackLocation> records) throws IOException {
+        Path indexPath = indexPath(path);
+        Map<ChunkId, PackLocation> indexed = new HashMap<>();
+        long covered = Files.exists(indexPath) ? readIndex(indexPath, id, indexed) : -1;
+        if (covered < HEADER_SIZE || covered > size) {
+            // No usable index, so every record comes from the scan
+            covered = HEADER_SIZE;
+            indexed.clear();
+        }
+        records.putAll(indexed);
+        return scan(channel, id, covered, records);
+    }
+
+    /**
+     * Scans the records of a segment from the given position, stopping at the first incomplete
+     * or corrupted record.
+     *
+     * @return the end of the last intact record
+     */
+    private static long scan(FileChannel channel, int id, long start, Map<ChunkId, PackLocation> records)
+            throws IOException {
+        long fileSize = channel.size();
+        long position = start;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (position + RECORD_HEADER_SIZE <= fileSize) {
+            header.clear();
+            if (channel.read(header, position) != RECORD_HEADER_SIZE) {
+                break;
+            }
+            header.flip();
+            ChunkId chunkId = ChunkId.read(header);
+            int length = header.getInt();
+            int expected = header.getInt();
+            long dataOffset = position + RECORD_HEADER_SIZE;
+            if (length <= 0 || dataOffset + length > fileSize) {
+                break;
+            }
+            ByteBuffer data = ByteBuffer.allocate(length);
+            while (data.hasRemaining() && channel.read(data, dataOffset + data.position()) > 0) {
+                // Keep reading until the record is complete
+            }
+            if (data.hasRemaining() || checksum(data.array()) != expected) {
+                break;
+            }
+            records.put(chunkId, new PackLocation(id, dataOffset, length));
+            position = dataOffset + length;
+        }
+        return position;
+    }
+
+    /**
+     * Reads a segment index file into the given map.
+     *
+     * @return the segment size the index covers, or -1 if the index file is damaged, in which
+     *         case the whole segment must be scanned
+     */
+    private static long readIndex(Path indexPath, int id, Map<ChunkId, PackLocation> records) throws IOException {
+        byte[] bytes = Files.readAllBytes(indexPath);
+        if (bytes.length < INDEX_HEADER_SIZE + 4) {
+            return -1;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long count = buffer.getLong(16);
+        if (buffer.getInt(0) != INDEX_MAGIC || buffer.getInt(4) > VERSION
+                || count != (bytes.length - INDEX_HEADER_SIZE - 4) / INDEX_ENTRY_SIZE
+                || buffer.getInt(bytes.length - 4) != checksum(bytes, 0, bytes.length - 4)) {
+            return -1;
+        }
+        buffer.position(INDEX_HEADER_SIZE);
+        for (long i = 0; i < count; i++) {
+            ChunkId chunkId = ChunkId.read(buffer);
+            records.put(chunkId, new PackLocation(id, buffer.getLong(), buffer.getInt()));
+        }
+        return buffer.getLong(8);
+    }
+
+    /**
+     * Gets the path of the index file of a segment.
+     */
+    private static Path indexPath(Path segmentPath) {
+        String name = segmentPath.getFileName().toString();
+        return segmentPath.resolveSibling(name.substring(0, name.length() - PACK_EXTENSION.length()) + INDEX_EXTENSION);
+    }
+
+    /**
+     * Writes a whole buffer at the given position.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, start + buffer.position());
+        }
+    }
+
+    /**
+     * Fills a buffer from the segment, starting at the given position.
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Pack segment " + path + " ends before offset " + (position + buffer.limit()));
+            }
+        }
+    }
+
+    /**
+     * Computes the CRC32C of a byte array.
+     */
+    private static int checksum(byte[] bytes) {
+        return checksum(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Computes the CRC32C of a byte range.
+     */
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.justsyncit.storage;
+
+import com.justsyncit.hash.ChunkId;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded set of recently seen chunks, evicting the least recently used one when full. Used to
+ * skip repeated existence and metadata checks for chunks that were just confirmed, without
+ * remembering every chunk of a large repository. Thread-safe.
+ */
+public final class RecentChunks {
+
+    /** Maximum number of chunks kept. */
+    private final int capacity;
+    /** Chunks in access order, eldest first. Guarded by this. */
+    private final LinkedHashMap<ChunkId, Boolean> chunks;
+
+    /**
+     * Creates a new RecentChunks.
+     *
+     * @param capacity the maximum number of chunks kept
+     */
+    private RecentChunks(int capacity) {
+        this.capacity = capacity;
+        this.chunks = new LinkedHashMap<ChunkId, Boolean>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ChunkId, Boolean> eldest) {
+                return size() > RecentChunks.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Creates an empty set.
+     *
+     * @param capacity the maximum number of chunks kept
+     * @return a new RecentChunks
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public static RecentChunks create(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        return new RecentChunks(capacity);
+    }
+
+    /**
+     * Checks whether a chunk was seen recently, marking it as used.
+     *
+     * @param id the chunk
+     * @return true if the chunk is in the set
+     */
+    public synchronized boolean contains(ChunkId id) {
+        return chunks.get(id) != null;
+    }
+
+    /**
+     * Checks whether a chunk was seen recently. Hashes that are not chunk IDs are never in the set.
+     *
+     * @param hash the chunk hash in hex
+     * @return true if the chunk is in the set
+     */
+    public boolean contains(String hash) {
+        return ChunkId.isValidHex(hash) && contains(ChunkId.fromHex(hash));
+    }
+
+    /**
+     * Adds a chunk, evicting the least recently used one if the set is full.
+     *
+     * @param id the chunk
+     */
+    public synchronized void add(ChunkId id) {
+        chunks.put(id, Boolean.TRUE);
+    }
+
+    /**
+     * Adds a chunk by its hash. Hashes that are not chunk IDs are ignored.
+     *
+     * @param hash the chunk hash in hex
+     */
+    public void add(String hash) {
+        if (ChunkId.isValidHex(hash)) {
+            add(ChunkId.fromHex(hash));
+        }
+    }
+
+    /**
+     * Removes every chunk.
+     */
+    public synchronized void clear() {
+        chunks.clear();
+    }
+
+    /**
+     * Gets the number of chunks in the set.
+     *
+     * @return the chunk count
+     */
+    public synchronized int size() {
+        return chunks.size();
+    }
+
+    /**
+     * Gets the maximum number of chunks kept.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
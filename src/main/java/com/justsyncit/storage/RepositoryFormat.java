@@ -0,0 +1,209 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Describes the on-disk format of a chunk repository.
+ * The format is recorded in a small properties file inside the storage directory so that
+ * repositories written before BLAKE3 became the default keep being addressed by SHA-256.
+ */
+public final class RepositoryFormat {
+
+    /** Logger instance. */
+    private static final Logger logger = LoggerFactory.getLogger(RepositoryFormat.class);
+
+    /** Name of the format descriptor file inside the storage directory. */
+    public static final String FORMAT_FILE_NAME = "repository.properties";
+    /** Hash algorithm used by new repositories. */
+    public static final String DEFAULT_HASH_ALGORITHM = "BLAKE3";
+    /** Hash algorithm assumed for repositories created before the format file existed. */
+    public static final String LEGACY_HASH_ALGORITHM = "SHA-256";
+    /** Current version of the format descriptor. */
+    public static final int CURRENT_VERSION = 1;
+
+    /** Property key holding the format version. */
+    private static final String VERSION_KEY = "format.version";
+    /** Property key holding the hash algorithm name. */
+    private static final String HASH_ALGORITHM_KEY = "hash.algorithm";
+
+    /** Format version. */
+    private final int version;
+    /** Hash algorithm used to address chunks. */
+    private final String hashAlgorithm;
+
+    /**
+     * Creates a new RepositoryFormat.
+     *
+     * @param version format version
+     * @param hashAlgorithm hash algorithm name
+     */
+    private RepositoryFormat(int version, String hashAlgorithm) {
+        this.version = version;
+        this.hashAlgorithm = hashAlgorithm;
+    }
+
+    /**
+     * Reads the format of the repository at the given directory without modifying it.
+     * A directory without a format file is considered a legacy SHA-256 repository if it
+     * already contains data, and a new BLAKE3 repository otherwise.
+     *
+     * @param storageDirectory the storage directory
+     * @return the repository format
+     * @throws IOException if the format file cannot be read
+     */
+    public static RepositoryFormat detect(Path storageDirectory) throws IOException {
+        if (storageDirectory == null) {
+            throw new IllegalArgumentException("Storage directory cannot be null");
+        }
+
+        Path formatFile = storageDirectory.resolve(FORMAT_FILE_NAME);
+        if (Files.exists(formatFile)) {
+            return read(formatFile);
+        }
+        if (containsData(storageDirectory)) {
+            return new RepositoryFormat(CURRENT_VERSION, LEGACY_HASH_ALGORITHM);
+        }
+        return new RepositoryFormat(CURRENT_VERSION, DEFAULT_HASH_ALGORITHM);
+    }
+
+    /**
+     * Ensures the repository at the given directory is addressed with the given hash algorithm.
+     * An empty repository adopts the requested algorithm; an existing one without a format file
+     * is recorded as a legacy SHA-256 repository.
+     *
+     * @param storageDirectory the storage directory
+     * @param hashAlgorithm the hash algorithm the caller is going to use
+     * @return the repository format
+     * @throws IOException if the repository uses a different hash algorithm or the format cannot be recorded
+     */
+    public static RepositoryFormat ensureCompatible(Path storageDirectory, String hashAlgorithm) throws IOException {
+        if (storageDirectory == null) {
+            throw new IllegalArgumentException("Storage directory cannot be null");
+        }
+        if (hashAlgorithm == null) {
+            throw new IllegalArgumentException("Hash algorithm cannot be null");
+        }
+
+        Path formatFile = storageDirectory.resolve(FORMAT_FILE_NAME);
+        boolean recorded = Files.exists(formatFile);
+        RepositoryFormat format = recorded || containsData(storageDirectory)
+                ? detect(storageDirectory)
+                : new RepositoryFormat(CURRENT_VERSION, hashAlgorithm);
+        if (!format.getHashAlgorithm().equalsIgnoreCase(hashAlgorithm)) {
+            throw new IOException("Repository at " + storageDirectory + " uses hash algorithm "
+                    + format.getHashAlgorithm() + " but " + hashAlgorithm + " was requested");
+        }
+
+        if (!recorded) {
+            format.write(formatFile);
+            logger.info("Recorded repository format at {} (hash algorithm {})", storageDirectory, format.hashAlgorithm);
+        }
+        return format;
+    }
+
+    /**
+     * Gets the format version.
+     *
+     * @return the format version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the hash algorithm used to address chunks.
+     *
+     * @return the hash algorithm name
+     */
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    /**
+     * Reads a format descriptor file.
+     *
+     * @param formatFile the format file
+     * @return the parsed format
+     * @throws IOException if the file cannot be read or is invalid
+     */
+    private static RepositoryFormat read(Path formatFile) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(formatFile)) {
+            properties.load(in);
+        }
+
+        String algorithm = properties.getProperty(HASH_ALGORITHM_KEY);
+        if (algorithm == null || algorithm.isBlank()) {
+            throw new IOException("Repository format file is missing " + HASH_ALGORITHM_KEY + ": " + formatFile);
+        }
+        int formatVersion;
+        try {
+            formatVersion = Integer.parseInt(properties.getProperty(VERSION_KEY, "1").trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid repository format version in " + formatFile, e);
+        }
+        if (formatVersion > CURRENT_VERSION) {
+            throw new IOException("Unsupported repository format version " + formatVersion + " in " + formatFile);
+        }
+        return new RepositoryFormat(formatVersion, algorithm.trim());
+    }
+
+    /**
+     * Writes this format to a descriptor file.
+     *
+     * @param formatFile the format file
+     * @throws IOException if the file cannot be written
+     */
+    private void write(Path formatFile) throws IOException {
+        Files.createDirectories(formatFile.getParent());
+        Properties properties = new Properties();
+        properties.setProperty(VERSION_KEY, Integer.toString(version));
+        properties.setProperty(HASH_ALGORITHM_KEY, hashAlgorithm);
+        try (OutputStream out = Files.newOutputStream(formatFile)) {
+            properties.store(out, "JustSyncIt repository format");
+        }
+    }
+
+    /**
+     * Checks whether the storage directory already holds any entries.
+     *
+     * @param storageDirectory the storage directory
+     * @return true if the directory exists and is not empty
+     * @throws IOException if the directory cannot be listed
+     */
+    private static boolean containsData(Path storageDirectory) throws IOException {
+        if (!Files.isDirectory(storageDirectory)) {
+            return false;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(storageDirectory)) {
+            return entries.iterator().hasNext();
+        }
+    }
+}
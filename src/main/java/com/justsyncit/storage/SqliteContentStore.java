@@ -19,13 +19,14 @@
 package com.justsyncit.storage;
 
 import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.hash.ChunkId;
 import com.justsyncit.storage.metadata.ChunkMetadata;
 import com.justsyncit.storage.metadata.MetadataService;
-import com.justsyncit.storage.metadata.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.Optional;
 import java.util.Set;
@@ -39,6 +40,8 @@ public final class SqliteContentStore extends AbstractContentStore {
 
     /** Logger instance. */
     private static final Logger logger = LoggerFactory.getLogger(SqliteContentStore.class);
+    /** Number of recently recorded chunks remembered. */
+    private static final int RECORDED_CHUNK_CAPACITY = 1 << 15;
 
     /** The underlying content store for actual chunk storage. */
     private final ContentStore delegateStore;
@@ -46,6 +49,8 @@ public final class SqliteContentStore extends AbstractContentStore {
     private final MetadataService metadataService;
     /** The integrity verifier for hash verification. */
     private final IntegrityVerifier integrityVerifier;
+    /** Recent chunks whose metadata this store has committed or found, so it need not be checked again. */
+    private final RecentChunks recordedChunks = RecentChunks.create(RECORDED_CHUNK_CAPACITY);
 
     /**
      * Creates a new SqliteContentStore.
@@ -102,7 +107,7 @@ public final class SqliteContentStore extends AbstractContentStore {
     public static SqliteContentStore create(String storageDirectory,
                                          MetadataService metadataService,
                                          Blake3Service blake3Service) throws IOException {
-        ContentStore delegateStore = ContentStoreFactory.createFilesystemStore(
+        ContentStore delegateStore = ContentStoreFactory.createLocalStore(
                 java.nio.file.Paths.get(storageDirectory), blake3Service);
         return new SqliteContentStore(delegateStore, metadataService);
     }
@@ -111,93 +116,47 @@ public final class SqliteContentStore extends AbstractContentStore {
     protected String doStoreChunk(byte[] data) throws IOException {
         // Store chunk using delegate store
         String hash = delegateStore.storeChunk(data);
+        if (!recordedChunks.contains(hash)) {
+            recordChunk(hash, data.length);
+        }
+        return hash;
+    }
+
+    @Override
+    protected void doStoreChunk(ChunkId chunkId, byte[] data) throws IOException {
+        delegateStore.storeChunk(chunkId, ByteBuffer.wrap(data));
+        if (!recordedChunks.contains(chunkId)) {
+            recordChunk(chunkId.toHex(), data.length);
+        }
+    }
 
-        // Record chunk metadata with explicit commit to ensure visibility
-        // Use a transaction to ensure atomicity and visibility
-        Transaction transaction = null;
+    /**
+     * Records the metadata of a stored chunk. Failures are logged, since the chunk itself is stored.
+     *
+     * @param hash the hash of the chunk
+     * @param length the size of the chunk
+     */
+    private void recordChunk(String hash, int length) {
+        // upsertChunk commits before it returns, so the metadata is visible once this method returns
         try {
-            transaction = metadataService.beginTransaction();
             ChunkMetadata chunkMetadata = new ChunkMetadata(
                     hash,
-                    data.length,
+                    length,
                     Instant.now(),
                     1, // Initial reference count
                     Instant.now()
             );
             metadataService.upsertChunk(chunkMetadata);
-            transaction.commit();
-            // Force a delay to ensure metadata is committed and visible
-            // This addresses SQLite's connection isolation issues in concurrent scenarios
-            try {
-                Thread.sleep(2000); // Increased delay for better reliability
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-                // Don't fail the operation if interrupted
-            }
-            // Verify: chunk metadata is actually visible before returning
-            // This ensures that chunk is fully committed and visible to all connections
-            int maxRetries = 10;
-            for (int attempt = 1; attempt <= maxRetries; attempt++) {
-                try {
-                    if (metadataService.getChunkMetadata(hash).isPresent()) {
-                        logger.debug("Verified chunk metadata is visible for: {}", hash);
-                        break;
-                    } else if (attempt < maxRetries) {
-                        logger.debug("Chunk metadata not yet visible for {} (attempt {}/{}), waiting...",
-                                hash, attempt, maxRetries);
-                        Thread.sleep(500L * attempt); // Linear backoff
-                    } else {
-                        logger.warn("Chunk metadata still not visible for {} after {} attempts", hash, maxRetries);
-                    }
-                } catch (Exception e) {
-                    logger.warn("Error checking chunk metadata visibility for {}: {}", hash, e.getMessage());
-                    if (attempt < maxRetries) {
-                        try {
-                            Thread.sleep(500L * attempt);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            throw new IOException("Interrupted while waiting for chunk metadata visibility", ie);
-                        }
-                    }
-                }
-            }
-
+            recordedChunks.add(hash);
             logger.debug("Recorded chunk metadata for: {}", hash);
-        } catch (IOException e) {
-            if (transaction != null) {
-                try {
-                    transaction.rollback();
-                } catch (Exception rollbackEx) {
-                    logger.warn("Failed to rollback transaction for chunk {}: {}", hash, rollbackEx.getMessage());
-                }
-            }
+        } catch (IOException | RuntimeException e) {
             logger.warn("Failed to record chunk metadata for {}: {}", hash, e.getMessage());
             // Don't fail the operation if metadata recording fails
-        } catch (RuntimeException e) {
-            if (transaction != null) {
-                try {
-                    transaction.rollback();
-                } catch (Exception rollbackEx) {
-                    logger.warn("Failed to rollback transaction for chunk {}: {}", hash, rollbackEx.getMessage());
-                }
-            }
-            logger.warn("Failed to record chunk metadata for {}: {}", hash, e.getMessage());
-            // Don't fail the operation if metadata recording fails
-        } finally {
-            if (transaction != null) {
-                try {
-                    transaction.close();
-                } catch (Exception closeEx) {
-                    logger.warn("Failed to close transaction for chunk {}: {}", hash, closeEx.getMessage());
-                }
-            }
         }
-
-        return hash;
     }
 
     @Override
-    protected byte[] doRetrieveChunk(String hash) throws IOException, StorageIntegrityException {
+    protected byte[] doRetrieveChunk(String hash, VerificationMode mode) throws IOException, StorageIntegrityException {
         // Record chunk access
         try {
             metadataService.recordChunkAccess(hash);
@@ -207,7 +166,7 @@ public final class SqliteContentStore extends AbstractContentStore {
         }
 
         // Retrieve chunk using delegate store
-        return delegateStore.retrieveChunk(hash);
+        return delegateStore.retrieveChunk(hash, mode);
     }
 
     @Override
@@ -216,7 +175,26 @@ public final class SqliteContentStore extends AbstractContentStore {
         if (!delegateStore.existsChunk(hash)) {
             return false;
         }
+        return recordedChunks.contains(hash) || ensureChunkMetadata(hash);
+    }
 
+    @Override
+    protected boolean doExistsChunk(ChunkId chunkId) throws IOException {
+        if (!delegateStore.existsChunk(chunkId)) {
+            return false;
+        }
+        // The hex form is only needed to look up the metadata of a chunk not recorded recently
+        return recordedChunks.contains(chunkId) || ensureChunkMetadata(chunkId.toHex());
+    }
+
+    /**
+     * Ensures that a chunk present in the delegate store has metadata, creating it if missing.
+     *
+     * @param hash the hash of the chunk
+     * @return false if the chunk turned out not to be retrievable
+     * @throws IOException if the missing metadata cannot be created
+     */
+    private boolean ensureChunkMetadata(String hash) throws IOException {
         // If chunk exists in delegate store, ensure it exists in metadata service
         // This handles the case where chunk was stored but metadata recording failed
         try {
@@ -250,6 +228,7 @@ public final class SqliteContentStore extends AbstractContentStore {
                     throw new IOException("Failed to create metadata for chunk: " + hash, e);
                 }
             }
+            recordedChunks.add(hash);
             return true;
         } catch (IOException e) {
             logger.warn("Failed to check chunk metadata for {}: {}", hash, e.getMessage());
@@ -294,6 +273,7 @@ public final class SqliteContentStore extends AbstractContentStore {
     protected long doGarbageCollect(Set<String> activeHashes) throws IOException {
         // Use delegate store's garbage collection for now
         // Metadata cleanup would require additional methods in MetadataService
+        recordedChunks.clear();
         return delegateStore.garbageCollect(activeHashes);
     }
 
@@ -0,0 +1,37 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.storage;
+
+/**
+ * How thoroughly a chunk is checked when it is read back from storage.
+ */
+public enum VerificationMode {
+
+    /**
+     * Compares the data with the CRC32C stored next to it. Catches media and transfer
+     * corruption at memory speed; used for routine reads such as restores.
+     */
+    CHECKSUM,
+
+    /**
+     * Re-hashes the data with the repository's cryptographic hash and compares it with
+     * the chunk's address. Used by scrubs and explicitly verified operations.
+     */
+    FULL
+}
@@ -25,7 +25,7 @@ package com.justsyncit.storage.metadata;
 public final class DatabaseSchema {
 
     /** Current version of the database schema. */
-    public static final int SCHEMA_VERSION = 2;
+    public static final int SCHEMA_VERSION = 4;
 
     /** Private constructor to prevent instantiation. */
     private DatabaseSchema() {
@@ -57,17 +57,20 @@ public final class DatabaseSchema {
                         + "size INTEGER NOT NULL,"
                         + "modified_time INTEGER NOT NULL,"
                         + "file_hash TEXT NOT NULL,"
+                        + "file_key TEXT,"
                         + "FOREIGN KEY (snapshot_id) REFERENCES snapshots(id) ON DELETE CASCADE,"
                         + "UNIQUE(snapshot_id, path)"
                         + ")",
 
-                // File chunks table - maps files to their constituent chunks
+                // File chunks table - maps files to their constituent chunks; zero extents have no chunk
                 "CREATE TABLE IF NOT EXISTS file_chunks ("
                         + "id INTEGER PRIMARY KEY AUTOINCREMENT,"
                         + "file_id TEXT NOT NULL,"
-                        + "chunk_hash TEXT NOT NULL,"
+                        + "chunk_hash TEXT,"
                         + "chunk_order INTEGER NOT NULL,"
                         + "chunk_size INTEGER NOT NULL,"
+                        + "extent_offset INTEGER,"
+                        + "extent_length INTEGER,"
                         + "FOREIGN KEY (file_id) REFERENCES files(id) ON DELETE CASCADE,"
                         + "FOREIGN KEY (chunk_hash) REFERENCES chunks(hash) ON DELETE CASCADE,"
                         + "UNIQUE(file_id, chunk_order)"
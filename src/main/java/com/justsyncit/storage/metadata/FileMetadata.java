@@ -24,6 +24,8 @@ import java.util.Objects;
 
 /**
  * Represents metadata for a file in a backup snapshot.
+ * The chunk list holds, in file order, chunk hashes, {@link ZeroExtent} markers for all-zero
+ * ranges and {@link PackedExtent} markers for small files stored inside a shared pack chunk.
  */
 public final class FileMetadata {
 
@@ -37,10 +39,12 @@ public final class FileMetadata {
     private final long size;
     /** Last modification time of the file. */
     private final Instant modifiedTime;
-    /** BLAKE3 hash of the entire file. */
+    /** BLAKE3 hash of the entire file contents, zero extents included. */
     private final String fileHash;
-    /** List of chunk hashes that make up this file, in order. */
+    /** Chunk hashes, {@link ZeroExtent} and {@link PackedExtent} markers that make up this file, in order. */
     private final List<String> chunkHashes;
+    /** Filesystem key (e.g. device and inode) of the file when it was backed up, or null. */
+    private final String fileKey;
 
     /**
      * Creates a new FileMetadata instance.
@@ -56,6 +60,25 @@ public final class FileMetadata {
      */
     public FileMetadata(String id, String snapshotId, String path, long size,
                        Instant modifiedTime, String fileHash, List<String> chunkHashes) {
+        this(id, snapshotId, path, size, modifiedTime, fileHash, chunkHashes, null);
+    }
+
+    /**
+     * Creates a new FileMetadata instance with the file's filesystem key.
+     *
+     * @param id unique identifier for the file metadata
+     * @param snapshotId ID of the snapshot this file belongs to
+     * @param path path of the file relative to backup root
+     * @param size size of the file in bytes
+     * @param modifiedTime last modification time of the file
+     * @param fileHash BLAKE3 hash of the entire file
+     * @param chunkHashes list of chunk hashes that make up this file, in order
+     * @param fileKey filesystem key of the file as reported by
+     *                {@link java.nio.file.attribute.BasicFileAttributes#fileKey()}, or null if unavailable
+     * @throws IllegalArgumentException if any required parameter is null or invalid
+     */
+    public FileMetadata(String id, String snapshotId, String path, long size,
+                       Instant modifiedTime, String fileHash, List<String> chunkHashes, String fileKey) {
         if (id == null || id.trim().isEmpty()) {
             throw new IllegalArgumentException("File ID cannot be null or empty");
         }
@@ -85,6 +108,7 @@ public final class FileMetadata {
         this.modifiedTime = modifiedTime;
         this.fileHash = fileHash;
         this.chunkHashes = List.copyOf(chunkHashes); // Create immutable copy
+        this.fileKey = fileKey;
     }
 
     /**
@@ -150,6 +174,15 @@ public final class FileMetadata {
         return chunkHashes;
     }
 
+    /**
+     * Gets the filesystem key of the file when it was backed up.
+     *
+     * @return the file key, or null if unavailable
+     */
+    public String getFileKey() {
+        return fileKey;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -159,12 +192,12 @@ public final class FileMetadata {
             return false;
         }
         FileMetadata that = (FileMetadata) o;
-        return Objects.equals(id, that.id);
+        return Objects.equals(id, that.id) && Objects.equals(fileKey, that.fileKey);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return Objects.hash(id, fileKey);
     }
 
     @Override
@@ -177,6 +210,7 @@ public final class FileMetadata {
                 + ", modifiedTime=" + modifiedTime
                 + ", fileHash='" + fileHash + '\''
                 + ", chunkCount=" + chunkHashes.size()
+                + ", fileKey='" + fileKey + '\''
                 + '}';
     }
 }
\ No newline at end of file
@@ -21,6 +21,7 @@ package com.justsyncit.storage.metadata;
 import com.justsyncit.storage.ClosableResource;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -70,6 +71,16 @@ public interface MetadataService extends ClosableResource {
      */
     List<Snapshot> listSnapshots() throws IOException;
 
+    /**
+     * Finds the most recent snapshot that holds at least one file below a directory.
+     *
+     * @param directory the directory, as the paths of its files start
+     * @return the newest such snapshot, or empty if there is none
+     * @throws IOException if an error occurs during retrieval
+     * @throws IllegalArgumentException if directory is null or empty
+     */
+    Optional<Snapshot> findLatestSnapshotWithFilesUnder(String directory) throws IOException;
+
     /**
      * Deletes a snapshot and all its associated file metadata.
      *
@@ -121,6 +132,22 @@ public interface MetadataService extends ClosableResource {
      */
     List<FileMetadata> getFilesInSnapshot(String snapshotId) throws IOException;
 
+    /**
+     * Gets a file of a snapshot by its path if its size, modification time and file key are still
+     * the given ones. The chunk list is only loaded for a file that matches.
+     *
+     * @param snapshotId the snapshot ID
+     * @param path the file path
+     * @param size the current file size
+     * @param modifiedTime the current modification time, compared to the millisecond
+     * @param fileKey the current file key, or null if the filesystem has none
+     * @return the snapshot's metadata for the file if it is unchanged, empty otherwise
+     * @throws IOException if an error occurs during retrieval
+     * @throws IllegalArgumentException if snapshotId or path is null or empty, or modifiedTime is null
+     */
+    Optional<FileMetadata> findUnchangedFile(String snapshotId, String path, long size, Instant modifiedTime,
+                                             String fileKey) throws IOException;
+
     /**
      * Updates file metadata.
      *
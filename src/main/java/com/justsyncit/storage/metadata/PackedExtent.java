@@ -0,0 +1,168 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.storage.metadata;
+
+/**
+ * Packed-extent entries in a file's chunk list.
+ * Files below the small-file threshold are not chunked on their own but concatenated into a
+ * shared pack chunk; such a file's chunk list holds a single marker naming the pack chunk and
+ * the offset and length of the file's bytes within it. Unlike zero extents, the file hash of a
+ * packed file is still the hash of its contents.
+ */
+public final class PackedExtent {
+
+    /** Prefix of packed-extent markers; chunk hashes are hex, so they never start with it. */
+    public static final String PREFIX = "pack:";
+
+    /** Separator between the fields of a marker. */
+    private static final char SEPARATOR = ':';
+
+    private PackedExtent() {
+        // Utility class
+    }
+
+    /**
+     * Creates the marker for a packed extent.
+     *
+     * @param chunkHash hash of the pack chunk
+     * @param offset offset of the extent within the pack chunk
+     * @param length length of the extent in bytes
+     * @return the marker
+     * @throws IllegalArgumentException if chunkHash is null or empty, offset is negative or length is not positive
+     */
+    public static String marker(String chunkHash, long offset, long length) {
+        if (chunkHash == null || chunkHash.isEmpty()) {
+            throw new IllegalArgumentException("Chunk hash cannot be null or empty");
+        }
+        if (offset < 0 || length <= 0) {
+            throw new IllegalArgumentException("Invalid packed extent: offset " + offset + ", length " + length);
+        }
+        return PREFIX + chunkHash + SEPARATOR + offset + SEPARATOR + length;
+    }
+
+    /**
+     * Checks whether a chunk list entry is a packed-extent marker.
+     *
+     * @param entry the chunk list entry
+     * @return true if the entry is a packed-extent marker
+     */
+    public static boolean isMarker(String entry) {
+        return entry != null && entry.startsWith(PREFIX);
+    }
+
+    /**
+     * Gets the hash of the pack chunk holding a packed extent.
+     *
+     * @param marker the packed-extent marker
+     * @return the pack chunk hash
+     * @throws IllegalArgumentException if the entry is not a valid marker
+     */
+    public static String chunkHash(String marker) {
+        return marker.substring(PREFIX.length(), fieldStarts(marker)[0] - 1);
+    }
+
+    /**
+     * Gets the offset of a packed extent within its pack chunk.
+     *
+     * @param marker the packed-extent marker
+     * @return the offset in bytes
+     * @throws IllegalArgumentException if the entry is not a valid marker
+     */
+    public static long offset(String marker) {
+        int[] starts = fieldStarts(marker);
+        return Long.parseLong(marker.substring(starts[0], starts[1] - 1));
+    }
+
+    /**
+     * Gets the length of a packed extent.
+     *
+     * @param marker the packed-extent marker
+     * @return the length in bytes
+     * @throws IllegalArgumentException if the entry is not a valid marker
+     */
+    public static long length(String marker) {
+        return Long.parseLong(marker.substring(fieldStarts(marker)[1]));
+    }
+
+    /**
+     * Gets the chunk a chunk list entry is stored in.
+     *
+     * @param entry the chunk list entry
+     * @return the pack chunk hash for a packed extent, null for a zero extent, otherwise the entry itself
+     */
+    public static String storedChunk(String entry) {
+        if (isMarker(entry)) {
+            return chunkHash(entry);
+        }
+        return ZeroExtent.isMarker(entry) ? null : entry;
+    }
+
+    /**
+     * Copies a packed extent out of its pack chunk.
+     *
+     * @param marker the packed-extent marker
+     * @param packData the contents of the pack chunk
+     * @return the bytes of the extent
+     * @throws IllegalArgumentException if the entry is not a valid marker or the extent lies outside the pack
+     */
+    public static byte[] slice(String marker, byte[] packData) {
+        long offset = offset(marker);
+        long length = length(marker);
+        if (offset + length > packData.length) {
+            throw new IllegalArgumentException("Packed extent " + marker + " exceeds pack chunk of "
+                    + packData.length + " bytes");
+        }
+        byte[] data = new byte[(int) length];
+        System.arraycopy(packData, (int) offset, data, 0, data.length);
+        return data;
+    }
+
+    /**
+     * Locates the offset and length fields of a marker, validating it.
+     *
+     * @return the start indexes of the offset and length fields
+     */
+    private static int[] fieldStarts(String marker) {
+        if (!isMarker(marker)) {
+            throw new IllegalArgumentException("Not a packed extent: " + marker);
+        }
+        int lengthSeparator = marker.lastIndexOf(SEPARATOR);
+        int offsetSeparator = marker.lastIndexOf(SEPARATOR, lengthSeparator - 1);
+        if (offsetSeparator <= PREFIX.length() || !isNumber(marker, offsetSeparator + 1, lengthSeparator)
+                || !isNumber(marker, lengthSeparator + 1, marker.length())) {
+            throw new IllegalArgumentException("Invalid packed extent: " + marker);
+        }
+        return new int[] {offsetSeparator + 1, lengthSeparator + 1};
+    }
+
+    /**
+     * Checks that a non-empty range of a string holds only decimal digits.
+     */
+    private static boolean isNumber(String s, int start, int end) {
+        if (start >= end || end - start > 18) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
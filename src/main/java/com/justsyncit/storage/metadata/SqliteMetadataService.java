@@ -32,11 +32,16 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * SQLite implementation of MetadataService.
  * Provides metadata management for snapshots, files, and chunks using SQLite database.
  * Follows Single Responsibility Principle by focusing only on metadata operations.
+ *
+ * <p>All writes go through a single writer connection, one at a time, each in its own transaction
+ * that is committed before the method returns. Writers therefore never contend for the database
+ * lock, and whatever a write method stored is visible to every later read on any connection.</p>
  */
 public final class SqliteMetadataService implements MetadataService {
 
@@ -49,6 +54,10 @@ public final class SqliteMetadataService implements MetadataService {
     private final SchemaMigrator schemaMigrator;
     /** Flag indicating if the service has been closed. */
     private volatile boolean closed;
+    /** Serializes writes and guards the writer connection; a lock rather than a monitor so waiting virtual threads unmount. */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /** Connection all writes go through, opened on the first write. */
+    private Connection writer;
 
     /**
      * Creates a new SqliteMetadataService.
@@ -124,15 +133,17 @@ public final class SqliteMetadataService implements MetadataService {
         String sql = "INSERT INTO snapshots (id, name, created_at, description, total_files, total_size) "
                 + "VALUES (?, ?, ?, ?, 0, 0)";
 
-        try (Connection connection = connectionManager.getConnection();
-                PreparedStatement stmt = connection.prepareStatement(sql)) {
-
-            stmt.setString(1, id);
-            stmt.setString(2, name);
-            stmt.setLong(3, now.toEpochMilli());
-            stmt.setString(4, description);
-
-            stmt.executeUpdate();
+        try {
+            write(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setString(1, id);
+                    stmt.setString(2, name);
+                    stmt.setLong(3, now.toEpochMilli());
+                    stmt.setString(4, description);
+
+                    return stmt.executeUpdate();
+                }
+            });
 
             Snapshot snapshot = new Snapshot(id, name, description, now, 0, 0);
             logger.debug("Created snapshot: {}", snapshot);
@@ -197,6 +208,35 @@ public final class SqliteMetadataService implements MetadataService {
         }
     }
 
+    @Override
+    public Optional<Snapshot> findLatestSnapshotWithFilesUnder(String directory) throws IOException {
+        validateNotClosed();
+        if (directory == null || directory.trim().isEmpty()) {
+            throw new IllegalArgumentException("Directory cannot be null or empty");
+        }
+
+        // Paths below the directory sort between the prefix and the prefix with its separator
+        // incremented, a range the (snapshot_id, path) index answers without a scan
+        String prefix = directory.endsWith(java.io.File.separator) ? directory : directory + java.io.File.separator;
+        String end = prefix.substring(0, prefix.length() - 1) + (char) (prefix.charAt(prefix.length() - 1) + 1);
+        String sql = "SELECT id, name, created_at, description, total_files, total_size FROM snapshots s "
+                + "WHERE EXISTS (SELECT 1 FROM files f WHERE f.snapshot_id = s.id AND f.path >= ? AND f.path < ?) "
+                + "ORDER BY created_at DESC LIMIT 1";
+
+        try (Connection connection = connectionManager.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(sql)) {
+
+            stmt.setString(1, prefix);
+            stmt.setString(2, end);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? Optional.of(mapRowToSnapshot(rs)) : Optional.empty();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to find snapshot of " + directory, e);
+        }
+    }
+
     @Override
     public void deleteSnapshot(String id) throws IOException {
         validateNotClosed();
@@ -206,11 +246,13 @@ public final class SqliteMetadataService implements MetadataService {
 
         String sql = "DELETE FROM snapshots WHERE id = ?";
 
-        try (Connection connection = connectionManager.getConnection();
-                PreparedStatement stmt = connection.prepareStatement(sql)) {
-
-            stmt.setString(1, id);
-            int rowsAffected = stmt.executeUpdate();
+        try {
+            int rowsAffected = write(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setString(1, id);
+                    return stmt.executeUpdate();
+                }
+            });
 
             if (rowsAffected > 0) {
                 logger.debug("Deleted snapshot: {}", id);
@@ -230,38 +272,41 @@ public final class SqliteMetadataService implements MetadataService {
             throw new IllegalArgumentException("File metadata cannot be null");
         }
 
-        String sql = "INSERT INTO files (id, snapshot_id, path, size, modified_time, file_hash) "
-                + "VALUES (?, ?, ?, ?, ?, ?)";
+        String sql = "INSERT INTO files (id, snapshot_id, path, size, modified_time, file_hash, file_key) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?)";
 
-        try (Connection connection = connectionManager.getConnection()) {
-            // First verify that the snapshot exists
-            String checkSnapshotSql = "SELECT id FROM snapshots WHERE id = ?";
-            try (PreparedStatement checkStmt = connection.prepareStatement(checkSnapshotSql)) {
-                checkStmt.setString(1, file.getSnapshotId());
-                try (ResultSet rs = checkStmt.executeQuery()) {
-                    if (!rs.next()) {
-                        logger.error("Snapshot {} does not exist when trying to insert file {}",
-                                file.getSnapshotId(), file.getPath());
-                        throw new IOException("Snapshot does not exist: " + file.getSnapshotId());
+        try {
+            return write(connection -> {
+                // First verify that the snapshot exists
+                String checkSnapshotSql = "SELECT id FROM snapshots WHERE id = ?";
+                try (PreparedStatement checkStmt = connection.prepareStatement(checkSnapshotSql)) {
+                    checkStmt.setString(1, file.getSnapshotId());
+                    try (ResultSet rs = checkStmt.executeQuery()) {
+                        if (!rs.next()) {
+                            logger.error("Snapshot {} does not exist when trying to insert file {}",
+                                    file.getSnapshotId(), file.getPath());
+                            throw new IOException("Snapshot does not exist: " + file.getSnapshotId());
+                        }
                     }
                 }
-            }
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                stmt.setString(1, file.getId());
-                stmt.setString(2, file.getSnapshotId());
-                stmt.setString(3, file.getPath());
-                stmt.setLong(4, file.getSize());
-                stmt.setLong(5, file.getModifiedTime().toEpochMilli());
-                stmt.setString(6, file.getFileHash());
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setString(1, file.getId());
+                    stmt.setString(2, file.getSnapshotId());
+                    stmt.setString(3, file.getPath());
+                    stmt.setLong(4, file.getSize());
+                    stmt.setLong(5, file.getModifiedTime().toEpochMilli());
+                    stmt.setString(6, file.getFileHash());
+                    stmt.setString(7, file.getFileKey());
 
-                stmt.executeUpdate();
+                    stmt.executeUpdate();
 
-                // Insert file chunks
-                insertFileChunks(connection, file);
+                    // Insert file chunks
+                    insertFileChunks(connection, file);
 
-                logger.debug("Inserted file: {}", file.getPath());
-                return file.getId();
-            }
+                    logger.debug("Inserted file: {}", file.getPath());
+                    return file.getId();
+                }
+            });
 
         } catch (SQLException e) {
             throw new IOException("Failed to insert file", e);
@@ -280,33 +325,36 @@ public final class SqliteMetadataService implements MetadataService {
 
         List<String> insertedIds = new ArrayList<>();
 
-        String sql = "INSERT INTO files (id, snapshot_id, path, size, modified_time, file_hash) "
-                + "VALUES (?, ?, ?, ?, ?, ?)";
+        String sql = "INSERT INTO files (id, snapshot_id, path, size, modified_time, file_hash, file_key) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?)";
 
-        try (Connection connection = connectionManager.getConnection()) {
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                for (FileMetadata file : files) {
-                    stmt.setString(1, file.getId());
-                    stmt.setString(2, file.getSnapshotId());
-                    stmt.setString(3, file.getPath());
-                    stmt.setLong(4, file.getSize());
-                    stmt.setLong(5, file.getModifiedTime().toEpochMilli());
-                    stmt.setString(6, file.getFileHash());
-                    logger.debug("Adding file to batch: {} with hash: {}", file.getPath(), file.getFileHash());
-                    stmt.addBatch();
-                }
+        try {
+            return write(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    for (FileMetadata file : files) {
+                        stmt.setString(1, file.getId());
+                        stmt.setString(2, file.getSnapshotId());
+                        stmt.setString(3, file.getPath());
+                        stmt.setLong(4, file.getSize());
+                        stmt.setLong(5, file.getModifiedTime().toEpochMilli());
+                        stmt.setString(6, file.getFileHash());
+                        stmt.setString(7, file.getFileKey());
+                        logger.debug("Adding file to batch: {} with hash: {}", file.getPath(), file.getFileHash());
+                        stmt.addBatch();
+                    }
 
-                logger.debug("Executing batch insert for {} files", files.size());
-                int[] results = stmt.executeBatch();
-                logger.debug("Batch insert results: {}", results.length);
-                // Insert file chunks for all files
-                for (FileMetadata file : files) {
-                    insertFileChunks(connection, file);
-                    insertedIds.add(file.getId());
-                    logger.debug("Inserted file: {}", file.getPath());
+                    logger.debug("Executing batch insert for {} files", files.size());
+                    int[] results = stmt.executeBatch();
+                    logger.debug("Batch insert results: {}", results.length);
+                    // Insert file chunks for all files
+                    for (FileMetadata file : files) {
+                        insertFileChunks(connection, file);
+                        insertedIds.add(file.getId());
+                        logger.debug("Inserted file: {}", file.getPath());
+                    }
+                    return insertedIds;
                 }
-                return insertedIds;
-            }
+            });
         } catch (SQLException e) {
             throw new IOException("Failed to insert files", e);
         }
@@ -319,7 +367,7 @@ public final class SqliteMetadataService implements MetadataService {
             throw new IllegalArgumentException("File ID cannot be null or empty");
         }
 
-        String sql = "SELECT id, snapshot_id, path, size, modified_time, file_hash "
+        String sql = "SELECT id, snapshot_id, path, size, modified_time, file_hash, file_key "
                 + "FROM files WHERE id = ?";
 
         try (Connection connection = connectionManager.getConnection();
@@ -350,8 +398,11 @@ public final class SqliteMetadataService implements MetadataService {
             throw new IllegalArgumentException("Snapshot ID cannot be null or empty");
         }
 
-        String sql = "SELECT id, snapshot_id, path, size, modified_time, file_hash "
-                + "FROM files WHERE snapshot_id = ? ORDER BY path";
+        // One row per chunk list entry, so the chunk lists come with the files in a single query
+        String sql = "SELECT f.id, f.snapshot_id, f.path, f.size, f.modified_time, f.file_hash, f.file_key, "
+                + "c.chunk_order, c.chunk_hash, c.extent_offset, c.extent_length "
+                + "FROM files f LEFT JOIN file_chunks c ON c.file_id = f.id "
+                + "WHERE f.snapshot_id = ? ORDER BY f.path, c.chunk_order";
 
         try (Connection connection = connectionManager.getConnection();
                 PreparedStatement stmt = connection.prepareStatement(sql)) {
@@ -360,10 +411,25 @@ public final class SqliteMetadataService implements MetadataService {
 
             try (ResultSet rs = stmt.executeQuery()) {
                 List<FileMetadata> files = new ArrayList<>();
-                while (rs.next()) {
+                boolean more = rs.next();
+                while (more) {
                     String fileId = rs.getString("id");
-                    List<String> chunkHashes = getFileChunks(connection, fileId);
-                    files.add(mapRowToFileMetadata(rs, chunkHashes));
+                    // The file columns are read before the cursor moves on to the file's next chunk
+                    String path = rs.getString("path");
+                    long size = rs.getLong("size");
+                    Instant modifiedTime = Instant.ofEpochMilli(rs.getLong("modified_time"));
+                    String fileHash = rs.getString("file_hash");
+                    String fileKey = rs.getString("file_key");
+                    List<String> chunkHashes = new ArrayList<>();
+                    do {
+                        rs.getInt("chunk_order");
+                        if (!rs.wasNull()) {
+                            chunkHashes.add(chunkEntry(rs));
+                        }
+                        more = rs.next();
+                    } while (more && fileId.equals(rs.getString("id")));
+                    files.add(new FileMetadata(fileId, snapshotId, path, size, modifiedTime, fileHash, chunkHashes,
+                            fileKey));
                 }
 
                 logger.debug("Retrieved {} files for snapshot {}", files.size(), snapshotId);
@@ -375,30 +441,74 @@ public final class SqliteMetadataService implements MetadataService {
     }
 
     @Override
-    public void updateFile(FileMetadata file) throws IOException {
+    public Optional<FileMetadata> findUnchangedFile(String snapshotId, String path, long size, Instant modifiedTime,
+                                                    String fileKey) throws IOException {
         validateNotClosed();
-        if (file == null) {
-            throw new IllegalArgumentException("File metadata cannot be null");
+        if (snapshotId == null || snapshotId.trim().isEmpty()) {
+            throw new IllegalArgumentException("Snapshot ID cannot be null or empty");
+        }
+        if (path == null || path.isEmpty()) {
+            throw new IllegalArgumentException("Path cannot be null or empty");
+        }
+        if (modifiedTime == null) {
+            throw new IllegalArgumentException("Modified time cannot be null");
         }
 
-        String sql = "UPDATE files SET path = ?, size = ?, modified_time = ?, file_hash = ? "
-                + "WHERE id = ?";
+        // Looked up through the (snapshot_id, path) index; IS matches a null file key too
+        String sql = "SELECT id, snapshot_id, path, size, modified_time, file_hash, file_key FROM files "
+                + "WHERE snapshot_id = ? AND path = ? AND size = ? AND modified_time = ? AND file_key IS ?";
 
         try (Connection connection = connectionManager.getConnection();
                 PreparedStatement stmt = connection.prepareStatement(sql)) {
 
-            stmt.setString(1, file.getPath());
-            stmt.setLong(2, file.getSize());
-            stmt.setLong(3, file.getModifiedTime().toEpochMilli());
-            stmt.setString(4, file.getFileHash());
-            stmt.setString(5, file.getId());
+            stmt.setString(1, snapshotId);
+            stmt.setString(2, path);
+            stmt.setLong(3, size);
+            stmt.setLong(4, modifiedTime.toEpochMilli());
+            stmt.setString(5, fileKey);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return Optional.empty();
+                }
+                return Optional.of(mapRowToFileMetadata(rs, getFileChunks(connection, rs.getString("id"))));
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to look up file " + path + " in snapshot " + snapshotId, e);
+        }
+    }
 
-            int rowsAffected = stmt.executeUpdate();
+    @Override
+    public void updateFile(FileMetadata file) throws IOException {
+        validateNotClosed();
+        if (file == null) {
+            throw new IllegalArgumentException("File metadata cannot be null");
+        }
+
+        String sql = "UPDATE files SET path = ?, size = ?, modified_time = ?, file_hash = ?, file_key = ? "
+                + "WHERE id = ?";
+
+        try {
+            int rowsAffected = write(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setString(1, file.getPath());
+                    stmt.setLong(2, file.getSize());
+                    stmt.setLong(3, file.getModifiedTime().toEpochMilli());
+                    stmt.setString(4, file.getFileHash());
+                    stmt.setString(5, file.getFileKey());
+                    stmt.setString(6, file.getId());
+
+                    int updated = stmt.executeUpdate();
+                    if (updated > 0) {
+                        // Update file chunks
+                        deleteFileChunks(connection, file.getId());
+                        insertFileChunks(connection, file);
+                    }
+                    return updated;
+                }
+            });
 
             if (rowsAffected > 0) {
-                // Update file chunks
-                deleteFileChunks(connection, file.getId());
-                insertFileChunks(connection, file);
                 logger.debug("Updated file: {}", file.getPath());
             } else {
                 logger.warn("File not found for update: {}", file.getId());
@@ -416,20 +526,22 @@ public final class SqliteMetadataService implements MetadataService {
             throw new IllegalArgumentException("File ID cannot be null or empty");
         }
 
-        try (Connection connection = connectionManager.getConnection()) {
-            // Delete file chunks first (foreign key constraint)
-            deleteFileChunks(connection, id);
-
-            String sql = "DELETE FROM files WHERE id = ?";
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                stmt.setString(1, id);
-                int rowsAffected = stmt.executeUpdate();
-
-                if (rowsAffected > 0) {
-                    logger.debug("Deleted file: {}", id);
-                } else {
-                    logger.warn("File not found for deletion: {}", id);
+        try {
+            int rowsAffected = write(connection -> {
+                // Delete file chunks first (foreign key constraint)
+                deleteFileChunks(connection, id);
+
+                String sql = "DELETE FROM files WHERE id = ?";
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setString(1, id);
+                    return stmt.executeUpdate();
                 }
+            });
+
+            if (rowsAffected > 0) {
+                logger.debug("Deleted file: {}", id);
+            } else {
+                logger.warn("File not found for deletion: {}", id);
             }
         } catch (SQLException e) {
             throw new IOException("Failed to delete file", e);
@@ -445,15 +557,14 @@ public final class SqliteMetadataService implements MetadataService {
 
         String sql = "UPDATE chunks SET last_accessed = ? WHERE hash = ?";
 
-        try (Connection connection = connectionManager.getConnection()) {
-            // Disable auto-commit for better performance on single updates
-            connection.setAutoCommit(false);
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                stmt.setLong(1, Instant.now().toEpochMilli());
-                stmt.setString(2, chunkHash);
-                stmt.executeUpdate();
-            }
-            connection.commit();
+        try {
+            write(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setLong(1, Instant.now().toEpochMilli());
+                    stmt.setString(2, chunkHash);
+                    return stmt.executeUpdate();
+                }
+            });
             logger.debug("Recorded access for chunk: {}", chunkHash);
 
         } catch (SQLException e) {
@@ -501,16 +612,18 @@ public final class SqliteMetadataService implements MetadataService {
         String sql = "INSERT OR REPLACE INTO chunks (hash, size, first_seen, reference_count, last_accessed) "
                 + "VALUES (?, ?, ?, ?, ?)";
 
-        try (Connection connection = connectionManager.getConnection();
-                PreparedStatement stmt = connection.prepareStatement(sql)) {
-
-            stmt.setString(1, chunk.getHash());
-            stmt.setLong(2, chunk.getSize());
-            stmt.setLong(3, chunk.getFirstSeen().toEpochMilli());
-            stmt.setLong(4, chunk.getReferenceCount());
-            stmt.setLong(5, chunk.getLastAccessed().toEpochMilli());
-
-            stmt.executeUpdate();
+        try {
+            write(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setString(1, chunk.getHash());
+                    stmt.setLong(2, chunk.getSize());
+                    stmt.setLong(3, chunk.getFirstSeen().toEpochMilli());
+                    stmt.setLong(4, chunk.getReferenceCount());
+                    stmt.setLong(5, chunk.getLastAccessed().toEpochMilli());
+
+                    return stmt.executeUpdate();
+                }
+            });
             logger.debug("Upserted chunk metadata: {}", chunk.getHash());
 
         } catch (SQLException e) {
@@ -527,11 +640,13 @@ public final class SqliteMetadataService implements MetadataService {
 
         String sql = "DELETE FROM chunks WHERE hash = ?";
 
-        try (Connection connection = connectionManager.getConnection();
-                PreparedStatement stmt = connection.prepareStatement(sql)) {
-
-            stmt.setString(1, hash);
-            int rowsAffected = stmt.executeUpdate();
+        try {
+            int rowsAffected = write(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setString(1, hash);
+                    return stmt.executeUpdate();
+                }
+            });
 
             if (rowsAffected > 0) {
                 logger.debug("Deleted chunk metadata: {}", hash);
@@ -610,12 +725,84 @@ public final class SqliteMetadataService implements MetadataService {
     @Override
     public void close() throws IOException {
         if (!closed) {
+            writeLock.lock();
+            try {
+                if (writer != null) {
+                    try {
+                        connectionManager.closeConnection(writer);
+                    } catch (SQLException e) {
+                        logger.warn("Failed to close writer connection: {}", e.getMessage());
+                    }
+                    writer = null;
+                }
+            } finally {
+                writeLock.unlock();
+            }
             connectionManager.close();
             closed = true;
             logger.info("Closed SQLite metadata service");
         }
     }
 
+    /**
+     * A write to run on the writer connection.
+     *
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    private interface WriteOperation<T> {
+        /**
+         * Runs the write.
+         *
+         * @param connection the writer connection
+         * @return the result
+         * @throws SQLException if a statement fails
+         * @throws IOException if the write is rejected
+         */
+        T execute(Connection connection) throws SQLException, IOException;
+    }
+
+    /**
+     * Runs a write on the writer connection in a transaction of its own, committed before this method
+     * returns, or rolled back if the write fails. If the connection is already inside a transaction
+     * (only possible with the shared in-memory connection), the write joins it instead.
+     *
+     * @param operation the write
+     * @param <T> the type of the result
+     * @return the result of the write
+     * @throws SQLException if the write or the commit fails
+     * @throws IOException if the write is rejected
+     */
+    private <T> T write(WriteOperation<T> operation) throws SQLException, IOException {
+        writeLock.lock();
+        try {
+            if (writer == null || writer.isClosed()) {
+                writer = connectionManager.getConnection();
+            }
+            Connection connection = writer;
+            if (!connection.getAutoCommit()) {
+                return operation.execute(connection);
+            }
+            connection.setAutoCommit(false);
+            try {
+                T result = operation.execute(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | IOException | RuntimeException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackEx) {
+                    e.addSuppressed(rollbackEx);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     /**
      * Inserts file chunks for a file.
      */
@@ -623,8 +810,8 @@ public final class SqliteMetadataService implements MetadataService {
         // First ensure all chunks exist in the chunks table
         ensureChunksExist(connection, file.getChunkHashes());
 
-        String sql = "INSERT INTO file_chunks (file_id, chunk_hash, chunk_order, chunk_size) "
-                + "VALUES (?, ?, ?, ?)";
+        String sql = "INSERT INTO file_chunks (file_id, chunk_hash, chunk_order, chunk_size, extent_offset, extent_length) "
+                + "VALUES (?, ?, ?, ?, ?, ?)";
 
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             List<String> chunkHashes = file.getChunkHashes();
@@ -632,11 +819,29 @@ public final class SqliteMetadataService implements MetadataService {
                 String chunkHash = chunkHashes.get(i);
 
                 stmt.setString(1, file.getId());
-                stmt.setString(2, chunkHash);
                 stmt.setInt(3, i);
-                // Use estimated chunk size to avoid foreign key constraint issues
-                // The actual size will be updated when the chunk is accessed
-                stmt.setInt(4, 65536); // Default chunk size
+                if (PackedExtent.isMarker(chunkHash)) {
+                    // A packed file refers to its pack chunk, with the extent in columns of its own
+                    long length = PackedExtent.length(chunkHash);
+                    stmt.setString(2, PackedExtent.chunkHash(chunkHash));
+                    stmt.setLong(4, length);
+                    stmt.setLong(5, PackedExtent.offset(chunkHash));
+                    stmt.setLong(6, length);
+                } else if (ZeroExtent.isMarker(chunkHash)) {
+                    // A zero extent refers to no chunk, only its length
+                    long length = ZeroExtent.length(chunkHash);
+                    stmt.setNull(2, java.sql.Types.VARCHAR);
+                    stmt.setLong(4, length);
+                    stmt.setNull(5, java.sql.Types.INTEGER);
+                    stmt.setLong(6, length);
+                } else {
+                    stmt.setString(2, chunkHash);
+                    // Use estimated chunk size to avoid foreign key constraint issues
+                    // The actual size will be updated when the chunk is accessed
+                    stmt.setInt(4, 65536); // Default chunk size
+                    stmt.setNull(5, java.sql.Types.INTEGER);
+                    stmt.setNull(6, java.sql.Types.INTEGER);
+                }
                 stmt.addBatch();
             }
             stmt.executeBatch();
@@ -656,7 +861,12 @@ public final class SqliteMetadataService implements MetadataService {
 
             long now = System.currentTimeMillis();
 
-            for (String chunkHash : chunkHashes) {
+            for (String entry : chunkHashes) {
+                // Packed extents refer to their pack chunk, zero extents to none
+                String chunkHash = PackedExtent.storedChunk(entry);
+                if (chunkHash == null) {
+                    continue;
+                }
                 // Check if chunk exists
                 checkStmt.setString(1, chunkHash);
                 try (ResultSet rs = checkStmt.executeQuery()) {
@@ -707,7 +917,7 @@ public final class SqliteMetadataService implements MetadataService {
      * Gets chunk hashes for a file.
      */
     private List<String> getFileChunks(Connection connection, String fileId) throws SQLException {
-        String sql = "SELECT chunk_hash FROM file_chunks WHERE file_id = ? ORDER BY chunk_order";
+        String sql = "SELECT chunk_hash, extent_offset, extent_length FROM file_chunks WHERE file_id = ? ORDER BY chunk_order";
 
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, fileId);
@@ -715,13 +925,26 @@ public final class SqliteMetadataService implements MetadataService {
             try (ResultSet rs = stmt.executeQuery()) {
                 List<String> chunkHashes = new ArrayList<>();
                 while (rs.next()) {
-                    chunkHashes.add(rs.getString("chunk_hash"));
+                    chunkHashes.add(chunkEntry(rs));
                 }
                 return chunkHashes;
             }
         }
     }
 
+    /**
+     * Maps a file_chunks row to its chunk list entry: a chunk hash, or a zero or packed extent marker.
+     */
+    private static String chunkEntry(ResultSet rs) throws SQLException {
+        String chunkHash = rs.getString("chunk_hash");
+        long offset = rs.getLong("extent_offset");
+        boolean packed = !rs.wasNull();
+        if (chunkHash == null) {
+            return ZeroExtent.marker(rs.getLong("extent_length"));
+        }
+        return packed ? PackedExtent.marker(chunkHash, offset, rs.getLong("extent_length")) : chunkHash;
+    }
+
     /**
      * Deletes file chunks for a file.
      */
@@ -758,8 +981,9 @@ public final class SqliteMetadataService implements MetadataService {
         long size = rs.getLong("size");
         Instant modifiedTime = Instant.ofEpochMilli(rs.getLong("modified_time"));
         String fileHash = rs.getString("file_hash");
+        String fileKey = rs.getString("file_key");
 
-        return new FileMetadata(id, snapshotId, path, size, modifiedTime, fileHash, chunkHashes);
+        return new FileMetadata(id, snapshotId, path, size, modifiedTime, fileHash, chunkHashes, fileKey);
     }
 
     /**
@@ -114,14 +114,19 @@ public final class SqliteSchemaMigrator implements SchemaMigrator {
         if (currentVersion == 0) {
             createInitialSchema(connection);
             // createInitialSchema already inserts the target version, so no need to update
-        } else if (currentVersion == 1 && targetVersion >= 2) {
-            // Migration from version 1 to 2: Add foreign key constraint to file_chunks table
-            migrateToVersion2(connection);
-        } else if (currentVersion > 1) {
-            // Future migrations would be handled here
-            throw new SQLException(
-                    String.format("Migration from version %d to %d is not supported",
-                            currentVersion, targetVersion));
+        } else {
+            if (currentVersion == 1) {
+                // Migration from version 1 to 2: Add foreign key constraint to file_chunks table
+                migrateToVersion2(connection);
+            }
+            if (currentVersion <= 2) {
+                // Migration from version 2 to 3: Add file key column for incremental backups
+                migrateToVersion3(connection);
+            }
+            if (currentVersion <= 3) {
+                // Migration from version 3 to 4: Add extent columns for packed files and zero extents
+                migrateToVersion4(connection);
+            }
         }
 
         logger.info("Database schema migration completed successfully");
@@ -188,6 +193,57 @@ public final class SqliteSchemaMigrator implements SchemaMigrator {
         }
     }
 
+    /**
+     * Migrates database schema from version 2 to 3.
+     * Adds the file_key column used to detect unchanged files in incremental backups.
+     *
+     * @param connection database connection
+     * @throws SQLException if migration fails
+     */
+    private void migrateToVersion3(Connection connection) throws SQLException {
+        logger.info("Migrating database schema from version 2 to 3");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER TABLE files ADD COLUMN file_key TEXT");
+            stmt.execute("UPDATE schema_version SET version = 3");
+            logger.info("Successfully migrated database schema to version 3");
+        }
+    }
+
+    /**
+     * Migrates database schema from version 3 to 4.
+     * Adds the extent columns locating the bytes of packed small files within their pack chunk and
+     * holding the length of zero extents, which have no chunk, so chunk_hash becomes nullable.
+     *
+     * @param connection database connection
+     * @throws SQLException if migration fails
+     */
+    private void migrateToVersion4(Connection connection) throws SQLException {
+        logger.info("Migrating database schema from version 3 to 4");
+        try (Statement stmt = connection.createStatement()) {
+            // SQLite cannot drop a NOT NULL constraint, so the table is copied into a new one
+            stmt.execute("CREATE TABLE file_chunks_v4 ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + "file_id TEXT NOT NULL,"
+                    + "chunk_hash TEXT,"
+                    + "chunk_order INTEGER NOT NULL,"
+                    + "chunk_size INTEGER NOT NULL,"
+                    + "extent_offset INTEGER,"
+                    + "extent_length INTEGER,"
+                    + "FOREIGN KEY (file_id) REFERENCES files(id) ON DELETE CASCADE,"
+                    + "FOREIGN KEY (chunk_hash) REFERENCES chunks(hash) ON DELETE CASCADE,"
+                    + "UNIQUE(file_id, chunk_order)"
+                    + ")");
+            stmt.execute("INSERT INTO file_chunks_v4 (id, file_id, chunk_hash, chunk_order, chunk_size) "
+                    + "SELECT id, file_id, chunk_hash, chunk_order, chunk_size FROM file_chunks");
+            stmt.execute("DROP TABLE file_chunks");
+            stmt.execute("ALTER TABLE file_chunks_v4 RENAME TO file_chunks");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_file_chunks_file_id ON file_chunks(file_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_file_chunks_chunk_hash ON file_chunks(chunk_hash)");
+            stmt.execute("UPDATE schema_version SET version = 4");
+            logger.info("Successfully migrated database schema to version 4");
+        }
+    }
+
     @Override
     public boolean validateSchema(Connection connection) throws SQLException {
         if (connection == null) {
@@ -0,0 +1,156 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.justsyncit.storage.metadata;
+
+import com.justsyncit.hash.Blake3Service;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Zero-extent entries in a file's chunk list.
+ * A run of zero bytes, whether a hole in a sparse file or written zeros, is recorded as a
+ * marker holding its length instead of as chunks, and is never stored. The zeros still count
+ * towards the file hash, so the file hash is the hash of the contents whether or not zeros were
+ * detected.
+ *
+ * <p>Zero extents save storage and store writes, not reading or hashing: the file hash is still
+ * O(file size). Zero runs are only found by reading them (the JDK has no SEEK_DATA/SEEK_HOLE
+ * probe, though holes are served from the page cache without disk I/O), and BLAKE3 mixes each
+ * 1 KiB chunk's position into its chaining value, so the hash of a zero run cannot be reused
+ * and costs as much as hashing any other data of the same length.</p>
+ */
+public final class ZeroExtent {
+
+    /** Prefix of zero-extent markers; chunk hashes are hex, so they never start with it. */
+    public static final String PREFIX = "zero:";
+
+    /** Zero bytes that buffers are compared against, one window at a time. */
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(64 * 1024).asReadOnlyBuffer();
+
+    private ZeroExtent() {
+        // Utility class
+    }
+
+    /**
+     * Creates the marker for a zero extent.
+     *
+     * @param length length of the extent in bytes
+     * @return the marker
+     * @throws IllegalArgumentException if length is not positive
+     */
+    public static String marker(long length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Zero extent length must be positive");
+        }
+        return PREFIX + length;
+    }
+
+    /**
+     * Checks whether a chunk list entry is a zero-extent marker.
+     *
+     * @param entry the chunk list entry
+     * @return true if the entry is a zero-extent marker
+     */
+    public static boolean isMarker(String entry) {
+        return entry != null && entry.startsWith(PREFIX);
+    }
+
+    /**
+     * Gets the length of a zero extent.
+     *
+     * @param marker the zero-extent marker
+     * @return the extent length in bytes
+     * @throws IllegalArgumentException if the entry is not a valid marker
+     */
+    public static long length(String marker) {
+        if (!isMarker(marker)) {
+            throw new IllegalArgumentException("Not a zero extent: " + marker);
+        }
+        try {
+            long length = Long.parseLong(marker.substring(PREFIX.length()));
+            if (length > 0) {
+                return length;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid zero extent: " + marker);
+    }
+
+    /**
+     * Checks whether a chunk list contains any zero extents.
+     *
+     * @param chunkList the chunk list
+     * @return true if at least one entry is a zero-extent marker
+     */
+    public static boolean containsMarkers(List<String> chunkList) {
+        for (String entry : chunkList) {
+            if (isMarker(entry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the remaining bytes of a buffer are all zero, without moving its position.
+     *
+     * @param buffer the buffer
+     * @return true if every remaining byte is zero
+     */
+    public static boolean isAllZero(ByteBuffer buffer) {
+        return zeroPrefixLength(buffer) == buffer.remaining();
+    }
+
+    /**
+     * Counts the zero bytes at the start of a buffer's remaining bytes, without moving its position.
+     *
+     * @param buffer the buffer
+     * @return the number of leading zero bytes
+     */
+    public static int zeroPrefixLength(ByteBuffer buffer) {
+        ByteBuffer window = buffer.duplicate();
+        int start = buffer.position();
+        int end = buffer.limit();
+        for (int offset = start; offset < end; offset += ZEROS.capacity()) {
+            int length = Math.min(ZEROS.capacity(), end - offset);
+            window.limit(offset + length).position(offset);
+            int mismatch = window.mismatch(ZEROS.duplicate().limit(length));
+            if (mismatch >= 0) {
+                return offset - start + mismatch;
+            }
+        }
+        return end - start;
+    }
+
+    /**
+     * Feeds a run of zero bytes to a hasher from a shared zero buffer, so callers need not keep
+     * the data. This costs as much as hashing {@code length} bytes of any other data.
+     *
+     * @param hasher the incremental hasher
+     * @param length number of zero bytes
+     */
+    public static void hashZeros(Blake3Service.Blake3IncrementalHasher hasher, long length) {
+        for (long remaining = length; remaining > 0; remaining -= ZEROS.capacity()) {
+            hasher.update(ZEROS.duplicate().limit((int) Math.min(ZEROS.capacity(), remaining)));
+        }
+    }
+}
@@ -26,7 +26,11 @@ import com.justsyncit.performance.util.BenchmarkDataGenerator;
 import com.justsyncit.performance.util.PerformanceMetrics;
 import com.justsyncit.restore.RestoreOptions;
 import com.justsyncit.restore.RestoreService;
+import com.justsyncit.storage.Blake3IntegrityVerifier;
+import com.justsyncit.storage.ChunkIndexFactory;
 import com.justsyncit.storage.ContentStore;
+import com.justsyncit.storage.FilesystemContentStore;
+import com.justsyncit.storage.TwoLevelChunkPathGenerator;
 import com.justsyncit.storage.metadata.MetadataService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -553,6 +557,130 @@ public class ConcurrencyBenchmark {
         }
     }
 
+    @Test
+    void benchmarkConcurrentBufferHashing() throws Exception {
+        // Hashing a shared service from many threads must scale with cores, not serialize on a lock
+        int[] threadCounts = {1, 2, 4, 8};
+        int buffersPerThread = 256;
+        byte[] buffer = new byte[64 * 1024];
+        new java.util.Random(42).nextBytes(buffer);
+        String expectedHash = blake3Service.hashBuffer(buffer);
+        int cores = Runtime.getRuntime().availableProcessors();
+        double singleThreadThroughput = 0;
+
+        for (int threads : threadCounts) {
+            PerformanceMetrics metrics = new PerformanceMetrics(
+                    "Concurrent Buffer Hashing - " + threads + " threads");
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+
+            long startTime = System.nanoTime();
+            for (int i = 0; i < threads; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        boolean consistent = true;
+                        for (int j = 0; j < buffersPerThread; j++) {
+                            consistent &= expectedHash.equals(blake3Service.hashBuffer(buffer));
+                        }
+                        return consistent;
+                    } catch (Exception e) {
+                        fail("Concurrent hashing should succeed", e);
+                        return false;
+                    }
+                }, executor));
+            }
+
+            for (CompletableFuture<Boolean> future : futures) {
+                assertTrue(future.get(), "Concurrent hashing must not corrupt hasher state");
+            }
+            long durationMs = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+
+            executor.shutdown();
+            executor.awaitTermination(60, TimeUnit.SECONDS);
+
+            long totalBytes = (long) threads * buffersPerThread * buffer.length;
+            double throughput = totalBytes / (double) durationMs;
+            if (threads == 1) {
+                singleThreadThroughput = throughput;
+            }
+            double speedup = throughput / singleThreadThroughput;
+            double scalingEfficiency = speedup / Math.min(threads, cores);
+
+            metrics.recordThroughput(totalBytes, durationMs);
+            metrics.recordMetric("thread_count", threads);
+            metrics.recordMetric("speedup", speedup);
+            metrics.recordMetric("scaling_efficiency", scalingEfficiency);
+            metrics.recordMetric("concurrency_efficiency", scalingEfficiency);
+            metrics.finalizeMetrics();
+            benchmarkResults.add(metrics);
+
+            if (threads > 1 && threads <= cores) {
+                assertTrue(speedup > 1.0,
+                        "Hashing throughput should grow with threads: " + String.format("%.2fx", speedup));
+            }
+        }
+    }
+
+    @Test
+    void benchmarkConcurrentChunkWrites() throws Exception {
+        // Writers of different chunks must not queue behind one store-wide lock
+        int[] threadCounts = {1, 8, 32};
+        int chunksPerThread = 64;
+        int chunkSize = 64 * 1024;
+        double singleThreadThroughput = 0;
+
+        for (int threads : threadCounts) {
+            PerformanceMetrics metrics = new PerformanceMetrics(
+                    "Concurrent Chunk Writes - " + threads + " threads");
+            Path chunkDir = storageDir.resolve("chunk-writes-" + threads);
+            FilesystemContentStore store = FilesystemContentStore.create(chunkDir, ChunkIndexFactory.createMemoryIndex(),
+                    new Blake3IntegrityVerifier(blake3Service), new TwoLevelChunkPathGenerator());
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            long startTime = System.nanoTime();
+            for (int i = 0; i < threads; i++) {
+                int thread = i;
+                futures.add(CompletableFuture.runAsync(() -> {
+                    java.util.Random random = new java.util.Random(thread);
+                    byte[] chunk = new byte[chunkSize];
+                    try {
+                        for (int j = 0; j < chunksPerThread; j++) {
+                            random.nextBytes(chunk);
+                            store.storeChunk(chunk);
+                        }
+                    } catch (IOException e) {
+                        fail("Concurrent chunk writes should succeed", e);
+                    }
+                }, executor));
+            }
+            for (CompletableFuture<Void> future : futures) {
+                future.get();
+            }
+            long durationMs = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+
+            executor.shutdown();
+            executor.awaitTermination(60, TimeUnit.SECONDS);
+            assertEquals((long) threads * chunksPerThread, store.getChunkCount(), "Every chunk should be stored once");
+            store.close();
+
+            long totalBytes = (long) threads * chunksPerThread * chunkSize;
+            double throughput = totalBytes / (double) durationMs;
+            if (threads == 1) {
+                singleThreadThroughput = throughput;
+            }
+            double speedup = throughput / singleThreadThroughput;
+
+            metrics.recordThroughput(totalBytes, durationMs);
+            metrics.recordMetric("thread_count", threads);
+            metrics.recordMetric("speedup", speedup);
+            metrics.recordMetric("concurrency_efficiency", speedup / Math.min(threads, Runtime.getRuntime().availableProcessors()));
+            metrics.finalizeMetrics();
+            benchmarkResults.add(metrics);
+        }
+    }
+
     /**
      * Creates datasets for concurrent operations.
      */
@@ -24,6 +24,12 @@ import com.justsyncit.backup.BackupService;
 import com.justsyncit.hash.Blake3Service;
 import com.justsyncit.performance.util.BenchmarkDataGenerator;
 import com.justsyncit.performance.util.PerformanceMetrics;
+import com.justsyncit.scanner.ByteBufferPool;
+import com.justsyncit.scanner.ChunkingAlgorithm;
+import com.justsyncit.scanner.FastCdcFileChunker;
+import com.justsyncit.scanner.FileChunker;
+import com.justsyncit.scanner.FixedSizeFileChunker;
+import com.justsyncit.storage.ContentStoreFactory;
 import com.justsyncit.storage.ContentStoreStats;
 import com.justsyncit.storage.metadata.MetadataService;
 import com.justsyncit.storage.metadata.MetadataStats;
@@ -542,6 +548,87 @@ public class DeduplicationBenchmark {
         }
     }
 
+    @Test
+    void benchmarkContentDefinedChunking() throws Exception {
+        // Successive versions of a file with small insertions, which shift every
+        // later fixed-size chunk boundary but only a few content-defined ones
+        int versionCount = 5;
+        int chunkSize = 64 * 1024;
+        java.util.Random random = new java.util.Random(7);
+        byte[] content = generateRandomContent(8 * 1024 * 1024);
+        List<Path> versions = new ArrayList<>();
+        long totalOriginalSize = 0;
+
+        for (int i = 0; i < versionCount; i++) {
+            Path file = sourceDir.resolve("version_" + i + ".dat");
+            Files.write(file, content);
+            versions.add(file);
+            totalOriginalSize += content.length;
+            content = insertRandomBytes(content, random.nextInt(content.length), 1 + random.nextInt(64), random);
+        }
+
+        double fixedRatio = 0;
+        double contentDefinedRatio = 0;
+        for (ChunkingAlgorithm algorithm : ChunkingAlgorithm.values()) {
+            PerformanceMetrics metrics = new PerformanceMetrics("Chunking Algorithm - " + algorithm);
+            com.justsyncit.storage.ContentStore store = ContentStoreFactory.createMemoryStore(blake3Service);
+            FastCdcFileChunker contentDefinedChunker = null;
+            FixedSizeFileChunker fixedChunker = null;
+            FileChunker chunker;
+            if (algorithm == ChunkingAlgorithm.FASTCDC) {
+                contentDefinedChunker = FastCdcFileChunker.create(blake3Service, ByteBufferPool.create(), chunkSize, store);
+                chunker = contentDefinedChunker;
+            } else {
+                fixedChunker = FixedSizeFileChunker.create(blake3Service, ByteBufferPool.create(), chunkSize, store);
+                chunker = fixedChunker;
+            }
+            FileChunker.ChunkingOptions options = new FileChunker.ChunkingOptions()
+                    .withChunkSize(chunkSize)
+                    .withAlgorithm(algorithm);
+
+            try {
+                long chunksCreated = 0;
+                long startTime = System.currentTimeMillis();
+                for (Path version : versions) {
+                    FileChunker.ChunkingResult result = chunker.chunkFile(version, options).get();
+                    assertTrue(result.isSuccess(), "Chunking should succeed");
+                    chunksCreated += result.getChunkCount();
+                }
+                long duration = Math.max(1, System.currentTimeMillis() - startTime);
+
+                ContentStoreStats storageStats = store.getStats();
+                double ratio = (double) totalOriginalSize / storageStats.getTotalSizeBytes();
+                metrics.recordThroughput(totalOriginalSize, duration);
+                metrics.recordMetric("chunking_algorithm", algorithm.name());
+                metrics.recordMetric("chunks_created", chunksCreated);
+                metrics.recordMetric("unique_chunks", storageStats.getTotalChunks());
+                metrics.recordMetric("deduplication_ratio", ratio);
+                metrics.recordMetric("space_savings_percent",
+                        (1.0 - (double) storageStats.getTotalSizeBytes() / totalOriginalSize) * 100);
+                metrics.finalizeMetrics();
+                benchmarkResults.add(metrics);
+
+                if (algorithm == ChunkingAlgorithm.FASTCDC) {
+                    contentDefinedRatio = ratio;
+                } else {
+                    fixedRatio = ratio;
+                }
+            } finally {
+                if (contentDefinedChunker != null) {
+                    contentDefinedChunker.close();
+                }
+                if (fixedChunker != null) {
+                    fixedChunker.close();
+                }
+                store.close();
+            }
+        }
+
+        assertTrue(contentDefinedRatio > fixedRatio,
+                "Content-defined chunking should deduplicate shifted data better than fixed-size chunking: "
+                + String.format("%.2f vs %.2f", contentDefinedRatio, fixedRatio));
+    }
+
     /**
      * Creates unique files for testing.
      */
@@ -655,6 +742,19 @@ public class DeduplicationBenchmark {
         new java.util.Random(42).nextBytes(content); // Fixed seed for reproducible tests
         return content;
     }
+
+    /**
+     * Returns a copy of content with random bytes inserted at the given offset.
+     */
+    private byte[] insertRandomBytes(byte[] content, int offset, int length, java.util.Random random) {
+        byte[] inserted = new byte[length];
+        random.nextBytes(inserted);
+        byte[] result = new byte[content.length + length];
+        System.arraycopy(content, 0, result, 0, offset);
+        System.arraycopy(inserted, 0, result, offset, length);
+        System.arraycopy(content, offset, result, offset + length, content.length - offset);
+        return result;
+    }
     
     /**
      * Calculates total size of files in a directory.
@@ -26,6 +26,9 @@ import com.justsyncit.performance.util.BenchmarkDataGenerator;
 import com.justsyncit.performance.util.PerformanceMetrics;
 import com.justsyncit.restore.RestoreOptions;
 import com.justsyncit.restore.RestoreService;
+import com.justsyncit.scanner.ByteBufferPool;
+import com.justsyncit.scanner.FileChunker;
+import com.justsyncit.scanner.FixedSizeFileChunker;
 import com.justsyncit.storage.ContentStore;
 import com.justsyncit.storage.ContentStoreStats;
 import com.justsyncit.storage.metadata.MetadataService;
@@ -386,6 +389,51 @@ public class ThroughputBenchmark {
         }
     }
 
+    @Test
+    void benchmarkMemoryMappedChunkingThroughput() throws Exception {
+        // Compare reading chunks into pooled buffers with async I/O against hashing them in place in a mapping
+        int fileSizeMB = 256;
+        Path file = sourceDir.resolve("large_file.dat");
+        byte[] block = new byte[1024 * 1024];
+        java.util.Random random = new java.util.Random(42);
+        try (java.io.OutputStream out = Files.newOutputStream(file)) {
+            for (int i = 0; i < fileSizeMB; i++) {
+                random.nextBytes(block);
+                out.write(block);
+            }
+        }
+        long totalSize = Files.size(file);
+        String expectedHash = blake3Service.hashFile(file);
+
+        for (boolean mapped : new boolean[] {false, true}) {
+            String ioPath = mapped ? "mmap" : "async";
+            PerformanceMetrics metrics = new PerformanceMetrics("Chunking I/O Path - " + ioPath);
+            FixedSizeFileChunker chunker = FixedSizeFileChunker.create(blake3Service, ByteBufferPool.create(), 64 * 1024);
+            FileChunker.ChunkingOptions options = new FileChunker.ChunkingOptions()
+                    .withUseAsyncIO(true)
+                    .withMemoryMappingThreshold(mapped ? 1 : 0);
+
+            try {
+                long startTime = System.currentTimeMillis();
+                FileChunker.ChunkingResult result = chunker.chunkFile(file, options).get();
+                long duration = Math.max(1, System.currentTimeMillis() - startTime);
+
+                // Record metrics
+                assertTrue(result.isSuccess(), "Chunking should succeed");
+                assertEquals(expectedHash, result.getFileHash(), "Both paths should hash the same content");
+                metrics.recordThroughput(totalSize, duration);
+                metrics.recordOperationRate(result.getChunkCount(), duration, "chunks");
+                metrics.recordMetric("io_path", ioPath);
+                metrics.recordMetric("file_size_mb", fileSizeMB);
+
+                metrics.finalizeMetrics();
+                benchmarkResults.add(metrics);
+            } finally {
+                chunker.close();
+            }
+        }
+    }
+
     /**
      * Generates a comprehensive benchmark report.
      */
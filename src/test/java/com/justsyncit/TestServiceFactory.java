@@ -21,6 +21,7 @@ package com.justsyncit;
 import com.justsyncit.command.CommandRegistry;
 import com.justsyncit.hash.Blake3BufferHasher;
 import com.justsyncit.hash.Blake3FileHasher;
+import com.justsyncit.hash.Blake3HashAlgorithm;
 import com.justsyncit.hash.Blake3IncrementalHasherFactory;
 import com.justsyncit.hash.Blake3Service;
 import com.justsyncit.hash.Blake3ServiceImpl;
@@ -29,7 +30,6 @@ import com.justsyncit.hash.BufferHasher;
 import com.justsyncit.hash.FileHasher;
 import com.justsyncit.hash.HashAlgorithm;
 import com.justsyncit.hash.IncrementalHasherFactory;
-import com.justsyncit.hash.Sha256HashAlgorithm;
 import com.justsyncit.hash.StreamHasher;
 import com.justsyncit.simd.SimdDetectionService;
 import com.justsyncit.simd.SimdDetectionServiceImpl;
@@ -47,20 +47,16 @@ public class TestServiceFactory {
      * @throws com.justsyncit.hash.HashingException if service creation fails
      */
     public static Blake3Service createBlake3Service() throws com.justsyncit.hash.HashingException {
-        try {
-            HashAlgorithm hashAlgorithm = Sha256HashAlgorithm.create();
-            BufferHasher bufferHasher = new Blake3BufferHasher(hashAlgorithm);
-            IncrementalHasherFactory incrementalHasherFactory = new Blake3IncrementalHasherFactory(hashAlgorithm);
-            StreamHasher streamHasher = new Blake3StreamHasher(incrementalHasherFactory);
-            FileHasher fileHasher = new Blake3FileHasher(streamHasher, bufferHasher);
-            SimdDetectionService simdDetectionService = new SimdDetectionServiceImpl();
+        HashAlgorithm hashAlgorithm = Blake3HashAlgorithm.create();
+        BufferHasher bufferHasher = new Blake3BufferHasher(hashAlgorithm);
+        IncrementalHasherFactory incrementalHasherFactory = new Blake3IncrementalHasherFactory(hashAlgorithm);
+        StreamHasher streamHasher = new Blake3StreamHasher(incrementalHasherFactory);
+        FileHasher fileHasher = new Blake3FileHasher(streamHasher, bufferHasher);
+        SimdDetectionService simdDetectionService = new SimdDetectionServiceImpl();
 
-            return new Blake3ServiceImpl(
-                    fileHasher, bufferHasher, streamHasher,
-                    incrementalHasherFactory, simdDetectionService);
-        } catch (com.justsyncit.hash.HashingException e) {
-            throw new com.justsyncit.hash.HashingException("Failed to create Blake3Service for testing", e);
-        }
+        return new Blake3ServiceImpl(
+                fileHasher, bufferHasher, streamHasher,
+                incrementalHasherFactory, simdDetectionService);
     }
 
     /**
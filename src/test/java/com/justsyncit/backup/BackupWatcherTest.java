@@ -0,0 +1,179 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.backup;
+
+import com.justsyncit.scanner.FileProcessor;
+import com.justsyncit.scanner.ScanOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for BackupWatcher.
+ */
+class BackupWatcherTest {
+
+    /** Temporary directory being watched. */
+    @TempDir
+    Path tempDir;
+
+    /** Mocked processor recording the snapshots. */
+    private FileProcessor processor;
+    /** Scan options passed to the watcher. */
+    private ScanOptions options;
+    /** Watcher under test. */
+    private BackupWatcher watcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        processor = mock(FileProcessor.class);
+        options = new ScanOptions();
+        // Commit only when the tests ask for it
+        watcher = BackupWatcher.create(processor, tempDir, options, Duration.ofHours(1), null);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        watcher.close();
+    }
+
+    @Test
+    void testMarkDirtyCoalescesPathsUnderDirtyDirectory() throws IOException {
+        Path dir = Files.createDirectory(tempDir.resolve("dir"));
+        Path file = Files.write(dir.resolve("file.txt"), "data".getBytes(StandardCharsets.UTF_8));
+
+        watcher.markDirty(file);
+        watcher.markDirty(dir);
+        watcher.markDirty(dir.resolve("other.txt"));
+
+        assertEquals(Set.of(dir), watcher.getDirtyPaths());
+    }
+
+    @Test
+    void testStartCommitsFullRescan() throws IOException {
+        when(processor.processDirectory(tempDir, options, null))
+                .thenReturn(CompletableFuture.completedFuture(result("snapshot-1", 0)));
+
+        assertEquals("snapshot-1", watcher.start());
+        assertEquals("snapshot-1", watcher.getLastSnapshotId());
+        assertFalse(watcher.hasPendingChanges());
+        // Nothing changed, so no new snapshot
+        assertEquals("snapshot-1", watcher.commit());
+        verify(processor, never()).processChanges(any(), any(), any(), any());
+    }
+
+    @Test
+    void testCommitProcessesOnlyChangedPaths() throws Exception {
+        when(processor.processDirectory(tempDir, options, null))
+                .thenReturn(CompletableFuture.completedFuture(result("snapshot-1", 0)));
+        when(processor.processChanges(eq(tempDir), any(), eq(options), eq("snapshot-1")))
+                .thenReturn(CompletableFuture.completedFuture(result("snapshot-2", 0)));
+        watcher.start();
+
+        Path file = Files.write(tempDir.resolve("new.txt"), "data".getBytes(StandardCharsets.UTF_8));
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (!watcher.getDirtyPaths().contains(file) && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(Set.of(file), watcher.getDirtyPaths());
+
+        assertEquals("snapshot-2", watcher.commit());
+        verify(processor).processChanges(tempDir, Set.of(file), options, "snapshot-1");
+        assertFalse(watcher.hasPendingChanges());
+    }
+
+    @Test
+    void testFailedCommitKeepsChanges() throws IOException {
+        when(processor.processDirectory(tempDir, options, null))
+                .thenReturn(CompletableFuture.completedFuture(result("snapshot-1", 0)));
+        when(processor.processChanges(any(), any(), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("disk full")));
+        watcher.start();
+        Path file = tempDir.resolve("file.txt");
+        watcher.markDirty(file);
+
+        assertThrows(IOException.class, () -> watcher.commit());
+        assertEquals(Set.of(file), watcher.getDirtyPaths());
+        assertEquals("snapshot-1", watcher.getLastSnapshotId());
+    }
+
+    @Test
+    void testFileErrorsTriggerFullRescan() throws IOException {
+        when(processor.processDirectory(tempDir, options, null))
+                .thenReturn(CompletableFuture.completedFuture(result("snapshot-1", 1)));
+        when(processor.processDirectory(tempDir, options, "snapshot-1"))
+                .thenReturn(CompletableFuture.completedFuture(result("snapshot-2", 0)));
+        watcher.start();
+
+        assertTrue(watcher.hasPendingChanges());
+        assertEquals("snapshot-2", watcher.commit());
+        assertFalse(watcher.hasPendingChanges());
+    }
+
+    @Test
+    void testEventsAreDrainedWhileIntervalCommitRuns() throws Exception {
+        CompletableFuture<FileProcessor.ProcessingResult> slowCommit = new CompletableFuture<>();
+        when(processor.processDirectory(tempDir, options, null))
+                .thenReturn(CompletableFuture.completedFuture(result("snapshot-1", 0)));
+        when(processor.processChanges(eq(tempDir), any(), eq(options), eq("snapshot-1"))).thenReturn(slowCommit);
+        BackupWatcher fast = BackupWatcher.create(processor, tempDir, options, Duration.ofMillis(100), null);
+        try {
+            fast.start();
+            Path first = Files.write(tempDir.resolve("first.txt"), "data".getBytes(StandardCharsets.UTF_8));
+            verify(processor, timeout(30_000)).processChanges(tempDir, Set.of(first), options, "snapshot-1");
+
+            // The interval commit is still running, yet the next change is picked up
+            Path second = Files.write(tempDir.resolve("second.txt"), "data".getBytes(StandardCharsets.UTF_8));
+            long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+            while (!fast.getDirtyPaths().contains(second) && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(Set.of(second), fast.getDirtyPaths());
+            assertFalse(slowCommit.isDone());
+        } finally {
+            slowCommit.complete(result("snapshot-2", 0));
+            fast.close();
+        }
+    }
+
+    private static FileProcessor.ProcessingResult result(String snapshotId, int errorFiles) {
+        return FileProcessor.ProcessingResult.create(null, 1, 0, errorFiles, 0, 0, 0, snapshotId);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for IoExecutors.
+ */
+class IoExecutorsTest {
+
+    @Test
+    void testResolveFallsBackWithoutVirtualThreads() {
+        ExecutionMode expected = IoExecutors.isVirtualThreadSupported() ? ExecutionMode.VIRTUAL : ExecutionMode.PLATFORM;
+
+        assertEquals(expected, IoExecutors.resolve(ExecutionMode.VIRTUAL));
+        assertEquals(ExecutionMode.PLATFORM, IoExecutors.resolve(ExecutionMode.PLATFORM));
+        assertThrows(IllegalArgumentException.class, () -> IoExecutors.resolve(null));
+    }
+
+    @Test
+    void testThreadsAreNamedDaemons() throws Exception {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Thread thread = IoExecutors.threadFactory("io-test", mode).newThread(() -> { });
+
+            assertEquals("io-test-1", thread.getName());
+            assertTrue(thread.isDaemon());
+        }
+        assertThrows(IllegalArgumentException.class, () -> IoExecutors.threadFactory(null, ExecutionMode.PLATFORM));
+    }
+
+    @Test
+    void testExecutorsRunBlockingTasksConcurrently() throws Exception {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            int tasks = 64;
+            ExecutorService executor = IoExecutors.newCachedExecutor("io-test", mode);
+            try {
+                // Every task blocks until all have started, as outstanding reads would
+                CountDownLatch started = new CountDownLatch(tasks);
+                Set<String> threads = ConcurrentHashMap.newKeySet();
+                Future<?>[] futures = new Future<?>[tasks];
+                for (int i = 0; i < tasks; i++) {
+                    futures[i] = executor.submit(() -> {
+                        threads.add(Thread.currentThread().getName());
+                        started.countDown();
+                        started.await();
+                        return null;
+                    });
+                }
+                for (Future<?> future : futures) {
+                    future.get(30, TimeUnit.SECONDS);
+                }
+                assertEquals(tasks, threads.size());
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void testInvalidPoolSize() {
+        assertThrows(IllegalArgumentException.class, () -> IoExecutors.newExecutor("io-test", 0, ExecutionMode.PLATFORM));
+    }
+}
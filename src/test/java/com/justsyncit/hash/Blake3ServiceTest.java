@@ -24,10 +24,18 @@ import org.junit.jupiter.api.io.TempDir;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
@@ -56,8 +64,8 @@ class Blake3ServiceTest {
         byte[] emptyData = new byte[0];
         String hash = blake3Service.hashBuffer(emptyData);
 
-        // SHA-256 hash for empty input (since we're using SHA-256 as fallback)
-        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", hash);
+        // Official BLAKE3 hash for empty input
+        assertEquals("af1349b9f5f9a1a6a0404dea36dcc9499bcb25c9adc112b7cc9a93cae41f3262", hash);
     }
 
     @Test
@@ -73,11 +81,145 @@ class Blake3ServiceTest {
 
     @Test
     void testHashKnownVector() throws HashingException {
-        // SHA-256 test vector: "abc"
+        // BLAKE3 test vector: "abc"
         byte[] data = "abc".getBytes(java.nio.charset.StandardCharsets.UTF_8);
         String hash = blake3Service.hashBuffer(data);
 
-        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", hash);
+        assertEquals("6437b3ac38465133ffb63b75273a8db548c558465d79db03fd359c6cd5bd9d85", hash);
+    }
+
+    @Test
+    void testHashOfficialVectorsAcrossChunkBoundaries() throws HashingException {
+        // Official BLAKE3 vectors: input byte i is (i % 251)
+        assertEquals("2d3adedff11b61f14c886e35afa036736dcd87a74d27b5c1510225d0f592e213",
+                blake3Service.hashBuffer(officialInput(1)));
+        assertEquals("10108970eeda3eb932baac1428c7a2163b0e924c9a9e25b35bba72b28f70bd11",
+                blake3Service.hashBuffer(officialInput(1023)));
+        assertEquals("42214739f095a406f3fc83deb889744ac00df831c10daa55189b5d121c855af7",
+                blake3Service.hashBuffer(officialInput(1024)));
+        assertEquals("d00278ae47eb27b34faecf67b4fe263f82d5412916c1ffd97c8cb7fb814b8444",
+                blake3Service.hashBuffer(officialInput(1025)));
+        assertEquals("5f4d72f40d7a5f82b15ca2b2e44b1de3c2ef86c426c95c1af0b6879522563030",
+                blake3Service.hashBuffer(officialInput(2049)));
+        assertEquals("aae792484c8efe4f19e2ca7d371d8c467ffb10748d8a5a1ae579948f718a2a63",
+                blake3Service.hashBuffer(officialInput(8192)));
+        assertEquals("bc3e3d41a1146b069abffad3c0d44860cf664390afce4d9661f7902e7943e085",
+                blake3Service.hashBuffer(officialInput(102400)));
+    }
+
+    @Test
+    void testIncrementalMatchesOfficialVector() throws HashingException {
+        byte[] data = officialInput(102400);
+        Blake3Service.Blake3IncrementalHasher hasher = blake3Service.createIncrementalHasher();
+        // Odd-sized updates exercise block and chunk buffering
+        for (int offset = 0; offset < data.length; offset += 1000) {
+            hasher.update(data, offset, Math.min(1000, data.length - offset));
+        }
+
+        assertEquals("bc3e3d41a1146b069abffad3c0d44860cf664390afce4d9661f7902e7943e085", hasher.digest());
+    }
+
+    @Test
+    void testHashDirectByteBufferMatchesArray() throws HashingException {
+        byte[] data = officialInput(65536 + 17);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+
+        assertEquals(blake3Service.hashBuffer(data), blake3Service.hashBuffer(direct));
+        assertEquals(direct.limit(), direct.position());
+    }
+
+    @Test
+    void testIncrementalByteBufferUpdate() throws HashingException {
+        byte[] data = officialInput(102400);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+
+        Blake3Service.Blake3IncrementalHasher hasher = blake3Service.createIncrementalHasher();
+        for (int offset = 0; offset < data.length; offset += 1000) {
+            direct.limit(Math.min(offset + 1000, data.length)).position(offset);
+            hasher.update(direct);
+        }
+
+        assertEquals("bc3e3d41a1146b069abffad3c0d44860cf664390afce4d9661f7902e7943e085", hasher.digest());
+    }
+
+    @Test
+    void testInfoReportsBlake3Algorithm() {
+        assertEquals("BLAKE3", blake3Service.getInfo().getHashAlgorithm());
+    }
+
+    @Test
+    void testSimdKernelMatchesScalar() throws HashingException {
+        HashAlgorithm simd = Blake3HashAlgorithm.createWithKernel(vectorKernel());
+        HashAlgorithm scalar = Blake3HashAlgorithm.createScalar();
+        // Lengths around multiples of 16 chunks hit every kernel batch/tail combination
+        for (int length : new int[] {16 * 1024, 16 * 1024 + 1, 33 * 1024 - 1, 1024 * 1024 + 7}) {
+            byte[] data = officialInput(length);
+            simd.update(data);
+            scalar.update(data);
+            assertArrayEquals(scalar.digest(), simd.digest(), "length " + length);
+        }
+    }
+
+    @Test
+    void testHashAllMatchesPerBufferHashes() throws HashingException {
+        Blake3BufferHasher scalar = new Blake3BufferHasher(Blake3HashAlgorithm.createScalar());
+        Blake3BufferHasher simd = new Blake3BufferHasher(Blake3HashAlgorithm.createWithKernel(vectorKernel()));
+        // Enough inputs of each block count to fill SIMD groups, plus multi-chunk and empty inputs
+        int[] lengths = {0, 1, 3, 63, 64, 65, 100, 511, 1023, 1024, 1025, 5000, 40 * 1024 + 3};
+        List<ByteBuffer> inputs = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int copy = 0; copy < 20; copy++) {
+            for (int length : lengths) {
+                byte[] data = officialInput(length + 2);
+                if (length > 0) {
+                    data[2] = (byte) copy;
+                }
+                // Alternate heap and direct buffers, with a non-zero position
+                ByteBuffer buffer = copy % 2 == 0 ? ByteBuffer.allocate(data.length) : ByteBuffer.allocateDirect(data.length);
+                buffer.put(data).flip().position(2);
+                inputs.add(buffer);
+                expected.add(scalar.hashBuffer(Arrays.copyOfRange(data, 2, data.length)));
+            }
+        }
+
+        ChunkId[] ids = simd.hashAll(inputs);
+
+        assertEquals(expected.size(), ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(expected.get(i), ids[i].toHex(), "input " + i);
+            assertEquals(inputs.get(i).limit(), inputs.get(i).position());
+        }
+        assertEquals(0, blake3Service.hashAll(new ArrayList<>()).length);
+        assertThrows(IllegalArgumentException.class, () -> blake3Service.hashAll(null));
+    }
+
+    @Test
+    void testParallelFileHashMatchesSequential() throws IOException, HashingException {
+        Blake3BufferHasher bufferHasher = new Blake3BufferHasher(Blake3HashAlgorithm.createScalar());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            FileHasher parallel = new Blake3FileHasher(null, bufferHasher, Blake3HashAlgorithm.create(), pool, 0);
+            // Uneven tree shapes: a few chunks, whole leaves, and a ragged last leaf
+            for (int length : new int[] {8 * 1024 + 1, 3 * 1024 * 1024, 5 * 1024 * 1024 + 123}) {
+                byte[] data = officialInput(length);
+                Path file = tempDir.resolve("parallel-" + length + ".bin");
+                Files.write(file, data);
+                assertEquals(bufferHasher.hashBuffer(data), parallel.hashFile(file), "length " + length);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testInfoReportsKernelInstructionSet() {
+        Blake3Service.Blake3Info info = blake3Service.getInfo();
+        assertNotNull(info.getSimdInstructionSet());
+        if (!"NONE".equals(info.getSimdInstructionSet())) {
+            assertTrue(info.hasSimdSupport());
+        }
     }
 
     @Test
@@ -224,7 +366,7 @@ class Blake3ServiceTest {
     @Test
     void testNullInputValidation() {
         assertThrows(IllegalArgumentException.class, () -> {
-            blake3Service.hashBuffer(null);
+            blake3Service.hashBuffer((byte[]) null);
         });
 
         assertThrows(IllegalArgumentException.class, () -> {
@@ -344,6 +486,25 @@ class Blake3ServiceTest {
         assertNotEquals(hash1, hash3);
     }
 
+    @Test
+    void testConcurrentHashingIsConsistent() throws Exception {
+        byte[] data = officialInput(102400);
+        String expected = "bc3e3d41a1146b069abffad3c0d44860cf664390afce4d9661f7902e7943e085";
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(() -> blake3Service.hashBuffer(data)));
+            }
+            for (Future<String> future : futures) {
+                assertEquals(expected, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     void testHashLength() throws HashingException {
         byte[] data = "Test data for hash length".getBytes(java.nio.charset.StandardCharsets.UTF_8);
@@ -355,4 +516,19 @@ class Blake3ServiceTest {
         // Should be valid hexadecimal
         assertTrue(hash.matches("[0-9a-fA-F]{64}"));
     }
-}
\ No newline at end of file
+
+    private static Blake3ChunkKernel vectorKernel() {
+        // Built directly so the comparison does not depend on SIMD detection picking a kernel
+        Blake3ChunkKernel kernel = Blake3VectorKernel.create(512, "TEST");
+        assertTrue(kernel.getLanes() > 1, "vector kernel should process several chunks at once");
+        return kernel;
+    }
+
+    private static byte[] officialInput(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.hash;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for ChunkId.
+ */
+class ChunkIdTest {
+
+    /** BLAKE3 hash of "abc". */
+    private static final String ABC_HASH = "6437b3ac38465133ffb63b75273a8db548c558465d79db03fd359c6cd5bd9d85";
+
+    @Test
+    void testHexRoundTrip() {
+        ChunkId id = ChunkId.fromHex(ABC_HASH);
+
+        assertEquals(ABC_HASH, id.toHex());
+        assertEquals(ABC_HASH, id.toString());
+        assertEquals(id, ChunkId.fromHex(ABC_HASH.toUpperCase(java.util.Locale.ROOT)));
+    }
+
+    @Test
+    void testBinaryRoundTripIgnoresBufferByteOrder() {
+        ChunkId id = ChunkId.fromHex(ABC_HASH);
+        ByteBuffer buffer = ByteBuffer.allocate(ChunkId.BYTES + 3).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 1);
+
+        id.writeTo(buffer);
+        buffer.flip().position(1);
+
+        assertEquals(id, ChunkId.read(buffer));
+        assertEquals(ChunkId.BYTES + 1, buffer.position());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+        assertArrayEquals(id.toBytes(), java.util.HexFormat.of().parseHex(ABC_HASH));
+    }
+
+    @Test
+    void testMatchesHashService() throws HashingException, com.justsyncit.ServiceException {
+        Blake3Service service = new com.justsyncit.ServiceFactory().createBlake3Service();
+        byte[] data = "abc".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+
+        assertEquals(ChunkId.fromHex(service.hashBuffer(data)), service.hashChunkId(ByteBuffer.wrap(data)));
+    }
+
+    @Test
+    void testEqualityAndOrdering() {
+        ChunkId low = ChunkId.fromHex("00" + ABC_HASH.substring(2));
+        ChunkId high = ChunkId.fromHex("ff" + ABC_HASH.substring(2));
+
+        assertNotEquals(low, high);
+        assertTrue(low.compareTo(high) < 0);
+        assertTrue(high.compareTo(low) > 0);
+        assertEquals(0, low.compareTo(ChunkId.of(low.toBytes())));
+        assertEquals(low.hashCode(), ChunkId.of(low.toBytes()).hashCode());
+    }
+
+    @Test
+    void testInvalidInput() {
+        assertThrows(IllegalArgumentException.class, () -> ChunkId.fromHex(null));
+        assertThrows(IllegalArgumentException.class, () -> ChunkId.fromHex("abc"));
+        assertThrows(IllegalArgumentException.class, () -> ChunkId.fromHex(ABC_HASH.replace('d', 'g')));
+        assertThrows(IllegalArgumentException.class, () -> ChunkId.of(new byte[16]));
+        assertFalse(ChunkId.isValidHex("hash1"));
+        assertTrue(ChunkId.isValidHex(ABC_HASH));
+        assertTrue(ChunkId.isValidHex(ABC_HASH.toUpperCase(java.util.Locale.ROOT)));
+        // Full-width digits are digits to Character.digit, but not hex characters
+        String fullWidth = '\uFF10' + ABC_HASH.substring(1);
+        assertFalse(ChunkId.isValidHex(fullWidth));
+        assertThrows(IllegalArgumentException.class, () -> ChunkId.fromHex(fullWidth));
+    }
+}
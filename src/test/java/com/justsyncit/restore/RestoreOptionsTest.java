@@ -18,6 +18,7 @@
 
 package com.justsyncit.restore;
 
+import com.justsyncit.storage.VerificationMode;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -67,6 +68,13 @@ public class RestoreOptionsTest {
         assertFalse(options.isVerifyIntegrity());
     }
 
+    @Test
+    void testBuilderWithChunkVerification() {
+        assertEquals(VerificationMode.CHECKSUM, builder.build().getChunkVerification());
+        RestoreOptions options = builder.chunkVerification(VerificationMode.FULL).build();
+        assertEquals(VerificationMode.FULL, options.getChunkVerification());
+    }
+
     @Test
     void testBuilderWithPreserveAttributes() {
         RestoreOptions options = builder.preserveAttributes(false).build();
@@ -26,6 +26,7 @@ import java.nio.ByteBuffer;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -83,6 +84,16 @@ class ByteBufferPoolTest {
         pool.release(buffer3);
     }
 
+    @Test
+    void testAcquireLargerThanPooledBuffers() {
+        // Every pre-allocated buffer is too small
+        ByteBuffer buffer = pool.acquire(4 * 64 * 1024);
+        assertTrue(buffer.capacity() >= 4 * 64 * 1024);
+        pool.release(buffer);
+
+        assertSame(buffer, pool.acquire(4 * 64 * 1024));
+    }
+
     @Test
     void testBufferReuse() {
         ByteBuffer buffer1 = pool.acquire(1024);
@@ -0,0 +1,84 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.scanner;
+
+import com.justsyncit.hash.ChunkId;
+import com.justsyncit.storage.metadata.PackedExtent;
+import com.justsyncit.storage.metadata.ZeroExtent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for ChunkList.
+ */
+class ChunkListTest {
+
+    @Test
+    void testAdjacentZeroExtentsAreMerged() {
+        ChunkList chunks = new ChunkList();
+        chunks.addChunk(id(1));
+        chunks.addZeros(100);
+        chunks.addZeros(50);
+        chunks.addChunk(id(2));
+        chunks.addZeros(10);
+
+        assertEquals(4, chunks.size());
+        assertEquals(2, chunks.getDataChunkCount());
+        assertEquals(160, chunks.getZeroLength());
+        assertNull(chunks.getChunkId(1));
+        assertEquals(List.of(id(1).toHex(), ZeroExtent.marker(150), id(2).toHex(), ZeroExtent.marker(10)),
+                chunks.toEntries());
+        assertEquals(List.of(id(1), id(2)), chunks.getStoredChunks());
+    }
+
+    @Test
+    void testPackedExtentIsStoredInItsPack() {
+        ChunkList chunks = new ChunkList(1);
+        chunks.addPacked(id(3), 40, 12);
+
+        assertEquals(1, chunks.getDataChunkCount());
+        assertEquals(List.of(PackedExtent.marker(id(3).toHex(), 40, 12)), chunks.toEntries());
+        assertEquals(List.of(id(3)), chunks.getStoredChunks());
+    }
+
+    @Test
+    void testMetadataEntriesRoundTrip() {
+        List<String> entries = List.of(id(4).toHex(), ZeroExtent.marker(4096),
+                PackedExtent.marker(id(5).toHex(), 0, 7));
+
+        ChunkList chunks = ChunkList.fromEntries(entries);
+
+        assertEquals(entries, chunks.toEntries());
+        assertEquals(List.of(id(4), id(5)), chunks.getStoredChunks());
+        assertEquals(4096, chunks.getZeroLength());
+        assertThrows(IllegalArgumentException.class, () -> ChunkList.fromEntries(List.of("chunk1")));
+    }
+
+    private static ChunkId id(int n) {
+        byte[] digest = new byte[ChunkId.BYTES];
+        digest[0] = (byte) n;
+        digest[31] = (byte) (n * 7);
+        return ChunkId.of(digest);
+    }
+}
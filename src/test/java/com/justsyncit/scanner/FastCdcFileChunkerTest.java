@@ -0,0 +1,216 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.scanner;
+
+import com.justsyncit.ServiceException;
+import com.justsyncit.ServiceFactory;
+import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.storage.ContentStore;
+import com.justsyncit.storage.ContentStoreFactory;
+import com.justsyncit.storage.StorageIntegrityException;
+import com.justsyncit.storage.metadata.ZeroExtent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for FastCdcFileChunker.
+ */
+class FastCdcFileChunkerTest {
+    /** Average chunk size used by the tests. */
+    private static final int AVG_SIZE = 8 * 1024;
+    /** Minimum chunk size used by the tests. */
+    private static final int MIN_SIZE = 2 * 1024;
+    /** Maximum chunk size used by the tests. */
+    private static final int MAX_SIZE = 32 * 1024;
+
+    /** Temporary directory for test files. */
+    @TempDir
+    Path tempDir;
+    /** The file chunker under test. */
+    private FastCdcFileChunker chunker;
+    /** The BLAKE3 hashing service. */
+    private Blake3Service blake3Service;
+    /** Store receiving the chunks. */
+    private ContentStore contentStore;
+
+    @BeforeEach
+    void setUp() throws ServiceException {
+        blake3Service = new ServiceFactory().createBlake3Service();
+        contentStore = ContentStoreFactory.createMemoryStore(blake3Service);
+        chunker = FastCdcFileChunker.create(blake3Service, ByteBufferPool.create(), AVG_SIZE, contentStore);
+    }
+
+    @AfterEach
+    void tearDown() {
+        chunker.close();
+    }
+
+    @Test
+    void testChunkEmptyFile() throws Exception {
+        Path emptyFile = Files.createFile(tempDir.resolve("empty.bin"));
+
+        FileChunker.ChunkingResult result = chunker.chunkFile(emptyFile, options()).get();
+
+        assertTrue(result.isSuccess());
+        assertEquals(0, result.getChunkCount());
+        assertEquals(blake3Service.hashBuffer(new byte[0]), result.getFileHash());
+    }
+
+    @Test
+    void testSmallFileIsOneChunk() throws Exception {
+        byte[] data = randomBytes(MIN_SIZE / 2, 1);
+        Path file = Files.write(tempDir.resolve("small.bin"), data);
+
+        FileChunker.ChunkingResult result = chunker.chunkFile(file, options()).get();
+
+        assertEquals(1, result.getChunkCount());
+        assertEquals(blake3Service.hashBuffer(data), result.getFileHash());
+        assertEquals(result.getFileHash(), result.getChunkHashes().get(0));
+    }
+
+    @Test
+    void testChunksReassembleWithinSizeBounds() throws Exception {
+        // Several buffer fills, so chunks also straddle refills
+        byte[] data = randomBytes(3 * 1024 * 1024 + 123, 2);
+        Path file = Files.write(tempDir.resolve("large.bin"), data);
+
+        FileChunker.ChunkingResult result = chunker.chunkFile(file, options()).get();
+
+        assertTrue(result.isSuccess());
+        assertEquals(data.length, result.getTotalSize());
+        assertEquals(blake3Service.hashBuffer(data), result.getFileHash());
+        List<String> hashes = result.getChunkHashes();
+        ByteArrayOutputStream reassembled = new ByteArrayOutputStream();
+        for (int i = 0; i < hashes.size(); i++) {
+            byte[] chunk = contentStore.retrieveChunk(hashes.get(i));
+            assertTrue(chunk.length <= MAX_SIZE, "chunk " + i + " exceeds max: " + chunk.length);
+            if (i < hashes.size() - 1) {
+                assertTrue(chunk.length >= MIN_SIZE, "chunk " + i + " below min: " + chunk.length);
+            }
+            reassembled.write(chunk);
+        }
+        assertArrayEquals(data, reassembled.toByteArray());
+        // Average stays near the configured size
+        double average = (double) data.length / hashes.size();
+        assertTrue(average > AVG_SIZE / 2.0 && average < AVG_SIZE * 2.0, "average chunk size " + average);
+    }
+
+    @Test
+    void testInsertionOnlyChangesNearbyChunks() throws Exception {
+        byte[] original = randomBytes(1024 * 1024, 3);
+        byte[] edited = new byte[original.length + 7];
+        int insertAt = 300_000;
+        System.arraycopy(original, 0, edited, 0, insertAt);
+        System.arraycopy("INSERT!".getBytes(java.nio.charset.StandardCharsets.US_ASCII), 0, edited, insertAt, 7);
+        System.arraycopy(original, insertAt, edited, insertAt + 7, original.length - insertAt);
+
+        List<String> before = chunker.chunkFile(Files.write(tempDir.resolve("a.bin"), original), options())
+                .get().getChunkHashes();
+        List<String> after = chunker.chunkFile(Files.write(tempDir.resolve("b.bin"), edited), options())
+                .get().getChunkHashes();
+
+        Set<String> shared = new HashSet<>(before);
+        shared.retainAll(new HashSet<>(after));
+        assertTrue(shared.size() >= before.size() - 3,
+                "only chunks around the edit should change: " + shared.size() + " of " + before.size() + " shared");
+    }
+
+    @Test
+    void testZeroRunBecomesZeroExtent() throws Exception {
+        // A hole between two data regions, longer than a buffer fill
+        int zeros = 3 * 1024 * 1024;
+        byte[] head = randomBytes(40_000, 5);
+        byte[] tail = randomBytes(40_000, 6);
+        Path file = tempDir.resolve("sparse.bin");
+        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file.toFile(), "rw")) {
+            raf.write(head);
+            raf.seek(head.length + zeros);
+            raf.write(tail);
+        }
+
+        FileChunker.ChunkingResult result = chunker.chunkFile(file, options().withDetectSparseFiles(true)).get();
+
+        assertTrue(result.isSuccess());
+        List<String> entries = result.getChunkHashes();
+        assertEquals(1, entries.stream().filter(ZeroExtent::isMarker).count());
+        assertEquals(entries.size() - 1, result.getChunkCount());
+        // The chunk ending the head may take in up to a maximum chunk of zeros
+        assertTrue(result.getSparseSize() > zeros - MAX_SIZE && result.getSparseSize() <= zeros);
+        assertEquals(blake3Service.hashFile(file), result.getFileHash());
+        ByteArrayOutputStream reassembled = new ByteArrayOutputStream();
+        for (String entry : entries) {
+            reassembled.write(ZeroExtent.isMarker(entry)
+                    ? new byte[(int) ZeroExtent.length(entry)] : contentStore.retrieveChunk(entry));
+        }
+        assertArrayEquals(Files.readAllBytes(file), reassembled.toByteArray());
+    }
+
+    @Test
+    void testInvalidSizesFail() throws IOException {
+        Path file = Files.write(tempDir.resolve("file.bin"), randomBytes(1024, 4));
+        FileChunker.ChunkingOptions invalid = options().withMinChunkSize(AVG_SIZE * 2);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> chunker.chunkFile(file, invalid).get());
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    void testChunkStorageDelegatesToContentStore() throws Exception {
+        byte[] data = randomBytes(1024, 5);
+        String hash = chunker.storeChunk(data);
+
+        assertTrue(contentStore.existsChunk(hash));
+        assertTrue(chunker.existsChunk(hash));
+        assertArrayEquals(data, chunker.retrieveChunk(hash));
+
+        chunker.setContentStore(null);
+        assertThrows(IOException.class, () -> chunker.retrieveChunk(hash));
+    }
+
+    private static FileChunker.ChunkingOptions options() {
+        return new FileChunker.ChunkingOptions()
+                .withAlgorithm(ChunkingAlgorithm.FASTCDC)
+                .withChunkSize(AVG_SIZE)
+                .withMinChunkSize(MIN_SIZE)
+                .withMaxChunkSize(MAX_SIZE);
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -21,8 +21,12 @@ package com.justsyncit.scanner;
 import com.justsyncit.ServiceFactory;
 import com.justsyncit.ServiceException;
 import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.hash.HashingException;
 import com.justsyncit.storage.ContentStore;
+import com.justsyncit.storage.StorageIntegrityException;
+import com.justsyncit.storage.metadata.FileMetadata;
 import com.justsyncit.storage.metadata.MetadataService;
+import com.justsyncit.storage.metadata.PackedExtent;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -31,6 +35,8 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
@@ -99,23 +105,14 @@ class FileProcessorTest {
 
         FileProcessor.ProcessingResult result = future.get(120, java.util.concurrent.TimeUnit.SECONDS);
 
-        // Verify results
+        // Verify results; the scan streams its files into the pipeline and only counts them
         ScanResult scanResult = result.getScanResult();
+        assertEquals(3, scanResult.getScannedFileCount());
+        assertEquals(Files.size(file1) + Files.size(file2) + Files.size(file3), scanResult.getTotalSize());
+        assertTrue(scanResult.getScannedFiles().isEmpty(), "Streamed scans should not keep their files");
         // Allow for some files to fail due to integrity issues in test environment
-        assertTrue(scanResult.getScannedFiles().size() >= 1,
-                "Should have processed at least 1 file, but processed " + scanResult.getScannedFiles().size());
-        // Check that we have at least some processed files
         assertTrue(result.getProcessedFiles() >= 1,
                 "Should have processed at least 1 file, but processed " + result.getProcessedFiles());
-        // Verify files were processed if they exist in scan result
-        if (scanResult.getScannedFiles().size() >= 1) {
-            assertTrue(scanResult.getScannedFiles().stream()
-                    .anyMatch(f -> f.getPath().endsWith("file1.txt"))
-                    || scanResult.getScannedFiles().stream()
-                    .anyMatch(f -> f.getPath().endsWith("file2.txt"))
-                    || scanResult.getScannedFiles().stream()
-                    .anyMatch(f -> f.getPath().endsWith("file3.txt")));
-        }
     }
 
     @Test
@@ -126,7 +123,7 @@ class FileProcessorTest {
         CompletableFuture<FileProcessor.ProcessingResult> future = processor.processDirectory(emptyDir, options);
         FileProcessor.ProcessingResult result = future.get();
         ScanResult scanResult = result.getScanResult();
-        assertEquals(0, scanResult.getScannedFiles().size());
+        assertEquals(0, scanResult.getScannedFileCount());
         assertEquals(0, scanResult.getErrors().size());
         assertEquals(0, result.getProcessedFiles());
     }
@@ -155,8 +152,78 @@ class FileProcessorTest {
 
         FileProcessor.ProcessingResult result = future.get();
         ScanResult scanResult = result.getScanResult();
-        assertEquals(1, scanResult.getScannedFiles().size());
-        assertTrue(scanResult.getScannedFiles().get(0).getPath().endsWith("test.txt"));
+        assertEquals(1, scanResult.getScannedFileCount());
+        assertEquals(Set.of(testDir.resolve("test.txt").toString()), snapshotPaths());
+    }
+
+    @Test
+    void testIncrementalProcessingReusesUnchangedFiles()
+            throws IOException, ExecutionException, InterruptedException, TimeoutException {
+        Path testDir = tempDir.resolve("incremental");
+        Files.createDirectories(testDir);
+        Path unchanged = testDir.resolve("unchanged.txt");
+        Files.write(unchanged, "Unchanged content".getBytes(StandardCharsets.UTF_8));
+        Path changed = testDir.resolve("changed.txt");
+        Files.write(changed, "Original content".getBytes(StandardCharsets.UTF_8));
+        ScanOptions options = new ScanOptions();
+        processor.processDirectory(testDir, options).get(120, java.util.concurrent.TimeUnit.SECONDS);
+        String parentId = metadataService.listSnapshots().get(0).getId();
+        com.justsyncit.storage.metadata.FileMetadata parentEntry = metadataService.getFilesInSnapshot(parentId).stream()
+                .filter(f -> f.getPath().equals(unchanged.toString()))
+                .findFirst()
+                .orElseThrow();
+
+        Files.write(changed, "Modified content!".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(changed, java.nio.file.attribute.FileTime.fromMillis(
+                Files.getLastModifiedTime(changed).toMillis() + 2000));
+        FileProcessor.ProcessingResult result = processor.processDirectory(testDir, options, parentId)
+                .get(120, java.util.concurrent.TimeUnit.SECONDS);
+
+        assertEquals(1, result.getUnchangedFiles());
+        assertEquals(2, result.getProcessedFiles());
+        String childId = metadataService.listSnapshots().stream()
+                .map(com.justsyncit.storage.metadata.Snapshot::getId)
+                .filter(id -> !id.equals(parentId))
+                .findFirst()
+                .orElseThrow();
+        com.justsyncit.storage.metadata.FileMetadata childEntry = metadataService.getFilesInSnapshot(childId).stream()
+                .filter(f -> f.getPath().equals(unchanged.toString()))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(parentEntry.getChunkHashes(), childEntry.getChunkHashes());
+        assertEquals(parentEntry.getModifiedTime(), childEntry.getModifiedTime());
+        assertEquals(parentEntry.getFileKey(), childEntry.getFileKey());
+    }
+
+    @Test
+    void testProcessChangesOnlyReadsChangedPaths()
+            throws IOException, ExecutionException, InterruptedException, TimeoutException {
+        Path testDir = tempDir.resolve("changes");
+        Path subDir = Files.createDirectories(testDir.resolve("sub"));
+        Path unchanged = Files.write(testDir.resolve("unchanged.txt"), "Unchanged".getBytes(StandardCharsets.UTF_8));
+        Path changed = Files.write(testDir.resolve("changed.txt"), "Original".getBytes(StandardCharsets.UTF_8));
+        Path deleted = Files.write(subDir.resolve("deleted.txt"), "Deleted".getBytes(StandardCharsets.UTF_8));
+        ScanOptions options = new ScanOptions();
+        String parentId = processor.processDirectory(testDir, options)
+                .get(120, java.util.concurrent.TimeUnit.SECONDS).getSnapshotId();
+
+        Files.write(changed, "Modified content".getBytes(StandardCharsets.UTF_8));
+        Files.delete(deleted);
+        Path added = Files.write(subDir.resolve("added.txt"), "Added".getBytes(StandardCharsets.UTF_8));
+        FileProcessor.ProcessingResult result = processor.processChanges(
+                testDir, java.util.List.of(changed, subDir), options, parentId)
+                .get(120, java.util.concurrent.TimeUnit.SECONDS);
+
+        // Every file is looked up by path; only the changed and added files are read
+        assertEquals(1, result.getUnchangedFiles());
+        assertEquals(3, result.getProcessedFiles());
+        assertEquals(3, result.getScanResult().getScannedFileCount());
+        java.util.Set<String> paths = new java.util.HashSet<>();
+        for (com.justsyncit.storage.metadata.FileMetadata file
+                : metadataService.getFilesInSnapshot(result.getSnapshotId())) {
+            paths.add(file.getPath());
+        }
+        assertEquals(java.util.Set.of(unchanged.toString(), changed.toString(), added.toString()), paths);
     }
 
     @Test
@@ -181,10 +248,9 @@ class FileProcessorTest {
 
         FileProcessor.ProcessingResult result = future.get();
         ScanResult scanResult = result.getScanResult();
-        assertEquals(3, scanResult.getScannedFiles().size()); // root.txt, level1.txt, level2.txt
+        assertEquals(3, scanResult.getScannedFileCount()); // root.txt, level1.txt, level2.txt
         // level3.txt should not be included due to depth limit
-        assertFalse(scanResult.getScannedFiles().stream()
-                .anyMatch(f -> f.getPath().endsWith("level3.txt")));
+        assertFalse(snapshotPaths().contains(level3.resolve("level3.txt").toString()));
     }
 
     @Test
@@ -200,10 +266,8 @@ class FileProcessorTest {
 
         FileProcessor.ProcessingResult result = future.get();
         ScanResult scanResult = result.getScanResult();
-        assertEquals(1, scanResult.getScannedFiles().size());
-
-        ScanResult.ScannedFile scannedFile = scanResult.getScannedFiles().get(0);
-        assertEquals(data.length, scannedFile.getSize());
+        assertEquals(1, scanResult.getScannedFileCount());
+        assertEquals(data.length, scanResult.getTotalSize());
     }
 
     @Test
@@ -221,8 +285,8 @@ class FileProcessorTest {
         ScanResult scanResult = result.getScanResult();
 
         // On Unix-like systems, expect exactly 1 file (excluding hidden)
-        assertEquals(1, scanResult.getScannedFiles().size());
-        assertTrue(scanResult.getScannedFiles().get(0).getPath().endsWith("visible.txt"));
+        assertEquals(1, scanResult.getScannedFileCount());
+        assertEquals(Set.of(testDir.resolve("visible.txt").toString()), snapshotPaths());
     }
 
     @Test
@@ -240,15 +304,99 @@ class FileProcessorTest {
 
         FileProcessor.ProcessingResult result = future.get(120, java.util.concurrent.TimeUnit.SECONDS);
         ScanResult scanResult = result.getScanResult();
-        assertEquals(5, scanResult.getScannedFiles().size());
+        assertEquals(5, scanResult.getScannedFileCount());
         // Allow for some files to fail due to timing issues in test environment
         assertTrue(result.getProcessedFiles() >= 1,
                 "Should have processed at least 1 file, but processed " + result.getProcessedFiles());
         // Verify that processed files count doesn't exceed scanned files
-        assertTrue(result.getProcessedFiles() <= scanResult.getScannedFiles().size(),
+        assertTrue(result.getProcessedFiles() <= scanResult.getScannedFileCount(),
                 "Processed files should not exceed scanned files");
     }
 
+    @Test
+    void testManySmallFilesAreProcessedWithoutWaiting()
+            throws IOException, ExecutionException, InterruptedException, TimeoutException {
+        Path testDir = tempDir.resolve("many");
+        Files.createDirectories(testDir);
+        int fileCount = 200;
+        for (int i = 0; i < fileCount; i++) {
+            Files.write(testDir.resolve("file" + i + ".txt"), ("small file " + i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Nothing sleeps or polls for visibility, so this finishes well within the timeout
+        FileProcessor.ProcessingResult result = processor.processDirectory(testDir, new ScanOptions())
+                .get(60, java.util.concurrent.TimeUnit.SECONDS);
+
+        assertEquals(fileCount, result.getProcessedFiles());
+        assertEquals(0, result.getErrorFiles());
+        assertEquals(fileCount, metadataService.getFilesInSnapshot(result.getSnapshotId()).size());
+    }
+
+    @Test
+    void testSmallFilesArePackedIntoSharedChunks()
+            throws IOException, ExecutionException, InterruptedException, TimeoutException,
+            HashingException, StorageIntegrityException {
+        Path testDir = tempDir.resolve("packed");
+        Files.createDirectories(testDir);
+        int fileCount = 50;
+        for (int i = 0; i < fileCount; i++) {
+            Files.write(testDir.resolve("file" + i + ".txt"), ("small file " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        processor.setSmallFilePacking(4096, blake3Service);
+
+        FileProcessor.ProcessingResult result = processor.processDirectory(testDir, new ScanOptions())
+                .get(60, java.util.concurrent.TimeUnit.SECONDS);
+
+        assertEquals(fileCount, result.getProcessedFiles());
+        assertEquals(0, result.getErrorFiles());
+        java.util.Set<String> packs = new java.util.HashSet<>();
+        for (FileMetadata file : metadataService.getFilesInSnapshot(result.getSnapshotId())) {
+            assertEquals(1, file.getChunkHashes().size());
+            String marker = file.getChunkHashes().get(0);
+            assertTrue(PackedExtent.isMarker(marker));
+            assertEquals(file.getSize(), PackedExtent.length(marker));
+            byte[] data = PackedExtent.slice(marker, contentStore.retrieveChunk(PackedExtent.chunkHash(marker)));
+            assertEquals(blake3Service.hashBuffer(data), file.getFileHash());
+            packs.add(PackedExtent.chunkHash(marker));
+        }
+        // 50 files of a dozen bytes fit into a single 64 KiB pack
+        assertEquals(1, packs.size());
+    }
+
+    @Test
+    void testSmallFilePackingRequiresHashService() {
+        assertThrows(IllegalArgumentException.class, () -> processor.setSmallFilePacking(4096, null));
+        assertThrows(IllegalArgumentException.class, () -> processor.setSmallFilePacking(-1, blake3Service));
+    }
+
+    @Test
+    void testStagedPipelineWithSmallQueues()
+            throws IOException, ExecutionException, InterruptedException, TimeoutException {
+        Path testDir = tempDir.resolve("pipeline");
+        Files.createDirectories(testDir);
+        for (int i = 0; i < 6; i++) {
+            Files.write(testDir.resolve("file" + i + ".txt"), ("content " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        processor.setStageWorkers(2, 1);
+        processor.setQueueCapacity(1);
+
+        FileProcessor.ProcessingResult result = processor.processDirectory(testDir, new ScanOptions())
+                .get(120, java.util.concurrent.TimeUnit.SECONDS);
+
+        assertEquals(6, result.getProcessedFiles());
+        java.util.List<PipelineStageStats> stages = processor.getStageStats();
+        assertEquals(2, stages.size());
+        assertEquals("chunk", stages.get(0).getName());
+        assertEquals(2, stages.get(0).getWorkers());
+        assertEquals(6, stages.get(0).getCompleted());
+        assertEquals("metadata", stages.get(1).getName());
+        assertEquals(1, stages.get(1).getWorkers());
+        assertEquals(6, stages.get(1).getCompleted());
+        assertEquals(0, stages.get(1).getQueueDepth());
+        assertThrows(IllegalArgumentException.class, () -> processor.setStageWorkers(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> processor.setQueueCapacity(0));
+    }
+
     @Test
     void testStop() throws IOException, ExecutionException, InterruptedException {
         Path testDir = tempDir.resolve("close");
@@ -291,4 +439,16 @@ class FileProcessorTest {
         // Should not be running after completion
         assertFalse(processor.isRunning());
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the paths recorded in the only snapshot; scans stream their files instead of listing them.
+     */
+    private Set<String> snapshotPaths() throws IOException {
+        Set<String> paths = new HashSet<>();
+        String snapshotId = metadataService.listSnapshots().get(0).getId();
+        for (FileMetadata file : metadataService.getFilesInSnapshot(snapshotId)) {
+            paths.add(file.getPath());
+        }
+        return paths;
+    }
+}
@@ -20,7 +20,11 @@ package com.justsyncit.scanner;
 
 import com.justsyncit.ServiceFactory;
 import com.justsyncit.ServiceException;
+import com.justsyncit.concurrent.ExecutionMode;
 import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.storage.ContentStore;
+import com.justsyncit.storage.ContentStoreFactory;
+import com.justsyncit.storage.metadata.ZeroExtent;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -28,8 +32,11 @@ import org.junit.jupiter.api.io.TempDir;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -156,6 +163,190 @@ class FixedSizeFileChunkerTest {
         assertEquals(1, result.getChunkHashes().size());
     }
 
+    @Test
+    void testFileAndChunkHashesMatchContentInBothModes() throws Exception {
+        Path file = tempDir.resolve("single-pass.bin");
+        byte[] data = new byte[3 * 1024 * 1024 + 4321]; // Large enough for async I/O, ragged last chunk
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + (i >>> 11));
+        }
+        Files.write(file, data);
+        int chunkSize = 64 * 1024;
+
+        for (boolean async : new boolean[] {true, false}) {
+            FileChunker.ChunkingOptions options = new FileChunker.ChunkingOptions()
+                    .withChunkSize(chunkSize).withUseAsyncIO(async);
+            FileChunker.ChunkingResult result = chunker.chunkFile(file, options).get();
+
+            assertTrue(result.isSuccess());
+            assertEquals(blake3Service.hashFile(file), result.getFileHash());
+            // Chunk hashes must come back in file order even when chunks complete out of order
+            for (int i = 0; i < result.getChunkCount(); i++) {
+                int from = i * chunkSize;
+                byte[] chunk = java.util.Arrays.copyOfRange(data, from, Math.min(data.length, from + chunkSize));
+                assertEquals(blake3Service.hashBuffer(chunk), result.getChunkHashes().get(i), "chunk " + i);
+            }
+        }
+    }
+
+    @Test
+    void testMoreConcurrentLargeFilesThanPoolThreads() throws Exception {
+        // Each file waits for its chunk reads; with the reads queued behind waiting files this used to starve
+        int fileCount = 12;
+        List<Path> files = new ArrayList<>();
+        for (int f = 0; f < fileCount; f++) {
+            byte[] data = new byte[2 * 1024 * 1024];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) (i * 31 + f);
+            }
+            Path file = tempDir.resolve("concurrent-" + f + ".bin");
+            Files.write(file, data);
+            files.add(file);
+        }
+        FileChunker.ChunkingOptions options = new FileChunker.ChunkingOptions().withUseAsyncIO(true);
+
+        List<CompletableFuture<FileChunker.ChunkingResult>> futures = new ArrayList<>();
+        for (Path file : files) {
+            futures.add(chunker.chunkFile(file, options));
+        }
+
+        for (int f = 0; f < fileCount; f++) {
+            FileChunker.ChunkingResult result = futures.get(f).get(60, TimeUnit.SECONDS);
+            assertTrue(result.isSuccess(), "file " + f);
+            assertEquals(blake3Service.hashFile(files.get(f)), result.getFileHash());
+        }
+    }
+
+    @Test
+    void testVirtualExecutionModeMatchesPlatformMode() throws Exception {
+        Path file = tempDir.resolve("virtual.bin");
+        byte[] data = new byte[3 * 1024 * 1024 + 4321];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + (i >>> 11));
+        }
+        Files.write(file, data);
+        FixedSizeFileChunker virtualChunker = FixedSizeFileChunker.create(blake3Service, ByteBufferPool.create(),
+                64 * 1024, null, ExecutionMode.VIRTUAL);
+        try {
+            for (boolean async : new boolean[] {true, false}) {
+                FileChunker.ChunkingOptions options = new FileChunker.ChunkingOptions()
+                        .withChunkSize(64 * 1024).withUseAsyncIO(async);
+                FileChunker.ChunkingResult platform = chunker.chunkFile(file, options).get();
+                FileChunker.ChunkingResult virtual = virtualChunker.chunkFile(file, options).get();
+
+                assertTrue(virtual.isSuccess());
+                assertEquals(blake3Service.hashFile(file), virtual.getFileHash());
+                assertEquals(platform.getChunkHashes(), virtual.getChunkHashes());
+            }
+        } finally {
+            virtualChunker.close();
+        }
+    }
+
+    @Test
+    void testMappedChunkingMatchesReadChunking() throws Exception {
+        Path file = tempDir.resolve("mapped.bin");
+        byte[] data = new byte[3 * 1024 * 1024 + 4321];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + (i >>> 11));
+        }
+        Files.write(file, data);
+        FileChunker.ChunkingOptions options = new FileChunker.ChunkingOptions()
+                .withChunkSize(64 * 1024).withUseAsyncIO(false);
+
+        FileChunker.ChunkingResult read = chunker.chunkFile(file, options).get();
+        FileChunker.ChunkingResult mapped = chunker.chunkFile(file,
+                new FileChunker.ChunkingOptions(options).withMemoryMappingThreshold(1024 * 1024)).get();
+
+        assertTrue(mapped.isSuccess());
+        assertEquals(blake3Service.hashFile(file), mapped.getFileHash());
+        assertEquals(read.getChunkHashes(), mapped.getChunkHashes());
+        assertEquals(read.getChunkCount(), mapped.getChunkCount());
+        assertEquals(data.length, mapped.getTotalSize());
+    }
+
+    @Test
+    void testFileHashDoesNotDependOnZeroDetection() throws Exception {
+        int chunkSize = 64 * 1024;
+        byte[] data = new byte[4 * chunkSize];
+        for (int i = 0; i < chunkSize; i++) {
+            data[i] = (byte) (i * 13 + 1);
+        }
+        Path file = Files.write(tempDir.resolve("half-zero.bin"), data);
+        Path zeros = Files.write(tempDir.resolve("all-zero.bin"), new byte[1000]);
+        FileChunker.ChunkingOptions options = new FileChunker.ChunkingOptions().withChunkSize(chunkSize);
+
+        for (Path path : List.of(file, zeros)) {
+            FileChunker.ChunkingResult plain = chunker.chunkFile(path, options).get();
+            FileChunker.ChunkingResult sparse = chunker.chunkFile(path,
+                    new FileChunker.ChunkingOptions(options).withDetectSparseFiles(true)).get();
+
+            assertTrue(sparse.getSparseSize() > 0);
+            assertEquals(blake3Service.hashFile(path), plain.getFileHash());
+            assertEquals(plain.getFileHash(), sparse.getFileHash());
+        }
+    }
+
+    @Test
+    void testZeroChunksBecomeZeroExtentsInAllModes() throws Exception {
+        int chunkSize = 64 * 1024;
+        // One data chunk, a run of zero chunks, one data chunk and a ragged zero tail
+        byte[] data = new byte[19 * chunkSize + 1000];
+        for (int i = 0; i < chunkSize; i++) {
+            data[i] = (byte) (i * 31 + 1);
+            data[18 * chunkSize + i] = (byte) (i * 17 + 1);
+        }
+        Path file = Files.write(tempDir.resolve("zeros.bin"), data);
+        byte[] first = java.util.Arrays.copyOfRange(data, 0, chunkSize);
+        byte[] last = java.util.Arrays.copyOfRange(data, 18 * chunkSize, 19 * chunkSize);
+        List<String> expected = List.of(blake3Service.hashBuffer(first), ZeroExtent.marker(17L * chunkSize),
+                blake3Service.hashBuffer(last), ZeroExtent.marker(1000));
+
+        // Async reads, sync reads and memory mapping
+        for (int mode = 0; mode < 3; mode++) {
+            ContentStore store = ContentStoreFactory.createMemoryStore(blake3Service);
+            FixedSizeFileChunker storingChunker = FixedSizeFileChunker.create(
+                    blake3Service, ByteBufferPool.create(), chunkSize, store);
+            FileChunker.ChunkingOptions options = new FileChunker.ChunkingOptions()
+                    .withChunkSize(chunkSize).withUseAsyncIO(mode == 0).withDetectSparseFiles(true)
+                    .withMemoryMappingThreshold(mode == 2 ? 1 : 0);
+
+            FileChunker.ChunkingResult result = storingChunker.chunkFile(file, options).get();
+            storingChunker.close();
+
+            assertTrue(result.isSuccess());
+            assertEquals(expected, result.getChunkHashes());
+            assertEquals(2, result.getChunkCount());
+            assertEquals(data.length, result.getTotalSize());
+            assertEquals(17L * chunkSize + 1000, result.getSparseSize());
+            assertEquals(blake3Service.hashFile(file), result.getFileHash());
+            assertEquals(2, store.getStats().getTotalChunks());
+        }
+    }
+
+    @Test
+    void testStoreFailureFailsChunkingInAllModes() throws Exception {
+        int chunkSize = 64 * 1024;
+        byte[] data = new byte[3 * chunkSize];
+        new java.util.Random(7).nextBytes(data);
+        Path file = Files.write(tempDir.resolve("unstored.bin"), data);
+
+        for (int mode = 0; mode < 3; mode++) {
+            ContentStore store = ContentStoreFactory.createMemoryStore(blake3Service);
+            store.close();
+            FixedSizeFileChunker storingChunker = FixedSizeFileChunker.create(
+                    blake3Service, ByteBufferPool.create(), chunkSize, store);
+            FileChunker.ChunkingOptions options = new FileChunker.ChunkingOptions()
+                    .withChunkSize(chunkSize).withUseAsyncIO(mode == 0)
+                    .withMemoryMappingThreshold(mode == 2 ? 1 : 0);
+
+            FileChunker.ChunkingResult result = storingChunker.chunkFile(file, options).get();
+            storingChunker.close();
+
+            assertFalse(result.isSuccess(), "mode " + mode);
+        }
+    }
+
     @Test
     void testChunkNonExistentFile() throws IOException, InterruptedException, ExecutionException {
         Path nonExistentFile = tempDir.resolve("nonexistent.txt");
@@ -271,6 +462,8 @@ class FixedSizeFileChunkerTest {
     void testChunkingOptionsValidation() {
         assertThrows(IllegalArgumentException.class,
                 () -> new FileChunker.ChunkingOptions().withChunkSize(0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new FileChunker.ChunkingOptions().withMemoryMappingThreshold(-1));
         assertThrows(IllegalArgumentException.class,
                 () -> new FileChunker.ChunkingOptions().withChunkSize(-1));
 
@@ -213,6 +213,45 @@ class NioFilesystemScannerTest {
         assertTrue(visitor.visitedFiles.contains(tempDir.resolve("file2.txt")));
     }
 
+    @Test
+    void testStreamingScan()
+            throws IOException, InterruptedException, java.util.concurrent.ExecutionException {
+        Files.write(tempDir.resolve("file1.txt"), new byte[10]);
+        Files.createDirectories(tempDir.resolve("subdir"));
+        Files.write(tempDir.resolve("subdir/file2.txt"), new byte[20]);
+        java.util.List<Path> received = new java.util.ArrayList<>();
+
+        ScanResult result = scanner.scanDirectory(tempDir, new ScanOptions(),
+                new java.util.concurrent.Flow.Subscriber<ScanResult.ScannedFile>() {
+                    private java.util.concurrent.Flow.Subscription subscription;
+
+                    @Override
+                    public void onSubscribe(java.util.concurrent.Flow.Subscription subscription) {
+                        this.subscription = subscription;
+                        subscription.request(1);
+                    }
+
+                    @Override
+                    public void onNext(ScanResult.ScannedFile item) {
+                        received.add(item.getPath());
+                        subscription.request(1);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                    }
+
+                    @Override
+                    public void onComplete() {
+                    }
+                }).get();
+
+        assertEquals(2, received.size());
+        assertTrue(result.getScannedFiles().isEmpty());
+        assertEquals(2, result.getScannedFileCount());
+        assertEquals(30, result.getTotalSize());
+    }
+
     /**
      * Test implementation of ProgressListener.
      */
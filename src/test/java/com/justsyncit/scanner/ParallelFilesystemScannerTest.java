@@ -0,0 +1,266 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.scanner;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for ParallelFilesystemScanner.
+ */
+class ParallelFilesystemScannerTest {
+    /** Temporary directory for test files. */
+    @TempDir
+    Path tempDir;
+
+    /** Filesystem scanner instance for testing. */
+    private ParallelFilesystemScanner scanner;
+
+    @BeforeEach
+    void setUp() {
+        scanner = new ParallelFilesystemScanner();
+    }
+
+    @Test
+    void testFindsSameFilesAsNioScanner() throws IOException, InterruptedException, ExecutionException {
+        createTree(tempDir, 3, 4, 5);
+        Files.createFile(tempDir.resolve(".hidden.txt"));
+        Files.createDirectories(tempDir.resolve(".hiddendir"));
+        Files.createFile(tempDir.resolve(".hiddendir/file.txt"));
+
+        for (ScanOptions options : new ScanOptions[] {
+            new ScanOptions().withParallelism(4),
+            new ScanOptions().withParallelism(1).withMaxDepth(2),
+            new ScanOptions().withIncludeHiddenFiles(true),
+            new ScanOptions().withIncludePattern(FileSystems.getDefault().getPathMatcher("glob:*1.txt"))}) {
+            ScanResult expected = new NioFilesystemScanner().scanDirectory(tempDir, options).get();
+            ScanResult actual = scanner.scanDirectory(tempDir, options).get();
+
+            assertEquals(paths(expected), paths(actual), options.toString());
+            assertTrue(actual.getErrors().isEmpty());
+        }
+    }
+
+    @Test
+    void testProgressListenerSeesEveryFile() throws IOException, InterruptedException, ExecutionException {
+        createTree(tempDir, 2, 5, 10);
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        scanner.setProgressListener(new FilesystemScanner.ProgressListener() {
+            @Override
+            public void onScanStarted(Path directory) {
+            }
+
+            @Override
+            public void onFileProcessed(Path file, long filesProcessed, long totalFiles) {
+                processed.incrementAndGet();
+            }
+
+            @Override
+            public void onScanCompleted(ScanResult result) {
+                completed.incrementAndGet();
+            }
+
+            @Override
+            public void onScanError(Path path, Exception error) {
+            }
+        });
+
+        ScanResult result = scanner.scanDirectory(tempDir, new ScanOptions().withParallelism(8)).get();
+
+        assertEquals(result.getScannedFileCount(), processed.get());
+        assertEquals(1, completed.get());
+        assertEquals(8, result.getMetadata().get("parallelism"));
+    }
+
+    @Test
+    void testVisitorCanTerminateScan() throws IOException, InterruptedException, ExecutionException {
+        for (int i = 0; i < 10; i++) {
+            Files.createFile(tempDir.resolve("file" + i + ".txt"));
+        }
+        AtomicInteger visited = new AtomicInteger();
+        scanner.setFileVisitor(new FileVisitor() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                visited.incrementAndGet();
+                return FileVisitResult.TERMINATE;
+            }
+
+            @Override
+            public FileVisitResult visitDirectory(Path dir, BasicFileAttributes attrs) {
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        ScanResult result = scanner.scanDirectory(tempDir, new ScanOptions()).get();
+
+        assertEquals(1, visited.get());
+        assertEquals(1, result.getScannedFileCount());
+    }
+
+    @Test
+    void testStreamingScanHonoursDemand() throws IOException, InterruptedException, ExecutionException {
+        createTree(tempDir, 2, 3, 4);
+        Set<Path> expected = paths(new NioFilesystemScanner().scanDirectory(tempDir, new ScanOptions()).get());
+        Set<Path> received = ConcurrentHashMap.newKeySet();
+        AtomicInteger outstanding = new AtomicInteger();
+        AtomicInteger overruns = new AtomicInteger();
+        AtomicBoolean completed = new AtomicBoolean();
+
+        ScanResult result = scanner.scanDirectory(tempDir, new ScanOptions().withParallelism(4),
+                new Flow.Subscriber<ScanResult.ScannedFile>() {
+                    private Flow.Subscription subscription;
+
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        this.subscription = subscription;
+                        outstanding.set(2);
+                        subscription.request(2);
+                    }
+
+                    @Override
+                    public void onNext(ScanResult.ScannedFile item) {
+                        if (outstanding.decrementAndGet() < 0) {
+                            overruns.incrementAndGet();
+                        }
+                        received.add(item.getPath());
+                        outstanding.incrementAndGet();
+                        subscription.request(1);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        completed.set(true);
+                    }
+                }).get();
+
+        assertEquals(expected, received);
+        assertEquals(0, overruns.get());
+        assertTrue(completed.get());
+        assertTrue(result.getScannedFiles().isEmpty());
+        assertEquals(expected.size(), result.getScannedFileCount());
+        assertEquals(Files.walk(tempDir).filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum(),
+                result.getTotalSize());
+    }
+
+    @Test
+    void testStreamingScanStopsWhenCancelled() throws IOException, InterruptedException, ExecutionException {
+        createTree(tempDir, 2, 3, 4);
+        AtomicInteger received = new AtomicInteger();
+
+        ScanResult result = scanner.scanDirectory(tempDir, new ScanOptions(),
+                new Flow.Subscriber<ScanResult.ScannedFile>() {
+                    private Flow.Subscription subscription;
+
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        this.subscription = subscription;
+                        subscription.request(3);
+                    }
+
+                    @Override
+                    public void onNext(ScanResult.ScannedFile item) {
+                        if (received.incrementAndGet() == 3) {
+                            subscription.cancel();
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                    }
+
+                    @Override
+                    public void onComplete() {
+                    }
+                }).get();
+
+        assertEquals(3, received.get());
+        assertEquals(3, result.getScannedFileCount());
+    }
+
+    @Test
+    void testFileStoreParallelism() {
+        ScanOptions options = new ScanOptions()
+                .withParallelism(6)
+                .withFileStoreParallelism("NFS", 2);
+
+        assertEquals(6, options.getParallelism());
+        assertEquals(2, options.getParallelism("nfs"));
+        assertEquals(6, options.getParallelism("ext4"));
+        assertEquals(6, options.getParallelism(null));
+        assertEquals(2, new ScanOptions(options).getParallelism("nfs"));
+        assertThrows(IllegalArgumentException.class, () -> options.withParallelism(0));
+        assertThrows(IllegalArgumentException.class, () -> options.withFileStoreParallelism("nfs", 0));
+    }
+
+    @Test
+    void testScanInvalidDirectory() {
+        assertThrows(ExecutionException.class,
+                () -> scanner.scanDirectory(tempDir.resolve("nonexistent"), new ScanOptions()).get());
+    }
+
+    /**
+     * Creates a directory tree with the given depth, fan-out and files per directory.
+     */
+    private static void createTree(Path dir, int depth, int dirs, int files) throws IOException {
+        for (int i = 0; i < files; i++) {
+            Files.write(dir.resolve("file" + i + ".txt"), new byte[i]);
+        }
+        if (depth > 0) {
+            for (int i = 0; i < dirs; i++) {
+                Path sub = Files.createDirectory(dir.resolve("dir" + i));
+                createTree(sub, depth - 1, dirs, files);
+            }
+        }
+    }
+
+    /**
+     * Gets the set of scanned paths, ignoring order.
+     */
+    private static Set<Path> paths(ScanResult result) {
+        return result.getScannedFiles().stream().map(ScanResult.ScannedFile::getPath).collect(Collectors.toSet());
+    }
+}
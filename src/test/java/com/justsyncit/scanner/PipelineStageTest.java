@@ -0,0 +1,157 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.justsyncit.scanner;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for PipelineStage.
+ */
+@Timeout(30)
+class PipelineStageTest {
+
+    @Test
+    void testProcessesEveryItemAndCountsThem() throws InterruptedException {
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 3, 2, item -> {
+            seen.add(item);
+            return 10;
+        }, Executors.defaultThreadFactory());
+        stage.start();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(stage.put(i));
+        }
+        stage.finish();
+        stage.awaitTermination();
+
+        PipelineStageStats stats = stage.getStats();
+        assertEquals(100, seen.size());
+        assertEquals("test", stats.getName());
+        assertEquals(3, stats.getWorkers());
+        assertEquals(2, stats.getQueueCapacity());
+        assertEquals(100, stats.getSubmitted());
+        assertEquals(100, stats.getCompleted());
+        assertEquals(0, stats.getFailed());
+        assertEquals(1000, stats.getBytes());
+        assertEquals(0, stats.getQueueDepth());
+        assertTrue(stats.getPeakQueueDepth() <= 2);
+        assertTrue(stats.getItemsPerSecond() > 0);
+    }
+
+    @Test
+    void testPutBlocksWhileQueueIsFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        PipelineStage<Integer> stage = new PipelineStage<>("slow", 1, 2, item -> {
+            started.countDown();
+            release.await();
+            return 0;
+        }, Executors.defaultThreadFactory());
+        stage.start();
+        // One item in the worker, two waiting
+        stage.put(0);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        stage.put(1);
+        stage.put(2);
+
+        AtomicBoolean putReturned = new AtomicBoolean(false);
+        Thread producer = new Thread(() -> {
+            try {
+                stage.put(3);
+                putReturned.set(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertFalse(putReturned.get());
+        assertEquals(2, stage.getStats().getQueueDepth());
+
+        release.countDown();
+        producer.join();
+        assertTrue(putReturned.get());
+        stage.finish();
+        stage.awaitTermination();
+        assertEquals(4, stage.getStats().getCompleted());
+        assertTrue(stage.getStats().getBlockedNanos() > 0);
+    }
+
+    @Test
+    void testFailuresAreCountedAndDoNotStopTheStage() throws InterruptedException {
+        PipelineStage<Integer> stage = new PipelineStage<>("failing", 2, 4, item -> {
+            if (item % 2 == 0) {
+                throw new IllegalStateException("Even item " + item);
+            }
+            return 1;
+        }, Executors.defaultThreadFactory());
+        stage.start();
+        for (int i = 0; i < 10; i++) {
+            stage.put(i);
+        }
+        stage.finish();
+        stage.awaitTermination();
+
+        assertEquals(5, stage.getStats().getCompleted());
+        assertEquals(5, stage.getStats().getFailed());
+    }
+
+    @Test
+    void testCancelStopsWorkersAndDropsItems() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        PipelineStage<Integer> stage = new PipelineStage<>("cancelled", 1, 4, item -> {
+            started.countDown();
+            Thread.sleep(Long.MAX_VALUE);
+            return 0;
+        }, Executors.defaultThreadFactory());
+        stage.start();
+        stage.put(0);
+        stage.put(1);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        stage.cancel();
+        stage.awaitTermination();
+
+        assertFalse(stage.put(2));
+        assertEquals(0, stage.getStats().getQueueDepth());
+        assertEquals(0, stage.getStats().getCompleted());
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new PipelineStage<Integer>("bad", 0, 1, item -> 0, Executors.defaultThreadFactory()));
+        assertThrows(IllegalArgumentException.class,
+                () -> new PipelineStage<Integer>("bad", 1, 0, item -> 0, Executors.defaultThreadFactory()));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.scanner;
+
+import com.justsyncit.ServiceException;
+import com.justsyncit.ServiceFactory;
+import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.storage.ContentStore;
+import com.justsyncit.storage.ContentStoreFactory;
+import com.justsyncit.storage.metadata.PackedExtent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for SmallFilePacker.
+ */
+class SmallFilePackerTest {
+
+    /** The BLAKE3 hashing service. */
+    private Blake3Service blake3Service;
+    /** Content store the packs are stored in. */
+    private ContentStore contentStore;
+
+    @BeforeEach
+    void setUp() throws ServiceException {
+        blake3Service = new ServiceFactory().createBlake3Service();
+        contentStore = ContentStoreFactory.createMemoryStore(blake3Service);
+    }
+
+    @Test
+    void testFilesAreRecordedAsExtentsOfOnePack() throws Exception {
+        SmallFilePacker<Integer> packer = new SmallFilePacker<>(blake3Service, contentStore, 64);
+        List<byte[]> contents = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            contents.add(("file number " + i).getBytes(StandardCharsets.UTF_8));
+            assertNull(packer.add(i, Path.of("f" + i), contents.get(i)));
+        }
+
+        List<SmallFilePacker.Packed<Integer>> packed = packer.seal(packer.drain());
+
+        assertEquals(4, packed.size());
+        assertEquals(1, contentStore.getChunkCount());
+        for (int i = 0; i < packed.size(); i++) {
+            FileChunker.ChunkingResult result = packed.get(i).getResult();
+            String marker = result.getChunkHashes().get(0);
+            byte[] pack = contentStore.retrieveChunk(PackedExtent.chunkHash(marker));
+            assertEquals(Integer.valueOf(i), packed.get(i).getTag());
+            assertEquals(Path.of("f" + i), result.getFile());
+            assertEquals(contents.get(i).length, result.getTotalSize());
+            assertArrayEquals(contents.get(i), PackedExtent.slice(marker, pack));
+            // The file hash is the hash of the file's contents, not of the pack
+            assertEquals(blake3Service.hashBuffer(contents.get(i)), result.getFileHash());
+        }
+        assertNull(packer.drain());
+    }
+
+    @Test
+    void testFileThatDoesNotFitClosesThePack() throws Exception {
+        SmallFilePacker<String> packer = new SmallFilePacker<>(blake3Service, contentStore, 10);
+
+        assertNull(packer.add("a", Path.of("a"), new byte[6]));
+        SmallFilePacker.Pack<String> full = packer.add("b", Path.of("b"), new byte[5]);
+
+        assertNotNull(full);
+        assertEquals(1, full.getFileCount());
+        assertEquals("a", packer.seal(full).get(0).getTag());
+        assertEquals("b", packer.seal(packer.drain()).get(0).getTag());
+        assertEquals(2, contentStore.getChunkCount());
+    }
+
+    @Test
+    void testInvalidFiles() {
+        SmallFilePacker<String> packer = new SmallFilePacker<>(blake3Service, contentStore, 10);
+
+        assertThrows(IllegalArgumentException.class, () -> packer.add("empty", Path.of("e"), new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> packer.add("large", Path.of("l"), new byte[11]));
+        assertThrows(IllegalArgumentException.class, () -> new SmallFilePacker<String>(blake3Service, contentStore, 0));
+        assertTrue(packer.drain() == null);
+    }
+}
@@ -19,6 +19,7 @@
 package com.justsyncit.scanner;
 
 import com.justsyncit.ServiceFactory;
+import com.justsyncit.storage.metadata.ZeroExtent;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.io.TempDir;
@@ -102,8 +103,11 @@ class SparseFileHandlingTest {
         FileChunker.ChunkingResult result = chunker.chunkFile(sparseFile, chunkingOptions).get();
 
         assertTrue(result.isSuccess(), "Chunking sparse file should succeed");
-        assertTrue(result.getChunkCount() > 0, "Should create chunks");
+        // The file holds nothing but zeros, so it is a single zero extent without any chunks
+        assertEquals(0, result.getChunkCount());
         assertEquals(2 * 1024 * 1024, result.getTotalSize());
+        assertEquals(2 * 1024 * 1024, result.getSparseSize());
+        assertEquals(java.util.List.of(ZeroExtent.marker(2 * 1024 * 1024)), result.getChunkHashes());
 
         // Clean up
         Files.deleteIfExists(sparseFile);
@@ -0,0 +1,127 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.storage;
+
+import com.justsyncit.hash.ChunkId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for ChunkFilter.
+ */
+class ChunkFilterTest {
+
+    /** Temporary directory for tests. */
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testNoFalseNegativesAndFewFalsePositives() {
+        int count = 100_000;
+        ChunkFilter filter = ChunkFilter.create(count);
+        for (int i = 0; i < count; i++) {
+            filter.add(OffHeapChunkTableTest.id(i));
+        }
+
+        for (int i = 0; i < count; i++) {
+            assertTrue(filter.mightContain(OffHeapChunkTableTest.id(i)));
+        }
+        int falsePositives = 0;
+        for (int i = count; i < 2 * count; i++) {
+            if (filter.mightContain(OffHeapChunkTableTest.id(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < count * 3 / 100, "false positives: " + falsePositives);
+        assertFalse(filter.isFull());
+    }
+
+    @Test
+    void testFillsUpPastCapacity() {
+        ChunkFilter filter = ChunkFilter.create(0);
+        long capacity = filter.capacity();
+
+        for (int i = 0; i <= capacity * 2; i++) {
+            filter.add(OffHeapChunkTableTest.id(i));
+        }
+
+        assertTrue(capacity >= ChunkFilter.MIN_CHUNKS);
+        assertTrue(filter.isFull());
+    }
+
+    @Test
+    void testMerge() {
+        ChunkFilter first = ChunkFilter.create(1000);
+        ChunkFilter second = ChunkFilter.create(1000);
+        ChunkId a = OffHeapChunkTableTest.id(1);
+        ChunkId b = OffHeapChunkTableTest.id(2);
+        first.add(a);
+        second.add(b);
+
+        first.merge(second);
+
+        assertTrue(first.mightContain(a));
+        assertTrue(first.mightContain(b));
+        assertFalse(second.mightContain(a));
+        assertEquals(2, first.getCount());
+        assertThrows(IllegalArgumentException.class, () -> first.merge(ChunkFilter.create(100_000)));
+        assertThrows(IllegalArgumentException.class, () -> first.merge(null));
+    }
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        ChunkFilter filter = ChunkFilter.create(5000);
+        for (int i = 0; i < 5000; i++) {
+            filter.add(OffHeapChunkTableTest.id(i));
+        }
+        Path file = tempDir.resolve("chunks.filter");
+
+        filter.writeTo(file);
+        ChunkFilter read = ChunkFilter.readFrom(file);
+
+        assertEquals(filter.capacity(), read.capacity());
+        assertEquals(filter.getCount(), read.getCount());
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(read.mightContain(OffHeapChunkTableTest.id(i)));
+        }
+        assertFalse(Files.exists(tempDir.resolve("chunks.filter.tmp")));
+    }
+
+    @Test
+    void testRejectsDamagedFile() throws IOException {
+        Path file = tempDir.resolve("chunks.filter");
+        ChunkFilter.create(100).writeTo(file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[ChunkFilter.HEADER_SIZE + 5] ^= 1;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> ChunkFilter.readFrom(file));
+        Files.write(file, new byte[10]);
+        assertThrows(IOException.class, () -> ChunkFilter.readFrom(file));
+    }
+}
@@ -18,14 +18,21 @@
 
 package com.justsyncit.storage;
 
+import com.justsyncit.hash.ChunkId;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -70,7 +77,7 @@ class FilesystemChunkIndexTest {
     @Test
     void testPutChunk() throws IOException {
         // Arrange
-        String hash = "abcdef1234567890";
+        String hash = "abcdef1234567890abcdef1234567890abcdef1234567890abcdef1234567890";
         Path filePath = storageDir.resolve("test.txt");
 
         // Act
@@ -88,13 +95,13 @@ class FilesystemChunkIndexTest {
         Path filePath = storageDir.resolve("test.txt");
 
         // Act & Assert
-        assertThrows(IllegalArgumentException.class, () -> chunkIndex.putChunk(null, filePath));
+        assertThrows(IllegalArgumentException.class, () -> chunkIndex.putChunk((String) null, filePath));
     }
 
     @Test
     void testPutChunkNullFilePath() {
         // Arrange
-        String hash = "abcdef1234567890";
+        String hash = "abcdef1234567890abcdef1234567890abcdef1234567890abcdef1234567890";
 
         // Act & Assert
         assertThrows(IllegalArgumentException.class, () -> chunkIndex.putChunk(hash, null));
@@ -103,7 +110,7 @@ class FilesystemChunkIndexTest {
     @Test
     void testGetChunkPathExistingChunk() throws IOException {
         // Arrange
-        String hash = "abcdef1234567890";
+        String hash = "abcdef1234567890abcdef1234567890abcdef1234567890abcdef1234567890";
         Path filePath = storageDir.resolve("test.txt");
         chunkIndex.putChunk(hash, filePath);
 
@@ -129,7 +136,7 @@ class FilesystemChunkIndexTest {
     @Test
     void testContainsChunkTrue() throws IOException {
         // Arrange
-        String hash = "abcdef1234567890";
+        String hash = "abcdef1234567890abcdef1234567890abcdef1234567890abcdef1234567890";
         Path filePath = storageDir.resolve("test.txt");
         chunkIndex.putChunk(hash, filePath);
 
@@ -155,7 +162,7 @@ class FilesystemChunkIndexTest {
     @Test
     void testRemoveChunkExistingChunk() throws IOException {
         // Arrange
-        String hash = "abcdef1234567890";
+        String hash = "abcdef1234567890abcdef1234567890abcdef1234567890abcdef1234567890";
         Path filePath = storageDir.resolve("test.txt");
         chunkIndex.putChunk(hash, filePath);
 
@@ -184,9 +191,9 @@ class FilesystemChunkIndexTest {
     @Test
     void testGetAllHashes() throws IOException {
         // Arrange
-        String hash1 = "hash1";
-        String hash2 = "hash2";
-        String hash3 = "hash3";
+        String hash1 = "1111111111111111111111111111111111111111111111111111111111111111";
+        String hash2 = "2222222222222222222222222222222222222222222222222222222222222222";
+        String hash3 = "3333333333333333333333333333333333333333333333333333333333333333";
 
         chunkIndex.putChunk(hash1, storageDir.resolve("file1"));
         chunkIndex.putChunk(hash2, storageDir.resolve("file2"));
@@ -205,8 +212,8 @@ class FilesystemChunkIndexTest {
     @Test
     void testGetChunkCount() throws IOException {
         // Arrange
-        chunkIndex.putChunk("hash1", storageDir.resolve("file1"));
-        chunkIndex.putChunk("hash2", storageDir.resolve("file2"));
+        chunkIndex.putChunk("1111111111111111111111111111111111111111111111111111111111111111", storageDir.resolve("file1"));
+        chunkIndex.putChunk("2222222222222222222222222222222222222222222222222222222222222222", storageDir.resolve("file2"));
 
         // Act
         long count = chunkIndex.getChunkCount();
@@ -218,9 +225,9 @@ class FilesystemChunkIndexTest {
     @Test
     void testRetainAll() throws IOException {
         // Arrange
-        String hash1 = "hash1";
-        String hash2 = "hash2";
-        String hash3 = "hash3";
+        String hash1 = "1111111111111111111111111111111111111111111111111111111111111111";
+        String hash2 = "2222222222222222222222222222222222222222222222222222222222222222";
+        String hash3 = "3333333333333333333333333333333333333333333333333333333333333333";
 
         chunkIndex.putChunk(hash1, storageDir.resolve("file1"));
         chunkIndex.putChunk(hash2, storageDir.resolve("file2"));
@@ -241,6 +248,26 @@ class FilesystemChunkIndexTest {
         assertEquals(2L, chunkIndex.getChunkCount());
     }
 
+    @Test
+    void testPutChunkRejectsNonHexHash() {
+        assertThrows(IllegalArgumentException.class,
+                () -> chunkIndex.putChunk("not-a-chunk-hash", storageDir.resolve("file")));
+    }
+
+    @Test
+    void testChunkIdAndHexLookupsAreInterchangeable() throws IOException {
+        String hash = "ABCDEF1234567890abcdef1234567890abcdef1234567890abcdef1234567890";
+        Path filePath = storageDir.resolve("file1");
+
+        chunkIndex.putChunk(ChunkId.fromHex(hash), filePath);
+
+        assertTrue(chunkIndex.containsChunk(hash.toLowerCase(java.util.Locale.ROOT)));
+        assertEquals(filePath, chunkIndex.getChunkPath(hash));
+        assertTrue(chunkIndex.getAllHashes().contains(hash.toLowerCase(java.util.Locale.ROOT)));
+        assertTrue(chunkIndex.removeChunk(ChunkId.fromHex(hash)));
+        assertFalse(chunkIndex.containsChunk(hash));
+    }
+
     @Test
     void testRetainAllNullActiveHashes() {
         // Act & Assert
@@ -250,8 +277,8 @@ class FilesystemChunkIndexTest {
     @Test
     void testPersistence() throws IOException {
         // Arrange
-        String hash1 = "hash1";
-        String hash2 = "hash2";
+        String hash1 = "1111111111111111111111111111111111111111111111111111111111111111";
+        String hash2 = "2222222222222222222222222222222222222222222222222222222222222222";
         Path filePath1 = storageDir.resolve("file1");
         Path filePath2 = storageDir.resolve("file2");
 
@@ -281,6 +308,99 @@ class FilesystemChunkIndexTest {
         assertTrue(chunkIndex.getAllHashes().isEmpty());
     }
 
+    @Test
+    void testChangesAreJournaledInsteadOfRewritingTheIndex() throws IOException {
+        // Arrange
+        String hash1 = "1111111111111111111111111111111111111111111111111111111111111111";
+        String hash2 = "2222222222222222222222222222222222222222222222222222222222222222";
+        Path journal = indexFile.resolveSibling("index.txt.journal");
+
+        // Act
+        chunkIndex.putChunk(hash1, storageDir.resolve("ab").resolve("file1"));
+        chunkIndex.putChunk(hash2, storageDir.resolve("file2"));
+        chunkIndex.removeChunk(hash1);
+
+        // Assert
+        assertFalse(Files.exists(indexFile));
+        assertEquals(List.of("+" + hash1 + "|" + Path.of("ab", "file1"), "+" + hash2 + "|file2", "-" + hash1),
+                Files.readAllLines(journal));
+        chunkIndex.close();
+        chunkIndex = FilesystemChunkIndex.create(storageDir, indexFile);
+        assertEquals(Set.of(hash2), chunkIndex.getAllHashes());
+        assertEquals(storageDir.resolve("file2"), chunkIndex.getChunkPath(hash2));
+    }
+
+    @Test
+    void testJournalIsCompactedIntoSortedSnapshot() throws IOException {
+        // Arrange
+        int count = (int) IndexPersistence.MIN_COMPACTION_RECORDS + 10;
+        for (int i = count - 1; i >= 0; i--) {
+            chunkIndex.putChunk(String.format("%064x", i), storageDir.resolve("file" + i));
+        }
+
+        // Act
+        chunkIndex.close();
+
+        // Assert
+        List<String> lines = Files.readAllLines(indexFile);
+        assertEquals(IndexPersistence.MIN_COMPACTION_RECORDS + 1, lines.size());
+        assertTrue(lines.get(lines.size() - 1).startsWith("#entries=" + IndexPersistence.MIN_COMPACTION_RECORDS + " "));
+        List<String> entries = lines.subList(0, lines.size() - 1);
+        List<String> sorted = new ArrayList<>(entries);
+        Collections.sort(sorted);
+        assertEquals(sorted, entries);
+        assertFalse(Files.exists(indexFile.resolveSibling("index.txt.journal.old")));
+        chunkIndex = FilesystemChunkIndex.create(storageDir, indexFile);
+        assertEquals(count, chunkIndex.getChunkCount());
+        assertEquals(storageDir.resolve("file0"), chunkIndex.getChunkPath(String.format("%064x", 0)));
+    }
+
+    @Test
+    void testTornJournalRecordIsDropped() throws IOException {
+        // Arrange
+        String hash1 = "1111111111111111111111111111111111111111111111111111111111111111";
+        String hash2 = "2222222222222222222222222222222222222222222222222222222222222222";
+        chunkIndex.putChunk(hash1, storageDir.resolve("file1"));
+        chunkIndex.close();
+        Files.writeString(indexFile.resolveSibling("index.txt.journal"), "+2222222222", StandardOpenOption.APPEND);
+
+        // Act
+        chunkIndex = FilesystemChunkIndex.create(storageDir, indexFile);
+        chunkIndex.putChunk(hash2, storageDir.resolve("file2"));
+        chunkIndex.close();
+        chunkIndex = FilesystemChunkIndex.create(storageDir, indexFile);
+
+        // Assert
+        assertEquals(Set.of(hash1, hash2), chunkIndex.getAllHashes());
+    }
+
+    @Test
+    void testCorruptedSnapshotIsRejected() throws IOException {
+        // Arrange
+        String hash1 = "1111111111111111111111111111111111111111111111111111111111111111";
+        chunkIndex.close();
+        new IndexPersistence(storageDir, indexFile).saveIndex(Map.of(ChunkId.fromHex(hash1), storageDir.resolve("file1")));
+        Files.writeString(indexFile, Files.readString(indexFile).replace("file1", "file7"));
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> FilesystemChunkIndex.create(storageDir, indexFile));
+        chunkIndex = null;
+    }
+
+    @Test
+    void testIndexWithoutChecksumLineIsLoaded() throws IOException {
+        // Arrange
+        String hash1 = "1111111111111111111111111111111111111111111111111111111111111111";
+        chunkIndex.close();
+        Files.writeString(indexFile, hash1 + "|file1\n");
+
+        // Act
+        chunkIndex = FilesystemChunkIndex.create(storageDir, indexFile);
+
+        // Assert
+        assertEquals(storageDir.resolve("file1"), chunkIndex.getChunkPath(hash1));
+    }
+
     @Test
     void testOperationsAfterClose() throws IOException {
         // Arrange
@@ -309,7 +429,7 @@ class FilesystemChunkIndexTest {
             threads[i] = new Thread(() -> {
                 for (int j = 0; j < operationsPerThread; j++) {
                     try {
-                        String hash = "thread" + threadId + "_hash" + j;
+                        String hash = String.format("%032x%032x", threadId, j);
                         Path filePath = storageDir.resolve("thread" + threadId + "_file" + j);
 
                         chunkIndex.putChunk(hash, filePath);
@@ -18,6 +18,8 @@
 
 package com.justsyncit.storage;
 
+import com.justsyncit.ServiceException;
+import com.justsyncit.ServiceFactory;
 import com.justsyncit.hash.Blake3Service;
 import com.justsyncit.hash.HashingException;
 import org.junit.jupiter.api.AfterEach;
@@ -31,6 +33,11 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -122,7 +129,31 @@ class FilesystemContentStoreTest {
         assertEquals(expectedHash, actualHash);
         verify(mockBlake3Service).hashBuffer(data);
         verify(mockChunkIndex).containsChunk(expectedHash);
-        verify(mockChunkIndex, never()).putChunk(any(), any());
+        verify(mockChunkIndex, never()).putChunk(any(String.class), any(Path.class));
+    }
+
+    @Test
+    void testStoreChunkReplacesPartialChunkFile() throws IOException, HashingException, ServiceException {
+        // Arrange
+        byte[] data = "test data".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        String expectedHash = "abcdef1234567890";
+        Path chunkPath = new TwoLevelChunkPathGenerator().generatePath(tempDir.resolve("storage"), expectedHash);
+        // A file cut short by a crash, as written before chunk files were moved into place
+        java.nio.file.Files.write(chunkPath, new byte[] {0x4A, 0x53});
+
+        when(mockBlake3Service.hashBuffer(data)).thenReturn(expectedHash);
+        when(mockChunkIndex.containsChunk(expectedHash)).thenReturn(false);
+
+        // Act
+        contentStore.storeChunk(data);
+
+        // Assert
+        ChunkFile chunkFile = ChunkFile.read(chunkPath);
+        assertTrue(chunkFile.isChecksumVerified());
+        assertArrayEquals(data, chunkFile.getData());
+        try (java.util.stream.Stream<Path> files = java.nio.file.Files.list(chunkPath.getParent())) {
+            assertEquals(1, files.count()); // No temporary file left behind
+        }
     }
 
     @Test
@@ -137,6 +168,63 @@ class FilesystemContentStoreTest {
         assertThrows(IllegalArgumentException.class, () -> contentStore.storeChunk(new byte[0]));
     }
 
+    @Test
+    void testDistinctChunksAreWrittenInParallel() throws Exception {
+        Blake3Service blake3Service = new ServiceFactory().createBlake3Service();
+        byte[] slow = "slow chunk".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        String slowHash = blake3Service.hashBuffer(slow);
+        byte[] fast = null;
+        for (int i = 0; fast == null; i++) {
+            byte[] candidate = ("fast chunk " + i).getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            if (FilesystemContentStore.stripe(blake3Service.hashBuffer(candidate)) != FilesystemContentStore.stripe(slowHash)) {
+                fast = candidate;
+            }
+        }
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ChunkPathGenerator paths = new TwoLevelChunkPathGenerator();
+        ChunkPathGenerator blocking = new ChunkPathGenerator() {
+            @Override
+            public Path generatePath(Path storageDirectory, String hash) throws ServiceException {
+                if (hash.equals(slowHash)) {
+                    slowStarted.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new ServiceException("Interrupted", e);
+                    }
+                }
+                return paths.generatePath(storageDirectory, hash);
+            }
+
+            @Override
+            public void validateHash(String hash) {
+                paths.validateHash(hash);
+            }
+        };
+        FilesystemContentStore store = FilesystemContentStore.create(tempDir.resolve("parallel"),
+                ChunkIndexFactory.createMemoryIndex(), new Blake3IntegrityVerifier(blake3Service), blocking);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> slowStore = executor.submit(() -> store.storeChunk(slow));
+            assertTrue(slowStarted.await(10, TimeUnit.SECONDS));
+
+            // With one lock for all writes this would wait for the slow chunk
+            String fastHash = store.storeChunk(fast);
+
+            assertTrue(store.existsChunk(fastHash));
+            assertFalse(store.existsChunk(slowHash));
+            release.countDown();
+            assertEquals(slowHash, slowStore.get(10, TimeUnit.SECONDS));
+            assertArrayEquals(slow, store.retrieveChunk(slowHash));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+            store.close();
+        }
+    }
+
     @Test
     void testRetrieveChunkExistingChunk() throws IOException, StorageIntegrityException, HashingException {
         // Arrange
@@ -177,7 +265,7 @@ class FilesystemContentStoreTest {
         // Assert
         assertNull(result);
         verify(mockChunkIndex).getChunkPath(hash);
-        verify(mockBlake3Service, never()).hashBuffer(any());
+        verify(mockBlake3Service, never()).hashBuffer(any(byte[].class));
     }
 
     @Test
@@ -203,6 +291,50 @@ class FilesystemContentStoreTest {
         verify(mockBlake3Service).hashBuffer(data);
     }
 
+    @Test
+    void testRetrieveStoredChunkChecksOnlyChecksumUnlessFullVerification()
+            throws IOException, StorageIntegrityException, HashingException {
+        // Arrange
+        byte[] data = "test data".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        String hash = "abcdef1234567890";
+        Path chunkPath = tempDir.resolve("storage").resolve("ab").resolve("cdef1234567890");
+
+        when(mockBlake3Service.hashBuffer(data)).thenReturn(hash);
+        when(mockChunkIndex.containsChunk(hash)).thenReturn(false);
+        when(mockChunkIndex.getChunkPath(hash)).thenReturn(chunkPath);
+        contentStore.storeChunk(data);
+
+        // Act & Assert: the routine read only checks the CRC32C
+        assertArrayEquals(data, contentStore.retrieveChunk(hash));
+        verify(mockBlake3Service, times(1)).hashBuffer(any(byte[].class));
+
+        // Full verification re-hashes the data
+        assertArrayEquals(data, contentStore.retrieveChunk(hash, VerificationMode.FULL));
+        verify(mockBlake3Service, times(2)).hashBuffer(data);
+    }
+
+    @Test
+    void testRetrieveChunkWithCorruptedChecksumFallsBackToHash() throws IOException, HashingException {
+        // Arrange
+        byte[] data = "test data".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        String hash = "abcdef1234567890";
+        Path chunkPath = tempDir.resolve("storage").resolve("ab").resolve("cdef1234567890");
+
+        when(mockBlake3Service.hashBuffer(any(byte[].class))).thenReturn(hash, "differenthash");
+        when(mockChunkIndex.containsChunk(hash)).thenReturn(false);
+        when(mockChunkIndex.getChunkPath(hash)).thenReturn(chunkPath);
+        contentStore.storeChunk(data);
+
+        // Flip one data bit behind the header
+        byte[] stored = java.nio.file.Files.readAllBytes(chunkPath);
+        stored[stored.length - 1] ^= 1;
+        java.nio.file.Files.write(chunkPath, stored);
+
+        // Act & Assert
+        assertThrows(StorageIntegrityException.class, () -> contentStore.retrieveChunk(hash));
+        verify(mockBlake3Service).hashBuffer(stored);
+    }
+
     @Test
     void testExistsChunkTrue() throws IOException {
         // Arrange
@@ -19,6 +19,7 @@
 package com.justsyncit.storage;
 
 import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.hash.ChunkId;
 import com.justsyncit.hash.HashingException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -154,7 +155,8 @@ class MemoryContentStoreTest {
     @Test
     void testRetrieveChunkWithNullHash() {
         // Act & Assert
-        assertThrows(IllegalArgumentException.class, () -> contentStore.retrieveChunk(null));
+        assertThrows(IllegalArgumentException.class, () -> contentStore.retrieveChunk((String) null));
+        assertThrows(IllegalArgumentException.class, () -> contentStore.retrieveChunk((ChunkId) null));
     }
 
     @Test
@@ -196,7 +198,8 @@ class MemoryContentStoreTest {
     @Test
     void testExistsChunkWithNullHash() {
         // Act & Assert
-        assertThrows(IllegalArgumentException.class, () -> contentStore.existsChunk(null));
+        assertThrows(IllegalArgumentException.class, () -> contentStore.existsChunk((String) null));
+        assertThrows(IllegalArgumentException.class, () -> contentStore.existsChunk((ChunkId) null));
     }
 
     @Test
@@ -0,0 +1,136 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.storage;
+
+import com.justsyncit.hash.ChunkId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for OffHeapChunkIndex.
+ */
+class OffHeapChunkIndexTest {
+
+    /** Temporary directory for tests. */
+    @TempDir
+    Path tempDir;
+
+    /** Storage directory for test files. */
+    private Path storageDir;
+
+    /** Chunk index under test. */
+    private OffHeapChunkIndex chunkIndex;
+
+    @BeforeEach
+    void setUp() {
+        storageDir = tempDir.resolve("storage");
+        chunkIndex = OffHeapChunkIndex.create(storageDir, 16);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (chunkIndex != null) {
+            chunkIndex.close();
+        }
+    }
+
+    @Test
+    void testPutGetAndRemove() throws IOException {
+        ChunkId id = OffHeapChunkTableTest.id(1);
+        String hash = id.toHex();
+        Path path = chunkPath(hash);
+
+        chunkIndex.putChunk(hash, path);
+
+        assertTrue(chunkIndex.containsChunk(hash));
+        assertTrue(chunkIndex.containsChunk(id));
+        assertEquals(path, chunkIndex.getChunkPath(hash));
+        assertEquals(1, chunkIndex.getChunkCount());
+        assertTrue(chunkIndex.removeChunk(hash));
+        assertFalse(chunkIndex.removeChunk(hash));
+        assertNull(chunkIndex.getChunkPath(id));
+        assertFalse(chunkIndex.containsChunk("not-a-hash"));
+    }
+
+    @Test
+    void testRejectsPathsOutsideTheChunkLayout() {
+        String hash = OffHeapChunkTableTest.id(1).toHex();
+
+        assertThrows(IllegalArgumentException.class, () -> chunkIndex.putChunk(hash, storageDir.resolve(hash)));
+        assertThrows(IllegalArgumentException.class, () -> chunkIndex.putChunk(hash, null));
+        assertThrows(IllegalArgumentException.class, () -> chunkIndex.putChunk((String) null, chunkPath(hash)));
+        assertThrows(IllegalArgumentException.class, () -> OffHeapChunkIndex.create(null, 16));
+    }
+
+    @Test
+    void testGetAllHashesAndRetainAll() throws IOException {
+        Set<String> kept = new HashSet<>();
+        for (int i = 0; i < 5000; i++) {
+            String hash = OffHeapChunkTableTest.id(i).toHex();
+            chunkIndex.putChunk(hash, chunkPath(hash));
+            if (i % 3 == 0) {
+                kept.add(hash);
+            }
+        }
+
+        assertEquals(5000, chunkIndex.getAllHashes().size());
+        assertEquals(5000 - kept.size(), chunkIndex.retainAll(kept));
+        assertEquals(kept, chunkIndex.getAllHashes());
+    }
+
+    @Test
+    void testMappedIndexSurvivesReopen() throws IOException {
+        chunkIndex.close();
+        Path tableFile = tempDir.resolve("chunks.tbl");
+        chunkIndex = OffHeapChunkIndex.open(storageDir, tableFile, 16);
+        String hash = OffHeapChunkTableTest.id(7).toHex();
+        chunkIndex.putChunk(hash, chunkPath(hash));
+        chunkIndex.close();
+
+        chunkIndex = OffHeapChunkIndex.open(storageDir, tableFile, 16);
+
+        assertEquals(chunkPath(hash), chunkIndex.getChunkPath(hash));
+        assertEquals(1, chunkIndex.getChunkCount());
+    }
+
+    @Test
+    void testOperationsAfterClose() throws IOException {
+        chunkIndex.close();
+
+        assertThrows(IOException.class, () -> chunkIndex.getChunkCount());
+        chunkIndex = null;
+    }
+
+    private Path chunkPath(String hash) {
+        return storageDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.storage;
+
+import com.justsyncit.hash.ChunkId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for OffHeapChunkTable.
+ */
+class OffHeapChunkTableTest {
+
+    /** Temporary directory for tests. */
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPutGetAndRemove() throws IOException {
+        OffHeapChunkTable table = OffHeapChunkTable.allocate(10);
+
+        assertEquals(OffHeapChunkTable.ABSENT, table.put(id(1), 7));
+        assertEquals(7, table.put(id(1), 8));
+        assertEquals(8, table.get(id(1)));
+        assertEquals(OffHeapChunkTable.ABSENT, table.get(id(2)));
+
+        assertEquals(8, table.remove(id(1)));
+        assertEquals(OffHeapChunkTable.ABSENT, table.remove(id(1)));
+        assertFalse(table.contains(id(1)));
+
+        // A removed ID can come back, reusing its tombstone
+        assertEquals(OffHeapChunkTable.ABSENT, table.put(id(1), 0));
+        assertEquals(0, table.get(id(1)));
+        assertEquals(1, table.size());
+        assertThrows(IllegalArgumentException.class, () -> table.put(id(3), -1));
+        assertThrows(IllegalArgumentException.class, () -> table.put(null, 1));
+    }
+
+    @Test
+    void testGrowsPastInitialCapacity() throws IOException {
+        OffHeapChunkTable table = OffHeapChunkTable.allocate(0);
+        long initialCapacity = table.capacity();
+        int count = (int) initialCapacity * 3;
+
+        for (int i = 0; i < count; i++) {
+            table.put(id(i), i);
+        }
+        for (int i = 0; i < count; i += 2) {
+            table.remove(id(i));
+        }
+
+        assertTrue(table.capacity() > initialCapacity);
+        assertEquals(count / 2, table.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i % 2 == 0 ? OffHeapChunkTable.ABSENT : i, table.get(id(i)));
+        }
+        Map<ChunkId, Long> visited = new HashMap<>();
+        table.forEach(visited::put);
+        assertEquals(count / 2, visited.size());
+        assertEquals(Long.valueOf(1), visited.get(id(1)));
+    }
+
+    @Test
+    void testMappedTableSurvivesReopen() throws IOException {
+        Path file = tempDir.resolve("chunks.tbl");
+        OffHeapChunkTable table = OffHeapChunkTable.map(file, 0);
+        assertFalse(table.isTrusted());
+        for (int i = 0; i < 5000; i++) {
+            table.put(id(i), i);
+        }
+        table.remove(id(0));
+        table.close();
+
+        table = OffHeapChunkTable.map(file, 0);
+        try {
+            assertTrue(table.isTrusted());
+            assertEquals(4999, table.size());
+            assertEquals(OffHeapChunkTable.ABSENT, table.get(id(0)));
+            assertEquals(4321, table.get(id(4321)));
+            assertFalse(Files.exists(tempDir.resolve("chunks.tbl.tmp")));
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    void testTableNotClosedIsUntrusted() throws IOException {
+        Path file = tempDir.resolve("chunks.tbl");
+        OffHeapChunkTable table = OffHeapChunkTable.map(file, 100);
+        table.close();
+        table = OffHeapChunkTable.map(file, 100);
+        table.put(id(1), 1);
+        table.put(id(2), 2);
+        table.remove(id(2));
+        table.abandon();
+
+        table = OffHeapChunkTable.map(file, 100);
+        try {
+            // The entries were written to the mapping, so only the counts need recomputing
+            assertFalse(table.isTrusted());
+            assertEquals(1, table.size());
+            assertEquals(1, table.get(id(1)));
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    void testRejectsForeignFile() throws IOException {
+        Path file = tempDir.resolve("other.tbl");
+        Files.write(file, new byte[OffHeapChunkTable.HEADER_SIZE + OffHeapChunkTable.SLOT_SIZE]);
+
+        assertThrows(IOException.class, () -> OffHeapChunkTable.map(file, 0));
+    }
+
+    @Test
+    void testReadersDuringGrowth() throws Exception {
+        OffHeapChunkTable table = OffHeapChunkTable.allocate(0);
+        int count = 50_000;
+        table.put(id(-1), 42);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread[] readers = new Thread[4];
+        boolean[] failed = new boolean[readers.length];
+        for (int r = 0; r < readers.length; r++) {
+            int reader = r;
+            readers[r] = new Thread(() -> {
+                while (!done.get()) {
+                    // An entry that was there before the writer started is never missed
+                    if (table.get(id(-1)) != 42) {
+                        failed[reader] = true;
+                        return;
+                    }
+                }
+            });
+            readers[r].start();
+        }
+        for (int i = 0; i < count; i++) {
+            table.put(id(i), i);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        for (boolean readerFailed : failed) {
+            assertFalse(readerFailed);
+        }
+        for (int i = 0; i < count; i += 997) {
+            assertEquals(i, table.get(id(i)));
+        }
+    }
+
+    /**
+     * Creates a chunk ID from a number; IDs made this way differ only in their last bytes.
+     */
+    static ChunkId id(int value) {
+        return ChunkId.fromHex(String.format("%064x", value & 0xffffffffL));
+    }
+}
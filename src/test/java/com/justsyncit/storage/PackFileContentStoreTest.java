@@ -0,0 +1,372 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.storage;
+
+import com.justsyncit.ServiceException;
+import com.justsyncit.ServiceFactory;
+import com.justsyncit.hash.Blake3Service;
+import com.justsyncit.hash.ChunkId;
+import com.justsyncit.hash.HashingException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for PackFileContentStore.
+ */
+class PackFileContentStoreTest {
+
+    /** Segment size small enough for a few test chunks to fill a segment. */
+    private static final long SEGMENT_SIZE = 4096;
+
+    /** Temporary directory for tests. */
+    @TempDir
+    Path tempDir;
+
+    /** BLAKE3 service for hashing. */
+    private Blake3Service blake3Service;
+
+    /** Directory of the store under test. */
+    private Path storageDir;
+
+    /** Content store under test. */
+    private PackFileContentStore contentStore;
+
+    @BeforeEach
+    void setUp() throws IOException, ServiceException {
+        blake3Service = new ServiceFactory().createBlake3Service();
+        storageDir = tempDir.resolve("storage");
+        contentStore = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (contentStore != null) {
+            contentStore.close();
+        }
+    }
+
+    @Test
+    void testStoreAndRetrieveChunks() throws IOException, StorageIntegrityException {
+        byte[] data = "pack file chunk".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+
+        String hash = contentStore.storeChunk(data);
+
+        assertEquals(hash, contentStore.storeChunk(data));
+        assertEquals(1, contentStore.getChunkCount());
+        assertTrue(contentStore.existsChunk(hash));
+        assertArrayEquals(data, contentStore.retrieveChunk(hash));
+        assertArrayEquals(data, contentStore.retrieveChunk(hash, VerificationMode.FULL));
+        assertFalse(contentStore.existsChunk("hash1"));
+        assertNull(contentStore.retrieveChunk("hash1"));
+        assertNull(contentStore.retrieveChunk("0".repeat(64)));
+    }
+
+    @Test
+    void testChunkIdOverloadsMatchHexLookups() throws IOException, StorageIntegrityException {
+        byte[] data = "chunk addressed by id".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        ChunkId chunkId = ChunkId.fromHex(contentStore.storeChunk(data));
+
+        assertTrue(contentStore.existsChunk(chunkId));
+        assertArrayEquals(data, contentStore.retrieveChunk(chunkId));
+        assertArrayEquals(data, contentStore.retrieveChunk(chunkId, VerificationMode.FULL));
+        ChunkId missing = ChunkId.fromHex("0".repeat(64));
+        assertFalse(contentStore.existsChunk(missing));
+        assertNull(contentStore.retrieveChunk(missing));
+        assertThrows(IllegalArgumentException.class, () -> contentStore.existsChunk((ChunkId) null));
+    }
+
+    @Test
+    void testStoreChunkWithKnownId() throws IOException, StorageIntegrityException, HashingException {
+        byte[] data = "chunk stored by id".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        ChunkId chunkId = blake3Service.hashChunkId(ByteBuffer.wrap(data));
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length + 2);
+        buffer.put(new byte[2]).put(data).flip().position(2);
+
+        contentStore.storeChunk(chunkId, buffer);
+        contentStore.storeChunk(chunkId, buffer);
+
+        assertEquals(2, buffer.position());
+        assertEquals(1, contentStore.getChunkCount());
+        assertArrayEquals(data, contentStore.retrieveChunk(chunkId, VerificationMode.FULL));
+        assertEquals(chunkId.toHex(), contentStore.storeChunk(data));
+        assertThrows(IllegalArgumentException.class, () -> contentStore.storeChunk(chunkId, ByteBuffer.allocate(0)));
+    }
+
+    @Test
+    void testSegmentsAreSealedAndRotated() throws IOException, StorageIntegrityException {
+        List<byte[]> chunks = chunks(10, 900);
+        List<String> hashes = store(chunks);
+
+        List<Path> packs = files(PackSegment.PACK_EXTENSION);
+        // Four 900-byte records fit in 4096 bytes, so ten chunks take three segments
+        assertEquals(3, packs.size());
+        assertEquals(2, files(PackSegment.INDEX_EXTENSION).size());
+        for (Path pack : packs) {
+            assertTrue(Files.size(pack) <= SEGMENT_SIZE);
+        }
+        assertReadable(chunks, hashes);
+        assertEquals(packs.stream().mapToLong(PackFileContentStoreTest::size).sum(), contentStore.getTotalSize());
+    }
+
+    @Test
+    void testChunkLargerThanSegmentGetsItsOwnSegment() throws IOException, StorageIntegrityException {
+        List<byte[]> chunks = List.of(chunks(1, 100).get(0), new byte[10000], chunks(1, 200).get(0));
+        chunks.get(1)[0] = 1;
+
+        List<String> hashes = store(chunks);
+
+        assertEquals(3, files(PackSegment.PACK_EXTENSION).size());
+        assertReadable(chunks, hashes);
+    }
+
+    @Test
+    void testReopenUsesSegmentIndexes() throws IOException, StorageIntegrityException {
+        List<byte[]> chunks = chunks(10, 900);
+        List<String> hashes = store(chunks);
+        contentStore.close();
+
+        contentStore = open();
+
+        assertEquals(chunks.size(), contentStore.getChunkCount());
+        assertReadable(chunks, hashes);
+        // New chunks go to the segment that was active before
+        int segments = files(PackSegment.PACK_EXTENSION).size();
+        store(chunks(1, 10));
+        assertEquals(segments, files(PackSegment.PACK_EXTENSION).size());
+    }
+
+    @Test
+    void testReopenWithoutIndexesScansSegmentsAndDropsTornRecord() throws IOException, StorageIntegrityException {
+        List<byte[]> chunks = chunks(10, 900);
+        List<String> hashes = store(chunks);
+        contentStore.close();
+        contentStore = null;
+        for (Path index : files(PackSegment.INDEX_EXTENSION)) {
+            Files.delete(index);
+        }
+        markTableUnclean();
+        // A record cut short by a crash at the end of the last segment
+        Path last = files(PackSegment.PACK_EXTENSION).get(2);
+        long intactSize = Files.size(last);
+        Files.write(last, new byte[PackSegment.RECORD_HEADER_SIZE + 3], StandardOpenOption.APPEND);
+
+        contentStore = open();
+
+        assertEquals(chunks.size(), contentStore.getChunkCount());
+        assertReadable(chunks, hashes);
+        assertEquals(intactSize, Files.size(last));
+    }
+
+    @Test
+    void testUncleanChunkTableIsRebuiltFromSegments() throws IOException, StorageIntegrityException {
+        List<byte[]> chunks = chunks(10, 900);
+        List<String> hashes = store(chunks);
+        contentStore.close();
+        // A clean table is used as is; an unclean one may have lost entries to a crash
+        contentStore = open();
+        assertEquals(chunks.size(), contentStore.getChunkCount());
+        contentStore.close();
+        // Entries a crash kept from reaching the file
+        Path table = storageDir.resolve(PackFileContentStore.PACK_DIRECTORY).resolve(PackFileContentStore.TABLE_FILE);
+        try (FileChannel channel = FileChannel.open(table, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate((int) (channel.size() - OffHeapChunkTable.HEADER_SIZE)),
+                    OffHeapChunkTable.HEADER_SIZE);
+        }
+        markTableUnclean();
+
+        contentStore = open();
+
+        assertEquals(chunks.size(), contentStore.getChunkCount());
+        assertReadable(chunks, hashes);
+    }
+
+    @Test
+    void testChunkFilterIsSavedOnCloseAndConsumedOnOpen() throws IOException, StorageIntegrityException {
+        List<byte[]> chunks = chunks(5, 500);
+        List<String> hashes = store(chunks);
+        Path filter = storageDir.resolve(PackFileContentStore.PACK_DIRECTORY).resolve(PackFileContentStore.FILTER_FILE);
+        contentStore.close();
+        assertTrue(Files.exists(filter));
+
+        contentStore = open();
+        assertFalse(Files.exists(filter));
+        assertReadable(chunks, hashes);
+        assertFalse(contentStore.existsChunk(OffHeapChunkTableTest.id(42).toHex()));
+        contentStore.close();
+
+        // A damaged filter is rebuilt from the table
+        Files.write(filter, new byte[100]);
+        contentStore = open();
+        assertReadable(chunks, hashes);
+    }
+
+    @Test
+    void testCorruptedChunkFallsBackToHashVerification() throws IOException {
+        byte[] data = chunks(1, 500).get(0);
+        String hash = contentStore.storeChunk(data);
+        Path pack = files(PackSegment.PACK_EXTENSION).get(0);
+        try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) ~data[10]}),
+                    PackSegment.HEADER_SIZE + PackSegment.RECORD_HEADER_SIZE + 10);
+        }
+
+        assertThrows(StorageIntegrityException.class, () -> contentStore.retrieveChunk(hash));
+    }
+
+    @Test
+    void testGarbageCollectDeletesAndCompactsSegments() throws IOException, StorageIntegrityException {
+        List<byte[]> chunks = chunks(12, 900);
+        List<String> hashes = store(chunks);
+        assertEquals(3, files(PackSegment.PACK_EXTENSION).size());
+
+        // Keep one chunk of the first segment, which is compacted away, and all of the second;
+        // the third has no live chunks left
+        Set<String> active = new HashSet<>(hashes.subList(3, 8));
+
+        assertEquals(7, contentStore.garbageCollect(active));
+
+        assertEquals(5, contentStore.getChunkCount());
+        for (int i = 0; i < hashes.size(); i++) {
+            assertEquals(active.contains(hashes.get(i)), contentStore.existsChunk(hashes.get(i)));
+        }
+        List<Path> packs = files(PackSegment.PACK_EXTENSION);
+        assertFalse(packs.stream().anyMatch(p -> p.getFileName().toString().equals(PackSegment.fileName(1, PackSegment.PACK_EXTENSION))));
+        assertFalse(packs.stream().anyMatch(p -> p.getFileName().toString().equals(PackSegment.fileName(3, PackSegment.PACK_EXTENSION))));
+        assertReadable(chunks.subList(3, 8), hashes.subList(3, 8));
+
+        // Removed chunks stay removed after reopening
+        contentStore.close();
+        contentStore = open();
+        assertEquals(5, contentStore.getChunkCount());
+        assertReadable(chunks.subList(3, 8), hashes.subList(3, 8));
+    }
+
+    @Test
+    void testOperationsAfterClose() throws IOException {
+        contentStore.close();
+
+        assertThrows(IOException.class, () -> contentStore.storeChunk(new byte[] {1}));
+        assertThrows(IOException.class, () -> contentStore.getChunkCount());
+    }
+
+    @Test
+    void testInvalidParameters() {
+        IntegrityVerifier verifier = new Blake3IntegrityVerifier(blake3Service);
+
+        assertThrows(IllegalArgumentException.class, () -> PackFileContentStore.create(null, verifier, SEGMENT_SIZE));
+        assertThrows(IllegalArgumentException.class, () -> PackFileContentStore.create(storageDir, null, SEGMENT_SIZE));
+        assertThrows(IllegalArgumentException.class, () -> PackFileContentStore.create(storageDir, verifier, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> PackFileContentStore.create(storageDir, verifier, PackFileContentStore.MAX_SEGMENT_SIZE + 1));
+    }
+
+    @Test
+    void testFactoryChoosesLayout() throws IOException {
+        Path fresh = tempDir.resolve("fresh");
+        Path files = tempDir.resolve("files");
+        Files.createDirectories(files.resolve("ab"));
+        String previous = System.getProperty(ContentStoreFactory.LAYOUT_PROPERTY);
+        try {
+            System.clearProperty(ContentStoreFactory.LAYOUT_PROPERTY);
+            assertTrue(ContentStoreFactory.usesPackLayout(storageDir));
+            assertFalse(ContentStoreFactory.usesPackLayout(fresh));
+
+            System.setProperty(ContentStoreFactory.LAYOUT_PROPERTY, ContentStoreFactory.PACKS_LAYOUT);
+            assertTrue(ContentStoreFactory.usesPackLayout(fresh));
+            assertFalse(ContentStoreFactory.usesPackLayout(files));
+        } finally {
+            if (previous == null) {
+                System.clearProperty(ContentStoreFactory.LAYOUT_PROPERTY);
+            } else {
+                System.setProperty(ContentStoreFactory.LAYOUT_PROPERTY, previous);
+            }
+        }
+    }
+
+    private void markTableUnclean() throws IOException {
+        Path table = storageDir.resolve(PackFileContentStore.PACK_DIRECTORY).resolve(PackFileContentStore.TABLE_FILE);
+        try (FileChannel channel = FileChannel.open(table, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4), OffHeapChunkTable.CLEAN_OFFSET);
+        }
+    }
+
+    private PackFileContentStore open() throws IOException {
+        return PackFileContentStore.create(storageDir, new Blake3IntegrityVerifier(blake3Service), SEGMENT_SIZE);
+    }
+
+    private List<String> store(List<byte[]> chunks) throws IOException {
+        List<String> hashes = new ArrayList<>();
+        for (byte[] chunk : chunks) {
+            hashes.add(contentStore.storeChunk(chunk));
+        }
+        return hashes;
+    }
+
+    private void assertReadable(List<byte[]> chunks, List<String> hashes) throws IOException, StorageIntegrityException {
+        for (int i = 0; i < chunks.size(); i++) {
+            assertArrayEquals(chunks.get(i), contentStore.retrieveChunk(hashes.get(i), VerificationMode.FULL));
+        }
+    }
+
+    private List<Path> files(String extension) throws IOException {
+        try (Stream<Path> files = Files.list(storageDir.resolve(PackFileContentStore.PACK_DIRECTORY))) {
+            return files.filter(p -> p.getFileName().toString().endsWith(extension)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static List<byte[]> chunks(int count, int size) {
+        List<byte[]> chunks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] chunk = new byte[size];
+            new java.util.Random(size * 31L + i).nextBytes(chunk);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private static long size(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+}
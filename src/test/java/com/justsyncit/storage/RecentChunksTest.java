@@ -0,0 +1,85 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.justsyncit.storage;
+
+import com.justsyncit.hash.ChunkId;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for RecentChunks.
+ */
+class RecentChunksTest {
+
+    @Test
+    void testEvictsLeastRecentlyUsedChunk() {
+        RecentChunks chunks = RecentChunks.create(2);
+        chunks.add(id(1));
+        chunks.add(id(2));
+        // Using the first chunk makes the second the eldest
+        assertTrue(chunks.contains(id(1)));
+
+        chunks.add(id(3));
+
+        assertEquals(2, chunks.size());
+        assertTrue(chunks.contains(id(1)));
+        assertFalse(chunks.contains(id(2)));
+        assertTrue(chunks.contains(id(3)));
+    }
+
+    @Test
+    void testHexAndIdFormsAreTheSameChunk() {
+        RecentChunks chunks = RecentChunks.create(4);
+        chunks.add(id(7).toHex());
+
+        assertTrue(chunks.contains(id(7)));
+        assertTrue(chunks.contains(id(7).toHex().toUpperCase(java.util.Locale.ROOT)));
+    }
+
+    @Test
+    void testIgnoresHashesThatAreNotChunkIds() {
+        RecentChunks chunks = RecentChunks.create(4);
+        chunks.add("zero:65536");
+
+        assertEquals(0, chunks.size());
+        assertFalse(chunks.contains("zero:65536"));
+    }
+
+    @Test
+    void testClearAndInvalidCapacity() {
+        RecentChunks chunks = RecentChunks.create(4);
+        chunks.add(id(1));
+        chunks.clear();
+
+        assertFalse(chunks.contains(id(1)));
+        assertThrows(IllegalArgumentException.class, () -> RecentChunks.create(0));
+    }
+
+    private static ChunkId id(int n) {
+        byte[] digest = new byte[ChunkId.BYTES];
+        digest[0] = (byte) n;
+        digest[31] = (byte) (n * 7);
+        return ChunkId.of(digest);
+    }
+}
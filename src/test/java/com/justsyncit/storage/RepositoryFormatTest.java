@@ -0,0 +1,76 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for RepositoryFormat.
+ */
+class RepositoryFormatTest {
+
+    /** Temporary directory for tests. */
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testNewRepositoryDefaultsToBlake3() throws IOException {
+        Path storageDir = tempDir.resolve("chunks");
+
+        RepositoryFormat format = RepositoryFormat.ensureCompatible(storageDir, "BLAKE3");
+
+        assertEquals("BLAKE3", format.getHashAlgorithm());
+        assertTrue(Files.exists(storageDir.resolve(RepositoryFormat.FORMAT_FILE_NAME)));
+        assertEquals("BLAKE3", RepositoryFormat.detect(storageDir).getHashAlgorithm());
+    }
+
+    @Test
+    void testExistingRepositoryWithoutFormatFileIsLegacySha256() throws IOException {
+        Path storageDir = tempDir.resolve("chunks");
+        Files.createDirectories(storageDir.resolve("ab"));
+
+        assertEquals("SHA-256", RepositoryFormat.detect(storageDir).getHashAlgorithm());
+
+        RepositoryFormat.ensureCompatible(storageDir, "SHA-256");
+        assertEquals("SHA-256", RepositoryFormat.detect(storageDir).getHashAlgorithm());
+    }
+
+    @Test
+    void testMismatchedAlgorithmIsRejected() throws IOException {
+        Path storageDir = tempDir.resolve("chunks");
+        RepositoryFormat.ensureCompatible(storageDir, "SHA-256");
+
+        assertThrows(IOException.class, () -> RepositoryFormat.ensureCompatible(storageDir, "BLAKE3"));
+    }
+
+    @Test
+    void testNullArguments() {
+        assertThrows(IllegalArgumentException.class, () -> RepositoryFormat.detect(null));
+        assertThrows(IllegalArgumentException.class, () -> RepositoryFormat.ensureCompatible(tempDir, null));
+    }
+}
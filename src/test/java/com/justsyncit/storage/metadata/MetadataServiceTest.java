@@ -220,6 +220,44 @@ class MetadataServiceTest {
             assertEquals(file.getChunkHashes(), retrievedFile.getChunkHashes());
         }
 
+        @Test
+        @DisplayName("Should make concurrent writes visible as soon as they return")
+        void shouldReadOwnWritesUnderConcurrency() throws Exception {
+            // Given
+            int threads = 8;
+            int filesPerThread = 25;
+            java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(threads);
+            List<java.util.concurrent.Future<Integer>> results = new java.util.ArrayList<>();
+
+            // When
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    int visible = 0;
+                    for (int i = 0; i < filesPerThread; i++) {
+                        String chunkHash = "chunk-" + thread + "-" + i;
+                        metadataService.upsertChunk(new ChunkMetadata(chunkHash, 512, Instant.now(), 1, Instant.now()));
+                        FileMetadata file = new FileMetadata(
+                                "file-" + thread + "-" + i, snapshotId, "/path/" + thread + "/" + i,
+                                512, Instant.now(), "hash", Arrays.asList(chunkHash));
+                        metadataService.insertFile(file);
+                        if (metadataService.getChunkMetadata(chunkHash).isPresent()
+                                && metadataService.getFile(file.getId()).isPresent()) {
+                            visible++;
+                        }
+                    }
+                    return visible;
+                }));
+            }
+
+            // Then
+            for (java.util.concurrent.Future<Integer> result : results) {
+                assertEquals(filesPerThread, result.get(60, java.util.concurrent.TimeUnit.SECONDS).intValue());
+            }
+            executor.shutdown();
+            assertEquals(threads * filesPerThread, metadataService.getFilesInSnapshot(snapshotId).size());
+        }
+
         @Test
         @DisplayName("Should reject null file metadata")
         void shouldRejectNullFileMetadata() {
@@ -294,6 +332,58 @@ class MetadataServiceTest {
             assertTrue(files.stream().anyMatch(f -> f.getId().equals(file2.getId())));
         }
 
+        @Test
+        @DisplayName("Should list files with their whole chunk lists, extents included")
+        void shouldListFilesWithChunkLists() throws IOException {
+            Instant modified = Instant.ofEpochMilli(1_000_000);
+            List<String> chunks = Arrays.asList("chunk1", ZeroExtent.marker(4096), "chunk2");
+            metadataService.insertFile(new FileMetadata("file1", snapshotId, "/a/one", 4396, modified, "hash1", chunks));
+            metadataService.insertFile(new FileMetadata("file2", snapshotId, "/a/two", 10, modified, "hash2",
+                    Arrays.asList(PackedExtent.marker("pack1", 20, 10))));
+
+            List<FileMetadata> files = metadataService.getFilesInSnapshot(snapshotId);
+
+            assertEquals(2, files.size());
+            assertEquals(chunks, files.get(0).getChunkHashes());
+            assertEquals(Arrays.asList(PackedExtent.marker("pack1", 20, 10)), files.get(1).getChunkHashes());
+        }
+
+        @Test
+        @DisplayName("Should find a file by path only while it is unchanged")
+        void shouldFindUnchangedFile() throws IOException {
+            Instant modified = Instant.ofEpochMilli(1_000_000);
+            metadataService.insertFile(new FileMetadata("file1", snapshotId, "/a/one", 100, modified, "hash1",
+                    Arrays.asList("chunk1"), "(dev=1,ino=2)"));
+
+            Optional<FileMetadata> unchanged = metadataService.findUnchangedFile(snapshotId, "/a/one", 100, modified,
+                    "(dev=1,ino=2)");
+
+            assertTrue(unchanged.isPresent());
+            assertEquals(Arrays.asList("chunk1"), unchanged.get().getChunkHashes());
+            assertFalse(metadataService.findUnchangedFile(snapshotId, "/a/one", 101, modified, "(dev=1,ino=2)")
+                    .isPresent());
+            assertFalse(metadataService.findUnchangedFile(snapshotId, "/a/one", 100, modified.plusSeconds(1),
+                    "(dev=1,ino=2)").isPresent());
+            assertFalse(metadataService.findUnchangedFile(snapshotId, "/a/one", 100, modified, null).isPresent());
+            assertFalse(metadataService.findUnchangedFile(snapshotId, "/a/other", 100, modified, "(dev=1,ino=2)")
+                    .isPresent());
+        }
+
+        @Test
+        @DisplayName("Should pick the newest snapshot with files below a directory")
+        void shouldFindLatestSnapshotWithFilesUnder() throws IOException {
+            String sep = java.io.File.separator;
+            metadataService.insertFile(new FileMetadata("file1", snapshotId, sep + "a" + sep + "one", 1, Instant.now(),
+                    "hash1", Arrays.asList("chunk1")));
+            String otherId = metadataService.createSnapshot("other", "Other directory").getId();
+            metadataService.insertFile(new FileMetadata("file2", otherId, sep + "ab" + sep + "two", 1, Instant.now(),
+                    "hash2", Arrays.asList("chunk1")));
+
+            assertEquals(snapshotId, metadataService.findLatestSnapshotWithFilesUnder(sep + "a").get().getId());
+            assertEquals(otherId, metadataService.findLatestSnapshotWithFilesUnder(sep + "ab" + sep).get().getId());
+            assertFalse(metadataService.findLatestSnapshotWithFilesUnder(sep + "c").isPresent());
+        }
+
         @Test
         @DisplayName("Should update file successfully")
         void shouldUpdateFile() throws IOException {
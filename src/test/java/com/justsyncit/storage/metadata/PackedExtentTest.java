@@ -0,0 +1,79 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.justsyncit.storage.metadata;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for PackedExtent.
+ */
+class PackedExtentTest {
+
+    /** A chunk hash, which is never a marker. */
+    private static final String HASH = "6437b3ac38465133ffb63b75273a8db548c558465d79db03fd359c6cd5bd9d85";
+
+    @Test
+    void testMarkerRoundTrip() {
+        String marker = PackedExtent.marker(HASH, 61440, 4095);
+
+        assertTrue(PackedExtent.isMarker(marker));
+        assertEquals(HASH, PackedExtent.chunkHash(marker));
+        assertEquals(61440, PackedExtent.offset(marker));
+        assertEquals(4095, PackedExtent.length(marker));
+        assertFalse(PackedExtent.isMarker(HASH));
+        assertFalse(PackedExtent.isMarker(ZeroExtent.marker(10)));
+        assertFalse(PackedExtent.isMarker(null));
+    }
+
+    @Test
+    void testInvalidMarkers() {
+        assertThrows(IllegalArgumentException.class, () -> PackedExtent.marker(null, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> PackedExtent.marker(HASH, -1, 1));
+        assertThrows(IllegalArgumentException.class, () -> PackedExtent.marker(HASH, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> PackedExtent.chunkHash(HASH));
+        assertThrows(IllegalArgumentException.class, () -> PackedExtent.offset(PackedExtent.PREFIX + HASH + ":x:5"));
+        assertThrows(IllegalArgumentException.class, () -> PackedExtent.length(PackedExtent.PREFIX + HASH + ":5"));
+        assertThrows(IllegalArgumentException.class, () -> PackedExtent.chunkHash(PackedExtent.PREFIX + ":0:5"));
+    }
+
+    @Test
+    void testStoredChunk() {
+        assertEquals(HASH, PackedExtent.storedChunk(HASH));
+        assertEquals(HASH, PackedExtent.storedChunk(PackedExtent.marker(HASH, 0, 10)));
+        assertNull(PackedExtent.storedChunk(ZeroExtent.marker(10)));
+    }
+
+    @Test
+    void testSlice() {
+        byte[] pack = "firstsecondthird".getBytes(StandardCharsets.US_ASCII);
+
+        assertArrayEquals("second".getBytes(StandardCharsets.US_ASCII),
+                PackedExtent.slice(PackedExtent.marker(HASH, 5, 6), pack));
+        assertThrows(IllegalArgumentException.class, () -> PackedExtent.slice(PackedExtent.marker(HASH, 11, 6), pack));
+    }
+}
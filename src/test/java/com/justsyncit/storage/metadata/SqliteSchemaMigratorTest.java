@@ -32,6 +32,7 @@ import java.sql.SQLException;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -74,7 +75,7 @@ class SqliteSchemaMigratorTest {
 
         // Then
         assertNotNull(migrator);
-        assertEquals(2, migrator.getTargetVersion());
+        assertEquals(4, migrator.getTargetVersion());
     }
 
     @Test
@@ -123,7 +124,7 @@ class SqliteSchemaMigratorTest {
             try (var stmt = connection.createStatement();
                     var rs = stmt.executeQuery("SELECT version FROM schema_version")) {
                 assertTrue(rs.next());
-                assertEquals(2, rs.getInt("version"));
+                assertEquals(4, rs.getInt("version"));
             }
         }
     }
@@ -183,8 +184,49 @@ class SqliteSchemaMigratorTest {
             try (var stmt = connection.createStatement();
                     var rs = stmt.executeQuery("SELECT version FROM schema_version")) {
                 assertTrue(rs.next());
-                assertEquals(2, rs.getInt("version"));
+                assertEquals(4, rs.getInt("version"));
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Should keep file chunks and allow chunkless extents when migrating from version 3")
+    void shouldMigrateFileChunksFromVersion3() throws SQLException {
+        String dbPath = tempDir.resolve("v3.db").toString();
+        try (Connection connection = java.sql.DriverManager.getConnection("jdbc:sqlite:" + dbPath)) {
+            try (var stmt = connection.createStatement()) {
+                for (String create : DatabaseSchema.getCreateStatements()) {
+                    stmt.execute(create.replace("chunk_hash TEXT,", "chunk_hash TEXT NOT NULL,")
+                            .replace("extent_offset INTEGER,extent_length INTEGER,", ""));
+                }
+                stmt.execute("INSERT INTO schema_version (version) VALUES (3)");
+                stmt.execute("INSERT INTO snapshots (id, name, created_at) VALUES ('s', 's', 0)");
+                stmt.execute("INSERT INTO files (id, snapshot_id, path, size, modified_time, file_hash) "
+                        + "VALUES ('f', 's', '/a', 70000, 0, 'h')");
+                stmt.execute("INSERT INTO chunks (hash, size, first_seen, last_accessed) VALUES ('abc', 4464, 0, 0)");
+                stmt.execute("INSERT INTO file_chunks (file_id, chunk_hash, chunk_order, chunk_size) "
+                        + "VALUES ('f', 'abc', 0, 4464)");
+            }
+
+            SqliteSchemaMigrator.create().migrate(connection);
+
+            try (var stmt = connection.createStatement()) {
+                stmt.execute("INSERT INTO file_chunks (file_id, chunk_hash, chunk_order, chunk_size, extent_length) "
+                        + "VALUES ('f', NULL, 1, 65536, 65536)");
+            }
+            try (var stmt = connection.createStatement();
+                    var rs = stmt.executeQuery("SELECT chunk_hash, chunk_size, extent_length FROM file_chunks "
+                            + "ORDER BY chunk_order")) {
+                assertTrue(rs.next());
+                assertEquals("abc", rs.getString("chunk_hash"));
+                assertEquals(4464, rs.getLong("chunk_size"));
+                rs.getLong("extent_length");
+                assertTrue(rs.wasNull());
+                assertTrue(rs.next());
+                assertNull(rs.getString("chunk_hash"));
+                assertEquals(65536, rs.getLong("extent_length"));
+                assertFalse(rs.next());
+            }
+        }
+    }
+}
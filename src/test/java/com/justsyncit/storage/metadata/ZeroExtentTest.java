@@ -0,0 +1,90 @@
+/*
+ * JustSyncIt - Backup solution
+ * Copyright (C) 2023 JustSyncIt Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.justsyncit.storage.metadata;
+
+import com.justsyncit.ServiceFactory;
+import com.justsyncit.hash.Blake3Service;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for ZeroExtent.
+ */
+class ZeroExtentTest {
+
+    /** A chunk hash, which is never a marker. */
+    private static final String HASH = "6437b3ac38465133ffb63b75273a8db548c558465d79db03fd359c6cd5bd9d85";
+
+    @Test
+    void testMarkerRoundTrip() {
+        String marker = ZeroExtent.marker(200L * 1024 * 1024 * 1024);
+
+        assertTrue(ZeroExtent.isMarker(marker));
+        assertEquals(200L * 1024 * 1024 * 1024, ZeroExtent.length(marker));
+        assertFalse(ZeroExtent.isMarker(HASH));
+        assertFalse(ZeroExtent.isMarker(null));
+    }
+
+    @Test
+    void testInvalidMarkers() {
+        assertThrows(IllegalArgumentException.class, () -> ZeroExtent.marker(0));
+        assertThrows(IllegalArgumentException.class, () -> ZeroExtent.length(HASH));
+        assertThrows(IllegalArgumentException.class, () -> ZeroExtent.length(ZeroExtent.PREFIX + "x"));
+        assertThrows(IllegalArgumentException.class, () -> ZeroExtent.length(ZeroExtent.PREFIX + "-5"));
+    }
+
+    @Test
+    void testContainsMarkers() {
+        assertTrue(ZeroExtent.containsMarkers(List.of(ZeroExtent.marker(15), HASH)));
+        assertFalse(ZeroExtent.containsMarkers(List.of(HASH)));
+    }
+
+    @Test
+    void testHashZerosMatchesHashOfZeroBytes() throws Exception {
+        Blake3Service blake3Service = new ServiceFactory().createBlake3Service();
+        int length = 200 * 1024 + 17;
+        Blake3Service.Blake3IncrementalHasher hasher = blake3Service.createIncrementalHasher();
+
+        ZeroExtent.hashZeros(hasher, length);
+
+        assertEquals(blake3Service.hashBuffer(new byte[length]), hasher.digest());
+    }
+
+    @Test
+    void testZeroPrefixLengthAcrossWindows() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(300 * 1024);
+        buffer.position(10);
+
+        assertTrue(ZeroExtent.isAllZero(buffer));
+        buffer.put(200 * 1024, (byte) 1);
+        assertEquals(200 * 1024 - 10, ZeroExtent.zeroPrefixLength(buffer));
+        assertFalse(ZeroExtent.isAllZero(buffer));
+        // Neither call moves the buffer
+        assertEquals(10, buffer.position());
+        assertEquals(buffer.capacity(), buffer.limit());
+    }
+}